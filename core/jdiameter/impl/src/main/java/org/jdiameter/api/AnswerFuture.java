@@ -0,0 +1,51 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2010, Red Hat, Inc. and individual contributors
+ * by the @authors tag. See the copyright.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.jdiameter.api;
+
+import java.util.concurrent.Future;
+
+/**
+ * Pending answer of a request sent without blocking. The future is completed by the
+ * stack thread which matched the answer or expired the request timer, and the
+ * listeners added to it are called from that thread. A listener may send further
+ * requests and add listeners to their futures, so lookups can be chained without
+ * parking a thread per outstanding request.
+ * <p>
+ * {@link #get()} returns null when the request timed out or the future was cancelled.
+ */
+public interface AnswerFuture<R extends Message, A extends Message> extends Future<A> {
+
+  /**
+   * Adds a listener notified of the answer or of the request time out. If the future is
+   * already completed the listener is called right away, from the calling thread.
+   * Listeners are not called when the future is cancelled.
+   *
+   * @param listener the listener to notify
+   */
+  void addListener(EventListener<R, A> listener);
+
+  /**
+   * @return true if the request timed out before an answer was received
+   */
+  boolean isTimeOut();
+}
@@ -529,6 +529,43 @@ public interface Avp extends Wrapper, Serializable {
    */
   public static final int VALIDITY_TIME = 448;
 
+  // RFC 7683 (Diameter Overload Indication Conveyance) AVPs
+
+  /**
+   * DOIC (RFC7683) Supported Features AVP code
+   */
+  public static final int OC_SUPPORTED_FEATURES = 621;
+
+  /**
+   * DOIC (RFC7683) Feature Vector AVP code
+   */
+  public static final int OC_FEATURE_VECTOR = 622;
+
+  /**
+   * DOIC (RFC7683) Overload Report (OLR) AVP code
+   */
+  public static final int OC_OLR = 623;
+
+  /**
+   * DOIC (RFC7683) Sequence Number AVP code
+   */
+  public static final int OC_SEQUENCE_NUMBER = 624;
+
+  /**
+   * DOIC (RFC7683) Validity Duration AVP code
+   */
+  public static final int OC_VALIDITY_DURATION = 625;
+
+  /**
+   * DOIC (RFC7683) Report Type AVP code
+   */
+  public static final int OC_REPORT_TYPE = 626;
+
+  /**
+   * DOIC (RFC7683) Reduction Percentage AVP code
+   */
+  public static final int OC_REDUCTION_PERCENTAGE = 627;
+
   // Cx/Dx IMS Interface AVPs
 
   /**
@@ -116,4 +116,28 @@ public interface RawSession extends BaseSession, Wrapper {
    */
   Future<Message> send(Message message, long timeOut, TimeUnit timeUnit) throws InternalException, IllegalDiameterStateException, RouteException, OverloadException;
 
+  /**
+   * Sends request with default timeout, without waiting for the answer
+   * @param request diameter request
+   * @return AnswerFuture pending answer of the request
+   * @throws InternalException The InternalException signals that internal error is occurred.
+   * @throws IllegalDiameterStateException The IllegalStateException signals that session has incorrect state (invalid).
+   * @throws RouteException The NoRouteException signals that no route exist for a given realm.
+   * @throws OverloadException The OverloadException signals that destination host is overloaded.
+   */
+  AnswerFuture<Message, Message> sendRequest(Message request) throws InternalException, IllegalDiameterStateException, RouteException, OverloadException;
+
+  /**
+   * Sends request with defined timeout, without waiting for the answer
+   * @param request diameter request
+   * @param timeOut value of timeout
+   * @param timeUnit type of timeOut value
+   * @return AnswerFuture pending answer of the request
+   * @throws InternalException  The InternalException signals that internal error is occurred.
+   * @throws IllegalDiameterStateException The IllegalStateException signals that session has incorrect state (invalid).
+   * @throws RouteException The NoRouteException signals that no route exist for a given realm.
+   * @throws OverloadException The OverloadException signals that destination host is overloaded.
+   */
+  AnswerFuture<Message, Message> sendRequest(Message request, long timeOut, TimeUnit timeUnit) throws InternalException, IllegalDiameterStateException, RouteException, OverloadException;
+
 }
\ No newline at end of file
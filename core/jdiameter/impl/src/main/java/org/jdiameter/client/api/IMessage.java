@@ -132,6 +132,32 @@ public interface IMessage extends IRequest, IAnswer {
    */
   void setPeer(IPeer peer);
 
+  /**
+   * Return time at which the request was handed to its peer
+   * @return value of System.nanoTime(), 0 if the request was not handed to a peer
+   */
+  long getSendTime();
+
+  /**
+   * Set time at which the request was handed to its peer
+   * @param sendTime value of System.nanoTime()
+   */
+  void setSendTime(long sendTime);
+
+  /**
+   * Tell whether overload control (RFC 7683) AVPs may be added to this answer, which is the
+   * case when its request announced overload control support
+   * @return true if OC-Supported-Features was received in the request
+   */
+  boolean isOverloadControl();
+
+  /**
+   * Record whether the request announced overload control (RFC 7683) support, answers
+   * created from the request inherit the value
+   * @param overloadControl true if OC-Supported-Features was received in the request
+   */
+  void setOverloadControl(boolean overloadControl);
+
   /**
    * Return application id
    * @return application id
@@ -74,6 +74,20 @@ public interface IPeer extends Peer {
    */
   IMessage[] remAllMessage();
 
+  /**
+   * Return number of requests sent to peer and not answered yet
+   * 
+   * @return count of pending requests
+   */
+  int getPendingRequestCount();
+
+  /**
+   * Return smoothed answer latency of peer
+   * 
+   * @return latency in microseconds, -1 if peer did not answer any request yet
+   */
+  long getLatency();
+
   /**
    * Put message to peer fsm
    * 
@@ -63,6 +63,13 @@ public interface IRealm extends Realm {
    * @return true if the the peer belongs to this realm, false otherwise
    */
   public boolean hasPeerName(String name);
+  /**
+   * Return number of changes made to the peers of this realm, so that
+   * information derived from its peer names can be checked for staleness
+   * 
+   * @return modification count of the peer names
+   */
+  public int getPeerNamesVersion();
 
   /**
    * Get the processing agent for this realm
@@ -37,7 +37,8 @@ import java.nio.ByteBuffer;
 public interface IMessageParser {
 
     /**
-     * Create message from bytebuffer
+     * Create message from bytebuffer. The message is read from the buffer position to its
+     * limit, the buffer may be reused by the caller once this method returns.
      * @param data message bytebuffer
      * @return instance of message
      * @throws AvpDataException
@@ -101,4 +102,19 @@ public interface IMessageParser {
      */
     ByteBuffer encodeMessage(IMessage message) throws ParseException;
 
+    /**
+     * Return the exact number of bytes needed to encode message
+     * @param message diameter message
+     * @return encoded message length
+     */
+    int getMessageLength(IMessage message);
+
+    /**
+     * Encode message into destination buffer, starting at its current position
+     * @param message diameter message
+     * @param destination buffer with at least getMessageLength(message) bytes remaining, may be pooled or direct
+     * @throws ParseException
+     */
+    void encodeMessage(IMessage message, ByteBuffer destination) throws ParseException;
+
 }
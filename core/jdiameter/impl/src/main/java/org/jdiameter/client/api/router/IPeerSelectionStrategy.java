@@ -0,0 +1,44 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2011, Red Hat, Inc. and individual contributors
+ * by the @authors tag. See the copyright.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.jdiameter.client.api.router;
+
+import org.jdiameter.client.api.IMessage;
+import org.jdiameter.client.api.controller.IPeer;
+
+/**
+ * Load balancing strategy used by the router to pick one of the available peers of a realm
+ * for a request. Implementations are shared by all threads sending requests, so they must be
+ * thread safe, and they are called once per routed request, so they should not allocate.
+ */
+public interface IPeerSelectionStrategy {
+
+  /**
+   * Select the peer a request is sent to
+   *
+   * @param peers peers of the destination realm with a valid connection, never empty. The array is
+   *          shared between calls and must not be modified
+   * @param message request to be sent
+   * @return one of the given peers
+   */
+  IPeer select(IPeer[] peers, IMessage message);
+}
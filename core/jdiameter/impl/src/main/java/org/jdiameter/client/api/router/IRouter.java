@@ -100,6 +100,14 @@ public interface IRouter  {
    */
   void processRedirectAnswer(IRequest request, IAnswer answer, IPeerTable table) throws InternalException, RouteException;
 
+  /**
+   * Called when an answer is received for request. This method applies the overload report (RFC 7683)
+   * carried by the answer, which throttles the requests routed afterwards to the reporting host or realm.
+   * @param request
+   * @param answer
+   */
+  void processOverloadReport(IRequest request, IAnswer answer);
+
   /**
    * Based on Redirect entries or any other factors, this method changes route information.
    * @param message
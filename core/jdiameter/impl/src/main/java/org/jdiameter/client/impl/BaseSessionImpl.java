@@ -31,9 +31,12 @@ import org.jdiameter.client.api.parser.IMessageParser;
 
 import static org.jdiameter.client.impl.helpers.Parameters.MessageTimeOut;
 
+import java.util.ArrayList;
+import java.util.List;
 import java.util.concurrent.*;
-import java.util.concurrent.locks.Lock;
-import java.util.concurrent.locks.ReentrantLock;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 /**
  * Implementation for {@link BaseSession}.
@@ -44,6 +47,8 @@ import java.util.concurrent.locks.ReentrantLock;
  */
 public abstract class BaseSessionImpl implements BaseSession {
 
+  private static final Logger logger = LoggerFactory.getLogger(BaseSessionImpl.class);
+
   protected final long creationTime = System.currentTimeMillis();
   protected long lastAccessedTime = creationTime;
   protected boolean isValid = true;
@@ -53,6 +58,9 @@ public abstract class BaseSessionImpl implements BaseSession {
   protected transient IMessageParser parser;
   protected NetworkReqListener reqListener;
 
+  // MessageTimeOut of the stack configuration, so it is not looked up on every send
+  private transient ConfiguredTimeOut messageTimeOut;
+
   public long getCreationTime() {
     return creationTime;
   }
@@ -83,10 +91,30 @@ public abstract class BaseSessionImpl implements BaseSession {
     return false;
   }
 
+  private static final class ConfiguredTimeOut {
+
+    private final Configuration config;
+    private final long timeOut;
+
+    ConfiguredTimeOut(Configuration config) {
+      this.config = config;
+      this.timeOut = config.getLongValue(MessageTimeOut.ordinal(), (Long) MessageTimeOut.defValue());
+    }
+  }
+
+  protected long getMessageTimeOut() {
+    Configuration config = container.getConfiguration();
+    ConfiguredTimeOut configured = messageTimeOut;
+    if (configured == null || configured.config != config) {
+      configured = new ConfiguredTimeOut(config);
+      messageTimeOut = configured;
+    }
+    return configured.timeOut;
+  }
+
   protected void genericSend(Message message, EventListener listener) throws InternalException, IllegalDiameterStateException, RouteException, OverloadException {
     if (isValid) {
-      long timeOut = container.getConfiguration().getLongValue(MessageTimeOut.ordinal(), (Long) MessageTimeOut.defValue());
-      genericSend(message, listener, timeOut, TimeUnit.MILLISECONDS);
+      genericSend(message, listener, getMessageTimeOut(), TimeUnit.MILLISECONDS);
     }
     else {
       throw new IllegalDiameterStateException("Session already released");
@@ -94,11 +122,14 @@ public abstract class BaseSessionImpl implements BaseSession {
   }
 
   protected void genericSend(Message aMessage, EventListener listener, long timeout, TimeUnit timeUnit) throws InternalException, IllegalDiameterStateException, RouteException, OverloadException {
+    doSend(aMessage, createListenerWrapper(listener), timeout, timeUnit);
+  }
+
+  private void doSend(Message aMessage, IEventListener localListener, long timeout, TimeUnit timeUnit) throws InternalException, IllegalDiameterStateException, RouteException, OverloadException {
     if (isValid) {
       lastAccessedTime = System.currentTimeMillis();
 
       IMessage message = (IMessage) aMessage;
-      IEventListener localListener = createListenerWrapper(listener);
       if (message.isRequest()) {
         message.setListener(localListener);
 
@@ -140,126 +171,182 @@ public abstract class BaseSessionImpl implements BaseSession {
     return listener == null ? null : new MyEventListener(this, listener);
   }
 
-  public Future<Message> send(final Message message) throws InternalException, IllegalDiameterStateException, RouteException, OverloadException {
-    MyFuture future = new MyFuture();
-    future.send(message);
-    return future;
+  protected <R extends Message, A extends Message> AnswerFuture<R, A> genericSendRequest(Message request) throws InternalException, IllegalDiameterStateException, RouteException, OverloadException {
+    if (isValid) {
+      return genericSendRequest(request, getMessageTimeOut(), TimeUnit.MILLISECONDS);
+    }
+    else {
+      throw new IllegalDiameterStateException("Session already released");
+    }
   }
 
-  public Future<Message> send(Message message, long timeOut, TimeUnit timeUnit) throws InternalException, IllegalDiameterStateException, RouteException, OverloadException {
-    MyFuture future = new MyFuture();
-    future.send(message, timeOut, timeUnit);
+  protected <R extends Message, A extends Message> AnswerFuture<R, A> genericSendRequest(Message request, long timeout, TimeUnit timeUnit) throws InternalException, IllegalDiameterStateException, RouteException, OverloadException {
+    RequestFuture<R, A> future = new RequestFuture<R, A>(this);
+    doSend(request, future, timeout, timeUnit);
     return future;
   }
 
-  private class MyFuture implements Future<Message> {
+  public Future<Message> send(final Message message) throws InternalException, IllegalDiameterStateException, RouteException, OverloadException {
+    return this.<Message, Message>genericSendRequest(message);
+  }
 
-    private boolean canceled;
-    private boolean done;
-    private boolean timeOut;
-    private Lock lock = new ReentrantLock();
-    private CountDownLatch block = new CountDownLatch(1);
-    private Message result;
+  public Future<Message> send(Message message, long timeOut, TimeUnit timeUnit) throws InternalException, IllegalDiameterStateException, RouteException, OverloadException {
+    return this.<Message, Message>genericSendRequest(message, timeOut, timeUnit);
+  }
 
-    public boolean cancel(boolean mayInterruptIfRunning) {
-      lock.lock();
-      try {
-        canceled = true;
-        done = false;
-        block.countDown();
-      }
-      finally {
-        lock.unlock();
-      }
+  /**
+   * Pending answer of a request. It is the listener of the request itself, so it is
+   * completed straight from the answer matching or the request timer, and only
+   * blocks the threads calling get().
+   */
+  private static class RequestFuture<R extends Message, A extends Message> implements AnswerFuture<R, A>, IEventListener {
+
+    private static final int PENDING = 0;
+    private static final int ANSWERED = 1;
+    private static final int TIMED_OUT = 2;
+    private static final int CANCELLED = 3;
+
+    private final BaseSessionImpl session;
+    private volatile int state = PENDING;
+    private Request request;
+    private Answer answer;
+    // most requests have at most one listener
+    private EventListener<R, A> listener;
+    private List<EventListener<R, A>> moreListeners;
+
+    RequestFuture(BaseSessionImpl session) {
+      this.session = session;
+    }
 
-      return true;
+    public boolean cancel(boolean mayInterruptIfRunning) {
+      return complete(CANCELLED, null, null);
     }
 
     public boolean isCancelled() {
-      return canceled;
+      return state == CANCELLED;
     }
 
     public boolean isDone() {
-      return done;
+      return state != PENDING;
     }
 
-    public Message get() throws InterruptedException, ExecutionException {
-      try {
-        block.await();
-      }
-      catch (Exception e) {
-        throw new ExecutionException(e);
-      }
+    public boolean isTimeOut() {
+      return state == TIMED_OUT;
+    }
 
-      Message rc = canceled ? null : result;
-      result = null;
-      return rc;
+    public A get() throws InterruptedException, ExecutionException {
+      if (state == PENDING) {
+        synchronized (this) {
+          while (state == PENDING) {
+            wait();
+          }
+        }
+      }
+      return getAnswer();
     }
 
-    public Message get(long timeout, TimeUnit unit) throws InterruptedException, ExecutionException, TimeoutException {
-      try {
-        block.await(timeout, unit);
+    public A get(long timeout, TimeUnit unit) throws InterruptedException, ExecutionException, TimeoutException {
+      if (state == PENDING) {
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        synchronized (this) {
+          while (state == PENDING) {
+            long left = deadline - System.nanoTime();
+            if (left <= 0) {
+              throw new TimeoutException();
+            }
+            TimeUnit.NANOSECONDS.timedWait(this, left);
+          }
+        }
       }
-      catch (Exception e) {
-        throw new ExecutionException(e);
+      if (state == TIMED_OUT) {
+        throw new TimeoutException();
       }
+      return getAnswer();
+    }
 
-      if (timeOut) {
-        throw new TimeoutException();
+    @SuppressWarnings("unchecked")
+    private A getAnswer() {
+      return state == ANSWERED ? (A) answer : null;
+    }
+
+    public void addListener(EventListener<R, A> listener) {
+      synchronized (this) {
+        if (state == PENDING) {
+          if (this.listener == null) {
+            this.listener = listener;
+          }
+          else {
+            if (moreListeners == null) {
+              moreListeners = new ArrayList<EventListener<R, A>>(2);
+            }
+            moreListeners.add(listener);
+          }
+          return;
+        }
       }
+      fire(listener);
+    }
 
-      Message rc = canceled ? null : result;
-      result = null;
-      return rc;
+    public void setValid(boolean value) {
     }
 
-    private IEventListener createListener() {
-      return new IEventListener() {
+    public boolean isValid() {
+      return state == PENDING;
+    }
 
-        public void setValid(boolean value) {
-        }
+    public void receivedSuccessMessage(Request request, Answer answer) {
+      if (complete(ANSWERED, request, answer)) {
+        session.lastAccessedTime = System.currentTimeMillis();
+      }
+    }
 
-        public boolean isValid() {
-          return !canceled;
-        }
+    public void timeoutExpired(Request request) {
+      if (complete(TIMED_OUT, request, null)) {
+        session.lastAccessedTime = System.currentTimeMillis();
+      }
+    }
 
-        public void receivedSuccessMessage(Request r, Answer a) {
-          lock.lock();
-          try {
-            if (!canceled) {
-              result = a;
-              canceled = false;
-              done = true;
-            }
-            block.countDown();
-          }
-          finally {
-            lock.unlock();
-          }
+    private boolean complete(int newState, Request request, Answer answer) {
+      EventListener<R, A> first;
+      List<EventListener<R, A>> others;
+      synchronized (this) {
+        if (state != PENDING) {
+          return false;
         }
+        this.request = request;
+        this.answer = answer;
+        this.state = newState;
+        notifyAll();
+        first = this.listener;
+        others = this.moreListeners;
+        this.listener = null;
+        this.moreListeners = null;
+      }
 
-        public void timeoutExpired(Request message) {
-          lock.lock();
-          try {
-            if (!canceled) {
-              done = true;
-              timeOut = true;
-            }
-            block.countDown();
-          }
-          finally {
-            lock.unlock();
-          }
+      if (first != null) {
+        fire(first);
+      }
+      if (others != null) {
+        for (EventListener<R, A> other : others) {
+          fire(other);
         }
-      };
-    }
-
-    public void send(Message message) throws RouteException, OverloadException, IllegalDiameterStateException, InternalException {
-      genericSend(message, createListener());
+      }
+      return true;
     }
 
-    public void send(Message message, long timeOut, TimeUnit timeUnit) throws RouteException, OverloadException, IllegalDiameterStateException, InternalException {
-      genericSend(message, createListener(), timeOut, timeUnit);
+    @SuppressWarnings("unchecked")
+    private void fire(EventListener<R, A> listener) {
+      try {
+        if (state == ANSWERED) {
+          listener.receivedSuccessMessage((R) request, (A) answer);
+        }
+        else if (state == TIMED_OUT) {
+          listener.timeoutExpired((R) request);
+        }
+      }
+      catch (Exception e) {
+        logger.warn("Failure in listener of request " + request, e);
+      }
     }
   }
 
@@ -336,6 +336,14 @@ public class MetaDataImpl implements IMetaData {
       return 0;
     }
 
+    public int getPendingRequestCount() {
+      return 0;
+    }
+
+    public long getLatency() {
+      return 0;
+    }
+
     public void addPeerStateListener(PeerStateListener peerStateListener) {
     }
 
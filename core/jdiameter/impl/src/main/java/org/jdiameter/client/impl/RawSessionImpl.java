@@ -107,6 +107,14 @@ public class RawSessionImpl extends BaseSessionImpl implements RawSession {
         genericSend(message,  listener, timeOut, timeUnit);
     }
 
+    public AnswerFuture<Message, Message> sendRequest(Message request) throws InternalException, IllegalDiameterStateException, RouteException, OverloadException {
+        return genericSendRequest(request);
+    }
+
+    public AnswerFuture<Message, Message> sendRequest(Message request, long timeOut, TimeUnit timeUnit) throws InternalException, IllegalDiameterStateException, RouteException, OverloadException {
+        return genericSendRequest(request, timeOut, timeUnit);
+    }
+
     public void release() {
         isValid = false;
         container = null;
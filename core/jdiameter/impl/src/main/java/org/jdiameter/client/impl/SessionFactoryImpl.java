@@ -60,16 +60,15 @@ public class SessionFactoryImpl implements ISessionFactory {
   }
 
   public String getSessionId(String custom) {
+    // <DiameterIdentity>;<high 32 bits>;<low 32 bits>[;<optional value>], built in one buffer
     long id = uid.nextLong();
-    long high32 = (id & 0xffffffff00000000L) >> 32;
-    long low32 = (id & 0xffffffffL);
-    StringBuilder sb = new StringBuilder();
-    sb.append(stack.getMetaData().getLocalPeer().getUri().getFQDN()).
-    append(";").append(high32).append(";").append(low32);
+    String fqdn = stack.getMetaData().getLocalPeer().getUri().getFQDN();
+    StringBuilder sb = new StringBuilder(fqdn.length() + 24 + (custom != null ? custom.length() + 1 : 0));
+    sb.append(fqdn).append(';').append(id >> 32).append(';').append(id & 0xffffffffL);
     if(custom!=null)
     {
       //FIXME: add checks for not allowed chars?
-      sb.append(";").append(custom);
+      sb.append(';').append(custom);
     }
     return sb.toString();
   }
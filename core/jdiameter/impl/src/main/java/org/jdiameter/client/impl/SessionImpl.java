@@ -65,6 +65,14 @@ public class SessionImpl extends BaseSessionImpl implements ISession {
     genericSend(message, listener, timeout, timeUnit);
   }
 
+  public AnswerFuture<Request, Answer> sendRequest(Request request) throws InternalException, IllegalDiameterStateException, RouteException, OverloadException {
+    return genericSendRequest(request);
+  }
+
+  public AnswerFuture<Request, Answer> sendRequest(Request request, long timeout, TimeUnit timeUnit) throws InternalException, IllegalDiameterStateException, RouteException, OverloadException {
+    return genericSendRequest(request, timeout, timeUnit);
+  }
+
   public void setRequestListener(NetworkReqListener listener) {
     if (listener != null) {
       super.reqListener = listener;
@@ -50,6 +50,7 @@ import org.jdiameter.api.PeerState;
 import org.jdiameter.api.PeerTable;
 import org.jdiameter.api.RouteException;
 import org.jdiameter.api.SessionFactory;
+import org.jdiameter.api.StatisticRecord;
 import org.jdiameter.api.app.StateChangeListener;
 import org.jdiameter.api.validation.Dictionary;
 import org.jdiameter.api.validation.ValidatorLevel;
@@ -63,6 +64,8 @@ import org.jdiameter.client.api.controller.IPeerTable;
 import org.jdiameter.client.impl.helpers.Parameters;
 import org.jdiameter.common.api.concurrent.IConcurrentFactory;
 import org.jdiameter.common.api.data.ISessionDatasource;
+import org.jdiameter.common.api.statistic.IStatistic;
+import org.jdiameter.common.api.statistic.IStatisticManager;
 import org.jdiameter.common.api.statistic.IStatisticProcessor;
 import org.jdiameter.common.api.timer.ITimerFacility;
 import org.slf4j.Logger;
@@ -338,6 +341,10 @@ public class StackImpl implements IContainer, StackImplMBean {
         peerManager.destroy();
       }
       if (assembler != null) {
+        ITimerFacility timerFacility = assembler.getComponentInstance(ITimerFacility.class);
+        if (timerFacility != null) {
+          timerFacility.stop();
+        }
         assembler.destroy();
       }
       if (scheduledFacility != null) {
@@ -481,6 +488,24 @@ public class StackImpl implements IContainer, StackImplMBean {
     }
   }
 
+  public String statistic() {
+    IStatisticManager statisticManager = assembler != null ? assembler.getComponentInstance(IStatisticManager.class) : null;
+    if (statisticManager == null) {
+      return "not set";
+    }
+    StringBuilder sb = new StringBuilder();
+    for (IStatistic statistic : statisticManager.getStatistic()) {
+      if (statistic.isEnabled()) {
+        sb.append(statistic.getName()).append(": ");
+        for (StatisticRecord record : statistic.getRecords()) {
+          sb.append(record.getName()).append('=').append(record).append("; ");
+        }
+        sb.append('\n');
+      }
+    }
+    return sb.toString();
+  }
+
   public void stop(int disconnectCause) {
     try {
       stop(10, TimeUnit.SECONDS, disconnectCause);
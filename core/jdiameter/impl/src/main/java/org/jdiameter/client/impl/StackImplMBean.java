@@ -59,6 +59,12 @@ public interface StackImplMBean {
    */
   String peerList();
 
+  /**
+   * Return list of enabled statistics with their records, latency histograms included
+   * @return list of enabled statistics
+   */
+  String statistic();
+
   /**
    * Return true if stack is started
    * @return true if stack is started
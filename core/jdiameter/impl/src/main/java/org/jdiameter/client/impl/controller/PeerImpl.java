@@ -72,6 +72,7 @@ import static org.jdiameter.client.api.fsm.EventTypes.DWR_EVENT;
 import static org.jdiameter.client.api.fsm.EventTypes.INTERNAL_ERROR;
 import static org.jdiameter.client.api.fsm.EventTypes.RECEIVE_MSG_EVENT;
 import static org.jdiameter.client.api.fsm.EventTypes.STOP_EVENT;
+import static org.jdiameter.client.impl.helpers.Parameters.OverloadControl;
 import static org.jdiameter.client.impl.helpers.Parameters.SecurityRef;
 import static org.jdiameter.client.impl.helpers.Parameters.UseUriAsFqdn;
 
@@ -118,6 +119,8 @@ import org.jdiameter.client.api.fsm.IFsmFactory;
 import org.jdiameter.client.api.fsm.IStateMachine;
 import org.jdiameter.client.api.io.IConnection;
 import org.jdiameter.client.api.io.IConnectionListener;
+import org.jdiameter.client.api.io.IMultiStreamConnection;
+import org.jdiameter.client.api.io.IOutboundQueue;
 import org.jdiameter.client.api.io.ITransportLayerFactory;
 import org.jdiameter.client.api.io.TransportError;
 import org.jdiameter.client.api.io.TransportException;
@@ -125,8 +128,10 @@ import org.jdiameter.client.api.parser.IMessageParser;
 import org.jdiameter.client.api.router.IRouter;
 import org.jdiameter.client.impl.AbstractStateChangeListener;
 import org.jdiameter.client.impl.DictionarySingleton;
+import org.jdiameter.client.impl.router.OverloadReportTable;
 import org.jdiameter.common.api.concurrent.IConcurrentFactory;
 import org.jdiameter.common.api.data.ISessionDatasource;
+import org.jdiameter.common.api.statistic.IHistogramRecord;
 import org.jdiameter.common.api.statistic.IStatistic;
 import org.jdiameter.common.api.statistic.IStatisticManager;
 import org.jdiameter.common.api.statistic.IStatisticRecord;
@@ -163,12 +168,16 @@ public class PeerImpl extends AbstractPeer implements IPeer {
   protected IRouter router;
   // XXX: FT/HA // protected Map<String, NetworkReqListener> slc;
   protected final Map<Long, IMessage> peerRequests = new ConcurrentHashMap<Long, IMessage>();
+  // EWMA of the answer latency in microseconds, -1 until the first answer. Updates racing each
+  // other may lose a sample, which does not matter for load balancing
+  protected volatile long latency = -1;
   protected final Dictionary dictionary = DictionarySingleton.getDictionary();
   // FSM layer
   protected IStateMachine fsm;
   protected IMessageParser parser;
   // Feature
   protected boolean useUriAsFQDN = false; // Use URI as origin host name into CER command
+  protected boolean overloadControl = false; // Announce overload control (RFC 7683) in requests
 
   //session store and data
   protected ISessionDatasource sessionDataSource;
@@ -362,6 +371,7 @@ public class PeerImpl extends AbstractPeer implements IPeer {
     this.parser = parser;
     this.addresses = new InetAddress[] {remoteAddress};
     this.useUriAsFQDN = config.getBooleanValue(UseUriAsFqdn.ordinal(), (Boolean) UseUriAsFqdn.defValue());
+    this.overloadControl = config.getBooleanValue(OverloadControl.ordinal(), (Boolean) OverloadControl.defValue());
   }
 
   public IContext getContext() {
@@ -381,6 +391,30 @@ public class PeerImpl extends AbstractPeer implements IPeer {
     return statistic;
   }
 
+  @Override
+  protected int getOutboundQueueSize() {
+    IConnection connection = this.connection;
+    return connection instanceof IOutboundQueue ? ((IOutboundQueue) connection).getOutboundQueueSize() : 0;
+  }
+
+  @Override
+  protected long getOutboundBytes() {
+    IConnection connection = this.connection;
+    return connection instanceof IOutboundQueue ? ((IOutboundQueue) connection).getOutboundBytes() : 0;
+  }
+
+  @Override
+  protected int getOutboundStreams() {
+    IConnection connection = this.connection;
+    return connection instanceof IMultiStreamConnection ? ((IMultiStreamConnection) connection).getOutboundStreams() : 0;
+  }
+
+  @Override
+  protected long getOutboundStreamMessages(int stream) {
+    IConnection connection = this.connection;
+    return connection instanceof IMultiStreamConnection ? ((IMultiStreamConnection) connection).getSentCount(stream) : 0;
+  }
+
   public void addPeerStateListener(final PeerStateListener listener) {
     fsm.addStateChangeNotification(new AbstractStateChangeListener() {
 
@@ -530,11 +564,59 @@ public class PeerImpl extends AbstractPeer implements IPeer {
   }
 
   public void addMessage(IMessage message) {
+    message.setSendTime(System.nanoTime());
     peerRequests.put(message.getHopByHopIdentifier(), message);
   }
 
   public void remMessage(IMessage message) {
-    peerRequests.remove(message.getHopByHopIdentifier());
+    // called on timeout, which counts as an answer as late as the timeout
+    if (peerRequests.remove(message.getHopByHopIdentifier()) != null) {
+      updateLatency(message);
+    }
+  }
+
+  public int getPendingRequestCount() {
+    return peerRequests.size();
+  }
+
+  public long getLatency() {
+    return latency;
+  }
+
+  /**
+   * Append the overload control (RFC 7683) AVPs of this node to an answer sent to this peer. A client
+   * does not report overload, the server peer does.
+   */
+  protected void appendOverloadControl(IMessage answer) {
+  }
+
+  /**
+   * Announce the overload control (RFC 7683) support of this node in a request sent to this peer,
+   * so that its answers may carry overload reports.
+   */
+  protected void announceOverloadControl(IMessage request) {
+    AvpSet avps = request.getAvps();
+    if (overloadControl && avps.getAvp(Avp.OC_SUPPORTED_FEATURES, 0) == null) {
+      OverloadReportTable.addSupportedFeatures(avps);
+    }
+  }
+
+  protected void updateLatency(IMessage request) {
+    if (request.getSendTime() == 0) {
+      return;
+    }
+    long sample = (System.nanoTime() - request.getSendTime()) / 1000;
+    long current = latency;
+    // same smoothing as the TCP round trip time estimator, new samples weigh 1/8
+    latency = current < 0 ? sample : current + ((sample - current) >> 3);
+    IStatistic statistic = this.statistic;
+    if (statistic != null && statistic.isEnabled()) {
+      IHistogramRecord record = (IHistogramRecord) statistic.getRecordByName(IStatisticRecord.Counters.RequestLatency);
+      if (record != null) {
+        record.record(sample);
+      }
+    }
+    table.recordLatency(request, sample);
   }
 
   public IMessage[] remAllMessage() {
@@ -662,14 +744,14 @@ public class PeerImpl extends AbstractPeer implements IPeer {
       logger.debug("Sending response indicating we could not process request");
       sendMessage((IMessage) request);
       if(statistic.isEnabled()) {
-        statistic.getRecordByName(IStatisticRecord.Counters.SysGenResponse.name()).inc();
+        statistic.getRecordByName(IStatisticRecord.Counters.SysGenResponse).inc();
       }
     }
     catch (Exception e) {
       logger.debug("Unable to send answer", e);
     }
     if(statistic.isEnabled()) {
-      statistic.getRecordByName(IStatisticRecord.Counters.NetGenRejectedRequest.name()).inc();
+      statistic.getRecordByName(IStatisticRecord.Counters.NetGenRejectedRequest).inc();
     }
   }
 
@@ -744,18 +826,25 @@ public class PeerImpl extends AbstractPeer implements IPeer {
         int commandCode = message.getCommandCode();
         // We don't want this for CEx/DWx/DPx
         if(commandCode != 257 && commandCode != 280 && commandCode != 282) {
+          appendOverloadControl(message);
           if(table instanceof MutablePeerTableImpl) { // available only to server, client skip this step
             MutablePeerTableImpl peerTable = (MutablePeerTableImpl) table;
             if(peerTable.isDuplicateProtection()) {
               String[] originInfo = router.getRequestRouteInfo(message);
               if(originInfo != null) {
                 // message.getDuplicationKey() doesn't work because it's answer
-                peerTable.saveToDuplicate(message.getDuplicationKey(originInfo[0], message.getEndToEndIdentifier()), message);
+                peerTable.saveToDuplicate(originInfo[0], message.getEndToEndIdentifier(), message);
               }
             }
           }
         }
       }
+      else {
+        int commandCode = message.getCommandCode();
+        if (commandCode != 257 && commandCode != 280 && commandCode != 282) {
+          announceOverloadControl(message);
+        }
+      }
       // PCB added this
       router.garbageCollectRequestRouteInfo(message);
 
@@ -943,7 +1032,7 @@ public class PeerImpl extends AbstractPeer implements IPeer {
               try {
                 sendMessage(answer);
                 if(statistic.isEnabled()) {
-                  statistic.getRecordByName(IStatisticRecord.Counters.AppGenResponse.name()).inc();
+                  statistic.getRecordByName(IStatisticRecord.Counters.AppGenResponse).inc();
                 }
               }
               catch (Exception e) {
@@ -952,13 +1041,13 @@ public class PeerImpl extends AbstractPeer implements IPeer {
             }
 
             if(statistic.isEnabled()) {
-              statistic.getRecordByName(IStatisticRecord.Counters.NetGenRequest.name()).inc();
+              statistic.getRecordByName(IStatisticRecord.Counters.NetGenRequest).inc();
             }
             isProcessed = true;
           }
           else {
             if(statistic.isEnabled()) {
-              statistic.getRecordByName(IStatisticRecord.Counters.NetGenRejectedRequest.name()).inc();
+              statistic.getRecordByName(IStatisticRecord.Counters.NetGenRejectedRequest).inc();
             }
           }
         }
@@ -968,6 +1057,11 @@ public class PeerImpl extends AbstractPeer implements IPeer {
 
         //TODO: check REALMs here?
         IMessage request = peerRequests.remove(message.getHopByHopIdentifier());
+        if (request != null) {
+          updateLatency(request);
+          // reports hold even when the request has timed out
+          router.processOverloadReport((IRequest) request, (IAnswer) message);
+        }
         if (request != null && !request.isTimeOut()) {
           request.clearTimer();
           request.setState(IMessage.STATE_ANSWERED);
@@ -986,24 +1080,24 @@ public class PeerImpl extends AbstractPeer implements IPeer {
             else {
               logger.debug("Unable to call answer listener for request {} because listener is not set", message);
               if(statistic.isEnabled()) {
-                statistic.getRecordByName(IStatisticRecord.Counters.NetGenRejectedResponse.name()).inc();
+                statistic.getRecordByName(IStatisticRecord.Counters.NetGenRejectedResponse).inc();
               }
             }
 
             isProcessed = true;
             if(statistic.isEnabled()) {
-              statistic.getRecordByName(IStatisticRecord.Counters.NetGenResponse.name()).inc();
+              statistic.getRecordByName(IStatisticRecord.Counters.NetGenResponse).inc();
             }
           }
           else {
             if(statistic.isEnabled()) {
-              statistic.getRecordByName(IStatisticRecord.Counters.NetGenRejectedResponse.name()).inc();
+              statistic.getRecordByName(IStatisticRecord.Counters.NetGenRejectedResponse).inc();
             }
           }
         }
         else {
           if(statistic.isEnabled()) {
-            statistic.getRecordByName(IStatisticRecord.Counters.NetGenRejectedResponse.name()).inc();
+            statistic.getRecordByName(IStatisticRecord.Counters.NetGenRejectedResponse).inc();
           }
         }
       }
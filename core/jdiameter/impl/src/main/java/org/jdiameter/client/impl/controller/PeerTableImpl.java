@@ -65,6 +65,8 @@ import org.jdiameter.client.impl.DictionarySingleton;
 import org.jdiameter.client.impl.helpers.Parameters;
 import org.jdiameter.common.api.concurrent.IConcurrentFactory;
 import org.jdiameter.common.api.data.ISessionDatasource;
+import org.jdiameter.common.api.statistic.IHistogramRecord;
+import org.jdiameter.common.api.statistic.IStatistic;
 import org.jdiameter.common.api.statistic.IStatisticManager;
 import org.jdiameter.common.api.statistic.IStatisticRecord;
 import org.slf4j.Logger;
@@ -88,6 +90,10 @@ public class PeerTableImpl implements IPeerTable {
   protected IRouter router;
   protected MetaData metaData;
   protected IConcurrentFactory concurrentFactory;
+  protected IStatisticManager statisticFactory;
+  // request-answer latency per (Application-Id, Command-Code), keyed by (appId << 32) | commandCode
+  protected ConcurrentHashMap<Long, IHistogramRecord> commandLatency = new ConcurrentHashMap<Long, IHistogramRecord>();
+  protected IStatistic commandStatistic;
   // XXX: FT/HA // protected ConcurrentHashMap<String, NetworkReqListener> sessionReqListeners = new ConcurrentHashMap<String, NetworkReqListener>();
   protected ISessionDatasource sessionDatasource;
 
@@ -109,6 +115,8 @@ public class PeerTableImpl implements IPeerTable {
     this.router = router;
     this.metaData = metaData;
     this.concurrentFactory = concurrentFactory;
+    this.statisticFactory = statisticFactory;
+    this.commandStatistic = statisticFactory.newStatistic("command", IStatistic.Groups.Command);
     this.stopTimeOut = globalConfig.getLongValue(StopTimeOut.ordinal(), (Long) StopTimeOut.defValue());
     this.sessionDatasource = stack.getAssemblerFacility().getComponentInstance(ISessionDatasource.class);
 
@@ -207,11 +215,11 @@ public class PeerTableImpl implements IPeerTable {
         logger.debug("Message was submitted to be sent, now adding statistics");
         if (message.isRequest()) {
           if(peer.getStatistic().isEnabled())
-            peer.getStatistic().getRecordByName(IStatisticRecord.Counters.AppGenRequest.name()).inc();
+            peer.getStatistic().getRecordByName(IStatisticRecord.Counters.AppGenRequest).inc();
         }
         else {
           if(peer.getStatistic().isEnabled())
-            peer.getStatistic().getRecordByName(IStatisticRecord.Counters.AppGenResponse.name()).inc();
+            peer.getStatistic().getRecordByName(IStatisticRecord.Counters.AppGenResponse).inc();
         }
       }
     }
@@ -219,11 +227,11 @@ public class PeerTableImpl implements IPeerTable {
       logger.error("Can not send message", e);
       if (message.isRequest()) {
         if(peer.getStatistic().isEnabled())
-          peer.getStatistic().getRecordByName(IStatisticRecord.Counters.AppGenRejectedRequest.name()).inc();
+          peer.getStatistic().getRecordByName(IStatisticRecord.Counters.AppGenRejectedRequest).inc();
       }
       else {
         if(peer.getStatistic().isEnabled())
-          peer.getStatistic().getRecordByName(IStatisticRecord.Counters.AppGenRejectedResponse.name()).inc();
+          peer.getStatistic().getRecordByName(IStatisticRecord.Counters.AppGenRejectedResponse).inc();
       }
 
       if(e instanceof AvpNotAllowedException) {
@@ -328,6 +336,30 @@ public class PeerTableImpl implements IPeerTable {
     router.stop();
   }
 
+  /**
+   * Records the latency of a request answered or timed out on one of the peers
+   *
+   * @param request the request
+   * @param latency latency in microseconds
+   */
+  public void recordLatency(IMessage request, long latency) {
+    if (!commandStatistic.isEnabled()) {
+      return;
+    }
+    long key = (request.getApplicationId() << 32) | (request.getCommandCode() & 0xFFFFFFFFL);
+    IHistogramRecord record = commandLatency.get(key);
+    if (record == null) {
+      IHistogramRecord newRecord = statisticFactory.newHistogramRecord(request.getApplicationId() + ":" + request.getCommandCode(),
+          IStatisticRecord.Counters.RequestLatency);
+      record = commandLatency.putIfAbsent(key, newRecord);
+      if (record == null) {
+        record = newRecord;
+        commandStatistic.appendCounter(newRecord);
+      }
+    }
+    record.record(latency);
+  }
+
   public void stopping(int disconnectCause) {
     logger.debug("In stopping. Going to disconnect all peers in peer table");
     isStarted = false;
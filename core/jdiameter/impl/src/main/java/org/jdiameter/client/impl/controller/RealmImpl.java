@@ -25,6 +25,7 @@ package org.jdiameter.client.impl.controller;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.jdiameter.api.ApplicationId;
 import org.jdiameter.api.LocalAction;
@@ -46,6 +47,7 @@ public class RealmImpl implements IRealm {
   protected boolean dynamic;
   protected long expirationTime;
   protected Collection<String> hosts = new ConcurrentLinkedQueue<String>();
+  protected final AtomicInteger hostsVersion = new AtomicInteger();
   protected IAgent agent;
   protected IAgentConfiguration agentConfiguration;
   public RealmImpl(String name, ApplicationId applicationId, LocalAction localAction, 
@@ -104,6 +106,7 @@ public class RealmImpl implements IRealm {
    */
   public void addPeerName(String name) {
     hosts.add(name);
+    hostsVersion.incrementAndGet();
   }
 
   /**
@@ -114,6 +117,11 @@ public class RealmImpl implements IRealm {
    */
   public void removePeerName(String s) {
     hosts.remove(name);
+    hostsVersion.incrementAndGet();
+  }
+
+  public int getPeerNamesVersion() {
+    return hostsVersion.get();
   }
 
   /**
@@ -95,9 +95,10 @@ public class RealmTableImpl implements IRealmTable {
     IAgent agent = null;
     switch (action) {
       case LOCAL:
-      case RELAY:
         break;
       case PROXY:
+      case RELAY:
+        // relaying is forwarding without looking at application AVPs, which the proxy agent does not do either
         agent = this.assembler.getComponentInstance(IProxy.class);
         break;
       case REDIRECT:
@@ -24,25 +24,34 @@ package org.jdiameter.client.impl.fsm;
 
 import static org.jdiameter.client.impl.fsm.FsmState.DOWN;
 import static org.jdiameter.client.impl.fsm.FsmState.REOPEN;
+import static org.jdiameter.common.api.concurrent.IConcurrentFactory.ScheduledExecServices.PeerFSMExecutor;
 import static org.jdiameter.client.impl.helpers.Parameters.CeaTimeOut;
 import static org.jdiameter.client.impl.helpers.Parameters.DpaTimeOut;
 import static org.jdiameter.client.impl.helpers.Parameters.DwaTimeOut;
 import static org.jdiameter.client.impl.helpers.Parameters.IacTimeOut;
+import static org.jdiameter.client.impl.helpers.Parameters.PeerFSMQueuePolicy;
+import static org.jdiameter.client.impl.helpers.Parameters.PeerFSMSharedExecutor;
 import static org.jdiameter.client.impl.helpers.Parameters.PeerFSMThreadCount;
 import static org.jdiameter.client.impl.helpers.Parameters.QueueSize;
 import static org.jdiameter.client.impl.helpers.Parameters.RecTimeOut;
 
+import java.util.Queue;
 import java.util.Random;
 import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.LockSupport;
 import java.util.concurrent.locks.ReentrantLock;
 
 import org.jdiameter.api.Configuration;
 import org.jdiameter.api.DisconnectCause;
-import org.jdiameter.api.StatisticRecord;
 import org.jdiameter.api.Message;
 import org.jdiameter.api.OverloadException;
 import org.jdiameter.api.PeerState;
@@ -58,6 +67,7 @@ import org.jdiameter.client.api.fsm.IContext;
 import org.jdiameter.client.api.fsm.IStateMachine;
 import org.jdiameter.client.impl.DictionarySingleton;
 import org.jdiameter.common.api.concurrent.IConcurrentFactory;
+import org.jdiameter.common.api.statistic.IHistogramRecord;
 import org.jdiameter.common.api.statistic.IStatistic;
 import org.jdiameter.common.api.statistic.IStatisticManager;
 import org.jdiameter.common.api.statistic.IStatisticRecord;
@@ -98,13 +108,33 @@ public class PeerFSMImpl implements IStateMachine {
 
   protected IStatisticManager statisticFactory;
   protected IStatistic queueStat;
-  protected IStatisticRecord timeSumm;
-  protected IStatisticRecord timeCount;
+  protected IHistogramRecord waitTime;
+  // since the start of the FSM, for MessageProcessingTime
+  protected final AtomicLong waitTimeSum = new AtomicLong();
+  protected final AtomicLong waitTimeCount = new AtomicLong();
 
   //PCB changed for multi-thread
   protected boolean mustRun = false;
   protected AtomicInteger numberOfThreadsRunning = new AtomicInteger(0);
 
+  // shared executor mode: events wait in a lock free queue per peer, drained by one pool thread at a time
+  private static final int DRAIN_BATCH = 64;
+  private static final long TIMER_PERIOD = 100; // milliseconds
+  private static final long WAIT_FOR_ROOM = 1000000; // nanoseconds
+
+  protected boolean sharedExecutor;
+  protected boolean rejectWhenFull;
+  protected ScheduledExecutorService fsmExecutor;
+  protected ScheduledFuture<?> timerTask;
+  protected final Queue<StateEvent> pendingEvents = new ConcurrentLinkedQueue<StateEvent>();
+  protected final AtomicInteger pendingCount = new AtomicInteger();
+  protected final AtomicBoolean drainScheduled = new AtomicBoolean();
+  private final Runnable drainTask = new Runnable() {
+    public void run() {
+      drainEvents();
+    }
+  };
+
   public PeerFSMImpl(IContext aContext, IConcurrentFactory concurrentFactory, Configuration config, IStatisticManager statisticFactory) {
     this.context = aContext;
     this.statisticFactory = statisticFactory;
@@ -116,6 +146,8 @@ public class PeerFSMImpl implements IStateMachine {
     loadTimeOuts(config);
     this.concurrentFactory = concurrentFactory;
     FSM_THREAD_COUNT = config.getIntValue(PeerFSMThreadCount.ordinal(), (Integer) PeerFSMThreadCount.defValue());
+    this.sharedExecutor = config.getBooleanValue(PeerFSMSharedExecutor.ordinal(), (Boolean) PeerFSMSharedExecutor.defValue());
+    this.rejectWhenFull = "Reject".equalsIgnoreCase(config.getStringValue(PeerFSMQueuePolicy.ordinal(), (String) PeerFSMQueuePolicy.defValue()));
     runQueueProcessing();
   }
 
@@ -137,11 +169,13 @@ public class PeerFSMImpl implements IStateMachine {
         return;
       }
       eventQueue.clear();
+      pendingEvents.clear();
+      pendingCount.set(0);
       mustRun = true;
 
       IStatisticRecord queueSize = statisticFactory.newCounterRecord(IStatisticRecord.Counters.QueueSize, new IStatisticRecord.IntegerValueHolder() {
         public int getValueAsInt() {
-          return eventQueue.size();
+          return sharedExecutor ? pendingCount.get() : eventQueue.size();
         }
 
         public String getValueAsString() {
@@ -149,35 +183,40 @@ public class PeerFSMImpl implements IStateMachine {
         }
       });
 
-      this.timeSumm = statisticFactory.newCounterRecord("TimeSumm", "TimeSumm");
-      this.timeCount = statisticFactory.newCounterRecord("TimeCount", "TimeCount");
+      waitTimeSum.set(0);
+      waitTimeCount.set(0);
+      waitTime = statisticFactory.newHistogramRecord(IStatisticRecord.Counters.QueueWaitTime);
 
       final IStatisticRecord messagePrcAverageTime = statisticFactory.newCounterRecord(IStatisticRecord.Counters.MessageProcessingTime,
           new IStatisticRecord.DoubleValueHolder() {
         public double getValueAsDouble() {
-          if(queueStat == null) {
-            return 0;
-          }
-          IStatisticRecord mpta = queueStat.getRecordByName(IStatisticRecord.Counters.MessageProcessingTime.name());
-          StatisticRecord[] children = mpta.getChilds();
-          if (children.length == 2 && children[1].getValueAsLong() != 0) {
-            long count = children[1].getValueAsLong();
-            return ((float) children[0].getValueAsLong()) / ((float) (count != 0 ? count : 1));
-          }
-          else {
-            return 0;
-          }
+          long count = waitTimeCount.get();
+          return count != 0 ? ((double) waitTimeSum.get()) / count : 0;
         }
 
         public String getValueAsString() {
           return String.valueOf(getValueAsDouble());
         }
-      }, timeSumm, timeCount);
+      });
 
       logger.debug("Initializing QueueStat @ Thread[{}]", Thread.currentThread().getName());
-      queueStat = statisticFactory.newStatistic(context.getPeerDescription(), IStatistic.Groups.PeerFSM, queueSize, messagePrcAverageTime);
+      queueStat = statisticFactory.newStatistic(context.getPeerDescription(), IStatistic.Groups.PeerFSM, queueSize, messagePrcAverageTime, waitTime);
       logger.debug("Finished Initializing QueueStat @ Thread[{}]", Thread.currentThread().getName());
 
+      if (sharedExecutor) {
+        fsmExecutor = concurrentFactory.getScheduledExecutorService(PeerFSMExecutor.name());
+        numberOfThreadsRunning.set(1);
+        drainScheduled.set(false);
+        // events wake the peer up by themselves, this only drives the FSM timer
+        timerTask = fsmExecutor.scheduleAtFixedRate(new Runnable() {
+          public void run() {
+            scheduleDrain();
+          }
+        }, TIMER_PERIOD, TIMER_PERIOD, TimeUnit.MILLISECONDS);
+        logger.debug("FSM of [{}] is started on the shared executor", context.getPeerDescription());
+        return;
+      }
+
       Runnable fsmQueueProcessor = new Runnable() {
         public void run() {  
           int runningNow = numberOfThreadsRunning.incrementAndGet();
@@ -186,7 +225,7 @@ public class PeerFSMImpl implements IStateMachine {
           while (mustRun) {
             StateEvent event;
             try {
-              event = eventQueue.poll(100, TimeUnit.MILLISECONDS);
+              event = eventQueue.poll(TIMER_PERIOD, TimeUnit.MILLISECONDS);
               if(logger.isDebugEnabled() && event != null) {
                 logger.debug("Got Event [{}] from Queue", event);
               }
@@ -195,41 +234,12 @@ public class PeerFSMImpl implements IStateMachine {
               logger.debug("Peer FSM stopped", e);
               break;
             }
-            //FIXME: baranowb: why this lock is here?
-            // PCB removed lock
-            // lock.lock();
-            try {
-              if (event != null) {
-                if (event instanceof FsmEvent && queueStat != null && queueStat.isEnabled()) {
-                  timeSumm.inc(System.currentTimeMillis() - ((FsmEvent) event).getCreatedTime());
-                  timeCount.inc();
-                }
-                logger.debug("Process event [{}]. Peer State is [{}]", event, state);
-                getStates()[state.ordinal()].processEvent(event);
-              }
-              if (timer != 0 && timer < System.currentTimeMillis()) {
-                timer = 0;
-                if(state != DOWN) { //without this check this event is fired in DOWN state.... it should not be.
-                  logger.debug("Sending timeout event");
-                  handleEvent(timeOutEvent); //FIXME: check why timer is not killed?
-                }
-              }
-            }
-            catch (Exception e) {
-              logger.debug("Error during processing FSM event", e);
-            }
-            finally {
-              // PCB removed lock
-              // lock.unlock();
-            }
+            processQueuedEvent(event);
           }
           //PCB added logging
           logger.debug("FSM Thread {} is exiting", Thread.currentThread().getName());
           //this happens when peer FSM is down, lets remove stat
-          statisticFactory.removeStatistic(queueStat);
-          logger.debug("Setting QueueStat to null @ Thread [{}]", Thread.currentThread().getName());
-          queueStat = null;
-          logger.debug("Done Setting QueueStat to null @ Thread [{}]", Thread.currentThread().getName());
+          removeQueueStatistic();
           int runningNowAfterStop = numberOfThreadsRunning.decrementAndGet();
           logger.debug("Stopping ... [{}] FSM threads are running", runningNowAfterStop);
         }
@@ -246,8 +256,154 @@ public class PeerFSMImpl implements IStateMachine {
     }
   }
 
+  /**
+   * Processes one event taken from the queue, then fires the timeout event if the FSM
+   * timer has expired.
+   *
+   * @param event event to process, null if none was waiting
+   */
+  protected void processQueuedEvent(StateEvent event) {
+    //FIXME: baranowb: why this lock is here?
+    // PCB removed lock
+    // lock.lock();
+    try {
+      if (event != null) {
+        if (event instanceof FsmEvent && queueStat != null && queueStat.isEnabled()) {
+          long wait = System.currentTimeMillis() - ((FsmEvent) event).getCreatedTime();
+          // the histogram counts microseconds
+          waitTime.record(wait * 1000);
+          waitTimeSum.addAndGet(wait);
+          waitTimeCount.incrementAndGet();
+        }
+        logger.debug("Process event [{}]. Peer State is [{}]", event, state);
+        getStates()[state.ordinal()].processEvent(event);
+      }
+      if (timer != 0 && timer < System.currentTimeMillis()) {
+        timer = 0;
+        if(state != DOWN) { //without this check this event is fired in DOWN state.... it should not be.
+          logger.debug("Sending timeout event");
+          handleEvent(timeOutEvent); //FIXME: check why timer is not killed?
+        }
+      }
+    }
+    catch (Exception e) {
+      logger.debug("Error during processing FSM event", e);
+    }
+    finally {
+      // PCB removed lock
+      // lock.unlock();
+    }
+  }
+
+  private void removeQueueStatistic() {
+    statisticFactory.removeStatistic(queueStat);
+    logger.debug("Setting QueueStat to null @ Thread [{}]", Thread.currentThread().getName());
+    queueStat = null;
+    logger.debug("Done Setting QueueStat to null @ Thread [{}]", Thread.currentThread().getName());
+  }
+
+  /**
+   * Makes the shared executor drain the queue of this peer, unless a drain is already
+   * pending or running. At most one pool thread works for a peer at any time, which keeps
+   * its events in order.
+   */
+  private void scheduleDrain() {
+    if (drainScheduled.compareAndSet(false, true)) {
+      boolean rejected;
+      try {
+        fsmExecutor.execute(drainTask);
+        // the stack executors swallow rejected tasks and only reject them once shut down,
+        // where queued tasks are dropped as well, so the drain will not run in either case
+        rejected = fsmExecutor.isShutdown();
+      }
+      catch (RejectedExecutionException e) {
+        rejected = true;
+      }
+      if (rejected) {
+        drainScheduled.set(false);
+        logger.warn("FSM executor rejected the events of [{}]", context.getPeerDescription());
+      }
+    }
+  }
+
+  /**
+   * Processes up to DRAIN_BATCH queued events on a thread of the shared executor, then gives
+   * the thread back so that one busy peer can not starve the others.
+   */
+  private void drainEvents() {
+    StateEvent event = null;
+    for (int i = 0; i < DRAIN_BATCH && mustRun && (event = pendingEvents.poll()) != null; i++) {
+      pendingCount.decrementAndGet();
+      if (logger.isDebugEnabled()) {
+        logger.debug("Got Event [{}] from Queue", event);
+      }
+      processQueuedEvent(event);
+    }
+    if (event == null && mustRun) {
+      // woken up by the timer
+      processQueuedEvent(null);
+    }
+    if (!mustRun) {
+      stopSharedProcessing();
+      return;
+    }
+    drainScheduled.set(false);
+    if (!pendingEvents.isEmpty()) {
+      scheduleDrain();
+    }
+  }
+
+  private void stopSharedProcessing() {
+    try {
+      lock.lock();
+      if (timerTask != null) {
+        timerTask.cancel(false);
+        timerTask = null;
+      }
+      pendingEvents.clear();
+      pendingCount.set(0);
+      removeQueueStatistic();
+      drainScheduled.set(false);
+      numberOfThreadsRunning.set(0);
+      logger.debug("FSM of [{}] is stopped on the shared executor", context.getPeerDescription());
+    }
+    finally {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * Adds an event to the queue of the shared executor mode, applying the queue policy
+   * when it is full.
+   *
+   * @return false if the event was not accepted
+   */
+  private boolean offerShared(StateEvent event) throws InterruptedException {
+    long deadline = 0;
+    while (pendingCount.incrementAndGet() > predefSize) {
+      pendingCount.decrementAndGet();
+      if (rejectWhenFull) {
+        return false;
+      }
+      long now = System.currentTimeMillis();
+      if (deadline == 0) {
+        deadline = now + IAC_TIMEOUT;
+      }
+      else if (now > deadline) {
+        return false;
+      }
+      LockSupport.parkNanos(WAIT_FOR_ROOM);
+      if (Thread.interrupted()) {
+        throw new InterruptedException();
+      }
+    }
+    pendingEvents.offer(event);
+    scheduleDrain();
+    return true;
+  }
+
   public double getQueueInfo() {
-    return eventQueue.size() * 1.0 / predefSize;
+    return (sharedExecutor ? pendingCount.get() : eventQueue.size()) * 1.0 / predefSize;
   }
 
   protected void loadTimeOuts(Configuration config) {
@@ -325,7 +481,15 @@ public class PeerFSMImpl implements IStateMachine {
         //  }
         //}
       }
-      rc = eventQueue.offer(event, IAC_TIMEOUT, TimeUnit.MILLISECONDS);
+      if (sharedExecutor) {
+        rc = offerShared(event);
+      }
+      else if (rejectWhenFull) {
+        rc = eventQueue.offer(event);
+      }
+      else {
+        rc = eventQueue.offer(event, IAC_TIMEOUT, TimeUnit.MILLISECONDS);
+      }
     }
     catch (InterruptedException e) {
       logger.debug("Can not put event '" + event.toString() + "' to FSM " + this.toString(), e);
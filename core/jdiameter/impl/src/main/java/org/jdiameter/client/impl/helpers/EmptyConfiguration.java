@@ -80,6 +80,7 @@ public class EmptyConfiguration implements AppConfiguration {
           add(InternalAgentConfiguration, InternalAgentConfiguration.defValue()).
           add(InternalSessionDatasource, InternalSessionDatasource.defValue()).
           add(InternalTimerFacility, InternalTimerFacility.defValue()).
+          add(InternalPeerSelectionStrategy, InternalPeerSelectionStrategy.defValue()).
           add(InternalStatisticFactory, InternalStatisticFactory.defValue()
 
               ),
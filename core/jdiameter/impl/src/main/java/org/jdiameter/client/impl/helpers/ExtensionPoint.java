@@ -135,6 +135,11 @@ public class ExtensionPoint extends Ordinal {
    */
   public static final ExtensionPoint InternalTimerFacility = new ExtensionPoint("InternalTimerFacility", "org.jdiameter.common.impl.timer.LocalTimerFacilityImpl");
 
+  /**
+   * Peer selection (load balancing) strategy class name
+   */
+  public static final ExtensionPoint InternalPeerSelectionStrategy = new ExtensionPoint("InternalPeerSelectionStrategy", "org.jdiameter.client.impl.router.RatingPeerSelectionStrategy");
+
   /**
    * List of internal extension point
    */
@@ -155,6 +160,7 @@ public class ExtensionPoint extends Ordinal {
       InternalConcurrentFactory,
       InternalConcurrentEntityFactory,
       InternalTimerFacility,
+      InternalPeerSelectionStrategy,
       InternalSessionDatasource,
       InternalAgentRedirect,
       InternalAgentProxy,
@@ -378,6 +378,112 @@ public class Parameters extends Ordinal {
    */
   public static final Parameters DictionaryReceiveLevel = new Parameters("DictionaryReceiveLevel", String.class, "OFF");
 
+  /**
+   * Zero-copy message decoding - AVPs reference the received frame instead of copying their data
+   */
+  public static final Parameters ZeroCopyDecoding = new Parameters("ZeroCopyDecoding", Boolean.class, false);
+
+  /**
+   * TCP connections share a pool of selector threads instead of running a reader thread each
+   */
+  public static final Parameters UseTcpReactor = new Parameters("UseTcpReactor", Boolean.class, false);
+
+  /**
+   * Number of shared TCP selector threads, 0 means one per available processor. The selector threads
+   * are shared by all stacks of the JVM, the value of the stack that starts them applies
+   */
+  public static final Parameters TcpReactorThreads = new Parameters("TcpReactorThreads", Integer.class, 0);
+
+  /**
+   * Queued bytes that make the TCP reactor write a connection's outbound queue right away
+   */
+  public static final Parameters TcpFlushThreshold = new Parameters("TcpFlushThreshold", Integer.class, 16384);
+
+  /**
+   * Longest time, in milliseconds, the TCP reactor waits to batch outbound messages below the flush threshold
+   */
+  public static final Parameters TcpFlushDelay = new Parameters("TcpFlushDelay", Long.class, 0L);
+
+  /**
+   * Limit of bytes queued on a TCP connection in reactor mode, sends above it are rejected as overload
+   */
+  public static final Parameters TcpMaxQueuedBytes = new Parameters("TcpMaxQueuedBytes", Integer.class, 4194304);
+
+  /**
+   * Largest Diameter message accepted on a TCP connection, longer frames are treated as broken
+   */
+  public static final Parameters TcpMaxFrameSize = new Parameters("TcpMaxFrameSize", Integer.class, 1048576);
+
+  /**
+   * Peer FSM events are processed by the shared PeerFSMExecutor pool, in order per peer, instead of PeerFSMThreadCount threads per peer
+   */
+  public static final Parameters PeerFSMSharedExecutor = new Parameters("PeerFSMSharedExecutor", Boolean.class, false);
+
+  /**
+   * Behaviour when the peer FSM queue is full: Wait up to IacTimeOut for room, or Reject at once
+   */
+  public static final Parameters PeerFSMQueuePolicy = new Parameters("PeerFSMQueuePolicy", String.class, "Wait");
+
+  /**
+   * Tick of the timer wheel used by WheelTimerFacilityImpl, in milliseconds
+   */
+  public static final Parameters TimerWheelTick = new Parameters("TimerWheelTick", Long.class, 10L);
+
+  /**
+   * Number of buckets of the timer wheel used by WheelTimerFacilityImpl
+   */
+  public static final Parameters TimerWheelSize = new Parameters("TimerWheelSize", Integer.class, 512);
+
+  /**
+   * Time, in milliseconds, a session may stay idle before the session datasource expires it, 0 to never expire sessions
+   */
+  public static final Parameters SessionIdleTimeOut = new Parameters("SessionIdleTimeOut", Long.class, 0L);
+
+  /**
+   * Session idle time outs of single applications, overriding SessionIdleTimeOut
+   */
+  public static final Parameters SessionIdleTimeOuts = new Parameters("SessionIdleTimeOuts", Object.class);
+
+  /**
+   * Auth or acct application id a session idle time out applies to
+   */
+  public static final Parameters SessionIdleTimeOutApplId = new Parameters("SessionIdleTimeOutApplId", Long.class);
+
+  /**
+   * File of the session journal kept by the journal session datasource
+   */
+  public static final Parameters SessionJournalFile = new Parameters("SessionJournalFile", String.class, "diameter-sessions.journal");
+
+  /**
+   * Initial size, in bytes, of the memory-mapped session journal
+   */
+  public static final Parameters SessionJournalSize = new Parameters("SessionJournalSize", Integer.class, 64 * 1024 * 1024);
+
+  /**
+   * Time, in milliseconds, between two syncs of the session journal to disk, which may also compact it
+   */
+  public static final Parameters SessionJournalSyncInterval = new Parameters("SessionJournalSyncInterval", Long.class, 1000L);
+
+  /**
+   * Enables Diameter Overload Indication Conveyance (RFC 7683), with the loss abatement algorithm
+   */
+  public static final Parameters OverloadControl = new Parameters("OverloadControl", Boolean.class, false);
+
+  /**
+   * Validity duration, in seconds, of overload reports sent by this node
+   */
+  public static final Parameters OverloadReportValidity = new Parameters("OverloadReportValidity", Long.class, 30L);
+
+  /**
+   * Peer queue fill ratio at which this node starts reporting overload
+   */
+  public static final Parameters OverloadReportLowThreshold = new Parameters("OverloadReportLowThreshold", Double.class, 0.5);
+
+  /**
+   * Peer queue fill ratio at which this node asks for a traffic reduction of 100%
+   */
+  public static final Parameters OverloadReportHighThreshold = new Parameters("OverloadReportHighThreshold", Double.class, 0.9);
+
   /**
    * Return all parameters as iterator
    * 
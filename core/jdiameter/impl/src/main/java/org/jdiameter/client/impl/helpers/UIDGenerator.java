@@ -22,22 +22,32 @@
 
 package org.jdiameter.client.impl.helpers;
 
-import java.util.concurrent.locks.Lock;
-import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
- * This class provide uid range generator functionality
+ * This class provide uid range generator functionality.
+ * <p>
+ * Every thread reserves a block of consecutive values from a shared atomic counter and
+ * then hands them out without any synchronization, so concurrent callers only meet on
+ * the counter once per block. Values are unique per instance; they are not strictly
+ * ordered across threads.
  * 
  * @author erick.svenson@yahoo.com
  * @author <a href="mailto:brainslog@gmail.com"> Alexandre Mendonca </a>
  * @author <a href="mailto:baranowb@gmail.com"> Bartosz Baranowski </a>
  */
-public class UIDGenerator {  // todo remove or redesign
+public class UIDGenerator {
 
-  private /*static*/ long value; // static causes repetitions
-  private final static Lock mutex = new ReentrantLock();
-  private final static ThreadLocal<Delta> ranges = new ThreadLocal<Delta>() {
-        protected synchronized Delta initialValue() {
+  /**
+   * Default number of values reserved by a thread at once
+   */
+  public static final int DEFAULT_BLOCK_SIZE = 128;
+
+  private final AtomicLong value;
+  private final int blockSize;
+  // not static: each generator has its own sequence and so its own ranges
+  private final ThreadLocal<Delta> ranges = new ThreadLocal<Delta>() {
+        protected Delta initialValue() {
             return new Delta();
         }
     };
@@ -45,19 +55,13 @@ public class UIDGenerator {  // todo remove or redesign
     private static class Delta {
         long start;
         long stop;
-
-        public long update(long value) {
-            start = value;
-            stop  = value + 1;
-            return stop;
-        }
     }
 
     /**
      * Create instance of class
      */
     public UIDGenerator() {
-        value = System.currentTimeMillis();
+        this(System.currentTimeMillis());
     }
 
     /**
@@ -66,7 +70,21 @@ public class UIDGenerator {  // todo remove or redesign
      * @param startValue start value of counter
      */
     public UIDGenerator(long startValue) {
-        value = startValue;
+        this(startValue, DEFAULT_BLOCK_SIZE);
+    }
+
+    /**
+     * Create instance of class with predefined start value and block size
+     * 
+     * @param startValue start value of counter
+     * @param blockSize number of values reserved by a thread at once
+     */
+    public UIDGenerator(long startValue, int blockSize) {
+        if (blockSize < 1) {
+            throw new IllegalArgumentException("Block size must be positive: " + blockSize);
+        }
+        this.value = new AtomicLong(startValue);
+        this.blockSize = blockSize;
     }
 
     /**
@@ -85,10 +103,9 @@ public class UIDGenerator {  // todo remove or redesign
      */
     public long nextLong() {
         Delta d = ranges.get();
-        if (d.start <= d.stop) {
-            mutex.lock();
-            value = d.update(value);
-            mutex.unlock();
+        if (d.start >= d.stop) {
+            d.start = value.getAndAdd(blockSize);
+            d.stop  = d.start + blockSize;
         }
         return d.start++;
     }
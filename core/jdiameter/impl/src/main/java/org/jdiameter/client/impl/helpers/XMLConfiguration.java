@@ -67,12 +67,18 @@ import static org.jdiameter.client.impl.helpers.Parameters.KDPwd;
 import static org.jdiameter.client.impl.helpers.Parameters.KDStore;
 import static org.jdiameter.client.impl.helpers.Parameters.KeyData;
 import static org.jdiameter.client.impl.helpers.Parameters.MessageTimeOut;
+import static org.jdiameter.client.impl.helpers.Parameters.OverloadControl;
+import static org.jdiameter.client.impl.helpers.Parameters.OverloadReportHighThreshold;
+import static org.jdiameter.client.impl.helpers.Parameters.OverloadReportLowThreshold;
+import static org.jdiameter.client.impl.helpers.Parameters.OverloadReportValidity;
 import static org.jdiameter.client.impl.helpers.Parameters.OwnDiameterURI;
 import static org.jdiameter.client.impl.helpers.Parameters.OwnFirmwareRevision;
 import static org.jdiameter.client.impl.helpers.Parameters.OwnIPAddress;
 import static org.jdiameter.client.impl.helpers.Parameters.OwnProductName;
 import static org.jdiameter.client.impl.helpers.Parameters.OwnRealm;
 import static org.jdiameter.client.impl.helpers.Parameters.OwnVendorID;
+import static org.jdiameter.client.impl.helpers.Parameters.PeerFSMQueuePolicy;
+import static org.jdiameter.client.impl.helpers.Parameters.PeerFSMSharedExecutor;
 import static org.jdiameter.client.impl.helpers.Parameters.PeerIp;
 import static org.jdiameter.client.impl.helpers.Parameters.PeerFSMThreadCount;
 import static org.jdiameter.client.impl.helpers.Parameters.PeerLocalPortRange;
@@ -92,6 +98,12 @@ import static org.jdiameter.client.impl.helpers.Parameters.SDProtocol;
 import static org.jdiameter.client.impl.helpers.Parameters.SDUseClientMode;
 import static org.jdiameter.client.impl.helpers.Parameters.Security;
 import static org.jdiameter.client.impl.helpers.Parameters.SecurityRef;
+import static org.jdiameter.client.impl.helpers.Parameters.SessionIdleTimeOut;
+import static org.jdiameter.client.impl.helpers.Parameters.SessionIdleTimeOutApplId;
+import static org.jdiameter.client.impl.helpers.Parameters.SessionIdleTimeOuts;
+import static org.jdiameter.client.impl.helpers.Parameters.SessionJournalFile;
+import static org.jdiameter.client.impl.helpers.Parameters.SessionJournalSize;
+import static org.jdiameter.client.impl.helpers.Parameters.SessionJournalSyncInterval;
 import static org.jdiameter.client.impl.helpers.Parameters.Statistics;
 import static org.jdiameter.client.impl.helpers.Parameters.StatisticsActiveList;
 import static org.jdiameter.client.impl.helpers.Parameters.StatisticsEnabled;
@@ -102,12 +114,21 @@ import static org.jdiameter.client.impl.helpers.Parameters.TDFile;
 import static org.jdiameter.client.impl.helpers.Parameters.TDManager;
 import static org.jdiameter.client.impl.helpers.Parameters.TDPwd;
 import static org.jdiameter.client.impl.helpers.Parameters.TDStore;
+import static org.jdiameter.client.impl.helpers.Parameters.TcpFlushDelay;
+import static org.jdiameter.client.impl.helpers.Parameters.TcpFlushThreshold;
+import static org.jdiameter.client.impl.helpers.Parameters.TcpMaxFrameSize;
+import static org.jdiameter.client.impl.helpers.Parameters.TcpMaxQueuedBytes;
+import static org.jdiameter.client.impl.helpers.Parameters.TcpReactorThreads;
 import static org.jdiameter.client.impl.helpers.Parameters.ThreadPool;
 import static org.jdiameter.client.impl.helpers.Parameters.ThreadPoolPriority;
 import static org.jdiameter.client.impl.helpers.Parameters.ThreadPoolSize;
+import static org.jdiameter.client.impl.helpers.Parameters.TimerWheelSize;
+import static org.jdiameter.client.impl.helpers.Parameters.TimerWheelTick;
 import static org.jdiameter.client.impl.helpers.Parameters.TrustData;
+import static org.jdiameter.client.impl.helpers.Parameters.UseTcpReactor;
 import static org.jdiameter.client.impl.helpers.Parameters.UseUriAsFqdn;
 import static org.jdiameter.client.impl.helpers.Parameters.VendorId;
+import static org.jdiameter.client.impl.helpers.Parameters.ZeroCopyDecoding;
 import static org.jdiameter.server.impl.helpers.Parameters.RealmEntryExpTime;
 import static org.jdiameter.server.impl.helpers.Parameters.RealmEntryIsDynamic;
 import static org.jdiameter.server.impl.helpers.Parameters.RealmHosts;
@@ -330,11 +351,45 @@ public class XMLConfiguration extends EmptyConfiguration {
       else if (nodeName.equals("Statistics")) { addStatisticLogger(Statistics, c.item(i));              }
       else if (nodeName.equals("Concurrent")) { addConcurrent(Concurrent, c.item(i));                   }
       else if (nodeName.equals("Dictionary")) { addDictionary(Dictionary, c.item(i));                   }
+      else if (nodeName.equals("ZeroCopyDecoding")) { add(ZeroCopyDecoding, Boolean.valueOf(getValue(c.item(i)))); }
+      else if (nodeName.equals("UseTcpReactor")) { add(UseTcpReactor, Boolean.valueOf(getValue(c.item(i)))); }
+      else if (nodeName.equals("TcpReactorThreads")) { add(TcpReactorThreads, getIntValue(c.item(i))); }
+      else if (nodeName.equals("TcpFlushThreshold")) { add(TcpFlushThreshold, getIntValue(c.item(i))); }
+      else if (nodeName.equals("TcpFlushDelay")) { add(TcpFlushDelay, getLongValue(c.item(i))); }
+      else if (nodeName.equals("TcpMaxQueuedBytes")) { add(TcpMaxQueuedBytes, getIntValue(c.item(i))); }
+      else if (nodeName.equals("TcpMaxFrameSize")) { add(TcpMaxFrameSize, getIntValue(c.item(i))); }
+      else if (nodeName.equals("PeerFSMSharedExecutor")) { add(PeerFSMSharedExecutor, Boolean.valueOf(getValue(c.item(i)))); }
+      else if (nodeName.equals("PeerFSMQueuePolicy")) { add(PeerFSMQueuePolicy, getValue(c.item(i))); }
+      else if (nodeName.equals("TimerWheelTick")) { add(TimerWheelTick, getLongValue(c.item(i))); }
+      else if (nodeName.equals("TimerWheelSize")) { add(TimerWheelSize, getIntValue(c.item(i))); }
+      else if (nodeName.equals("SessionIdleTimeOut")) { addSessionIdleTimeOut(c.item(i)); }
+      else if (nodeName.equals("SessionJournalFile")) { add(SessionJournalFile, getValue(c.item(i))); }
+      else if (nodeName.equals("SessionJournalSize")) { add(SessionJournalSize, getIntValue(c.item(i))); }
+      else if (nodeName.equals("SessionJournalSyncInterval")) { add(SessionJournalSyncInterval, getLongValue(c.item(i))); }
+      else if (nodeName.equals("OverloadControl")) { add(OverloadControl, Boolean.valueOf(getValue(c.item(i)))); }
+      else if (nodeName.equals("OverloadReportValidity")) { add(OverloadReportValidity, getLongValue(c.item(i))); }
+      else if (nodeName.equals("OverloadReportLowThreshold")) { add(OverloadReportLowThreshold, Double.valueOf(getValue(c.item(i)))); }
+      else if (nodeName.equals("OverloadReportHighThreshold")) { add(OverloadReportHighThreshold, Double.valueOf(getValue(c.item(i)))); }
       else 
         appendOtherParameter(c.item(i));
     }
   }  
 
+  protected void addSessionIdleTimeOut(Node node) {
+    add(SessionIdleTimeOut, getLongValue(node));
+    NodeList c = node.getChildNodes();
+    List<Configuration> items = new ArrayList<Configuration>();
+    for (int i = 0; i < c.getLength(); i++) {
+      if (c.item(i).getNodeName().equals("Application")) {
+        items.add(getInstance().add(SessionIdleTimeOutApplId, Long.parseLong(getAttrValue(c.item(i), "id")))
+            .add(SessionIdleTimeOut, getLongValue(c.item(i))));
+      }
+    }
+    if (items.size() > 0) {
+      add(SessionIdleTimeOuts, items.toArray(new Configuration[items.size()]));
+    }
+  }
+
   protected void addConcurrent(org.jdiameter.client.impl.helpers.Parameters name, Node node) {
     NodeList c = node.getChildNodes();
     List<Configuration> items = new ArrayList<Configuration>();
@@ -617,6 +672,7 @@ public class XMLConfiguration extends EmptyConfiguration {
       else if (nodeName.equals("ConcurrentEntityFactory")) {     addInternalExtension(InternalConcurrentEntityFactory,getValue(c.item(i)));   }
       else if (nodeName.equals("SessionDatasource")) {           addInternalExtension(InternalSessionDatasource, getValue(c.item(i)));        }
       else if (nodeName.equals("TimerFacility")) {               addInternalExtension(InternalTimerFacility, getValue(c.item(i)));            }
+      else if (nodeName.equals("PeerSelectionStrategy")) {       addInternalExtension(InternalPeerSelectionStrategy, getValue(c.item(i)));    }
       //FIXME: possibly should not be in client...
       else if (nodeName.equals("AgentRedirect")) {               addInternalExtension(InternalAgentRedirect, getValue(c.item(i)));            }
       else if (nodeName.equals("AgentConfiguration")) {          add(InternalAgentConfiguration,getValue(c.item(i)))   ;     }
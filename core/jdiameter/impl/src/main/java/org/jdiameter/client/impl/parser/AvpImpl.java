@@ -25,6 +25,7 @@ package org.jdiameter.client.impl.parser;
 import java.net.InetAddress;
 import java.net.URISyntaxException;
 import java.net.UnknownServiceException;
+import java.nio.ByteBuffer;
 import java.util.Date;
 
 import org.jdiameter.api.Avp;
@@ -54,6 +55,20 @@ class AvpImpl implements Avp {
 
   byte[] rawData = new byte[0];
   AvpSet groupedData;
+  // changes count of groupedData when it was decoded, see isGroupedChanged
+  private transient int groupedChanges = -1;
+
+  // Zero-copy decoding: when rawData is null the AVP data lives in frame at
+  // [frameOffset, frameOffset + frameLength) and is only copied on demand.
+  byte[] frame;
+  int frameOffset;
+  int frameLength;
+
+  // Decoded values, filled on first read. Each holds an immutable value decoded from the
+  // current data, so racing readers at worst decode twice.
+  private transient volatile String utf8Value;
+  private transient volatile String octetValue;
+  private transient volatile Object objectValue;
 
   private static final Logger logger = LoggerFactory.getLogger(AvpImpl.class);
 
@@ -68,20 +83,40 @@ class AvpImpl implements Avp {
     rawData  = data;
   }
 
+  AvpImpl(int code, int flags, long vnd, byte[] frame, int offset, int length) {
+    this(code, flags, vnd, null);
+    this.frame = frame;
+    this.frameOffset = offset;
+    this.frameLength = length;
+  }
+
   AvpImpl(Avp avp) {
     avpCode     = avp.getCode();
     vendorID    = avp.getVendorId();
     isMandatory = avp.isMandatory();
     isEncrypted = avp.isEncrypted();
     isVendorSpecific = avp.isVendorId();
-    try {
-      rawData = avp.getRaw();
-      if (rawData == null || rawData.length == 0) {
-        groupedData = avp.getGrouped();
-      }
+    if (avp instanceof AvpImpl && ((AvpImpl) avp).rawData == null) {
+      // share the view, there's no need to copy the frame data
+      AvpImpl avpImpl = (AvpImpl) avp;
+      rawData = null;
+      frame = avpImpl.frame;
+      frameOffset = avpImpl.frameOffset;
+      frameLength = avpImpl.frameLength;
+      utf8Value = avpImpl.utf8Value;
+      octetValue = avpImpl.octetValue;
+      objectValue = avpImpl.objectValue;
     }
-    catch (AvpDataException e) {
-      logger.debug("Can not create Avp", e);
+    else {
+      try {
+        rawData = avp.getRaw();
+        if (rawData == null || rawData.length == 0) {
+          groupedData = avp.getGrouped();
+        }
+      }
+      catch (AvpDataException e) {
+        logger.debug("Can not create Avp", e);
+      }
     }
   }
 
@@ -111,16 +146,27 @@ class AvpImpl implements Avp {
   }
 
   public byte[] getRaw() throws AvpDataException {
+    if (rawData == null) {
+      byte[] data = new byte[frameLength];
+      System.arraycopy(frame, frameOffset, data, 0, frameLength);
+      rawData = data;
+    }
     return rawData;
   }
 
   public byte[] getOctetString() throws AvpDataException {
-    return rawData;
+    return getRaw();
   }
 
   public String getUTF8String() throws AvpDataException {
+    String value = utf8Value;
+    if (value != null) {
+      return value;
+    }
     try {
-      return parser.bytesToUtf8String(rawData);
+      value = rawData != null ? parser.bytesToUtf8String(rawData) : parser.bytesToUtf8String(frame, frameOffset, frameLength);
+      utf8Value = value;
+      return value;
     }
     catch (Exception e) {
       throw new AvpDataException(e, this);
@@ -129,7 +175,7 @@ class AvpImpl implements Avp {
 
   public int getInteger32() throws AvpDataException {
     try {
-      return parser.bytesToInt(rawData);
+      return rawData != null ? parser.bytesToInt(rawData) : parser.bytesToInt(frame, frameOffset, frameLength);
     }
     catch (Exception e) {
       throw new AvpDataException(e, this);
@@ -138,7 +184,7 @@ class AvpImpl implements Avp {
 
   public long getInteger64() throws AvpDataException {
     try {
-      return parser.bytesToLong(rawData);
+      return rawData != null ? parser.bytesToLong(rawData) : parser.bytesToLong(frame, frameOffset, frameLength);
     }
     catch (Exception e) {
       throw new AvpDataException(e, this);
@@ -147,9 +193,7 @@ class AvpImpl implements Avp {
 
   public long getUnsigned32() throws AvpDataException {
     try {
-      byte[] u32ext = new byte[8];
-      System.arraycopy(rawData, 0, u32ext, 4, 4);
-      return parser.bytesToLong(u32ext);
+      return rawData != null ? parser.bytesToUnsigned32(rawData, 0, rawData.length) : parser.bytesToUnsigned32(frame, frameOffset, frameLength);
     }
     catch (Exception e) {
       throw new AvpDataException(e, this);
@@ -158,7 +202,7 @@ class AvpImpl implements Avp {
 
   public long getUnsigned64() throws AvpDataException {
     try {
-      return parser.bytesToLong(rawData);
+      return rawData != null ? parser.bytesToLong(rawData) : parser.bytesToLong(frame, frameOffset, frameLength);
     }
     catch (Exception e) {
       throw new AvpDataException(e, this);
@@ -167,7 +211,7 @@ class AvpImpl implements Avp {
 
   public float getFloat32() throws AvpDataException {
     try {
-      return parser.bytesToFloat(rawData);
+      return rawData != null ? parser.bytesToFloat(rawData) : parser.bytesToFloat(frame, frameOffset, frameLength);
     }
     catch (Exception e) {
       throw new AvpDataException(e, this);
@@ -176,7 +220,7 @@ class AvpImpl implements Avp {
 
   public double getFloat64() throws AvpDataException {
     try {
-      return parser.bytesToDouble(rawData);
+      return rawData != null ? parser.bytesToDouble(rawData) : parser.bytesToDouble(frame, frameOffset, frameLength);
     }
     catch (Exception e) {
       throw new AvpDataException(e, this);
@@ -184,8 +228,14 @@ class AvpImpl implements Avp {
   }
 
   public InetAddress getAddress() throws AvpDataException {
+    Object value = objectValue;
+    if (value instanceof InetAddress) {
+      return (InetAddress) value;
+    }
     try {
-      return parser.bytesToAddress(rawData);
+      InetAddress address = rawData != null ? parser.bytesToAddress(rawData) : parser.bytesToAddress(frame, frameOffset, frameLength);
+      objectValue = address;
+      return address;
     }
     catch (Exception e) {
       throw new AvpDataException(e, this);
@@ -194,7 +244,7 @@ class AvpImpl implements Avp {
 
   public Date getTime() throws AvpDataException {
     try {
-      return parser.bytesToDate(rawData);
+      return rawData != null ? parser.bytesToDate(rawData) : parser.bytesToDate(frame, frameOffset, frameLength);
     }
     catch (Exception e) {
       throw new AvpDataException(e, this);
@@ -202,8 +252,14 @@ class AvpImpl implements Avp {
   }
 
   public String getDiameterIdentity() throws AvpDataException {
+    String value = octetValue;
+    if (value != null) {
+      return value;
+    }
     try {
-      return parser.bytesToOctetString(rawData);
+      value = rawData != null ? parser.bytesToOctetString(rawData) : parser.bytesToOctetString(frame, frameOffset, frameLength);
+      octetValue = value;
+      return value;
     }
     catch (Exception e) {
       throw new AvpDataException(e, this);
@@ -211,8 +267,14 @@ class AvpImpl implements Avp {
   }
 
   public URI getDiameterURI() throws AvpDataException {
+    Object value = objectValue;
+    if (value instanceof URI) {
+      return (URI) value;
+    }
     try {
-      return new URI(parser.bytesToOctetString(rawData));
+      URI uri = new URI(getDiameterIdentity());
+      objectValue = uri;
+      return uri;
     }
     catch (URISyntaxException e) {
       throw new AvpDataException(e, this);
@@ -225,8 +287,16 @@ class AvpImpl implements Avp {
   public AvpSet getGrouped() throws AvpDataException {
     try {
       if (groupedData == null) {
-        groupedData = parser.decodeAvpSet(rawData);
+        if (rawData == null) {
+          // slice the grouped AVPs out of the same frame
+          groupedData = parser.decodeAvpSet(frame, frameOffset, frameLength, true);
+        }
+        else {
+          groupedData = parser.decodeAvpSet(rawData);
+        }
         rawData = new byte[0];
+        invalidateValues();
+        groupedChanges = ((AvpSetImpl) groupedData).getChanges();
       }
       return groupedData;
     }
@@ -244,9 +314,63 @@ class AvpImpl implements Avp {
   }
 
   public byte[] getRawData() {
+    if (rawData == null) {
+      try {
+        return getRaw();
+      }
+      catch (AvpDataException e) {
+        logger.debug("Can not get raw data", e);
+      }
+    }
     return (rawData == null || rawData.length == 0) ? parser.encodeAvpSet(groupedData) : rawData;
   }
 
+  /**
+   * @return true if the grouped AVPs, or AVPs grouped in them, were changed since they were
+   * decoded, so that the received encoding of this AVP is not valid anymore
+   */
+  boolean isGroupedChanged() {
+    if (groupedData == null) {
+      return false;
+    }
+    if (!(groupedData instanceof AvpSetImpl)) {
+      return true;
+    }
+    AvpSetImpl set = (AvpSetImpl) groupedData;
+    int changes = set.getChanges();
+    if (changes < 0 || changes != groupedChanges) {
+      return true;
+    }
+    for (int i = 0; i < set.size(); i++) {
+      Avp avp = set.getAvpByIndex(i);
+      if (avp instanceof AvpImpl && ((AvpImpl) avp).isGroupedChanged()) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  void invalidateValues() {
+    utf8Value = null;
+    octetValue = null;
+    objectValue = null;
+  }
+
+  int getRawLength() {
+    byte[] data = rawData;
+    return data != null ? data.length : frameLength;
+  }
+
+  void writeRaw(ByteBuffer out) {
+    byte[] data = rawData;
+    if (data != null) {
+      out.put(data);
+    }
+    else {
+      out.put(frame, frameOffset, frameLength);
+    }
+  }
+
   // Caching toString.. Avp shouldn't be modified once created.
   private String toString;
 
@@ -0,0 +1,407 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2006, Red Hat, Inc. and individual contributors
+ * by the @authors tag. See the copyright.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.jdiameter.client.impl.parser;
+
+import java.io.Serializable;
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.RandomAccess;
+
+import org.jdiameter.api.Avp;
+
+/**
+ * List of AVPs kept in wire order, with a lazily built code index.
+ * <p>
+ * The index is an open addressing table mapping an AVP code to the first position
+ * holding that code, plus a per-position link to the next position with the same code.
+ * It is built in private arrays on the first lookup and published as an immutable
+ * snapshot, so threads looking up AVPs of the same message at the same time never see
+ * a half built index. Any change drops the index and it is rebuilt on the next lookup.
+ * <p>
+ * Selections returned by {@link #select(int)} share the element array with this list
+ * and follow the links of the index they were taken from. Once a selection was handed
+ * out, the first non-append change copies the element array, so a selection always
+ * reflects the list at the time it was taken.
+ */
+class AvpList extends AbstractList<Avp> implements RandomAccess, Serializable {
+
+  private static final long serialVersionUID = 1L;
+
+  static final int NONE = -1;
+
+  // below this size a linear scan is cheaper than building the index
+  private static final int INDEX_THRESHOLD = 8;
+
+  private Avp[] elements;
+  private int size;
+
+  // index, rebuilt on demand
+  private transient volatile Index index;
+
+  // true while a selection references elements
+  private transient boolean shared;
+
+  // counts the changes other than appends, see MessageImpl encoded prefix
+  private int rewrites;
+
+  AvpList() {
+    this.elements = new Avp[10];
+  }
+
+  public Avp get(int index) {
+    if (index >= size) {
+      throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+    }
+    return elements[index];
+  }
+
+  public int size() {
+    return size;
+  }
+
+  @Override
+  public boolean add(Avp avp) {
+    modCount++;
+    if (size == elements.length) {
+      // growing always allocates new arrays, selections keep the old ones
+      elements = Arrays.copyOf(elements, size + (size >> 1) + 1);
+    }
+    elements[size] = avp;
+    index = null;
+    size++;
+    return true;
+  }
+
+  @Override
+  public void add(int index, Avp avp) {
+    if (index == size) {
+      add(avp);
+      return;
+    }
+    if (index < 0 || index > size) {
+      throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+    }
+    modCount++;
+    invalidate();
+    if (size == elements.length) {
+      elements = Arrays.copyOf(elements, size + (size >> 1) + 1);
+    }
+    System.arraycopy(elements, index, elements, index + 1, size - index);
+    elements[index] = avp;
+    size++;
+  }
+
+  @Override
+  public Avp set(int index, Avp avp) {
+    Avp old = get(index);
+    invalidate();
+    elements[index] = avp;
+    return old;
+  }
+
+  @Override
+  public Avp remove(int index) {
+    Avp old = get(index);
+    modCount++;
+    invalidate();
+    int moved = size - index - 1;
+    if (moved > 0) {
+      System.arraycopy(elements, index + 1, elements, index, moved);
+    }
+    elements[--size] = null;
+    return old;
+  }
+
+  @Override
+  public void clear() {
+    modCount++;
+    invalidate();
+    Arrays.fill(elements, 0, size, null);
+    size = 0;
+  }
+
+  /**
+   * @param code AVP code
+   * @return position of the first AVP with the given code or {@link #NONE}
+   */
+  int firstPosition(int code) {
+    if (size <= INDEX_THRESHOLD && index == null) {
+      return scan(code, 0);
+    }
+    return ensureIndex().first(code);
+  }
+
+  /**
+   * @param position position returned by {@link #firstPosition(int)} or by this method
+   * @return position of the next AVP with the same code or {@link #NONE}
+   */
+  int nextPosition(int position) {
+    Index index = this.index;
+    if (index != null && index.changes == changes()) {
+      return index.links[position];
+    }
+    return scan(elements[position].getCode(), position + 1);
+  }
+
+  /**
+   * Returns a read-through view of all AVPs with the given code, in wire order.
+   * Changing the view detaches it from this list.
+   *
+   * @param code AVP code
+   * @return view of matching AVPs
+   */
+  AbstractList<Avp> select(int code) {
+    return select(code, 0, false);
+  }
+
+  /**
+   * Returns a read-through view of all AVPs with the given code and vendor, in wire order.
+   * Changing the view detaches it from this list.
+   *
+   * @param code AVP code
+   * @param vendorId AVP vendor id
+   * @return view of matching AVPs
+   */
+  AbstractList<Avp> select(int code, long vendorId) {
+    return select(code, vendorId, true);
+  }
+
+  private AbstractList<Avp> select(int code, long vendorId, boolean matchVendor) {
+    Index index = ensureIndex();
+    int[] links = index.links;
+    int first = NONE;
+    int count = 0;
+    for (int pos = index.first(code); pos != NONE; pos = links[pos]) {
+      if (!matchVendor || elements[pos].getVendorId() == vendorId) {
+        if (first == NONE) {
+          first = pos;
+        }
+        count++;
+      }
+    }
+    if (count == 0) {
+      return new AvpList();
+    }
+    shared = true;
+    return new Selection(elements, links, first, count, vendorId, matchVendor);
+  }
+
+  private int scan(int code, int from) {
+    for (int i = from; i < size; i++) {
+      if (elements[i].getCode() == code) {
+        return i;
+      }
+    }
+    return NONE;
+  }
+
+  /**
+   * @return number of changes other than appends made to this list, so an unchanged
+   * value means the AVPs seen before are still the first ones, in the same order
+   */
+  int rewrites() {
+    return rewrites;
+  }
+
+  /**
+   * @return number of changes of any kind made to this list
+   */
+  int changes() {
+    return modCount + rewrites;
+  }
+
+  private void invalidate() {
+    rewrites++;
+    index = null;
+    if (shared) {
+      // a selection still reads the current array
+      elements = elements.clone();
+      shared = false;
+    }
+  }
+
+  private Index ensureIndex() {
+    Index index = this.index;
+    int changes = changes();
+    if (index == null || index.changes != changes) {
+      index = new Index(elements, size, changes);
+      this.index = index;
+    }
+    return index;
+  }
+
+  private static int hash(int code) {
+    int h = code * 0x9E3779B9;
+    return h ^ (h >>> 16);
+  }
+
+  /**
+   * Code index of the list at one point in time, never changed once built.
+   */
+  private static final class Index {
+
+    final int changes;
+    final int[] codes;
+    final int[] heads;
+    final int[] links;
+
+    Index(Avp[] elements, int size, int changes) {
+      int capacity = 16;
+      while (capacity < size * 2) {
+        capacity <<= 1;
+      }
+      int mask = capacity - 1;
+      int[] codes = new int[capacity];
+      int[] heads = new int[capacity];
+      int[] tails = new int[capacity];
+      int[] links = new int[size];
+      Arrays.fill(heads, NONE);
+      // at least half of the slots stay free, so probing always ends
+      for (int position = 0; position < size; position++) {
+        int code = elements[position].getCode();
+        links[position] = NONE;
+        int i = hash(code) & mask;
+        while (heads[i] != NONE && codes[i] != code) {
+          i = (i + 1) & mask;
+        }
+        if (heads[i] == NONE) {
+          codes[i] = code;
+          heads[i] = position;
+        }
+        else {
+          links[tails[i]] = position;
+        }
+        tails[i] = position;
+      }
+      this.changes = changes;
+      this.codes = codes;
+      this.heads = heads;
+      this.links = links;
+    }
+
+    /**
+     * @return position of the first AVP with the given code or {@link #NONE}
+     */
+    int first(int code) {
+      int mask = codes.length - 1;
+      int i = hash(code) & mask;
+      while (heads[i] != NONE) {
+        if (codes[i] == code) {
+          return heads[i];
+        }
+        i = (i + 1) & mask;
+      }
+      return NONE;
+    }
+  }
+
+  /**
+   * View of the AVPs matching a code (and optionally a vendor), following the links of
+   * the index it was created from. Any change copies the matching AVPs into
+   * a private list first.
+   */
+  private static class Selection extends AbstractList<Avp> implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    private final Avp[] elements;
+    private final int[] links;
+    private final int first;
+    private final int count;
+    private final long vendorId;
+    private final boolean matchVendor;
+
+    // cursor of the last get(), makes sequential access O(1)
+    private int cursorIndex;
+    private int cursorPosition;
+
+    private AvpList detached;
+
+    Selection(Avp[] elements, int[] links, int first, int count, long vendorId, boolean matchVendor) {
+      this.elements = elements;
+      this.links = links;
+      this.first = first;
+      this.count = count;
+      this.vendorId = vendorId;
+      this.matchVendor = matchVendor;
+      this.cursorPosition = first;
+    }
+
+    public Avp get(int index) {
+      if (detached != null) {
+        return detached.get(index);
+      }
+      if (index < 0 || index >= count) {
+        throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + count);
+      }
+      if (index < cursorIndex) {
+        cursorIndex = 0;
+        cursorPosition = first;
+      }
+      while (cursorIndex < index) {
+        cursorPosition = links[cursorPosition];
+        if (!matchVendor || elements[cursorPosition].getVendorId() == vendorId) {
+          cursorIndex++;
+        }
+      }
+      return elements[cursorPosition];
+    }
+
+    public int size() {
+      return detached != null ? detached.size() : count;
+    }
+
+    @Override
+    public void add(int index, Avp avp) {
+      detach().add(index, avp);
+      modCount++;
+    }
+
+    @Override
+    public Avp set(int index, Avp avp) {
+      return detach().set(index, avp);
+    }
+
+    @Override
+    public Avp remove(int index) {
+      Avp old = detach().remove(index);
+      modCount++;
+      return old;
+    }
+
+    private AvpList detach() {
+      if (detached == null) {
+        AvpList list = new AvpList();
+        for (int i = 0; i < count; i++) {
+          list.add(get(i));
+        }
+        detached = list;
+      }
+      return detached;
+    }
+
+    private Object writeReplace() {
+      return detach();
+    }
+  }
+}
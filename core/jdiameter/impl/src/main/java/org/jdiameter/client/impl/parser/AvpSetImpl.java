@@ -31,7 +31,6 @@ package org.jdiameter.client.impl.parser;
  */
 
 import java.net.InetAddress;
-import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Date;
 import java.util.Iterator;
@@ -57,13 +56,22 @@ class AvpSetImpl implements AvpSet {
   private static final long serialVersionUID = 1L;
   private static final ElementParser parser = new ElementParser();
 
-    List<Avp> avps = new ArrayList<Avp>();
+    List<Avp> avps;
 
     AvpSetImpl() {
+      this.avps = new AvpList();
+    }
 
+    AvpSetImpl(List<Avp> avps) {
+      this.avps = avps;
     }
 
     public Avp getAvp(int avpCode) {
+        if (this.avps instanceof AvpList) {
+          AvpList list = (AvpList) this.avps;
+          int pos = list.firstPosition(avpCode);
+          return pos == AvpList.NONE ? null : list.get(pos);
+        }
         for (Avp avp : this.avps) {
             if (avp.getCode() == avpCode) {
                 return avp;
@@ -77,6 +85,16 @@ class AvpSetImpl implements AvpSet {
     }
 
     public Avp getAvp(int avpCode, long vendorId) {
+        if (this.avps instanceof AvpList) {
+          AvpList list = (AvpList) this.avps;
+          for (int pos = list.firstPosition(avpCode); pos != AvpList.NONE; pos = list.nextPosition(pos)) {
+            Avp avp = list.get(pos);
+            if (avp.getVendorId() == vendorId) {
+              return avp;
+            }
+          }
+          return null;
+        }
         for (Avp avp : this.avps) {
             if (avp.getCode() == avpCode && avp.getVendorId() == vendorId) {
               return avp;
@@ -86,6 +104,9 @@ class AvpSetImpl implements AvpSet {
     }
 
     public AvpSet getAvps(int avpCode) {
+        if (this.avps instanceof AvpList) {
+          return new AvpSetImpl(((AvpList) this.avps).select(avpCode));
+        }
         AvpSet result = new AvpSetImpl();
         for (Avp avp : this.avps) {
             if (avp.getCode() == avpCode) {
@@ -95,9 +116,10 @@ class AvpSetImpl implements AvpSet {
         return result;
     }
 
-
-
     public AvpSet getAvps(int avpCode, long vendorId) {
+        if (this.avps instanceof AvpList) {
+          return new AvpSetImpl(((AvpList) this.avps).select(avpCode, vendorId));
+        }
         AvpSet result = new AvpSetImpl();
         for (Avp avp : this.avps) {
             if (avp.getCode() == avpCode && avp.getVendorId() == vendorId) {
@@ -113,6 +135,9 @@ class AvpSetImpl implements AvpSet {
     
     public AvpSet removeAvp(int avpCode, long vendorId) {
         AvpSet result = new AvpSetImpl();
+        if (this.avps instanceof AvpList && ((AvpList) this.avps).firstPosition(avpCode) == AvpList.NONE) {
+          return result;
+        }
       //  for (Avp avp : this.avps) {
       //    if (avp.getCode() == avpCode) {
       //      result.addAvp(avp);
@@ -197,6 +222,22 @@ class AvpSetImpl implements AvpSet {
         return this.avps.size();
     }
 
+    /**
+     * @return number of changes other than appends made to this set, or -1 if this set
+     * does not keep track of them
+     */
+    int getRewrites() {
+        return this.avps instanceof AvpList ? ((AvpList) this.avps).rewrites() : -1;
+    }
+
+    /**
+     * @return number of changes of any kind made to this set, or -1 if this set does not
+     * keep track of them
+     */
+    int getChanges() {
+        return this.avps instanceof AvpList ? ((AvpList) this.avps).changes() : -1;
+    }
+
     public void addAvp(AvpSet avpSet) {
         for (Avp a:avpSet) avps.add(a);
     }
@@ -30,16 +30,13 @@ import org.jdiameter.client.api.parser.IElementParser;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.io.ByteArrayInputStream;
-import java.io.ByteArrayOutputStream;
-import java.io.DataInputStream;
-import java.io.DataOutputStream;
 import java.io.IOException;
 import java.io.UnsupportedEncodingException;
 import java.net.Inet4Address;
 import java.net.Inet6Address;
 import java.net.InetAddress;
 import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
 import java.util.Date;
 
 /**
@@ -65,20 +62,57 @@ public class ElementParser implements IElementParser {
     private static final int FLOAT32_SIZE = 4;
     private static final int FLOAT64_SIZE = 8;
 
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
     public int bytesToInt(byte[] rawData) throws AvpDataException {
-      return prepareBuffer(rawData, INT32_SIZE).getInt();
+      return bytesToInt(rawData, 0, rawData.length);
+    }
+
+    public int bytesToInt(byte[] data, int offset, int length) throws AvpDataException {
+      checkLength(length, INT32_SIZE);
+      return getInt(data, offset);
     }
 
     public long bytesToLong(byte[] rawData) throws AvpDataException {
-      return prepareBuffer(rawData, INT64_SIZE).getLong();
+      return bytesToLong(rawData, 0, rawData.length);
+    }
+
+    public long bytesToLong(byte[] data, int offset, int length) throws AvpDataException {
+      checkLength(length, INT64_SIZE);
+      return ((long) getInt(data, offset) << 32) | (getInt(data, offset + 4) & 0xFFFFFFFFL);
+    }
+
+    /**
+     * Decodes an Unsigned32 from the first 4 bytes of the region, as the lenient
+     * Avp.getUnsigned32() always did.
+     */
+    public long bytesToUnsigned32(byte[] data, int offset, int length) throws AvpDataException {
+      if (length < INT32_SIZE)
+        throw new AvpDataException("Incorrect data length");
+      return getInt(data, offset) & 0xFFFFFFFFL;
     }
 
     public float bytesToFloat(byte[] rawData) throws AvpDataException {
-       return prepareBuffer(rawData, INT32_SIZE).getFloat();
+      return bytesToFloat(rawData, 0, rawData.length);
+    }
+
+    public float bytesToFloat(byte[] data, int offset, int length) throws AvpDataException {
+      checkLength(length, FLOAT32_SIZE);
+      return Float.intBitsToFloat(getInt(data, offset));
     }
 
     public double bytesToDouble(byte[] rawData) throws AvpDataException {
-         return prepareBuffer(rawData, FLOAT64_SIZE).getDouble();
+      return bytesToDouble(rawData, 0, rawData.length);
+    }
+
+    public double bytesToDouble(byte[] data, int offset, int length) throws AvpDataException {
+      checkLength(length, FLOAT64_SIZE);
+      return Double.longBitsToDouble(bytesToLong(data, offset, length));
+    }
+
+    private static void checkLength(int length, int len) throws AvpDataException {
+      if (length != len)
+        throw new AvpDataException("Incorrect data length");
     }
 
     protected ByteBuffer prepareBuffer(byte [] bytes, int len) throws AvpDataException  {
@@ -91,6 +125,10 @@ public class ElementParser implements IElementParser {
     }
 
     public String bytesToOctetString(byte[] rawData) throws AvpDataException {
+        return bytesToOctetString(rawData, 0, rawData.length);
+    }
+
+    public String bytesToOctetString(byte[] data, int offset, int length) throws AvpDataException {
         try {
         	//TODO: veirfy ISO-8859-1 is correct here, according to google results its only ... western EU..
         	//TODO: verify this, it octet sting we can not discard some chars, we have no idea whats there....
@@ -105,18 +143,30 @@ public class ElementParser implements IElementParser {
 //                }
 //          
 //            return rc.toString();
-        	return new String(rawData, "iso-8859-1");
+        	return new String(data, offset, length, "iso-8859-1");
         } catch (UnsupportedEncodingException e) {
             throw new AvpDataException("Invalid data type", e);
         }
     }
 
     public String bytesToUtf8String(byte[] rawData) throws AvpDataException {
+        return bytesToUtf8String(rawData, 0, rawData.length);
+    }
+
+    public String bytesToUtf8String(byte[] data, int offset, int length) throws AvpDataException {
         try {
-            char[] ca = new String(rawData, "utf8").toCharArray();
-            StringBuffer rc = new StringBuffer(ca.length);
-            for (char c:ca)
-                if (c != (char)0x0) rc.append(c);
+            String value = new String(data, offset, length, UTF8);
+            // NUL characters are dropped, only build a new string when there is one
+            int nul = value.indexOf((char) 0x0);
+            if (nul < 0) {
+                return value;
+            }
+            StringBuilder rc = new StringBuilder(value.length());
+            rc.append(value, 0, nul);
+            for (int i = nul + 1; i < value.length(); i++) {
+                char c = value.charAt(i);
+                if (c != (char) 0x0) rc.append(c);
+            }
             return rc.toString();
         } catch (Exception e) {
              throw new AvpDataException("Invalid data type", e);
@@ -124,28 +174,46 @@ public class ElementParser implements IElementParser {
     }
 
     public Date bytesToDate(byte[] rawData) throws AvpDataException {
+        return bytesToDate(rawData, 0, rawData.length);
+    }
+
+    public Date bytesToDate(byte[] data, int offset, int length) throws AvpDataException {
         try {
-            byte[] tmp = new byte[8];
-            System.arraycopy(rawData, 0 , tmp, 4, 4);
-            return new Date(((bytesToLong(tmp) - SECOND_SHIFT) * 1000L));
+            return new Date(((bytesToUnsigned32(data, offset, length) - SECOND_SHIFT) * 1000L));
         } catch (Exception e) {
             throw new AvpDataException(e);
         }
     }
 
     public InetAddress bytesToAddress(byte[] rawData) throws AvpDataException {
+        return bytesToAddress(rawData, 0, rawData.length);
+    }
+
+    public InetAddress bytesToAddress(byte[] data, int offset, int length) throws AvpDataException {
         InetAddress inetAddress;
         byte[] address;
+        // address family and address, checked so that a truncated AVP does not read the next one
+        if (length != 2 + 4 && length != 2 + 16) {
+            throw new AvpDataException("Invalid address length [" + length + "]");
+        }
         try {
-            if (rawData[INT_INET4] == INT_INET4) {
+            if (data[offset + INT_INET4] == INT_INET4) {
+                if (length != 2 + 4) {
+                    throw new AvpDataException("Invalid IPv4 address length [" + length + "]");
+                }
                 address = new byte[4];
-                System.arraycopy(rawData, 2, address, 0, address.length);
+                System.arraycopy(data, offset + 2, address, 0, address.length);
                 inetAddress = Inet4Address.getByAddress(address);
             } else {
+                if (length != 2 + 16) {
+                    throw new AvpDataException("Invalid IPv6 address length [" + length + "]");
+                }
                 address = new byte[16];
-                System.arraycopy(rawData, 2, address, 0, address.length);
+                System.arraycopy(data, offset + 2, address, 0, address.length);
                 inetAddress = Inet6Address.getByAddress(address);
             }
+        } catch (AvpDataException e) {
+            throw e;
         } catch (Exception e) {
             throw new AvpDataException(e);
         }
@@ -261,86 +329,162 @@ public class ElementParser implements IElementParser {
      * @throws AvpDataException
      */
     public AvpSetImpl decodeAvpSet(byte[] buffer, int shift) throws IOException, AvpDataException {
+      return decodeAvpSet(buffer, shift, buffer.length - shift, false);
+    }
+
+    /**
+     * Decodes the AVPs found in a region of the buffer.
+     * 
+     * @param buffer buffer holding encoded AVPs
+     * @param offset position of the first AVP in buffer
+     * @param length number of bytes to decode
+     * @param zeroCopy if true, AVPs keep an (offset, length) view into buffer instead of
+     *                 copying their data, so buffer must not be modified afterwards
+     * @return set of decoded AVPs
+     * @throws AvpDataException
+     */
+    public AvpSetImpl decodeAvpSet(byte[] buffer, int offset, int length, boolean zeroCopy) throws AvpDataException {
       AvpSetImpl avps = new AvpSetImpl();
-      int tmp, counter = shift;
-      DataInputStream in = new DataInputStream(new ByteArrayInputStream(buffer, shift, buffer.length /* - shift ? */));
+      int end = offset + length;
+      int counter = offset;
 
-      while (counter < buffer.length) {
-        int code = in.readInt();
-        tmp = in.readInt();
+      while (counter < end) {
+        if (end - counter < 8) {
+          throw new AvpDataException("Not enough data in buffer!");
+        }
+        int code = getInt(buffer, counter);
+        int tmp = getInt(buffer, counter + 4);
         int flags = (tmp >> 24) & 0xFF;
-        int length  = tmp & 0xFFFFFF;
-        if(length < 0 || counter + length > buffer.length) {
+        int avpLength  = tmp & 0xFFFFFF;
+        int headerLength = (flags & 0x80) != 0 ? 12 : 8;
+        if(avpLength < headerLength || counter + avpLength > end) {
           throw new AvpDataException("Not enough data in buffer!");
         }
         long vendor = 0;
         if ((flags & 0x80) != 0) {
-          vendor = in.readInt();
+          vendor = getInt(buffer, counter + 8);
         }
         // Determine body L = length - 4(code) -1(flags) -3(length) [-4(vendor)]
-        byte[] rawData = new byte[length - (8 + (vendor == 0 ? 0 : 4))];
-        in.read(rawData);
-        // skip remaining.
-        // TODO: Do we need to padd everything? Or on send stack should properly fill byte[] ... ?
-        if (length % 4 != 0) {
-          for (int i; length % 4 != 0; length += i) {
-            i = (int) in.skip((4 - length % 4));
-          }
+        int bodyOffset = counter + headerLength;
+        int bodyLength = avpLength - headerLength;
+        AvpImpl avp;
+        if (zeroCopy) {
+          avp = new AvpImpl(code, flags, vendor, buffer, bodyOffset, bodyLength);
+        }
+        else {
+          byte[] rawData = new byte[bodyLength];
+          System.arraycopy(buffer, bodyOffset, rawData, 0, bodyLength);
+          avp = new AvpImpl(code, flags, vendor, rawData);
         }
-        AvpImpl avp = new AvpImpl(code, (short) flags, (int) vendor, rawData);
         avps.addAvp(avp);
-        counter += length;
+        // skip padding
+        counter += (avpLength + 3) & ~3;
       }
-      return avps;  
+      return avps;
+    }
+
+    private static int getInt(byte[] buffer, int offset) {
+      return ((buffer[offset] & 0xFF) << 24) | ((buffer[offset + 1] & 0xFF) << 16) |
+          ((buffer[offset + 2] & 0xFF) << 8) | (buffer[offset + 3] & 0xFF);
     }
     
     public byte[] encodeAvpSet(AvpSet avps) {
-        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ByteBuffer buffer = ByteBuffer.allocate(getAvpSetLength(avps));
         try {
-          DataOutputStream data = new DataOutputStream(out);
-          for (Avp a : avps) {
-            if (a instanceof AvpImpl) {
-              AvpImpl aImpl = (AvpImpl) a;
-              if (aImpl.rawData.length == 0 && aImpl.groupedData != null) {
-                aImpl.rawData = encodeAvpSet(a.getGrouped());
-              }
-              data.write(encodeAvp(aImpl));
-            }
-          }
+          encodeAvpSet(avps, buffer);
         }
         catch (Exception e) {
           logger.debug("Error during encode avps", e);
         }
-        return out.toByteArray();
+        return buffer.array();
       }
-    
+
     public byte[] encodeAvp(AvpImpl avp) {
-        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ByteBuffer buffer = ByteBuffer.allocate(getAvpLength(avp));
         try {
-          DataOutputStream data = new DataOutputStream(out);
-          data.writeInt(avp.getCode());
-          int flags = (byte) ((avp.getVendorId() != 0 ? 0x80 : 0) |
-              (avp.isMandatory() ? 0x40 : 0) | (avp.isEncrypted() ? 0x20 : 0));
-          int origLength = avp.getRaw().length + 8 + (avp.getVendorId() != 0 ? 4 : 0);
-          // newLength is never used. Should it?
-          //int newLength  = origLength;
-          //if (newLength % 4 != 0) {
-          //  newLength += 4 - (newLength % 4);
-          //}
-          data.writeInt(((flags << 24) & 0xFF000000) + origLength);
-          if (avp.getVendorId() != 0) {
-            data.writeInt((int) avp.getVendorId());
-          }
-          data.write(avp.getRaw());
-          if (avp.getRaw().length % 4 != 0) {
-            for(int i = 0; i < 4 - avp.getRaw().length % 4; i++) {
-              data.write(0);
-            }
-          }
+          encodeAvp(avp, buffer);
         }
         catch (Exception e) {
           logger.debug("Error during encode avp", e);
         }
-        return out.toByteArray();
+        return buffer.array();
+      }
+
+    /**
+     * Computes the exact number of bytes needed to encode the AVPs, padding included.
+     * 
+     * @param avps set of AVPs
+     * @return encoded length in bytes
+     */
+    public int getAvpSetLength(AvpSet avps) {
+      int length = 0;
+      for (Avp a : avps) {
+        if (a instanceof AvpImpl) {
+          length += getAvpLength((AvpImpl) a);
+        }
       }
+      return length;
+    }
+
+    /**
+     * Computes the exact number of bytes needed to encode the AVP, padding included.
+     * 
+     * @param avp AVP
+     * @return encoded length in bytes
+     */
+    public int getAvpLength(AvpImpl avp) {
+      return (getUnpaddedAvpLength(avp) + 3) & ~3;
+    }
+
+    private int getUnpaddedAvpLength(AvpImpl avp) {
+      return 8 + (avp.getVendorId() != 0 ? 4 : 0) + getAvpDataLength(avp);
+    }
+
+    private int getAvpDataLength(AvpImpl avp) {
+      if (avp.getRawLength() == 0 && avp.groupedData != null) {
+        return getAvpSetLength(avp.groupedData);
+      }
+      return avp.getRawLength();
+    }
+
+    /**
+     * Encodes the AVPs straight into the destination buffer, including grouped children,
+     * without any intermediate arrays.
+     * 
+     * @param avps set of AVPs
+     * @param destination buffer with at least {@link #getAvpSetLength(AvpSet)} bytes remaining
+     */
+    public void encodeAvpSet(AvpSet avps, ByteBuffer destination) {
+      for (Avp a : avps) {
+        if (a instanceof AvpImpl) {
+          encodeAvp((AvpImpl) a, destination);
+        }
+      }
+    }
+
+    /**
+     * Encodes the AVP straight into the destination buffer.
+     * 
+     * @param avp AVP
+     * @param destination buffer with at least {@link #getAvpLength(AvpImpl)} bytes remaining
+     */
+    public void encodeAvp(AvpImpl avp, ByteBuffer destination) {
+      destination.putInt(avp.getCode());
+      int flags = (byte) ((avp.getVendorId() != 0 ? 0x80 : 0) |
+          (avp.isMandatory() ? 0x40 : 0) | (avp.isEncrypted() ? 0x20 : 0));
+      int origLength = getUnpaddedAvpLength(avp);
+      destination.putInt(((flags << 24) & 0xFF000000) + origLength);
+      if (avp.getVendorId() != 0) {
+        destination.putInt((int) avp.getVendorId());
+      }
+      if (avp.getRawLength() == 0 && avp.groupedData != null) {
+        encodeAvpSet(avp.groupedData, destination);
+      }
+      else {
+        avp.writeRaw(destination);
+        for (int i = origLength; i % 4 != 0; i++) {
+          destination.put((byte) 0);
+        }
+      }
+    }
 }
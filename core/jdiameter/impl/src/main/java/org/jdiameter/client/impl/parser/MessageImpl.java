@@ -68,8 +68,19 @@ public class MessageImpl implements IMessage {
   boolean isNetworkRequest = false;
 
   transient IPeer peer;
+  transient long sendTime;
   transient TimerTask timerTask;
   transient IEventListener listener;
+  // set when the request announced overload control support, copied to its answers
+  transient boolean overloadControl;
+
+  // AVPs as they were received, kept with zero-copy decoding only. While the set sees
+  // nothing but appends, its first encodedAvps AVPs are still exactly these bytes.
+  transient byte[] encoded;
+  transient int encodedOffset;
+  transient int encodedLength;
+  transient int encodedAvps;
+  transient int encodedRewrites = -1;
 
   // Cached result for getApplicationIdAvps() method. It is called extensively and takes some time.
   // Potential place for dirt, but Application IDs don't change during message life time.
@@ -87,7 +98,7 @@ public class MessageImpl implements IMessage {
     this.applicationId = appId;
 
     this.avpSet = new AvpSetImpl();
-    this.endToEndId = parser.getNextEndToEndId();
+    this.endToEndId = parser.getNextEndToEndId() & 0xFFFFFFFFL;
   }
 
   /**
@@ -140,6 +151,7 @@ public class MessageImpl implements IMessage {
     copyHeader(request);
     setRequest(false);
     parser.copyBasicAvps(this, request, true);
+    this.overloadControl = request.overloadControl;
   }
 
   public byte getVersion() {
@@ -364,6 +376,40 @@ public class MessageImpl implements IMessage {
     peer       = request.peer;
   }
 
+  /**
+   * Keeps the received encoding of the current AVPs, so they can be copied as they are
+   * when this message is encoded again, e.g. when it is forwarded by an agent.
+   * 
+   * @param frame buffer the AVPs were decoded from, must not be modified afterwards
+   * @param offset position of the first AVP in frame
+   * @param length length of the AVPs, padding included
+   */
+  void setEncodedAvps(byte[] frame, int offset, int length) {
+    this.encoded = frame;
+    this.encodedOffset = offset;
+    this.encodedLength = length;
+    this.encodedAvps = avpSet.size();
+    this.encodedRewrites = avpSet.getRewrites();
+  }
+
+  /**
+   * @return number of bytes at the start of the encoded AVPs that can be copied from
+   * the received frame, 0 if all AVPs have to be encoded
+   */
+  int getEncodedPrefixLength() {
+    if (encoded == null || encodedRewrites < 0 || avpSet.getRewrites() != encodedRewrites) {
+      return 0;
+    }
+    // changes made to grouped AVPs through getGrouped() do not show in the top level set
+    for (int i = 0; i < encodedAvps; i++) {
+      Avp avp = avpSet.getAvpByIndex(i);
+      if (avp instanceof AvpImpl && ((AvpImpl) avp).isGroupedChanged()) {
+        return 0;
+      }
+    }
+    return encodedLength;
+  }
+
   public Avp getResultCode() {
     return getAvps().getAvp(Avp.RESULT_CODE);
   }
@@ -409,6 +455,22 @@ public class MessageImpl implements IMessage {
     this.peer = peer; 
   }
 
+  public long getSendTime() {
+    return sendTime;
+  }
+
+  public void setSendTime(long sendTime) {
+    this.sendTime = sendTime;
+  }
+
+  public boolean isOverloadControl() {
+    return overloadControl;
+  }
+
+  public void setOverloadControl(boolean overloadControl) {
+    this.overloadControl = overloadControl;
+  }
+
   public int getState() {
     return state;
   }
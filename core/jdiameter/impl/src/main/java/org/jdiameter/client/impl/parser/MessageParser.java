@@ -46,17 +46,18 @@ import static org.jdiameter.api.Avp.ACCT_APPLICATION_ID;
 import static org.jdiameter.api.Avp.AUTH_APPLICATION_ID;
 import static org.jdiameter.api.Avp.SESSION_ID;
 import static org.jdiameter.api.Avp.VENDOR_SPECIFIC_APPLICATION_ID;
+import static org.jdiameter.client.impl.helpers.Parameters.ZeroCopyDecoding;
 
 import java.io.ByteArrayInputStream;
-import java.io.ByteArrayOutputStream;
 import java.io.DataInputStream;
-import java.io.DataOutputStream;
 import java.nio.ByteBuffer;
+import java.util.Arrays;
 import java.util.concurrent.TimeUnit;
 
 import org.jdiameter.api.Avp;
 import org.jdiameter.api.AvpDataException;
 import org.jdiameter.api.AvpSet;
+import org.jdiameter.api.Configuration;
 import org.jdiameter.api.Request;
 import org.jdiameter.client.api.IMessage;
 import org.jdiameter.client.api.IRequest;
@@ -76,29 +77,47 @@ public class MessageParser extends ElementParser implements IMessageParser {
 
   private static final Logger logger = LoggerFactory.getLogger(MessageParser.class);
 
-  protected UIDGenerator endToEndGen = new UIDGenerator(
-      (int) (TimeUnit.MILLISECONDS.toSeconds(System.currentTimeMillis()) & 0xFFF) << 20
-  );
+  /**
+   * RFC 6733, 3: the high order 12 bits of the End-to-End Identifier are set to the low
+   * order 12 bits of the current time, the low order 20 bits to a counter.
+   */
+  protected final long endToEndHigh = (TimeUnit.MILLISECONDS.toSeconds(System.currentTimeMillis()) & 0xFFF) << 20;
+  protected UIDGenerator endToEndGen = new UIDGenerator(0);
 
- 
+  /**
+   * If true, decoded AVPs are views into the received frame and their data is only
+   * copied when requested, rather than having one array allocated per AVP.
+   */
+  protected boolean zeroCopy = false;
 
   public MessageParser() {
 
   }
 
+  public MessageParser(Configuration config) {
+    this.zeroCopy = config.getBooleanValue(ZeroCopyDecoding.ordinal(), (Boolean) ZeroCopyDecoding.defValue());
+  }
+
   public IMessage createMessage(ByteBuffer data) throws AvpDataException {
     // Read header
     try {
       byte[] message = data.array();
+      int offset = data.arrayOffset() + data.position();
+      int length = data.remaining();
+      if (zeroCopy && (offset != 0 || length != message.length)) {
+        // AVPs keep referencing the frame, so a slice of a reused receive buffer must be copied
+        message = Arrays.copyOfRange(message, offset, offset + length);
+        offset = 0;
+      }
       long tmp;
-      DataInputStream in = new DataInputStream(new ByteArrayInputStream(message));
+      DataInputStream in = new DataInputStream(new ByteArrayInputStream(message, offset, length));
       tmp = in.readInt();
       short version = (short) (tmp >> 24);
       if (version != 1) {
         throw new Exception("Illegal value of version " + version);
       }
       
-      if (message.length != (tmp & 0x00FFFFFF)) {
+      if (length != (tmp & 0x00FFFFFF)) {
         //throw new ParseException("Wrong length of data: " + (tmp & 0x00FFFFFF));
         throw new Exception("Wrong length of data: " + (tmp & 0x00FFFFFF));
       }
@@ -113,9 +132,14 @@ public class MessageParser extends ElementParser implements IMessageParser {
       // byte[] body = new byte[message.length - 20];
       // System.arraycopy(message, 20, body, 0, body.length);
       // AvpSetImpl avpSet = decodeAvpSet(body);
-      AvpSetImpl avpSet = decodeAvpSet(message, 20);
+      AvpSetImpl avpSet = decodeAvpSet(message, offset + 20, length - 20, zeroCopy);
 
-      return new MessageImpl(commandCode, applicationId, flags, hopByHopId, endToEndId, avpSet);
+      MessageImpl result = new MessageImpl(commandCode, applicationId, flags, hopByHopId, endToEndId, avpSet);
+      if (zeroCopy && (length & 3) == 0) {
+        // the AVPs reference the frame anyway, keeping it lets a forwarded message skip their encoding
+        result.setEncodedAvps(message, offset + 20, length - 20);
+      }
+      return result;
     }
     catch (Exception exc) {
       throw new AvpDataException(exc);
@@ -149,7 +173,7 @@ public class MessageParser extends ElementParser implements IMessageParser {
         prnMessage.getHeaderApplicationId(),
         (short) prnMessage.getFlags(),
         prnMessage.getHopByHopIdentifier(),
-        endToEndGen.nextLong(),
+        getNextEndToEndId() & 0xFFFFFFFFL,
         null
     );
     copyBasicAvps(newMessage, prnMessage, false);
@@ -241,44 +265,72 @@ public class MessageParser extends ElementParser implements IMessageParser {
   }
 
   public ByteBuffer encodeMessage(IMessage message) throws ParseException {
-    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    ByteBuffer buffer = ByteBuffer.allocate(getMessageLength(message));
+    encodeMessage(message, buffer);
+    buffer.flip();
+    return buffer;
+  }
+
+  public int getMessageLength(IMessage message) {
+    return 20 + getBodyLength(message);
+  }
+
+  public void encodeMessage(IMessage message, ByteBuffer destination) throws ParseException {
     try {
-      byte[] rawData = encodeAvpSet(message.getAvps());
-      DataOutputStream data = new DataOutputStream(out);
+      int bodyLength = getBodyLength(message);
       // Wasting processor time, are we ?
       // int tmp = (1 << 24) & 0xFF000000;
       int tmp = (1 << 24);
-      tmp += 20 + rawData.length;
-      data.writeInt(tmp);
+      tmp += 20 + bodyLength;
+      destination.putInt(tmp);
       // Again, unneeded operation ?
       // tmp = (message.getFlags() << 24) & 0xFF000000;
       tmp = (message.getFlags() << 24);
       tmp += message.getCommandCode();
-      data.writeInt(tmp);
-      data.write(toBytes(message.getHeaderApplicationId()));
-      data.write(toBytes(message.getHopByHopIdentifier()));
-      data.write(toBytes(message.getEndToEndIdentifier())); 
-      data.write(rawData);
+      destination.putInt(tmp);
+      destination.putInt((int) message.getHeaderApplicationId());
+      destination.putInt((int) message.getHopByHopIdentifier());
+      destination.putInt((int) message.getEndToEndIdentifier());
+      int prefixLength = getEncodedPrefixLength(message);
+      if (prefixLength > 0) {
+        // only the header and the AVPs appended since the message was received are encoded
+        MessageImpl impl = (MessageImpl) message;
+        destination.put(impl.encoded, impl.encodedOffset, prefixLength);
+        for (int i = impl.encodedAvps; i < impl.avpSet.size(); i++) {
+          Avp avp = impl.avpSet.getAvpByIndex(i);
+          if (avp instanceof AvpImpl) {
+            encodeAvp((AvpImpl) avp, destination);
+          }
+        }
+      }
+      else {
+        encodeAvpSet(message.getAvps(), destination);
+      }
     }
     catch (Exception e) {
       //logger.debug("Error during encode message", e);
       throw new ParseException("Failed to encode message.", e);
     }
-    try{
-    	return prepareBuffer(out.toByteArray(), out.size());
+  }
+
+  private int getBodyLength(IMessage message) {
+    int prefixLength = getEncodedPrefixLength(message);
+    if (prefixLength == 0) {
+      return getAvpSetLength(message.getAvps());
     }
-    catch(AvpDataException ade) {
-    	throw new ParseException(ade);
+    MessageImpl impl = (MessageImpl) message;
+    int length = prefixLength;
+    for (int i = impl.encodedAvps; i < impl.avpSet.size(); i++) {
+      Avp avp = impl.avpSet.getAvpByIndex(i);
+      if (avp instanceof AvpImpl) {
+        length += getAvpLength((AvpImpl) avp);
+      }
     }
+    return length;
   }
 
-  private byte[] toBytes(long value) {
-    byte[] data = new byte[4];
-    data[0] = (byte) ((value >> 24) & 0xFF);
-    data[1] = (byte) ((value >> 16) & 0xFF);
-    data[2] = (byte) ((value >> 8) & 0xFF);
-    data[3] = (byte) ((value) & 0xFF);
-    return data;
+  private int getEncodedPrefixLength(IMessage message) {
+    return message instanceof MessageImpl ? ((MessageImpl) message).getEncodedPrefixLength() : 0;
   }
 
   public IMessage createEmptyMessage(int commandCode, long headerAppId) {
@@ -294,6 +346,7 @@ public class MessageParser extends ElementParser implements IMessageParser {
 
 
   public int getNextEndToEndId() {
-    return endToEndGen.nextInt();
+    // the high bit may be set, callers read the id as unsigned
+    return (int) (endToEndHigh | (endToEndGen.nextLong() & 0xFFFFF));
   }
 }
@@ -0,0 +1,63 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2011, Red Hat, Inc. and individual contributors
+ * by the @authors tag. See the copyright.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.jdiameter.client.impl.router;
+
+import java.util.Random;
+
+import org.jdiameter.client.api.IMessage;
+import org.jdiameter.client.api.controller.IPeer;
+import org.jdiameter.client.api.router.IPeerSelectionStrategy;
+
+/**
+ * Power of two choices over the answer latency: two different peers are picked at random and the
+ * one with the lower expected wait, its smoothed latency times its pending requests plus one, is
+ * selected. Peers which did not answer yet are preferred, so that new peers get probed.
+ * <p>
+ * Sampling two peers instead of scanning all of them keeps the choice from herding every sender
+ * onto the single fastest peer between latency updates.
+ */
+public class LatencyPeerSelectionStrategy implements IPeerSelectionStrategy {
+
+  private final Random random = new Random();
+
+  public IPeer select(IPeer[] peers, IMessage message) {
+    int n = peers.length;
+    if (n == 1) {
+      return peers[0];
+    }
+    int first = random.nextInt(n);
+    int second = random.nextInt(n - 1);
+    if (second >= first) {
+      second++;
+    }
+    return cost(peers[second]) < cost(peers[first]) ? peers[second] : peers[first];
+  }
+
+  private static long cost(IPeer peer) {
+    long latency = peer.getLatency();
+    if (latency < 0) {
+      return -1;
+    }
+    return latency * (peer.getPendingRequestCount() + 1);
+  }
+}
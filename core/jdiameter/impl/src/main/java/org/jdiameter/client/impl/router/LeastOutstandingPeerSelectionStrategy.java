@@ -0,0 +1,68 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2011, Red Hat, Inc. and individual contributors
+ * by the @authors tag. See the copyright.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.jdiameter.client.impl.router;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.jdiameter.client.api.IMessage;
+import org.jdiameter.client.api.controller.IPeer;
+import org.jdiameter.client.api.router.IPeerSelectionStrategy;
+
+/**
+ * Selects the peer with the fewest requests waiting for an answer. Peers with the same count
+ * are taken in turn, so that an idle realm is still used evenly.
+ */
+public class LeastOutstandingPeerSelectionStrategy implements IPeerSelectionStrategy {
+
+  private final AtomicInteger counter = new AtomicInteger();
+
+  public IPeer select(IPeer[] peers, IMessage message) {
+    if (peers.length == 1) {
+      return peers[0];
+    }
+    int min = Integer.MAX_VALUE;
+    int ties = 0;
+    for (IPeer peer : peers) {
+      int pending = peer.getPendingRequestCount();
+      if (pending < min) {
+        min = pending;
+        ties = 1;
+      }
+      else if (pending == min) {
+        ties++;
+      }
+    }
+    // counts may change meanwhile, then the last peer seen with the lowest count is taken
+    int skip = ties == 1 ? 0 : (counter.getAndIncrement() & Integer.MAX_VALUE) % ties;
+    IPeer selected = null;
+    for (IPeer peer : peers) {
+      if (peer.getPendingRequestCount() <= min) {
+        selected = peer;
+        if (skip-- == 0) {
+          break;
+        }
+      }
+    }
+    return selected != null ? selected : peers[0];
+  }
+}
@@ -0,0 +1,233 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2006-2011, Red Hat, Inc. and individual contributors
+ * by the @authors tag. See the copyright.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.jdiameter.client.impl.router;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.jdiameter.api.Avp;
+import org.jdiameter.api.AvpDataException;
+import org.jdiameter.api.AvpSet;
+
+/**
+ * Overload reports (RFC 7683) in force, kept per reporting host and per reporting realm, and
+ * the loss abatement algorithm applied to the requests sent to them. A report asking for a
+ * reduction of N percent throttles N of every 100 requests, spread evenly over the requests.
+ * Reports are dropped when their validity duration is over, or when the reporting node ends
+ * them with a newer report.
+ */
+public class OverloadReportTable {
+
+  // OC-Report-Type values
+  public static final int HOST_REPORT = 0;
+  public static final int REALM_REPORT = 1;
+
+  // OC-Feature-Vector bit of the loss abatement algorithm
+  public static final long OLR_DEFAULT_ALGO = 1L;
+
+  // OC-Validity-Duration, in seconds, when the report does not carry one, and its upper bound
+  public static final long DEFAULT_VALIDITY = 30;
+  public static final long MAX_VALIDITY = 86400;
+
+  private final ConcurrentMap<String, Report> hostReports = new ConcurrentHashMap<String, Report>();
+  private final ConcurrentMap<String, Report> realmReports = new ConcurrentHashMap<String, Report>();
+  private final AtomicLong throttled = new AtomicLong();
+
+  /**
+   * Append OC-Supported-Features announcing the loss abatement algorithm
+   *
+   * @param avps AVPs of a request or an answer
+   */
+  public static void addSupportedFeatures(AvpSet avps) {
+    AvpSet features = avps.addGroupedAvp(Avp.OC_SUPPORTED_FEATURES, false, false);
+    features.addAvp(Avp.OC_FEATURE_VECTOR, OLR_DEFAULT_ALGO, false, false);
+  }
+
+  /**
+   * Tell whether a message carries OC-Supported-Features with the loss abatement algorithm,
+   * which is the default one when OC-Feature-Vector is missing
+   *
+   * @param avps AVPs of a request or an answer
+   */
+  public static boolean isSupported(AvpSet avps) throws AvpDataException {
+    Avp features = avps.getAvp(Avp.OC_SUPPORTED_FEATURES, 0);
+    if (features == null) {
+      return false;
+    }
+    Avp vector = features.getGrouped().getAvp(Avp.OC_FEATURE_VECTOR, 0);
+    return vector == null || (vector.getUnsigned64() & OLR_DEFAULT_ALGO) != 0;
+  }
+
+  /**
+   * Append an OC-OLR
+   *
+   * @param avps AVPs of an answer
+   * @param sequence OC-Sequence-Number
+   * @param type OC-Report-Type
+   * @param reduction OC-Reduction-Percentage
+   * @param validity OC-Validity-Duration, in seconds
+   */
+  public static void addOverloadReport(AvpSet avps, long sequence, int type, int reduction, long validity) {
+    AvpSet report = avps.addGroupedAvp(Avp.OC_OLR, false, false);
+    report.addAvp(Avp.OC_SEQUENCE_NUMBER, sequence, false, false);
+    report.addAvp(Avp.OC_REPORT_TYPE, type, false, false);
+    report.addAvp(Avp.OC_REDUCTION_PERCENTAGE, (long) reduction, false, false, true);
+    report.addAvp(Avp.OC_VALIDITY_DURATION, validity, false, false, true);
+  }
+
+  /**
+   * Apply a received report. Reports not newer than the one in force are ignored, a report with
+   * no reduction or no validity ends the overload.
+   *
+   * @param type OC-Report-Type
+   * @param key Origin-Host of a host report, Origin-Realm of a realm report
+   * @param sequence OC-Sequence-Number
+   * @param reduction OC-Reduction-Percentage
+   * @param validity OC-Validity-Duration, in seconds
+   * @param now current time in milliseconds
+   * @return true if the report replaced the one in force
+   */
+  public boolean update(int type, String key, long sequence, int reduction, long validity, long now) {
+    ConcurrentMap<String, Report> reports = type == REALM_REPORT ? realmReports : hostReports;
+    reduction = Math.max(0, Math.min(100, reduction));
+    validity = Math.min(MAX_VALIDITY, validity);
+    // an ended overload keeps its sequence number for a while, so that late answers do not restore it
+    Report report = reduction == 0 || validity <= 0
+        ? new Report(sequence, 0, now + DEFAULT_VALIDITY * 1000)
+        : new Report(sequence, reduction, now + validity * 1000);
+    while (true) {
+      Report current = reports.get(key);
+      if (current == null) {
+        if (reports.putIfAbsent(key, report) == null) {
+          return true;
+        }
+      }
+      else if (current.expiry > now && sequence <= current.sequence) {
+        return false;
+      }
+      else if (reports.replace(key, current, report)) {
+        return true;
+      }
+    }
+  }
+
+  /**
+   * Tell whether a request sent to a host is dropped by the report of that host
+   */
+  public boolean throttleHost(String host, long now) {
+    return throttle(hostReports, host, now);
+  }
+
+  /**
+   * Tell whether a realm routed request is dropped by the report of its destination realm
+   */
+  public boolean throttleRealm(String realm, long now) {
+    return throttle(realmReports, realm, now);
+  }
+
+  /**
+   * Tell whether a host has a report asking for a reduction in force
+   */
+  public boolean isReported(String host, long now) {
+    Report report = get(hostReports, host, now);
+    return report != null && report.reduction > 0;
+  }
+
+  /**
+   * @return number of reports asking for a reduction which are in force
+   */
+  public int size() {
+    long now = System.currentTimeMillis();
+    return count(hostReports, now) + count(realmReports, now);
+  }
+
+  /**
+   * @return number of requests dropped by the loss algorithm
+   */
+  public long getThrottled() {
+    return throttled.get();
+  }
+
+  /**
+   * Remove all reports
+   */
+  public void clear() {
+    hostReports.clear();
+    realmReports.clear();
+  }
+
+  private boolean throttle(ConcurrentMap<String, Report> reports, String key, long now) {
+    Report report = get(reports, key, now);
+    if (report != null && report.throttle()) {
+      throttled.incrementAndGet();
+      return true;
+    }
+    return false;
+  }
+
+  private static Report get(ConcurrentMap<String, Report> reports, String key, long now) {
+    if (key == null || reports.isEmpty()) {
+      return null;
+    }
+    Report report = reports.get(key);
+    if (report != null && report.expiry <= now) {
+      reports.remove(key, report);
+      return null;
+    }
+    return report;
+  }
+
+  private static int count(ConcurrentMap<String, Report> reports, long now) {
+    int count = 0;
+    for (Report report : reports.values()) {
+      if (report.reduction > 0 && report.expiry > now) {
+        count++;
+      }
+    }
+    return count;
+  }
+
+  private static final class Report {
+
+    final long sequence;
+    final int reduction;
+    final long expiry;
+    private final AtomicLong requests = new AtomicLong();
+
+    Report(long sequence, int reduction, long expiry) {
+      this.sequence = sequence;
+      this.reduction = reduction;
+      this.expiry = expiry;
+    }
+
+    // drops the request when it makes the count of dropped requests, requests * reduction / 100, grow
+    boolean throttle() {
+      if (reduction == 0) {
+        return false;
+      }
+      long n = requests.getAndIncrement();
+      return (n + 1) * reduction / 100 > n * reduction / 100;
+    }
+  }
+}
@@ -0,0 +1,279 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2011, Red Hat, Inc. and individual contributors
+ * by the @authors tag. See the copyright.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.jdiameter.client.impl.router;
+
+import static org.jdiameter.client.impl.router.RouterImpl.ALL_APPLICATION;
+import static org.jdiameter.client.impl.router.RouterImpl.ALL_HOST;
+import static org.jdiameter.client.impl.router.RouterImpl.ALL_REALM;
+import static org.jdiameter.client.impl.router.RouterImpl.ALL_SESSION;
+import static org.jdiameter.client.impl.router.RouterImpl.ALL_USER;
+import static org.jdiameter.client.impl.router.RouterImpl.REALM_AND_APPLICATION;
+
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.jdiameter.api.ApplicationId;
+import org.jdiameter.api.Avp;
+import org.jdiameter.api.AvpDataException;
+import org.jdiameter.client.api.IMessage;
+import org.jdiameter.client.impl.router.RouterImpl.RedirectEntry;
+
+/**
+ * Cache of redirect entries with one hash index per Redirect-Host-Usage, so that matching a
+ * request costs one lookup per usage type which has entries, whatever the number of entries.
+ * Entries expire after their Redirect-Max-Cache-Time; expired entries are dropped when they are
+ * looked up, or all at once when the cache is full.
+ */
+public class RedirectCache {
+
+  // RFC 6733, 6.13: precedence of cached routes when several of them match
+  private static final int[] USAGE_PRECEDENCE = {ALL_SESSION, ALL_USER, REALM_AND_APPLICATION, ALL_REALM, ALL_APPLICATION, ALL_HOST};
+
+  private final int capacity;
+  // indexed by usage type, REALM_AND_APPLICATION keeps its entries in realmAppIndex
+  private final Index[] indexes = new Index[ALL_USER + 1];
+  // application maps are removed once empty, under their own monitor
+  private final ConcurrentMap<String, ConcurrentMap<ApplicationId, RedirectEntry>> realmAppIndex =
+      new ConcurrentHashMap<String, ConcurrentMap<ApplicationId, RedirectEntry>>();
+  private final AtomicInteger size = new AtomicInteger();
+
+  private final AtomicLong hits = new AtomicLong();
+  private final AtomicLong misses = new AtomicLong();
+  private final AtomicLong evictions = new AtomicLong();
+
+  public RedirectCache(int capacity) {
+    this.capacity = capacity;
+    for (int usage : USAGE_PRECEDENCE) {
+      indexes[usage] = new Index();
+    }
+  }
+
+  /**
+   * Store entry, replacing an entry with the same usage type and key
+   *
+   * @param entry redirect entry
+   * @return false if the cache is full of live entries and the entry was not stored
+   */
+  public boolean put(RedirectEntry entry) {
+    int usage = entry.getUsageType();
+    if (usage < ALL_SESSION || usage > ALL_USER) {
+      return false;
+    }
+    if (size.get() >= capacity) {
+      purge(System.currentTimeMillis());
+      if (size.get() >= capacity) {
+        return false;
+      }
+    }
+    RedirectEntry old;
+    if (usage == REALM_AND_APPLICATION) {
+      old = putRealmApp(entry);
+    }
+    else {
+      old = indexes[usage].entries.put(key(entry), entry);
+    }
+    if (old == null) {
+      size.incrementAndGet();
+      indexes[usage].count.incrementAndGet();
+    }
+    return true;
+  }
+
+  /**
+   * Find the live entry which applies to a request
+   *
+   * @param message request
+   * @param destRealm Destination-Realm of the request
+   * @param destHost Destination-Host of the request, may be null
+   * @return matching entry or null
+   * @throws AvpDataException if the User-Name AVP can not be decoded
+   */
+  public RedirectEntry match(IMessage message, String destRealm, String destHost) throws AvpDataException {
+    if (size.get() == 0) {
+      return null;
+    }
+    long now = System.currentTimeMillis();
+    for (int usage : USAGE_PRECEDENCE) {
+      // keys are only extracted from the message when entries of the type exist
+      if (indexes[usage].count.get() == 0) {
+        continue;
+      }
+      RedirectEntry e = null;
+      switch (usage) {
+        case ALL_SESSION:
+          e = get(usage, message.getSessionId(), now);
+          break;
+        case ALL_USER:
+          Avp avpUserName = message.getAvps().getAvp(Avp.USER_NAME);
+          e = avpUserName != null ? get(usage, avpUserName.getUTF8String(), now) : null;
+          break;
+        case REALM_AND_APPLICATION:
+          ConcurrentMap<ApplicationId, RedirectEntry> apps = destRealm != null ? realmAppIndex.get(destRealm) : null;
+          ApplicationId appId = apps != null ? message.getSingleApplicationId() : null;
+          e = appId != null ? live(usage, apps, appId, apps.get(appId), now) : null;
+          if (apps != null && apps.isEmpty()) {
+            prune(destRealm, apps);
+          }
+          break;
+        case ALL_REALM:
+          e = get(usage, destRealm, now);
+          break;
+        case ALL_APPLICATION:
+          e = get(usage, message.getSingleApplicationId(), now);
+          break;
+        case ALL_HOST:
+          e = get(usage, destHost, now);
+          break;
+      }
+      if (e != null) {
+        hits.incrementAndGet();
+        return e;
+      }
+    }
+    misses.incrementAndGet();
+    return null;
+  }
+
+  public void clear() {
+    for (int usage : USAGE_PRECEDENCE) {
+      indexes[usage].entries.clear();
+      indexes[usage].count.set(0);
+    }
+    realmAppIndex.clear();
+    size.set(0);
+  }
+
+  /**
+   * @return number of cached entries, including expired ones which were not dropped yet
+   */
+  public int size() {
+    return size.get();
+  }
+
+  public long getHits() {
+    return hits.get();
+  }
+
+  public long getMisses() {
+    return misses.get();
+  }
+
+  /**
+   * @return number of entries dropped because they expired
+   */
+  public long getEvictions() {
+    return evictions.get();
+  }
+
+  private static Object key(RedirectEntry entry) {
+    return entry.getUsageType() == ALL_APPLICATION ? entry.secondaryKey : entry.primaryKey;
+  }
+
+  private RedirectEntry get(int usage, Object key, long now) {
+    if (key == null) {
+      return null;
+    }
+    ConcurrentMap<Object, RedirectEntry> index = indexes[usage].entries;
+    return live(usage, index, key, index.get(key), now);
+  }
+
+  private RedirectEntry putRealmApp(RedirectEntry entry) {
+    while (true) {
+      ConcurrentMap<ApplicationId, RedirectEntry> apps = realmAppIndex.get(entry.primaryKey);
+      if (apps == null) {
+        apps = new ConcurrentHashMap<ApplicationId, RedirectEntry>();
+        ConcurrentMap<ApplicationId, RedirectEntry> existing = realmAppIndex.putIfAbsent(entry.primaryKey, apps);
+        if (existing != null) {
+          apps = existing;
+        }
+      }
+      synchronized (apps) {
+        // retry when the map was pruned meanwhile
+        if (realmAppIndex.get(entry.primaryKey) == apps) {
+          return apps.put(entry.secondaryKey, entry);
+        }
+      }
+    }
+  }
+
+  private void prune(String realm, ConcurrentMap<ApplicationId, RedirectEntry> apps) {
+    synchronized (apps) {
+      if (apps.isEmpty()) {
+        realmAppIndex.remove(realm, apps);
+      }
+    }
+  }
+
+  private <K> RedirectEntry live(int usage, ConcurrentMap<K, RedirectEntry> index, K key, RedirectEntry e, long now) {
+    if (e != null && e.getExpiredTime() <= now) {
+      evict(usage, index, key, e);
+      return null;
+    }
+    return e;
+  }
+
+  private <K> void evict(int usage, ConcurrentMap<K, RedirectEntry> index, K key, RedirectEntry e) {
+    // a newer entry for the same key stays
+    if (index.remove(key, e)) {
+      size.decrementAndGet();
+      indexes[usage].count.decrementAndGet();
+      evictions.incrementAndGet();
+    }
+  }
+
+  private void purge(long now) {
+    for (int usage : USAGE_PRECEDENCE) {
+      if (usage == REALM_AND_APPLICATION) {
+        for (Map.Entry<String, ConcurrentMap<ApplicationId, RedirectEntry>> apps : realmAppIndex.entrySet()) {
+          purge(usage, apps.getValue(), now);
+          if (apps.getValue().isEmpty()) {
+            prune(apps.getKey(), apps.getValue());
+          }
+        }
+      }
+      else {
+        purge(usage, indexes[usage].entries, now);
+      }
+    }
+  }
+
+  private <K> void purge(int usage, ConcurrentMap<K, RedirectEntry> index, long now) {
+    for (Iterator<Map.Entry<K, RedirectEntry>> it = index.entrySet().iterator(); it.hasNext();) {
+      Map.Entry<K, RedirectEntry> entry = it.next();
+      if (entry.getValue().getExpiredTime() <= now) {
+        evict(usage, index, entry.getKey(), entry.getValue());
+      }
+    }
+  }
+
+  private static final class Index {
+
+    // unused for REALM_AND_APPLICATION
+    final ConcurrentMap<Object, RedirectEntry> entries = new ConcurrentHashMap<Object, RedirectEntry>();
+    final AtomicInteger count = new AtomicInteger();
+  }
+}
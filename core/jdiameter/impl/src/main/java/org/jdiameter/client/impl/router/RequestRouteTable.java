@@ -0,0 +1,340 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2006-2011, Red Hat, Inc. and individual contributors
+ * by the @authors tag. See the copyright.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.jdiameter.client.impl.router;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Concurrent table of answer routing entries keyed by a primitive long. The table is split
+ * in stripes, each an open addressing hash table guarded by its own monitor, so lookups
+ * neither box the key nor allocate.
+ * <p>
+ * Every entry carries an expiry time. Expired entries are never returned and are purged
+ * when they are looked up or when a stripe runs out of room; a stripe which is still full
+ * after purging grows instead of dropping live entries.
+ *
+ * @param <V> type of the routing information
+ */
+public class RequestRouteTable<V> {
+
+  private static final int STRIPES = 16;
+  private static final int STRIPE_SHIFT = 60; // top 4 bits of the hash select the stripe
+  private static final int MIN_STRIPE_CAPACITY = 16;
+
+  private final Stripe[] stripes = new Stripe[STRIPES];
+  private final AtomicInteger size = new AtomicInteger();
+  private final AtomicLong expired = new AtomicLong();
+
+  /**
+   * Create table
+   *
+   * @param capacity expected number of entries
+   */
+  public RequestRouteTable(int capacity) {
+    int stripeCapacity = MIN_STRIPE_CAPACITY;
+    while (stripeCapacity * STRIPES < capacity * 2 && stripeCapacity < (1 << 28)) {
+      stripeCapacity <<= 1;
+    }
+    for (int i = 0; i < STRIPES; i++) {
+      stripes[i] = new Stripe(stripeCapacity, size, expired);
+    }
+  }
+
+  /**
+   * Builds the table key from a hop-by-hop and an end-to-end identifier, both unsigned 32 bit
+   */
+  public static long key(long hopByHopId, long endToEndId) {
+    return (endToEndId << 32) | (hopByHopId & 0xFFFFFFFFL);
+  }
+
+  /**
+   * Store entry
+   *
+   * @param key entry key
+   * @param value routing information
+   * @param expiryTime time in ms after which the entry is not valid anymore
+   * @return value of the live entry which was replaced, or null
+   */
+  @SuppressWarnings("unchecked")
+  public V put(long key, V value, long expiryTime) {
+    if (value == null) {
+      throw new NullPointerException("value");
+    }
+    long hash = hash(key);
+    return (V) stripes[(int) (hash >>> STRIPE_SHIFT)].put(key, (int) hash, value, expiryTime);
+  }
+
+  /**
+   * Replace the value of an entry if it is still the expected one, compared by identity
+   *
+   * @param key entry key
+   * @param expected value of the live entry, or null if there must be no live entry
+   * @param value new routing information, or null to remove the entry
+   * @param expiryTime time in ms after which the new entry is not valid anymore
+   * @return true if the entry was replaced
+   */
+  public boolean replace(long key, V expected, V value, long expiryTime) {
+    long hash = hash(key);
+    return stripes[(int) (hash >>> STRIPE_SHIFT)].replace(key, (int) hash, expected, value, expiryTime);
+  }
+
+  /**
+   * Return the routing information of a live entry
+   *
+   * @param key entry key
+   * @param now current time in ms
+   * @return routing information or null if there is no live entry
+   */
+  @SuppressWarnings("unchecked")
+  public V get(long key, long now) {
+    long hash = hash(key);
+    return (V) stripes[(int) (hash >>> STRIPE_SHIFT)].get(key, (int) hash, now);
+  }
+
+  /**
+   * Remove entry
+   *
+   * @param key entry key
+   * @return removed routing information or null
+   */
+  @SuppressWarnings("unchecked")
+  public V remove(long key) {
+    long hash = hash(key);
+    return (V) stripes[(int) (hash >>> STRIPE_SHIFT)].remove(key, (int) hash);
+  }
+
+  /**
+   * Remove all entries
+   */
+  public void clear() {
+    for (Stripe stripe : stripes) {
+      stripe.clear();
+    }
+  }
+
+  /**
+   * @return number of stored entries, including expired ones which were not purged yet
+   */
+  public int size() {
+    return size.get();
+  }
+
+  /**
+   * @return number of entries purged because they expired
+   */
+  public long getExpiredCount() {
+    return expired.get();
+  }
+
+  private static long hash(long key) {
+    // MurmurHash3 finalizer, spreads the identifiers over both the stripe and the slot bits
+    key ^= key >>> 33;
+    key *= 0xff51afd7ed558ccdL;
+    key ^= key >>> 33;
+    key *= 0xc4ceb9fe1a85ec53L;
+    key ^= key >>> 33;
+    return key;
+  }
+
+  private static final class Stripe {
+
+    private final AtomicInteger size;
+    private final AtomicLong expired;
+    private long[] keys;
+    private long[] expiryTimes;
+    private Object[] values; // null marks a free slot
+    private int count;
+
+    Stripe(int capacity, AtomicInteger size, AtomicLong expired) {
+      this.size = size;
+      this.expired = expired;
+      allocate(capacity);
+    }
+
+    private void allocate(int capacity) {
+      keys = new long[capacity];
+      expiryTimes = new long[capacity];
+      values = new Object[capacity];
+    }
+
+    synchronized Object put(long key, int hash, Object value, long expiryTime) {
+      int mask = values.length - 1;
+      int i = hash & mask;
+      while (values[i] != null) {
+        if (keys[i] == key) {
+          Object old = values[i];
+          boolean live = expiryTimes[i] > System.currentTimeMillis();
+          if (!live) {
+            expired.incrementAndGet();
+          }
+          values[i] = value;
+          expiryTimes[i] = expiryTime;
+          return live ? old : null;
+        }
+        i = (i + 1) & mask;
+      }
+      values[i] = value;
+      keys[i] = key;
+      expiryTimes[i] = expiryTime;
+      size.incrementAndGet();
+      if (++count > (values.length >> 1) + (values.length >> 2)) {
+        purge(System.currentTimeMillis());
+        if (count > values.length >> 1) {
+          rehash(values.length << 1);
+        }
+      }
+      return null;
+    }
+
+    synchronized boolean replace(long key, int hash, Object expected, Object value, long expiryTime) {
+      int i = indexOf(key, hash);
+      if (i >= 0 && expiryTimes[i] <= System.currentTimeMillis()) {
+        delete(i);
+        expired.incrementAndGet();
+        i = -1;
+      }
+      if ((i < 0 ? null : values[i]) != expected) {
+        return false;
+      }
+      if (value == null) {
+        if (i >= 0) {
+          delete(i);
+        }
+      }
+      else if (i >= 0) {
+        values[i] = value;
+        expiryTimes[i] = expiryTime;
+      }
+      else {
+        put(key, hash, value, expiryTime);
+      }
+      return true;
+    }
+
+    synchronized Object get(long key, int hash, long now) {
+      int i = indexOf(key, hash);
+      if (i < 0) {
+        return null;
+      }
+      if (expiryTimes[i] <= now) {
+        delete(i);
+        expired.incrementAndGet();
+        return null;
+      }
+      return values[i];
+    }
+
+    synchronized Object remove(long key, int hash) {
+      int i = indexOf(key, hash);
+      if (i < 0) {
+        return null;
+      }
+      Object old = values[i];
+      delete(i);
+      return old;
+    }
+
+    synchronized void clear() {
+      size.addAndGet(-count);
+      count = 0;
+      allocate(values.length);
+    }
+
+    private int indexOf(long key, int hash) {
+      int mask = values.length - 1;
+      int i = hash & mask;
+      while (values[i] != null) {
+        if (keys[i] == key) {
+          return i;
+        }
+        i = (i + 1) & mask;
+      }
+      return -1;
+    }
+
+    private void purge(long now) {
+      int removed = 0;
+      Object[] oldValues = values;
+      for (int i = 0; i < oldValues.length; i++) {
+        if (oldValues[i] != null && expiryTimes[i] <= now) {
+          oldValues[i] = null;
+          removed++;
+        }
+      }
+      if (removed > 0) {
+        expired.addAndGet(removed);
+        // rebuild probe sequences broken by the freed slots
+        rehash(values.length);
+      }
+    }
+
+    private void rehash(int capacity) {
+      long[] oldKeys = keys;
+      long[] oldExpiryTimes = expiryTimes;
+      Object[] oldValues = values;
+      allocate(capacity);
+      int mask = capacity - 1;
+      int live = 0;
+      for (int j = 0; j < oldValues.length; j++) {
+        if (oldValues[j] != null) {
+          int i = (int) hash(oldKeys[j]) & mask;
+          while (values[i] != null) {
+            i = (i + 1) & mask;
+          }
+          keys[i] = oldKeys[j];
+          expiryTimes[i] = oldExpiryTimes[j];
+          values[i] = oldValues[j];
+          live++;
+        }
+      }
+      size.addAndGet(live - count);
+      count = live;
+    }
+
+    // backward shift deletion, keeps probe sequences intact without tombstones
+    private void delete(int i) {
+      int mask = values.length - 1;
+      values[i] = null;
+      count--;
+      size.decrementAndGet();
+      int j = i;
+      while (true) {
+        j = (j + 1) & mask;
+        if (values[j] == null) {
+          return;
+        }
+        int home = (int) hash(keys[j]) & mask;
+        // move the entry into the hole unless its home slot lies cyclically in (i, j]
+        if (i <= j ? (i < home && home <= j) : (i < home || home <= j)) {
+          continue;
+        }
+        keys[i] = keys[j];
+        expiryTimes[i] = expiryTimes[j];
+        values[i] = values[j];
+        values[j] = null;
+        i = j;
+      }
+    }
+  }
+}
@@ -26,6 +26,8 @@ import static org.jdiameter.client.impl.helpers.Parameters.AcctApplId;
 import static org.jdiameter.client.impl.helpers.Parameters.Agent;
 import static org.jdiameter.client.impl.helpers.Parameters.ApplicationId;
 import static org.jdiameter.client.impl.helpers.Parameters.AuthApplId;
+import static org.jdiameter.client.impl.helpers.Parameters.MessageTimeOut;
+import static org.jdiameter.client.impl.helpers.Parameters.OverloadControl;
 import static org.jdiameter.client.impl.helpers.Parameters.OwnRealm;
 import static org.jdiameter.client.impl.helpers.Parameters.RealmEntry;
 import static org.jdiameter.client.impl.helpers.Parameters.RealmTable;
@@ -44,14 +46,9 @@ import java.net.URISyntaxException;
 import java.net.UnknownServiceException;
 import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.List;
-import java.util.Map;
-//PCB added for thread safe
 import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.locks.Lock;
-import java.util.concurrent.locks.ReadWriteLock;
-import java.util.concurrent.locks.ReentrantLock;
-import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.jdiameter.api.ApplicationId;
 import org.jdiameter.api.Avp;
@@ -66,6 +63,7 @@ import org.jdiameter.api.MetaData;
 import org.jdiameter.api.PeerState;
 import org.jdiameter.api.RouteException;
 import org.jdiameter.api.URI;
+import org.jdiameter.api.app.StateChangeListener;
 import org.jdiameter.client.api.IAnswer;
 import org.jdiameter.client.api.IContainer;
 import org.jdiameter.client.api.IMessage;
@@ -74,10 +72,14 @@ import org.jdiameter.client.api.controller.IPeer;
 import org.jdiameter.client.api.controller.IPeerTable;
 import org.jdiameter.client.api.controller.IRealm;
 import org.jdiameter.client.api.controller.IRealmTable;
+import org.jdiameter.client.api.router.IPeerSelectionStrategy;
 import org.jdiameter.client.api.router.IRouter;
 import org.jdiameter.client.impl.helpers.AppConfiguration;
 import org.jdiameter.client.impl.helpers.Parameters;
 import org.jdiameter.common.api.concurrent.IConcurrentFactory;
+import org.jdiameter.common.api.statistic.IStatistic;
+import org.jdiameter.common.api.statistic.IStatisticManager;
+import org.jdiameter.common.api.statistic.IStatisticRecord;
 import org.jdiameter.server.api.agent.IAgentConfiguration;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -105,21 +107,46 @@ public class RouterImpl implements IRouter {
   protected IRealmTable realmTable;
   // Redirection feature
   public final int REDIRECT_TABLE_SIZE = 1024;
-  //TODO: index it differently.
-  protected List<RedirectEntry> redirectTable = new ArrayList<RedirectEntry>(REDIRECT_TABLE_SIZE);
+  protected RedirectCache redirectCache = new RedirectCache(REDIRECT_TABLE_SIZE);
   protected IConcurrentFactory concurrentFactory;
 
   protected IContainer container;
 
   // Answer routing feature
   public static int REQUEST_TABLE_SIZE = 10 * 1024;
+  // kept for configuration compatibility, the table is not cleared in bulk anymore
   public static int REQUEST_TABLE_CLEAR_SIZE = 2 * 1024;
 
-  protected Lock requestEntryTableLock = new ReentrantLock();
-  protected ReadWriteLock redirectTableLock = new ReentrantReadWriteLock();
-  //PCB added
-  protected Map<String, AnswerEntry> requestEntryMap;
-  //protected List<Long> requestSortedEntryTable = new ArrayList<Long>();
+  // answer routing entries, keyed by end-to-end and hop-by-hop id, see RequestRouteTable.key, requests
+  // of different sessions which have the same identifiers are chained behind each other
+  protected RequestRouteTable<AnswerEntry> requestEntryTable;
+  // entries live as long as the request they were made for may be answered
+  protected long requestEntryTimeout;
+  protected final AtomicLong requestEntryMissed = new AtomicLong();
+  protected IStatistic routerStatistic;
+
+  // Overload control feature (RFC 7683), reports received from the hosts and realms requests are sent to
+  protected boolean overloadControl;
+  protected final OverloadReportTable overloadReports = new OverloadReportTable();
+
+  // Peer selection
+  protected IPeerSelectionStrategy peerSelectionStrategy;
+  // available peers per realm, valid while the generation is not bumped by a peer state change
+  protected final ConcurrentHashMap<IRealm, RealmPeers> realmPeers = new ConcurrentHashMap<IRealm, RealmPeers>();
+  protected final AtomicInteger realmPeersGeneration = new AtomicInteger();
+  protected final ConcurrentHashMap<IPeer, Boolean> observedPeers = new ConcurrentHashMap<IPeer, Boolean>();
+  @SuppressWarnings("rawtypes")
+  protected final StateChangeListener peerStateListener = new StateChangeListener() {
+    @Deprecated
+    public void stateChanged(Enum oldState, Enum newState) {
+      stateChanged(null, oldState, newState);
+    }
+
+    public void stateChanged(Object source, Enum oldState, Enum newState) {
+      realmPeersGeneration.incrementAndGet();
+      realmPeers.clear();
+    }
+  };
   protected boolean isStopped = true;
 
   public RouterImpl(IContainer container,IConcurrentFactory concurrentFactory, IRealmTable realmTable,Configuration config, MetaData aMetaData) {
@@ -129,6 +156,102 @@ public class RouterImpl implements IRouter {
     this.container = container;
     logger.debug("Constructor for RouterImpl: Calling loadConfiguration");
     loadConfiguration(config);
+    this.peerSelectionStrategy = container.getAssemblerFacility().getComponentInstance(IPeerSelectionStrategy.class);
+    if (this.peerSelectionStrategy == null) {
+      this.peerSelectionStrategy = new RatingPeerSelectionStrategy();
+    }
+    logger.debug("Using peer selection strategy [{}]", peerSelectionStrategy.getClass().getName());
+    IStatisticManager statisticFactory = container.getAssemblerFacility().getComponentInstance(IStatisticManager.class);
+    if (statisticFactory != null) {
+      createStatistic(statisticFactory);
+    }
+  }
+
+  protected void createStatistic(IStatisticManager statisticFactory) {
+    IStatisticRecord sizeRecord = statisticFactory.newCounterRecord(IStatisticRecord.Counters.RequestRouteTableSize, new IStatisticRecord.IntegerValueHolder() {
+      public int getValueAsInt() {
+        return requestEntryTable != null ? requestEntryTable.size() : 0;
+      }
+
+      public String getValueAsString() {
+        return String.valueOf(getValueAsInt());
+      }
+    });
+    IStatisticRecord expiredRecord = statisticFactory.newCounterRecord(IStatisticRecord.Counters.RequestRouteExpired, new IStatisticRecord.LongValueHolder() {
+      public long getValueAsLong() {
+        return requestEntryTable != null ? requestEntryTable.getExpiredCount() : 0;
+      }
+
+      public String getValueAsString() {
+        return String.valueOf(getValueAsLong());
+      }
+    });
+    IStatisticRecord missedRecord = statisticFactory.newCounterRecord(IStatisticRecord.Counters.RequestRouteMissed, new IStatisticRecord.LongValueHolder() {
+      public long getValueAsLong() {
+        return requestEntryMissed.get();
+      }
+
+      public String getValueAsString() {
+        return String.valueOf(getValueAsLong());
+      }
+    });
+    IStatisticRecord redirectSizeRecord = statisticFactory.newCounterRecord(IStatisticRecord.Counters.RedirectCacheSize, new IStatisticRecord.IntegerValueHolder() {
+      public int getValueAsInt() {
+        return redirectCache != null ? redirectCache.size() : 0;
+      }
+
+      public String getValueAsString() {
+        return String.valueOf(getValueAsInt());
+      }
+    });
+    IStatisticRecord redirectHitsRecord = statisticFactory.newCounterRecord(IStatisticRecord.Counters.RedirectCacheHits, new IStatisticRecord.LongValueHolder() {
+      public long getValueAsLong() {
+        return redirectCache != null ? redirectCache.getHits() : 0;
+      }
+
+      public String getValueAsString() {
+        return String.valueOf(getValueAsLong());
+      }
+    });
+    IStatisticRecord redirectMissesRecord = statisticFactory.newCounterRecord(IStatisticRecord.Counters.RedirectCacheMisses, new IStatisticRecord.LongValueHolder() {
+      public long getValueAsLong() {
+        return redirectCache != null ? redirectCache.getMisses() : 0;
+      }
+
+      public String getValueAsString() {
+        return String.valueOf(getValueAsLong());
+      }
+    });
+    IStatisticRecord redirectEvictionsRecord = statisticFactory.newCounterRecord(IStatisticRecord.Counters.RedirectCacheEvictions, new IStatisticRecord.LongValueHolder() {
+      public long getValueAsLong() {
+        return redirectCache != null ? redirectCache.getEvictions() : 0;
+      }
+
+      public String getValueAsString() {
+        return String.valueOf(getValueAsLong());
+      }
+    });
+    IStatisticRecord overloadReportsRecord = statisticFactory.newCounterRecord(IStatisticRecord.Counters.OverloadReports, new IStatisticRecord.IntegerValueHolder() {
+      public int getValueAsInt() {
+        return overloadReports.size();
+      }
+
+      public String getValueAsString() {
+        return String.valueOf(getValueAsInt());
+      }
+    });
+    IStatisticRecord overloadThrottledRecord = statisticFactory.newCounterRecord(IStatisticRecord.Counters.OverloadThrottled, new IStatisticRecord.LongValueHolder() {
+      public long getValueAsLong() {
+        return overloadReports.getThrottled();
+      }
+
+      public String getValueAsString() {
+        return String.valueOf(getValueAsLong());
+      }
+    });
+    //no need to remove, this class lives with whole stack, until its destroyed.
+    routerStatistic = statisticFactory.newStatistic("router", IStatistic.Groups.Router, sizeRecord, expiredRecord, missedRecord,
+        redirectSizeRecord, redirectHitsRecord, redirectMissesRecord, redirectEvictionsRecord, overloadReportsRecord, overloadThrottledRecord);
   }
 
   protected void loadConfiguration(Configuration config) {
@@ -158,9 +281,10 @@ public class RouterImpl implements IRouter {
       REQUEST_TABLE_SIZE = (int) tSize;
       REQUEST_TABLE_CLEAR_SIZE = (int) tClearSize;
     }
-    //PCB added thread safety
-    this.requestEntryMap = new ConcurrentHashMap<String, AnswerEntry>(REQUEST_TABLE_SIZE);
-    logger.debug("Configured Request Table with size[{}] and clear size[{}].", REQUEST_TABLE_SIZE, REQUEST_TABLE_CLEAR_SIZE);
+    this.requestEntryTable = new RequestRouteTable<AnswerEntry>(REQUEST_TABLE_SIZE);
+    this.requestEntryTimeout = config.getLongValue(MessageTimeOut.ordinal(), (Long) MessageTimeOut.defValue());
+    logger.debug("Configured Request Table with size[{}] and entry timeout [{}] ms.", REQUEST_TABLE_SIZE, requestEntryTimeout);
+    this.overloadControl = config.getBooleanValue(OverloadControl.ordinal(), (Boolean) OverloadControl.defValue());
 
     //add realms based on realm table.
     if (config.getChildren(RealmTable.ordinal()) != null) {
@@ -225,87 +349,75 @@ public class RouterImpl implements IRouter {
   public void registerRequestRouteInfo(IRequest request) {
     logger.debug("Entering registerRequestRouteInfo");
     try {
-      // PCB removed lock
-      // requestEntryTableLock.writeLock().lock();
       long hopByHopId = request.getHopByHopIdentifier();
       Avp hostAvp = request.getAvps().getAvp(Avp.ORIGIN_HOST);
       Avp realmAvp = request.getAvps().getAvp(Avp.ORIGIN_REALM);
-      AnswerEntry entry = new AnswerEntry(hopByHopId, hostAvp != null ? hostAvp.getDiameterIdentity() : null,
-          realmAvp != null ? realmAvp.getDiameterIdentity() : null);
-
-      int s = requestEntryMap.size();
-      // PCB added logging
-      logger.debug("RequestRoute map size is [{}]", s);
-
-      //PCB added
-      if (s > REQUEST_TABLE_CLEAR_SIZE) {
-        try {
-          requestEntryTableLock.lock();
-          s = requestEntryMap.size();
-          logger.debug("After 'lock', RequestRoute map size is [{}]", s);
-          // The double-check with a gap is in case while about to clear the map, it drops below REQUEST_TABLE_SIZE due to a
-          // response being sent, and then the lock might not be in effect for another thread
-          // Hence lock at REQUEST_TABLE_CLEAR_SIZE and clear at REQUEST_TABLE_SIZE so that all threads would be locked not
-          // just the first to reach REQUEST_TABLE_SIZE
-          if (s > REQUEST_TABLE_SIZE) {
-            // Going to clear it out and suffer the consequences of some messages possibly not being routed back the clients..
-            logger.warn("RequestRoute map size is [{}]. There's probably a leak. Cleaning up after a short wait...", s);
-            // Lets do our best to avoid lost messages by locking table from writes (as this is the only code writing to it),
-            // sleeping for a while for responses to be sent and then clearing it
-            Thread.sleep(5000);
-            logger.warn("RequestRoute map size is now [{}] after sleeping. Clearing it!", requestEntryMap.size());
-            requestEntryMap.clear();
-          }
-        }
-        catch (Exception e) {
-          logger.warn("Failure trying to clear RequestRoute map", e);
-        }
-        finally {
-          requestEntryTableLock.unlock();
-        }
+      String host = hostAvp != null ? hostAvp.getDiameterIdentity() : null;
+      String realm = realmAvp != null ? realmAvp.getDiameterIdentity() : null;
+      String sessionId = request.getSessionId();
+
+      long key = RequestRouteTable.key(hopByHopId, request.getEndToEndIdentifier());
+      long now = System.currentTimeMillis();
+      AnswerEntry current;
+      AnswerEntry entry;
+      do {
+        current = requestEntryTable.get(key, now);
+        // a retransmission replaces the entry of its session, entries of other sessions are kept
+        entry = new AnswerEntry(hopByHopId, host, realm, sessionId, now + requestEntryTimeout,
+            current != null ? current.without(sessionId, now) : null);
+      }
+      while (!requestEntryTable.replace(key, current, entry, entry.getExpiryTime()));
+      if (entry.next != null) {
+        logger.debug("Request with hop-by-hop id [{}] has the same identifiers as a pending request from [{}]", hopByHopId, entry.next.getHost());
+      }
+      if (logger.isDebugEnabled()) {
+        logger.debug("Added hop-by-hop id [{}] to RequestRoute table for routing answers back to the requesting peer. Table size is [{}]",
+            hopByHopId, requestEntryTable.size());
       }
-
-      String messageKey = makeRoutingKey(request);
-      logger.debug("Adding request key [{}] to RequestRoute map for routing answers back to the requesting peer", messageKey);
-      requestEntryMap.put(messageKey, entry);
-      // requestSortedEntryTable.add(hopByHopId);
     }
     catch (Exception e) {
       logger.warn("Unable to store route info", e);
     }
-    finally {
-      // requestEntryTableLock.writeLock().unlock();
-    }
-  }
-
-  // PCB - Made better routing algorithm that should not grow all the time
-  private String makeRoutingKey(Message message) {
-    String sessionId = message.getSessionId();
-    return new StringBuilder(sessionId != null ? sessionId : "null").append(message.getEndToEndIdentifier())
-        .append(message.getHopByHopIdentifier()).toString();
   }
 
   public String[] getRequestRouteInfo(IMessage message) {
-    String messageKey = makeRoutingKey(message);
-    AnswerEntry ans = requestEntryMap.get(messageKey);
+    long key = RequestRouteTable.key(message.getHopByHopIdentifier(), message.getEndToEndIdentifier());
+    long now = System.currentTimeMillis();
+    AnswerEntry ans = requestEntryTable.get(key, now);
+    if (ans != null) {
+      ans = ans.find(message.getSessionId(), now);
+    }
     if (ans != null) {
       if (logger.isDebugEnabled()) {
-        logger.debug("getRequestRouteInfo found host [{}] and realm [{}] for Message key Id [{}]", new Object[]{ans.getHost(), ans.getRealm(), messageKey});
+        logger.debug("getRequestRouteInfo found host [{}] and realm [{}] for hop-by-hop id [{}]", new Object[]{ans.getHost(), ans.getRealm(),
+            message.getHopByHopIdentifier()});
       }
-      return new String[] {ans.getHost(), ans.getRealm()};
+      return ans.getRouteInfo();
     }
     else {
+      requestEntryMissed.incrementAndGet();
       if(logger.isWarnEnabled()) {
-        logger.warn("Could not find route info for message key [{}]. Table size is [{}]", messageKey, requestEntryMap.size());
+        logger.warn("Could not find route info for hop-by-hop id [{}] and end-to-end id [{}]. Table size is [{}]", new Object[]{
+            message.getHopByHopIdentifier(), message.getEndToEndIdentifier(), requestEntryTable.size()});
       }
       return null;
     }
   }
 
-  //PCB added
   public void garbageCollectRequestRouteInfo(IMessage message) {
-    String messageKey = makeRoutingKey(message);
-    requestEntryMap.remove(messageKey);
+    long key = RequestRouteTable.key(message.getHopByHopIdentifier(), message.getEndToEndIdentifier());
+    long now = System.currentTimeMillis();
+    String sessionId = message.getSessionId();
+    while (true) {
+      AnswerEntry current = requestEntryTable.get(key, now);
+      if (current == null) {
+        return;
+      }
+      AnswerEntry rest = current.without(sessionId, now);
+      if (rest == current || requestEntryTable.replace(key, current, rest, rest != null ? rest.getExpiryTime() : 0)) {
+        return;
+      }
+    }
   }
 
   public IPeer getPeer(IMessage message, IPeerTable manager) throws RouteException, AvpDataException {
@@ -369,6 +481,12 @@ public class RouterImpl implements IRouter {
       throw new RouteException("Unknown realm name [" + destRealm + "]");
     }
 
+    // Overload control, retransmitted requests have passed it already
+    boolean abate = overloadControl && message.isRequest() && !message.isReTransmitted();
+    if (abate) {
+      abateRequest(message, destRealm, destHost);
+    }
+
     // THIS IS GET PEER, NOT ROUTE!!!!!!!
     // Redirect processing
     //redirectProcessing(message, destRealm, destHost);
@@ -391,42 +509,33 @@ public class RouterImpl implements IRouter {
     }
     else {
       logger.debug("Finding peer by destination host avp [host={}] did not find anything. Now going to try finding one by destination realm [{}]", destHost, destRealm);
-      String peers[] = matchedRealm.getPeerNames();
-      if (peers == null || peers.length == 0) {
-        throw new RouteException("Unable to find context by route information [" + destRealm + " ," + destHost + "]");
-      }
-
-      // Collect peers
-      ArrayList<IPeer> availablePeers = new ArrayList<IPeer>(5);
-      logger.debug("Looping through peers in realm [{}]", destRealm);
-      for (String peerName : peers) {
-        IPeer localPeer = (IPeer) manager.getPeer(peerName);
-        if(logger.isDebugEnabled()) {
-          logger.debug("Checking peer [{}] for name [{}]", new Object[]{localPeer,peerName});
-        }
-        // ammendonca: added peer state check.. should not be needed but 
-        // hasValidConnection is returning true for disconnected peers in *FTFlowTests
-        if (localPeer != null && localPeer.getState(PeerState.class) == PeerState.OKAY) {
-          if(localPeer.hasValidConnection()) {
-            if(logger.isDebugEnabled()) {
-              logger.debug("Found available peer to add to available peer list with uri [{}] with a valid connection", localPeer.getUri().toString());
-            }
-            availablePeers.add(localPeer);
+      RealmPeers cached = realmPeers.get(matchedRealm);
+      if (cached != null && cached.isValid(matchedRealm)) {
+        IPeer peer = selectPeer(cached.peers, message);
+        if (peer != null && peer.hasValidConnection()) {
+          if (abate) {
+            peer = abatePeer(peer, cached.peers, destRealm);
           }
-          else {
-            if(logger.isDebugEnabled()) {
-              logger.debug("Found a peer with uri [{}] with no valid connection", localPeer.getUri());
-            }
+          if (logger.isDebugEnabled()) {
+            logger.debug("Load balancing selected peer with uri [{}] from cached realm peers", peer.getUri());
           }
+          return peer;
         }
+        // connection is gone before its state change was seen, look at the peers again
+        realmPeers.remove(matchedRealm, cached);
+      }
+      String peers[] = matchedRealm.getPeerNames();
+      if (peers == null || peers.length == 0) {
+        throw new RouteException("Unable to find context by route information [" + destRealm + " ," + destHost + "]");
       }
 
+      IPeer[] availablePeers = getAvailablePeers(matchedRealm, peers, manager);
       if(logger.isDebugEnabled()) {
-        logger.debug("Performing Realm routing. Realm [{}] has the following peers available [{}] from list [{}]", new Object[] {destRealm, availablePeers, Arrays.asList(peers)});
+        logger.debug("Performing Realm routing. Realm [{}] has the following peers available [{}] from list [{}]", new Object[] {destRealm, Arrays.asList(availablePeers), Arrays.asList(peers)});
       }
 
       // Balancing
-      IPeer peer = selectPeer(availablePeers);
+      IPeer peer = selectPeer(availablePeers, message);
       if (peer == null) {
         throw new RouteException("Unable to find valid connection to peer[" + destHost + "] in realm[" + destRealm + "]");
       }
@@ -435,9 +544,43 @@ public class RouterImpl implements IRouter {
           logger.debug("Load balancing selected peer with uri [{}]", peer.getUri());
         }
       }
+      if (abate) {
+        peer = abatePeer(peer, availablePeers, destRealm);
+      }
+
+      return peer;
+    }
+  }
+
+  /**
+   * Applies the overload reports of the destination host, or of the destination realm for a realm
+   * routed request. The peer announces overload control support when it sends the request.
+   */
+  protected void abateRequest(IMessage message, String destRealm, String destHost) throws RouteException {
+    long now = System.currentTimeMillis();
+    if (destHost != null ? overloadReports.throttleHost(destHost, now) : overloadReports.throttleRealm(destRealm, now)) {
+      throw new RouteException("Request to [" + (destHost != null ? destHost : destRealm) + "] throttled by overload report");
+    }
+  }
 
+  /**
+   * Diverts a realm routed request, which the overload report of the selected peer throttles, to
+   * a peer of the realm without report. The request is throttled if there is none.
+   */
+  protected IPeer abatePeer(IPeer peer, IPeer[] availablePeers, String destRealm) throws RouteException {
+    long now = System.currentTimeMillis();
+    if (!overloadReports.throttleHost(peer.getUri().getFQDN(), now)) {
       return peer;
     }
+    for (IPeer other : availablePeers) {
+      if (other != peer && other.hasValidConnection() && !overloadReports.isReported(other.getUri().getFQDN(), now)) {
+        if (logger.isDebugEnabled()) {
+          logger.debug("Request diverted from overloaded peer [{}] to peer [{}]", peer.getUri(), other.getUri());
+        }
+        return other;
+      }
+    }
+    throw new RouteException("Request to realm [" + destRealm + "] throttled by overload report of peer [" + peer.getUri() + "]");
   }
 
   public IRealmTable getRealmTable() {
@@ -510,19 +653,8 @@ public class RouterImpl implements IRouter {
             break;
         }
         //
-        if(redirectTable.size()> REDIRECT_TABLE_SIZE) {
-          try {
-            //yes, possible that this will trigger this procedure twice, but thats worst than locking always.
-            redirectTableLock.writeLock().lock();
-            trimRedirectTable();
-          }
-          finally {
-            redirectTableLock.writeLock().unlock();
-          }
-        }
-        if (REDIRECT_TABLE_SIZE > redirectTable.size()) {
-          RedirectEntry e = new RedirectEntry(primaryKey, secondaryKey, redirectCacheTime, redirectUsage, redirectHosts, destinationRealm);
-          redirectTable.add(e);
+        RedirectEntry e = new RedirectEntry(primaryKey, secondaryKey, redirectCacheTime, redirectUsage, redirectHosts, destinationRealm);
+        if (redirectCache.put(e)) {
           //redirectProcessing(answer,destRealm.getOctetString(),destHost !=null ? destHost.getOctetString():null);
           //we dont have to elect?
           updateRoute(request,e.getRedirectHost());
@@ -556,24 +688,6 @@ public class RouterImpl implements IRouter {
     }
   }
 
-  /**
-   * 
-   */
-  private void trimRedirectTable() {
-    for(int index = 0; index < redirectTable.size(); index++) {
-      try{
-        if(redirectTable.get(index).getExpiredTime() <= System.currentTimeMillis()) {
-          redirectTable.remove(index);
-          index--; //a trick :)
-        }
-      }
-      catch(Exception e) {
-        logger.debug("Error in redirect task cleanup.", e);
-        break;
-      }
-    }
-  }
-
   /**
    * @param request
    * @param destHost
@@ -592,64 +706,90 @@ public class RouterImpl implements IRouter {
     if(destRealmAvp == null) {
       throw new RouteException("Request does not have Destination-Realm AVP!");
     }
+    if (redirectCache.size() == 0) {
+      return false;
+    }
 
     String destRealm = destRealmAvp.getDiameterIdentity();
     String destHost = destHostAvp != null ? destHostAvp.getDiameterIdentity() : null;
 
-    boolean matchedEntry = false;
-    String userName = null;
-    // get Session id
-    String sessionId = message.getSessionId();
-    //
-    Avp avpUserName = message.getAvps().getAvp(Avp.USER_NAME);
-    // Get application id
-    ApplicationId appId = ((IMessage)message).getSingleApplicationId();
-    // User name
-    if (avpUserName != null) {
-      userName = avpUserName.getUTF8String();
-    }
-    // Processing table
-    try{
-      redirectTableLock.readLock().lock();
-
-      for (int index = 0;index<redirectTable.size();index++) {
-        RedirectEntry e = redirectTable.get(index);
-        switch (e.getUsageType()) {
-          case ALL_SESSION: // Usage type: ALL SESSION
-            matchedEntry = sessionId != null && e.primaryKey != null & sessionId.equals(e.primaryKey);
-            break;
-          case ALL_REALM: // Usage type: ALL REALM
-            matchedEntry = destRealm != null && e.primaryKey != null & destRealm.equals(e.primaryKey);
-            break;
-          case REALM_AND_APPLICATION: // Usage type: REALM AND APPLICATION
-            matchedEntry = destRealm != null & appId != null & e.primaryKey != null & e.secondaryKey != null & destRealm.equals(e.primaryKey)
-            & appId.equals(e.secondaryKey);
-            break;
-          case ALL_APPLICATION: // Usage type: ALL APPLICATION
-            matchedEntry = appId != null & e.secondaryKey != null & appId.equals(e.secondaryKey);
-            break;
-          case ALL_HOST: // Usage type: ALL HOST
-            matchedEntry = destHost != null & e.primaryKey != null & destHost.equals(e.primaryKey);
-            break;
-          case ALL_USER: // Usage type: ALL USER
-            matchedEntry = userName != null & e.primaryKey != null & userName.equals(e.primaryKey);
-            break;
+    RedirectEntry e = redirectCache.match((IMessage) message, destRealm, destHost);
+    if (e != null) {
+      // Update message redirect information
+      String newDestHost = e.getRedirectHost();
+      updateRoute(message, newDestHost);
+      logger.debug("Redirect message from host={}; to new-host={}, realm={} ", new Object[] { destHost, newDestHost,destRealm});
+      return true;
+    }
+    return false;
+  }
+
+  /**
+   * Applies the overload report of an answer, if the request announced overload control support.
+   * Host reports are kept for the Origin-Host of the answer, realm reports for its Origin-Realm.
+   *
+   * @param request request sent
+   * @param answer answer received for it
+   */
+  public void processOverloadReport(IRequest request, IAnswer answer) {
+    if (!overloadControl) {
+      return;
+    }
+    try {
+      AvpSet avps = answer.getAvps();
+      Avp olr = avps.getAvp(Avp.OC_OLR, 0);
+      // reports only hold for requests which announced overload control support
+      if (olr == null || request.getAvps().getAvp(Avp.OC_SUPPORTED_FEATURES, 0) == null) {
+        return;
+      }
+      AvpSet report = olr.getGrouped();
+      Avp sequenceAvp = report.getAvp(Avp.OC_SEQUENCE_NUMBER, 0);
+      Avp typeAvp = report.getAvp(Avp.OC_REPORT_TYPE, 0);
+      if (sequenceAvp == null || typeAvp == null) {
+        logger.debug("Ignoring overload report without sequence number or report type in answer [{}]", answer);
+        return;
+      }
+      int type = typeAvp.getInteger32();
+      String origin = null;
+      if (type == OverloadReportTable.HOST_REPORT) {
+        Avp originAvp = avps.getAvp(Avp.ORIGIN_HOST);
+        if (originAvp != null) {
+          origin = originAvp.getDiameterIdentity();
+        }
+        else if (((IMessage) request).getPeer() != null) {
+          // answer of the adjacent peer which lacks its Origin-Host
+          origin = ((IMessage) request).getPeer().getUri().getFQDN();
         }
-        // Update message redirect information
-        if (matchedEntry) {
-          String newDestHost = e.getRedirectHost();
-          //String newDestRealm = getRealmForPeer(destHost);
-          //setRouteInfo(message, destRealm, newDestHost);
-          updateRoute(message, newDestHost);
-          logger.debug("Redirect message from host={}; to new-host={}, realm={} ", new Object[] { destHost, newDestHost,destRealm});
-          return true;
+      }
+      else if (type == OverloadReportTable.REALM_REPORT) {
+        Avp originAvp = avps.getAvp(Avp.ORIGIN_REALM);
+        if (originAvp != null) {
+          origin = originAvp.getDiameterIdentity();
+        }
+      }
+      else {
+        logger.debug("Ignoring overload report of unknown type [{}]", type);
+        return;
+      }
+      if (origin == null) {
+        logger.debug("Ignoring overload report without origin in answer [{}]", answer);
+        return;
+      }
+      Avp reductionAvp = report.getAvp(Avp.OC_REDUCTION_PERCENTAGE, 0);
+      Avp validityAvp = report.getAvp(Avp.OC_VALIDITY_DURATION, 0);
+      long sequence = sequenceAvp.getUnsigned64();
+      int reduction = reductionAvp != null ? (int) Math.min(100, reductionAvp.getUnsigned32()) : 0;
+      long validity = validityAvp != null ? validityAvp.getUnsigned32() : OverloadReportTable.DEFAULT_VALIDITY;
+      if (overloadReports.update(type, origin, sequence, reduction, validity, System.currentTimeMillis())) {
+        if (logger.isDebugEnabled()) {
+          logger.debug("Overload report of [{}] with sequence number [{}] asks for a reduction of [{}]% for [{}] s",
+              new Object[] {origin, sequence, reduction, validity});
         }
       }
     }
-    finally {
-      redirectTableLock.readLock().unlock();
+    catch (AvpDataException e) {
+      logger.debug("Unable to read overload report", e);
     }
-    return false;
   }
 
   protected IPeer getPeerPredProcessing(IMessage message, String destRealm, String destHost) {
@@ -669,12 +809,14 @@ public class RouterImpl implements IRouter {
     // if (redirectEntryHandler != null) {
     //  redirectEntryHandler.cancel(true);
     //}
-    if (redirectTable != null) {
-      redirectTable.clear();
+    if (redirectCache != null) {
+      redirectCache.clear();
     }
-    if (requestEntryMap != null) {
-      requestEntryMap.clear();
+    if (requestEntryTable != null) {
+      requestEntryTable.clear();
     }
+    realmPeers.clear();
+    overloadReports.clear();
     //PCB removed
     //if (requestSortedEntryTable != null) {
     //  requestSortedEntryTable.clear();
@@ -696,19 +838,59 @@ public class RouterImpl implements IRouter {
 
     //redirectEntryHandler = null;
     //redirectScheduler = null;
-    redirectTable = null;
-    requestEntryMap = null;
-    requestEntryMap = null;
+    redirectCache = null;
+    requestEntryTable = null;
+  }
+
+  protected IPeer selectPeer(IPeer[] availablePeers, IMessage message) {
+    return availablePeers.length == 0 ? null : peerSelectionStrategy.select(availablePeers, message);
   }
 
-  protected IPeer selectPeer(List<IPeer> availablePeers) {
-    IPeer p = null;
-    for (IPeer c : availablePeers) {
-      if (p == null || c.getRating() >= p.getRating()) {
-        p = c;
+  /**
+   * Collects the peers of a realm which are able to take a request and caches them until a peer
+   * changes its state or the peers of the realm change.
+   */
+  protected IPeer[] getAvailablePeers(IRealm realm, String[] peerNames, IPeerTable manager) {
+    // read before looking at the peers, so that a change in between invalidates the result
+    int generation = realmPeersGeneration.get();
+    int version = realm.getPeerNamesVersion();
+    boolean complete = true;
+    ArrayList<IPeer> availablePeers = new ArrayList<IPeer>(peerNames.length);
+    logger.debug("Looping through peers in realm [{}]", realm.getName());
+    for (String peerName : peerNames) {
+      IPeer localPeer = (IPeer) manager.getPeer(peerName);
+      if(logger.isDebugEnabled()) {
+        logger.debug("Checking peer [{}] for name [{}]", new Object[]{localPeer,peerName});
+      }
+      if (localPeer == null) {
+        // not known yet, we would not learn when it comes up
+        complete = false;
+        continue;
+      }
+      if (observedPeers.putIfAbsent(localPeer, Boolean.TRUE) == null) {
+        localPeer.addStateChangeListener(peerStateListener);
+      }
+      // ammendonca: added peer state check.. should not be needed but 
+      // hasValidConnection is returning true for disconnected peers in *FTFlowTests
+      if (localPeer.getState(PeerState.class) == PeerState.OKAY) {
+        if(localPeer.hasValidConnection()) {
+          if(logger.isDebugEnabled()) {
+            logger.debug("Found available peer to add to available peer list with uri [{}] with a valid connection", localPeer.getUri().toString());
+          }
+          availablePeers.add(localPeer);
+        }
+        else {
+          if(logger.isDebugEnabled()) {
+            logger.debug("Found a peer with uri [{}] with no valid connection", localPeer.getUri());
+          }
+        }
       }
     }
-    return p;
+    IPeer[] result = availablePeers.toArray(new IPeer[availablePeers.size()]);
+    if (complete) {
+      realmPeers.put(realm, new RealmPeers(result, generation, version));
+    }
+    return result;
   }
 
   //    protected void redirectProcessing(IMessage message, final String destRealm, final String destHost) throws AvpDataException {
@@ -853,20 +1035,98 @@ public class RouterImpl implements IRouter {
     }
   }
 
+  protected class RealmPeers {
+
+    final IPeer[] peers;
+    final int generation;
+    final int version;
+
+    public RealmPeers(IPeer[] peers, int generation, int version) {
+      this.peers = peers;
+      this.generation = generation;
+      this.version = version;
+    }
+
+    public boolean isValid(IRealm realm) {
+      return generation == realmPeersGeneration.get() && version == realm.getPeerNamesVersion();
+    }
+  }
+
   protected class AnswerEntry {
 
-    final long createTime = System.nanoTime();
+    final long createTime;
     Long hopByHopId;
     String host, realm;
+    // shared with callers of getRequestRouteInfo, so that answers do not allocate it
+    final String[] routeInfo;
+    final String sessionId;
+    final long expiryTime;
+    // entry of another session with the same identifiers, chains are never modified once stored
+    final AnswerEntry next;
 
     public AnswerEntry(Long hopByHopId) {
-      this.hopByHopId = hopByHopId;
+      this(hopByHopId, null, null);
     }
 
     public AnswerEntry(Long hopByHopId, String host, String realm) throws InternalError {
+      this(hopByHopId, host, realm, null, Long.MAX_VALUE, null);
+    }
+
+    public AnswerEntry(Long hopByHopId, String host, String realm, String sessionId, long expiryTime, AnswerEntry next) {
+      this.createTime = System.nanoTime();
       this.hopByHopId = hopByHopId;
       this.host = host;
       this.realm = realm;
+      this.routeInfo = new String[] {host, realm};
+      this.sessionId = sessionId;
+      this.expiryTime = expiryTime;
+      this.next = next;
+    }
+
+    private AnswerEntry(AnswerEntry entry, AnswerEntry next) {
+      this.createTime = entry.createTime;
+      this.hopByHopId = entry.hopByHopId;
+      this.host = entry.host;
+      this.realm = entry.realm;
+      this.routeInfo = entry.routeInfo;
+      this.sessionId = entry.sessionId;
+      this.expiryTime = entry.expiryTime;
+      this.next = next;
+    }
+
+    /**
+     * @return live entry of the session in this chain, or null
+     */
+    AnswerEntry find(String sessionId, long now) {
+      for (AnswerEntry entry = this; entry != null; entry = entry.next) {
+        if (entry.expiryTime > now && entry.isSession(sessionId)) {
+          return entry;
+        }
+      }
+      return null;
+    }
+
+    /**
+     * @return copy of this chain without the entries of the session and the expired ones
+     */
+    AnswerEntry without(String sessionId, long now) {
+      AnswerEntry rest = next != null ? next.without(sessionId, now) : null;
+      if (expiryTime <= now || isSession(sessionId)) {
+        return rest;
+      }
+      return rest == next ? this : new AnswerEntry(this, rest);
+    }
+
+    private boolean isSession(String sessionId) {
+      return this.sessionId == null ? sessionId == null : this.sessionId.equals(sessionId);
+    }
+
+    public String getSessionId() {
+      return sessionId;
+    }
+
+    public long getExpiryTime() {
+      return expiryTime;
     }
 
     public long getCreateTime() {
@@ -885,6 +1145,10 @@ public class RouterImpl implements IRouter {
       return realm;
     }
 
+    public String[] getRouteInfo() {
+      return routeInfo;
+    }
+
     public boolean equals(Object o) {
       if (this == o) {
         return true;
@@ -0,0 +1,60 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2011, Red Hat, Inc. and individual contributors
+ * by the @authors tag. See the copyright.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.jdiameter.client.impl.router;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.jdiameter.client.api.IMessage;
+import org.jdiameter.client.api.controller.IPeer;
+import org.jdiameter.client.api.router.IPeerSelectionStrategy;
+
+/**
+ * Spreads requests over all peers in proportion to their rating, a peer with rating 0 is
+ * weighted as 1. Out of every sum-of-ratings requests, each peer gets as many as its rating.
+ */
+public class WeightedRoundRobinPeerSelectionStrategy implements IPeerSelectionStrategy {
+
+  private final AtomicLong counter = new AtomicLong();
+
+  public IPeer select(IPeer[] peers, IMessage message) {
+    if (peers.length == 1) {
+      return peers[0];
+    }
+    long total = 0;
+    for (IPeer peer : peers) {
+      total += weight(peer);
+    }
+    long position = (counter.getAndIncrement() & Long.MAX_VALUE) % total;
+    for (IPeer peer : peers) {
+      position -= weight(peer);
+      if (position < 0) {
+        return peer;
+      }
+    }
+    return peers[peers.length - 1];
+  }
+
+  private static int weight(IPeer peer) {
+    return Math.max(peer.getRating(), 1);
+  }
+}
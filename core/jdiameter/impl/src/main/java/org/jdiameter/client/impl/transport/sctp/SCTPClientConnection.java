@@ -37,6 +37,7 @@ import org.jdiameter.api.OverloadException;
 import org.jdiameter.client.api.IMessage;
 import org.jdiameter.client.api.io.IConnection;
 import org.jdiameter.client.api.io.IConnectionListener;
+import org.jdiameter.client.api.io.IMultiStreamConnection;
 import org.jdiameter.client.api.io.TransportError;
 import org.jdiameter.client.api.io.TransportException;
 import org.jdiameter.client.api.parser.IMessageParser;
@@ -49,7 +50,7 @@ import org.slf4j.LoggerFactory;
  * @author <a href="mailto:brainslog@gmail.com"> Alexandre Mendonca </a>
  * @author <a href="mailto:baranowb@gmail.com"> Bartosz Baranowski </a>
  */
-public class SCTPClientConnection implements IConnection {
+public class SCTPClientConnection implements IConnection, IMultiStreamConnection {
 
   private static Logger logger = LoggerFactory.getLogger(SCTPClientConnection.class);
   private final long createdTime;
@@ -135,8 +136,9 @@ public class SCTPClientConnection implements IConnection {
 
   public void sendMessage(IMessage message) throws TransportException, OverloadException {
     try {
-      if (getClient() != null) {
-        getClient().sendMessage(parser.encodeMessage(message));
+      SCTPTransportClient client = getClient();
+      if (client != null) {
+        client.sendMessage(parser.encodeMessage(message), client.getStreamSelector().select(message));
       }
     }
     catch (Exception e) {
@@ -144,6 +146,14 @@ public class SCTPClientConnection implements IConnection {
     }
   }
 
+  public int getOutboundStreams() {
+    return getClient() != null ? getClient().getStreamSelector().getOutboundStreams() : 0;
+  }
+
+  public long getSentCount(int stream) {
+    return getClient() != null ? getClient().getStreamSelector().getSentCount(stream) : 0;
+  }
+
   protected SCTPTransportClient getClient() {
     return client;
   }
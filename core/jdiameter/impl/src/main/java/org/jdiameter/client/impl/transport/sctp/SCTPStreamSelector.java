@@ -0,0 +1,103 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2011, Red Hat, Inc. and individual contributors
+ * by the @authors tag. See the copyright.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.jdiameter.client.impl.transport.sctp;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import org.jdiameter.client.api.IMessage;
+
+/**
+ * Spreads messages over the outbound streams of an SCTP association. Base protocol messages
+ * (CER/CEA, DWR/DWA, DPR/DPA) always go on stream 0; other messages of a session always go on
+ * the same stream, chosen by hashing the Session-Id, or the Hop-by-Hop Identifier for messages
+ * without one. Ordering within a session is kept while a lost chunk only blocks the sessions
+ * sharing its stream.
+ */
+public class SCTPStreamSelector {
+
+  private static final int CAPABILITIES_EXCHANGE = 257;
+  private static final int DEVICE_WATCHDOG = 280;
+  private static final int DISCONNECT_PEER = 282;
+
+  private volatile AtomicLongArray sent = new AtomicLongArray(1);
+  private volatile int streams = 1;
+
+  /**
+   * @param streams number of outbound streams negotiated for the association
+   */
+  public void setOutboundStreams(int streams) {
+    int n = Math.max(1, streams);
+    // counters first, so a selected stream always has one
+    this.sent = new AtomicLongArray(n);
+    this.streams = n;
+  }
+
+  public int getOutboundStreams() {
+    return streams;
+  }
+
+  /**
+   * @param message message about to be sent
+   * @return stream to send the message on
+   */
+  public int select(IMessage message) {
+    int n = streams;
+    if (n <= 1 || isBaseProtocol(message.getCommandCode())) {
+      return 0;
+    }
+    String sessionId = message.getSessionId();
+    int h = sessionId != null ? sessionId.hashCode() : (int) message.getHopByHopIdentifier();
+    // session ids differ mostly in their trailing digits, mix them into all bits
+    h ^= h >>> 16;
+    h *= 0x85ebca6b;
+    h ^= h >>> 13;
+    // stream 0 is left to the base protocol
+    return 1 + (h & 0x7fffffff) % (n - 1);
+  }
+
+  /**
+   * Counts a message sent on the stream
+   */
+  public void onSent(int stream) {
+    AtomicLongArray s = sent;
+    if (stream < s.length()) {
+      s.incrementAndGet(stream);
+    }
+  }
+
+  /**
+   * @return number of messages sent on the stream since the association came up
+   */
+  public long getSentCount(int stream) {
+    AtomicLongArray s = sent;
+    return stream < s.length() ? s.get(stream) : 0;
+  }
+
+  private static boolean isBaseProtocol(int commandCode) {
+    return commandCode == CAPABILITIES_EXCHANGE || commandCode == DEVICE_WATCHDOG || commandCode == DISCONNECT_PEER;
+  }
+
+  public String toString() {
+    return "SCTPStreamSelector [streams=" + streams + ", sent=" + sent + "]";
+  }
+}
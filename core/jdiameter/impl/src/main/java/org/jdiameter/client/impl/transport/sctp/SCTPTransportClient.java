@@ -50,7 +50,7 @@ public class SCTPTransportClient {
   protected InetSocketAddress destAddress;
   protected InetSocketAddress origAddress;
   private int payloadProtocolId = 0;
-  private int streamNumber = 0;
+  private SCTPStreamSelector streamSelector = new SCTPStreamSelector();
 
   private static final Logger logger = LoggerFactory.getLogger(SCTPTransportClient.class);
 
@@ -168,7 +168,8 @@ public class SCTPTransportClient {
      */
     @Override
     public void onCommunicationUp(Association association, int maxInboundStreams, int maxOutboundStreams) {
-      logger.debug("onCommunicationUp called for [{}]", this);
+      logger.debug("onCommunicationUp called for [{}] with [{}] outbound streams", this, maxOutboundStreams);
+      streamSelector.setOutboundStreams(maxOutboundStreams);
       getParent().onConnected();
     }
 
@@ -277,23 +278,37 @@ public class SCTPTransportClient {
   }
 
   public void sendMessage(ByteBuffer bytes) throws IOException {
+    sendMessage(bytes, 0);
+  }
+
+  /**
+   * @param bytes encoded message
+   * @param stream outbound stream to send it on, see {@link SCTPStreamSelector}
+   */
+  public void sendMessage(ByteBuffer bytes, int stream) throws IOException {
+    byte[] data = SCTPUtils.getBytes(bytes);
     if (logger.isDebugEnabled()) {
-      logger.debug("About to send a byte buffer of size [{}] over the SCTP", bytes.array().length);
+      logger.debug("About to send a byte buffer of size [{}] over the SCTP stream [{}]", data.length, stream);
     }
 
-    PayloadData payloadData = new PayloadData(bytes.array().length, bytes.array(), true, false, payloadProtocolId, streamNumber);
+    PayloadData payloadData = new PayloadData(data.length, data, true, false, payloadProtocolId, stream);
 
     try {
       this.clientAssociation.send(payloadData);
+      streamSelector.onSent(stream);
     }
     catch (Exception e) {
       logger.error("Failed sending byte buffer over SCTP", e);
     }
     if (logger.isDebugEnabled()) {
-      logger.debug("Sent a byte buffer of size [{}] over SCTP", bytes.array().length);
+      logger.debug("Sent a byte buffer of size [{}] over SCTP", data.length);
     }
   }
 
+  public SCTPStreamSelector getStreamSelector() {
+    return streamSelector;
+  }
+
   boolean isConnected() {
     return clientAssociation != null && this.clientAssociation.isConnected();
   }
@@ -0,0 +1,45 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2011, Red Hat, Inc. and individual contributors
+ * by the @authors tag. See the copyright.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.jdiameter.client.impl.transport.sctp;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Simple utils class just to have one place for what the SCTP client and server transports share.
+ */
+public class SCTPUtils {
+
+  /**
+   * @param bytes encoded message
+   * @return content of the buffer, without copying it when the buffer wraps exactly one array
+   */
+  public static byte[] getBytes(ByteBuffer bytes) {
+    // the parser hands over buffers wrapping exactly the encoded message, send that array as is
+    if (bytes.hasArray() && bytes.arrayOffset() == 0 && bytes.position() == 0 && bytes.remaining() == bytes.array().length) {
+      return bytes.array();
+    }
+    byte[] data = new byte[bytes.remaining()];
+    bytes.duplicate().get(data);
+    return data;
+  }
+}
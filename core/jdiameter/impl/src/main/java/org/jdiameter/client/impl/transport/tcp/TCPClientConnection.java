@@ -22,6 +22,13 @@
 
 package org.jdiameter.client.impl.transport.tcp;
 
+import static org.jdiameter.client.impl.helpers.Parameters.TcpFlushDelay;
+import static org.jdiameter.client.impl.helpers.Parameters.TcpFlushThreshold;
+import static org.jdiameter.client.impl.helpers.Parameters.TcpMaxFrameSize;
+import static org.jdiameter.client.impl.helpers.Parameters.TcpMaxQueuedBytes;
+import static org.jdiameter.client.impl.helpers.Parameters.TcpReactorThreads;
+import static org.jdiameter.client.impl.helpers.Parameters.UseTcpReactor;
+
 import org.jdiameter.api.AvpDataException;
 import org.jdiameter.api.Configuration;
 import org.jdiameter.api.InternalException;
@@ -29,6 +36,7 @@ import org.jdiameter.api.OverloadException;
 import org.jdiameter.client.api.IMessage;
 import org.jdiameter.client.api.io.IConnection;
 import org.jdiameter.client.api.io.IConnectionListener;
+import org.jdiameter.client.api.io.IOutboundQueue;
 import org.jdiameter.client.api.io.TransportError;
 import org.jdiameter.client.api.io.TransportException;
 import org.jdiameter.client.api.parser.IMessageParser;
@@ -53,7 +61,7 @@ import java.util.concurrent.locks.ReentrantLock;
  * @author <a href="mailto:baranowb@gmail.com"> Bartosz Baranowski </a>
  * @author <a href="mailto:brainslog@gmail.com"> Alexandre Mendonca </a>
  */
-public class TCPClientConnection implements IConnection {
+public class TCPClientConnection implements IConnection, IOutboundQueue {
 
   private static Logger logger = LoggerFactory.getLogger(TCPClientConnection.class);
 
@@ -78,6 +86,7 @@ public class TCPClientConnection implements IConnection {
       IMessageParser parser, String ref) throws Exception {
     this(concurrentFactory, parser);
     client = new TCPTransportClient(concurrentFactory, this);
+    configureTransport(config);
     client.initialize(socket);
     client.start();
   }
@@ -85,6 +94,7 @@ public class TCPClientConnection implements IConnection {
   public TCPClientConnection(Configuration config, IConcurrentFactory concurrentFactory, InetAddress remoteAddress,
       int remotePort, InetAddress localAddress, int localPort, IMessageParser parser, String ref) {
     this(concurrentFactory, parser);
+    configureTransport(config);
     client.setDestAddress(new InetSocketAddress(remoteAddress, remotePort));
     client.setOrigAddress(new InetSocketAddress(localAddress, localPort));
   }
@@ -93,11 +103,25 @@ public class TCPClientConnection implements IConnection {
       int remotePort, InetAddress localAddress, int localPort, IConnectionListener listener,
       IMessageParser parser, String ref) {
     this(concurrentFactory, parser);
+    configureTransport(config);
     client.setDestAddress(new InetSocketAddress(remoteAddress, remotePort));
     client.setOrigAddress(new InetSocketAddress(localAddress, localPort));
     listeners.add(listener);
   }
 
+  private void configureTransport(Configuration config) {
+    if (config == null) {
+      return;
+    }
+    client.setMaxFrameSize(config.getIntValue(TcpMaxFrameSize.ordinal(), (Integer) TcpMaxFrameSize.defValue()));
+    if (config.getBooleanValue(UseTcpReactor.ordinal(), (Boolean) UseTcpReactor.defValue())) {
+      client.setReactor(config.getIntValue(TcpReactorThreads.ordinal(), (Integer) TcpReactorThreads.defValue()),
+          config.getIntValue(TcpFlushThreshold.ordinal(), (Integer) TcpFlushThreshold.defValue()),
+          config.getLongValue(TcpFlushDelay.ordinal(), (Long) TcpFlushDelay.defValue()),
+          config.getIntValue(TcpMaxQueuedBytes.ordinal(), (Integer) TcpMaxQueuedBytes.defValue()));
+    }
+  }
+
   public long getCreatedTime() {
     return createdTime;
   }
@@ -167,11 +191,22 @@ public class TCPClientConnection implements IConnection {
         //}
       }
     }
+    catch (OverloadException e) {
+      throw e;
+    }
     catch (Exception e) {
       throw new TransportException("Cannot send message: ", TransportError.FailedSendMessage, e);
     }
   }
 
+  public int getOutboundQueueSize() {
+    return getClient() != null ? getClient().getOutboundQueueSize() : 0;
+  }
+
+  public long getOutboundBytes() {
+    return getClient() != null ? getClient().getOutboundBytes() : 0;
+  }
+
   protected TCPTransportClient getClient() {
     return client;
   }
@@ -263,7 +298,7 @@ public class TCPClientConnection implements IConnection {
 
   protected void onMessageReceived(ByteBuffer message) throws AvpDataException {
     if (logger.isDebugEnabled()) {
-      logger.debug("Received message of size [{}]", message.array().length);
+      logger.debug("Received message of size [{}]", message.remaining());
     }
     onEvent(new Event(EventType.MESSAGE_RECEIVED, message));
   }
@@ -332,6 +367,12 @@ public class TCPClientConnection implements IConnection {
     if (listeners.size() == 0) {
       //PCB added logging
       logger.debug("listeners.size() == 0 on connection [{}]", this.getKey());
+      if (event.message != null) {
+        // the transport reuses the buffer the message is in once we return
+        ByteBuffer message = ByteBuffer.allocate(event.message.remaining());
+        message.put(event.message.duplicate()).flip();
+        event.message = message;
+      }
       try {
         buffer.add(event);
       }
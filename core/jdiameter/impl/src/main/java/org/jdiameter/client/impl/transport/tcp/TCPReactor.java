@@ -0,0 +1,371 @@
+ /*
+  * TeleStax, Open Source Cloud Communications
+  * Copyright 2011-2014, TeleStax Inc. and individual contributors
+  * by the @authors tag.
+  *
+  * This program is free software: you can redistribute it and/or modify
+  * under the terms of the GNU Affero General Public License as
+  * published by the Free Software Foundation; either version 3 of
+  * the License, or (at your option) any later version.
+  *
+  * This program is distributed in the hope that it will be useful,
+  * but WITHOUT ANY WARRANTY; without even the implied warranty of
+  * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+  * GNU Affero General Public License for more details.
+  *
+  * You should have received a copy of the GNU Affero General Public License
+  * along with this program.  If not, see <http://www.gnu.org/licenses/>
+  * 
+  * This file incorporates work covered by the following copyright and
+  * permission notice:
+  * 
+  *   JBoss, Home of Professional Open Source
+  *   Copyright 2007-2011, Red Hat, Inc. and individual contributors
+  *   by the @authors tag. See the copyright.txt in the distribution for a
+  *   full listing of individual contributors.
+  *
+  *   This is free software; you can redistribute it and/or modify it
+  *   under the terms of the GNU Lesser General Public License as
+  *   published by the Free Software Foundation; either version 2.1 of
+  *   the License, or (at your option) any later version.
+  *
+  *   This software is distributed in the hope that it will be useful,
+  *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+  *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+  *   Lesser General Public License for more details.
+  *
+  *   You should have received a copy of the GNU Lesser General Public
+  *   License along with this software; if not, write to the Free
+  *   Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+  *   02110-1301 USA, or see the FSF site: http://www.fsf.org.
+  */
+
+package org.jdiameter.client.impl.transport.tcp;
+
+import org.jdiameter.common.api.concurrent.IConcurrentFactory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Pool of selector threads shared by all TCP and TLS transports running in reactor mode.
+ * <p>
+ * Each transport is pinned to one selector thread, which does all its reads, message
+ * framing, queued writes and disconnect handling, so a transport's storage and socket
+ * buffers are only ever touched by that thread.
+ * The pool is reference counted: it is started by the first transport and stopped
+ * when the last one disconnects.
+ * <p>
+ * There is one pool per JVM, shared by all stacks. Its number of selector threads is
+ * taken from the configuration of the transport that starts it, so the TcpReactorThreads
+ * of the first stack to connect applies to every stack until the pool is stopped.
+ * <p>
+ * A failure while handling one channel closes that channel only, the selector thread
+ * keeps serving the other channels pinned to it.
+ */
+public class TCPReactor {
+
+  private static final Logger logger = LoggerFactory.getLogger(TCPReactor.class);
+
+  private static final long SELECT_TIMEOUT = 500; // milliseconds
+  private static final int READ_BUFFER_SIZE = 16 * 1024;
+
+  private static TCPReactor instance;
+  private static int references;
+
+  private final Worker[] workers;
+  private final AtomicInteger nextWorker = new AtomicInteger();
+
+  /**
+   * Returns the shared reactor, starting it if needed. Every call must be matched
+   * by a call to {@link #release(TCPReactor)}.
+   *
+   * @param concurrentFactory factory for selector threads, used when the reactor is started
+   * @param threads number of selector threads, 0 or less for one per available processor,
+   * ignored if the reactor is already running
+   */
+  public static synchronized TCPReactor acquire(IConcurrentFactory concurrentFactory, int threads) throws IOException {
+    if (instance == null) {
+      instance = new TCPReactor(concurrentFactory, threads > 0 ? threads : Runtime.getRuntime().availableProcessors());
+    }
+    else if (threads > 0 && threads != instance.workers.length) {
+      logger.warn("TCP reactor is already running with {} selector threads, {} threads are ignored", instance.workers.length, threads);
+    }
+    references++;
+    return instance;
+  }
+
+  public static synchronized void release(TCPReactor reactor) {
+    if (reactor == instance && --references == 0) {
+      instance.stop();
+      instance = null;
+    }
+  }
+
+  private TCPReactor(IConcurrentFactory concurrentFactory, int threads) throws IOException {
+    logger.debug("Starting TCP reactor with {} selector threads", threads);
+    workers = new Worker[threads];
+    try {
+      for (int i = 0; i < threads; i++) {
+        workers[i] = new Worker();
+        workers[i].thread = concurrentFactory.getThread("TCPReactor", workers[i]);
+        workers[i].thread.setDaemon(true);
+        workers[i].thread.start();
+      }
+    }
+    catch (IOException e) {
+      stop();
+      throw e;
+    }
+  }
+
+  /**
+   * @return selector thread for a new transport, picked round robin
+   */
+  public Worker nextWorker() {
+    return workers[(nextWorker.getAndIncrement() & Integer.MAX_VALUE) % workers.length];
+  }
+
+  private void stop() {
+    logger.debug("Stopping TCP reactor");
+    for (Worker worker : workers) {
+      if (worker != null) {
+        worker.stop = true;
+        worker.selector.wakeup();
+      }
+    }
+  }
+
+  /**
+   * Connection registered on the reactor. All methods are called on the reactor thread
+   * the connection is pinned to.
+   */
+  public interface Channel {
+
+    SocketChannel getChannel();
+
+    /**
+     * Called once the channel is registered for reading on the selector.
+     */
+    void registered(SelectionKey key);
+
+    /**
+     * Called when the channel has data to read.
+     *
+     * @param readBuffer reactor buffer to read into, shared by all channels of the thread
+     * @return false if the channel has been closed
+     */
+    boolean read(ByteBuffer readBuffer);
+
+    /**
+     * Called when a flush was requested or the channel became writable.
+     */
+    void flush();
+
+    /**
+     * Called after the transport was stopped, to report the disconnect.
+     */
+    void disconnected();
+
+    /**
+     * Called when handling the channel failed, closes it and reports the disconnect if it
+     * is still attached to its transport.
+     */
+    void close();
+  }
+
+  private static class Task {
+    static final int REGISTER = 0;
+    static final int FLUSH = 1;
+    static final int DISCONNECT = 2;
+
+    final int type;
+    final Channel channel;
+    final long due;
+
+    Task(int type, Channel channel, long delay) {
+      this.type = type;
+      this.channel = channel;
+      this.due = delay > 0 ? System.currentTimeMillis() + delay : 0;
+    }
+  }
+
+  public static class Worker implements Runnable {
+
+    private final Selector selector;
+    // shared by all transports of this worker, they copy what they need into their storage
+    private final ByteBuffer readBuffer = ByteBuffer.allocate(READ_BUFFER_SIZE);
+    private final Queue<Task> tasks = new ConcurrentLinkedQueue<Task>();
+    // touched by the worker thread only
+    private final List<Task> delayed = new ArrayList<Task>();
+    private volatile boolean stop = false;
+    private Thread thread;
+
+    Worker() throws IOException {
+      selector = Selector.open();
+    }
+
+    /**
+     * Registers a connected channel for reading on this selector thread.
+     *
+     * @param channel channel to register
+     * @param delay milliseconds to wait before the first read
+     */
+    public void register(Channel channel, long delay) {
+      submit(new Task(Task.REGISTER, channel, delay));
+    }
+
+    /**
+     * Makes this selector thread write the queued messages of a channel.
+     *
+     * @param channel channel with queued messages
+     * @param delay milliseconds to wait for more messages before writing
+     */
+    public void flush(Channel channel, long delay) {
+      submit(new Task(Task.FLUSH, channel, delay));
+    }
+
+    /**
+     * Makes this selector thread report the disconnect of a stopped transport.
+     *
+     * @param channel channel of the transport that was stopped
+     */
+    public void disconnect(Channel channel) {
+      submit(new Task(Task.DISCONNECT, channel, 0));
+    }
+
+    private void submit(Task task) {
+      tasks.offer(task);
+      selector.wakeup();
+    }
+
+    public void run() {
+      logger.debug("TCP reactor thread is started");
+      try {
+        while (!stop) {
+          long timeout = runTasks();
+          selector.select(timeout);
+          Iterator<SelectionKey> it = selector.selectedKeys().iterator();
+          while (it.hasNext()) {
+            SelectionKey key = it.next();
+            it.remove();
+            Channel channel = (Channel) key.attachment();
+            try {
+              if (key.isValid() && key.isReadable() && !channel.read(readBuffer)) {
+                key.cancel();
+                continue;
+              }
+              if (key.isValid() && key.isWritable()) {
+                channel.flush();
+              }
+            }
+            catch (RuntimeException e) {
+              key.cancel();
+              fail(channel, e);
+            }
+          }
+        }
+      }
+      catch (Throwable e) {
+        logger.error("TCP reactor exception ", e);
+      }
+      finally {
+        try {
+          selector.close();
+        }
+        catch (IOException e) {
+          logger.debug("Can not close selector", e);
+        }
+        logger.debug("TCP reactor thread is stopped");
+      }
+    }
+
+    /**
+     * Runs submitted tasks whose delay has passed.
+     *
+     * @return select timeout until the next delayed task is due
+     */
+    private long runTasks() {
+      Task task;
+      while ((task = tasks.poll()) != null) {
+        if (task.due == 0) {
+          run(task);
+        }
+        else {
+          delayed.add(task);
+        }
+      }
+      long timeout = SELECT_TIMEOUT;
+      if (delayed.isEmpty()) {
+        return timeout;
+      }
+      long now = System.currentTimeMillis();
+      Iterator<Task> it = delayed.iterator();
+      while (it.hasNext()) {
+        task = it.next();
+        long wait = task.due - now;
+        if (wait > 0) {
+          timeout = Math.min(timeout, wait);
+          continue;
+        }
+        it.remove();
+        run(task);
+      }
+      return timeout;
+    }
+
+    private void run(Task task) {
+      try {
+        runTask(task);
+      }
+      catch (RuntimeException e) {
+        fail(task.channel, e);
+      }
+    }
+
+    private void runTask(Task task) {
+      switch (task.type) {
+        case Task.REGISTER:
+          try {
+            task.channel.registered(task.channel.getChannel().register(selector, SelectionKey.OP_READ, task.channel));
+          }
+          catch (ClosedChannelException e) {
+            // stopped before the start delay passed, the disconnect is already on its way
+            logger.debug("Transport {} was closed before it could be registered", task.channel);
+          }
+          break;
+        case Task.FLUSH:
+          task.channel.flush();
+          break;
+        case Task.DISCONNECT:
+          task.channel.disconnected();
+          break;
+      }
+    }
+
+    /**
+     * Closes a channel whose handling failed, leaving the other channels of this thread alone.
+     */
+    private void fail(Channel channel, RuntimeException cause) {
+      logger.error("TCP reactor failed to handle transport " + channel + ", closing it", cause);
+      try {
+        channel.close();
+      }
+      catch (RuntimeException e) {
+        logger.debug("Can not close transport " + channel, e);
+      }
+    }
+  }
+}
@@ -42,7 +42,10 @@
 
 package org.jdiameter.client.impl.transport.tcp;
 
+import static org.jdiameter.client.impl.helpers.Parameters.TcpMaxFrameSize;
+
 import org.jdiameter.api.AvpDataException;
+import org.jdiameter.api.OverloadException;
 import org.jdiameter.client.api.io.NotInitializedException;
 import org.jdiameter.common.api.concurrent.IConcurrentFactory;
 import org.slf4j.Logger;
@@ -51,16 +54,21 @@ import org.slf4j.LoggerFactory;
 import java.io.IOException;
 import java.net.InetSocketAddress;
 import java.net.Socket;
-import java.nio.BufferOverflowException;
-import java.nio.BufferUnderflowException;
 import java.nio.ByteBuffer;
 import java.nio.channels.AsynchronousCloseException;
 import java.nio.channels.ClosedByInterruptException;
+import java.nio.channels.ClosedChannelException;
 import java.nio.channels.SelectionKey;
 import java.nio.channels.Selector;
 import java.nio.channels.SocketChannel;
 import java.nio.channels.spi.SelectorProvider;
+import java.util.Arrays;
 import java.util.Iterator;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReentrantLock;
 
@@ -90,8 +98,12 @@ public class TCPTransportClient implements Runnable {
   protected SocketChannel socketChannel;
   protected Lock lock = new ReentrantLock();
 
+  // received bytes not yet passed on as messages are storage[storageStart..storageEnd)
   protected int storageSize = DEFAULT_STORAGE_SIZE;
-  protected ByteBuffer storage = ByteBuffer.allocate(storageSize);
+  protected byte[] storage = new byte[storageSize];
+  protected int storageStart = 0;
+  protected int storageEnd = 0;
+  protected int maxFrameSize = (Integer) TcpMaxFrameSize.defValue();
 
   private String socketDescription = null;
 
@@ -100,6 +112,19 @@ public class TCPTransportClient implements Runnable {
   //PCB - allow non blocking IO
   private static final boolean BLOCKING_IO = false;
   private static final long SELECT_TIMEOUT = 500; // milliseconds
+  private static final long START_DELAY = 250; // milliseconds
+  private static final int MESSAGE_HEADER_SIZE = 20;
+  // storage grown beyond this for a large message is dropped once it is empty again
+  private static final int MAX_IDLE_STORAGE_SIZE = 64 * 1024;
+
+  // reactor mode: reads and queued writes are done by a shared selector thread instead of selfThread
+  private boolean useReactor = false;
+  private int reactorThreads = 0;
+  private int flushThreshold;
+  private long flushDelay;
+  private int maxQueuedBytes;
+  // attachment of the current connection, null while not started
+  private volatile ReactorChannel reactorChannel;
 
   public TCPTransportClient() {
   }
@@ -137,6 +162,30 @@ public class TCPTransportClient implements Runnable {
     return parentConnection;
   }
 
+  /**
+   * @param maxFrameSize largest message length accepted before the stream is treated as broken
+   */
+  void setMaxFrameSize(int maxFrameSize) {
+    this.maxFrameSize = maxFrameSize;
+  }
+
+  /**
+   * Makes this transport read and write on the shared {@link TCPReactor} instead of its
+   * own thread. Must be called before {@link #start()}.
+   *
+   * @param threads number of reactor threads, 0 for one per available processor
+   * @param flushThreshold queued bytes that make the reactor write without waiting for the flush delay
+   * @param flushDelay milliseconds a message may wait for more messages to be written with it
+   * @param maxQueuedBytes queued bytes above which messages are rejected
+   */
+  void setReactor(int threads, int flushThreshold, long flushDelay, int maxQueuedBytes) {
+    this.useReactor = true;
+    this.reactorThreads = threads;
+    this.flushThreshold = flushThreshold;
+    this.flushDelay = flushDelay;
+    this.maxQueuedBytes = maxQueuedBytes;
+  }
+
   public void initialize(Socket socket) throws IOException, NotInitializedException  {
     logger.debug("Initialising TCPTransportClient for a socket on [{}]", socket);
     socketDescription = socket.toString();
@@ -161,6 +210,10 @@ public class TCPTransportClient implements Runnable {
     if (getParent() == null) {
       throw new NotInitializedException("No parent connection is set is set");
     }
+    if (useReactor) {
+      startReactor();
+      return;
+    }
     if (selfThread == null || !selfThread.isAlive()) {
       selfThread = concurrentFactory.getThread("TCPReader", this);
     }
@@ -175,7 +228,7 @@ public class TCPTransportClient implements Runnable {
   public void run() {
     // Workaround for Issue #4 (http://code.google.com/p/jdiameter/issues/detail?id=4)
     // BEGIN WORKAROUND // Give some time to initialization...
-    int sleepTime = 250;
+    long sleepTime = START_DELAY;
     logger.debug("Sleeping for {}ms before starting transport so that listeners can all be added and ready for messages", sleepTime);
     try {
       Thread.sleep(sleepTime);
@@ -208,9 +261,7 @@ public class TCPTransportClient implements Runnable {
               break;
             }
             buffer.flip();
-            byte[] data = new byte[buffer.limit()];
-            buffer.get(data);
-            append(data);
+            append(buffer);
             buffer.clear();
           }
         }
@@ -244,19 +295,288 @@ public class TCPTransportClient implements Runnable {
     }
   }
 
+  private void startReactor() throws NotInitializedException {
+    ReactorChannel channel;
+    synchronized (this) {
+      if (reactorChannel != null) {
+        return;
+      }
+      TCPReactor reactor;
+      try {
+        reactor = TCPReactor.acquire(concurrentFactory, reactorThreads);
+      }
+      catch (IOException e) {
+        throw new NotInitializedException(e);
+      }
+      channel = new ReactorChannel(reactor, reactor.nextWorker(), socketChannel);
+      reactorChannel = channel;
+    }
+    logger.debug("Transport is started on the shared reactor. Socket is [{}]", socketDescription);
+    // same delay as the reader thread, see run()
+    channel.worker.register(channel, START_DELAY);
+  }
+
   public void stop() throws Exception {
     logger.debug("Stopping transport. Socket is [{}]", socketDescription);
-    stop = true;
+    if (!useReactor) {
+      stop = true;
+    }
     if (socketChannel != null && socketChannel.isOpen()) {
       socketChannel.close();
     }
-    if (selfThread != null) {
+    if (useReactor) {
+      ReactorChannel channel = reactorChannel;
+      if (channel != null && channel.detach()) {
+        // disconnect is reported from the reactor thread, as the reader thread does
+        channel.worker.disconnect(channel);
+      }
+    }
+    else if (selfThread != null) {
       selfThread.join(100);
     }
     clearBuffer();
     logger.debug("Transport is stopped. Socket is [{}]", socketDescription);
   }
 
+  /**
+   * Attachment of one connection of this transport to the reactor, a new one is created
+   * every time the transport is started. Apart from {@link #send(ByteBuffer)} and
+   * {@link #detach()}, all methods run on the reactor thread of {@link #worker}.
+   * <p>
+   * Outgoing messages are queued and written by the reactor with gathering writes, so
+   * messages sent close together leave in as few system calls as possible. The queue is
+   * drained as soon as {@link TCPTransportClient#flushThreshold} bytes are waiting, or
+   * {@link TCPTransportClient#flushDelay} milliseconds after the first message was queued.
+   */
+  class ReactorChannel implements TCPReactor.Channel {
+
+    // buffers handed to one gathering write
+    private static final int MAX_BATCH = 64;
+
+    final TCPReactor reactor;
+    final TCPReactor.Worker worker;
+    final SocketChannel channel;
+
+    private final Queue<ByteBuffer> outbound = new ConcurrentLinkedQueue<ByteBuffer>();
+    private final AtomicInteger outboundSize = new AtomicInteger();
+    private final AtomicLong outboundBytes = new AtomicLong();
+    // set while a delayed flush task is pending on the reactor
+    private final AtomicBoolean flushScheduled = new AtomicBoolean();
+    // set while an immediate flush task is pending on the reactor
+    private final AtomicBoolean flushRequested = new AtomicBoolean();
+    // set while the socket buffer is full and the reactor waits for it to be writable
+    private volatile boolean writeBlocked;
+    private final AtomicBoolean detached = new AtomicBoolean();
+
+    // touched by the reactor thread only
+    private SelectionKey key;
+    private final ByteBuffer[] batch = new ByteBuffer[MAX_BATCH];
+
+    ReactorChannel(TCPReactor reactor, TCPReactor.Worker worker, SocketChannel channel) {
+      this.reactor = reactor;
+      this.worker = worker;
+      this.channel = channel;
+    }
+
+    public SocketChannel getChannel() {
+      return channel;
+    }
+
+    /**
+     * Queues a message for the reactor to write.
+     *
+     * @param bytes encoded message
+     * @throws OverloadException if too many bytes are already waiting
+     * @throws IOException if the connection has been closed
+     */
+    void send(ByteBuffer bytes) throws IOException, OverloadException {
+      if (detached.get()) {
+        throw new IOException("Connection closed");
+      }
+      int size = bytes.remaining();
+      long queued = outboundBytes.get();
+      if (queued > 0 && queued + size > maxQueuedBytes) {
+        throw new OverloadException("Outbound queue of socket [" + socketDescription + "] is full, " + queued + " bytes are waiting");
+      }
+      outbound.offer(bytes);
+      outboundSize.incrementAndGet();
+      queued = outboundBytes.addAndGet(size);
+      if (logger.isDebugEnabled()) {
+        logger.debug("Queued a byte buffer of size [{}] for the TCP nio socket [{}]", size, socketDescription);
+      }
+      if (writeBlocked) {
+        // the reactor writes it as soon as the socket accepts more data
+        return;
+      }
+      if (queued >= flushThreshold) {
+        if (flushRequested.compareAndSet(false, true)) {
+          worker.flush(this, 0);
+        }
+      }
+      else if (flushScheduled.compareAndSet(false, true)) {
+        worker.flush(this, flushDelay);
+      }
+    }
+
+    /**
+     * Called by the reactor once the channel is registered on its selector.
+     */
+    public void registered(SelectionKey key) {
+      this.key = key;
+      if (writeBlocked || !outbound.isEmpty()) {
+        flush();
+      }
+    }
+
+    /**
+     * Called by the reactor thread when the channel has data to read.
+     *
+     * @param readBuffer reactor buffer to read into
+     * @return false if the channel has been closed
+     */
+    public boolean read(ByteBuffer readBuffer) {
+      try {
+        int dataLength = channel.read(readBuffer);
+        logger.debug("Just read [{}] bytes on [{}]", dataLength, socketDescription);
+        if (dataLength != -1) {
+          readBuffer.flip();
+          append(readBuffer);
+          return true;
+        }
+      }
+      catch (ClosedChannelException e) {
+        logger.debug("Transport is closed");
+      }
+      catch (Throwable e) {
+        logger.error("Transport exception ", e);
+      }
+      finally {
+        readBuffer.clear();
+      }
+      close();
+      return false;
+    }
+
+    /**
+     * Writes queued messages until the queue is empty or the socket buffer is full.
+     */
+    public void flush() {
+      flushRequested.set(false);
+      flushScheduled.set(false);
+      if (detached.get()) {
+        return;
+      }
+      try {
+        do {
+          if (!write()) {
+            setWriteBlocked(true);
+            return;
+          }
+          setWriteBlocked(false);
+          // a sender may have seen writeBlocked before it was reset and not asked for a flush
+        } while (!outbound.isEmpty());
+      }
+      catch (IOException e) {
+        logger.error("Unable to send message", e);
+        close();
+      }
+    }
+
+    /**
+     * @return true if the queue was drained, false if the socket did not accept everything
+     */
+    private boolean write() throws IOException {
+      while (true) {
+        int count = 0;
+        for (ByteBuffer bytes : outbound) {
+          batch[count++] = bytes;
+          if (count == MAX_BATCH) {
+            break;
+          }
+        }
+        if (count == 0) {
+          return true;
+        }
+        long written = channel.write(batch, 0, count);
+        outboundBytes.addAndGet(-written);
+        int done = 0;
+        while (done < count && !batch[done].hasRemaining()) {
+          outbound.poll();
+          outboundSize.decrementAndGet();
+          done++;
+        }
+        if (logger.isDebugEnabled()) {
+          logger.debug("Sent [{}] queued byte buffers of [{}] bytes over the TCP nio socket [{}]", new Object[] {done, written, socketDescription});
+        }
+        Arrays.fill(batch, 0, count, null);
+        if (done < count) {
+          return false;
+        }
+      }
+    }
+
+    private void setWriteBlocked(boolean blocked) {
+      if (writeBlocked != blocked) {
+        writeBlocked = blocked;
+        if (key != null && key.isValid()) {
+          key.interestOps(blocked ? SelectionKey.OP_READ | SelectionKey.OP_WRITE : SelectionKey.OP_READ);
+        }
+      }
+    }
+
+    /**
+     * Detaches this channel from the transport.
+     *
+     * @return true for the first caller only, which must make the reactor report the disconnect
+     */
+    boolean detach() {
+      synchronized (TCPTransportClient.this) {
+        if (reactorChannel == this) {
+          reactorChannel = null;
+        }
+      }
+      return detached.compareAndSet(false, true);
+    }
+
+    /**
+     * Closes the channel if it is still attached, after a read or write failure.
+     */
+    public void close() {
+      if (detach()) {
+        try {
+          channel.close();
+        }
+        catch (IOException e) {
+          logger.debug("Can not close channel", e);
+        }
+        disconnected();
+      }
+    }
+
+    /**
+     * Drops unsent messages, notifies the parent connection and releases the reactor.
+     */
+    public void disconnected() {
+      outbound.clear();
+      outboundSize.set(0);
+      outboundBytes.set(0);
+      try {
+        getParent().onDisconnect();
+      }
+      catch (Exception e) {
+        logger.error("Error", e);
+      }
+      finally {
+        TCPReactor.release(reactor);
+      }
+      logger.info("Reactor registration is stopped for socket [{}]", socketDescription);
+    }
+
+    public String toString() {
+      return TCPTransportClient.this.toString();
+    }
+  }
+
   public void release() throws Exception {
     stop();
     destAddress = null;
@@ -289,7 +609,29 @@ public class TCPTransportClient implements Runnable {
     return this.origAddress;
   }
 
-  public void sendMessage(ByteBuffer bytes) throws IOException {
+  /**
+   * @return number of messages waiting to be written by the reactor
+   */
+  int getOutboundQueueSize() {
+    ReactorChannel channel = reactorChannel;
+    return channel != null ? channel.outboundSize.get() : 0;
+  }
+
+  /**
+   * @return number of bytes waiting to be written by the reactor
+   */
+  long getOutboundBytes() {
+    ReactorChannel channel = reactorChannel;
+    return channel != null ? channel.outboundBytes.get() : 0;
+  }
+
+  public void sendMessage(ByteBuffer bytes) throws IOException, OverloadException {
+    ReactorChannel channel = reactorChannel;
+    if (channel != null) {
+      // written by the reactor thread, possibly together with other queued messages
+      channel.send(bytes);
+      return;
+    }
     if (logger.isDebugEnabled()) {
       logger.debug("About to send a byte buffer of size [{}] over the TCP nio socket [{}]", bytes.array().length, socketDescription);
     }
@@ -337,93 +679,109 @@ public class TCPTransportClient implements Runnable {
   }
 
   /**
-   * Adds data to storage
+   * Adds data to storage and passes on all complete messages it holds.
    *
-   * @param data data to add
+   * @param data data to add, read from its position to its limit
    */
-  private void append(byte[] data) {
-    if (storage.position() + data.length >= storage.capacity()) {
-      ByteBuffer tmp = ByteBuffer.allocate(storage.limit() + data.length * 2);
-      byte[] tmpData = new byte[storage.position()];
-      storage.flip();
-      storage.get(tmpData);
-      tmp.put(tmpData);
-      storage = tmp;
-      logger.warn("Increase storage size. Current size is {}", storage.array().length);
-    }
-
-    try {
-      storage.put(data);
-    }
-    catch (BufferOverflowException boe) {
-      logger.error("Buffer overflow occured", boe);
-    }
-    boolean messageReceived;
-    do {
-      messageReceived = seekMessage();
-    } while (messageReceived);
+  private void append(ByteBuffer data) {
+    int length = data.remaining();
+    if (storageEnd + length > storage.length) {
+      makeRoom(length);
+    }
+    data.get(storage, storageEnd, length);
+    storageEnd += length;
+    seekMessages();
   }
 
-  private boolean seekMessage() {
-    // make sure there's actual data written on the buffer
-    if (storage.position() == 0) {
-      return false;
-    }
+  /**
+   * Moves the unread bytes to the start of storage, and grows it if that is not enough.
+   * This happens at most once per read, not once per message.
+   */
+  private void makeRoom(int length) {
+    int pending = storageEnd - storageStart;
+    byte[] target = storage;
+    if (pending + length > storage.length) {
+      target = new byte[Math.max(pending + length, storage.length * 2)];
+      logger.warn("Increase storage size. Current size is {}", target.length);
+    }
+    System.arraycopy(storage, storageStart, target, 0, pending);
+    storage = target;
+    storageStart = 0;
+    storageEnd = pending;
+  }
 
-    storage.flip();
-    try {
+  /**
+   * Passes every complete message in storage to the parent connection, in a single pass.
+   * Messages are handed out as slices of storage, which are only valid until
+   * {@link TCPClientConnection#onMessageReceived(ByteBuffer)} returns. A message filling the
+   * whole storage is handed out with the array, which the parser may keep, and storage is
+   * replaced.
+   */
+  private void seekMessages() {
+    int position = storageStart;
+    while (storageEnd - position >= 4) {
       // get first four bytes for version and message length
       // 0                   1                   2                   3
       // 0 1 2 3 4 5 6 7 8 9 0 1 2 3 4 5 6 7 8 9 0 1 2 3 4 5 6 7 8 9 0 1
       // +-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+
       // |    Version    |                 Message Length                |
       // +-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+
-      int tmp = storage.getInt();
-      // reset position so we can now read whole message
-      storage.position(0);
+      int version = storage[position] & 0xFF;
+      int messageLength = ((storage[position + 1] & 0xFF) << 16) | ((storage[position + 2] & 0xFF) << 8) | (storage[position + 3] & 0xFF);
 
       // check that version is 1, as per RFC 3588 - Section 3:
       // This Version field MUST be set to 1 to indicate Diameter Version 1
-      byte vers = (byte) (tmp >> 24);
-      if (vers != 1) {
-        return false;
+      // and that the length covers at least the header and is not beyond what we accept
+      if (version != 1 || messageLength < MESSAGE_HEADER_SIZE || messageLength > maxFrameSize) {
+        // message boundaries are lost, nothing stored can be trusted any more
+        logger.warn("Broken message received on [{}] (version: {}, length: {}). Discarding {} bytes.",
+            new Object[] {socketDescription, version, messageLength, storageEnd - position});
+        resetStorage();
+        getParent().onAvpDataException(new AvpDataException("Broken message received (version: " + version + ", length: " + messageLength + ")"));
+        return;
       }
-      // extract the message length, so we know how much to read
-      int messageLength = (tmp & 0xFFFFFF);
 
       // verify that we do have the whole message in the storage
-      if (storage.limit() < messageLength) {
-        // we don't have it all.. let's restore buffer to receive more
-        storage.position(storage.limit());
-        storage.limit(storage.capacity());
-        logger.debug("Received partial message, waiting for remaining (expected: {} bytes, got {} bytes).", messageLength, storage.position());
-        return false;
+      if (storageEnd - position < messageLength) {
+        logger.debug("Received partial message, waiting for remaining (expected: {} bytes, got {} bytes).", messageLength, storageEnd - position);
+        break;
       }
 
-      // read the complete message
-      byte[] data = new byte[messageLength];
-      storage.get(data);
-      storage.compact();
-
       try {
         // make a message out of data and process it
         logger.debug("Passing message on to parent");
-        getParent().onMessageReceived(ByteBuffer.wrap(data));
+        getParent().onMessageReceived(ByteBuffer.wrap(storage, position, messageLength));
         logger.debug("Finished passing message on to parent");
       }
       catch (AvpDataException e) {
+        // the frame is skipped, the following ones are still in sync
         logger.debug("Garbage was received. Discarding.");
-        storage.clear();
         getParent().onAvpDataException(e);
       }
+      position += messageLength;
+      if (messageLength == storage.length) {
+        // the parser does not copy a buffer it gets whole, so it must not be written again
+        storage = new byte[storageSize];
+        storageStart = 0;
+        storageEnd = 0;
+        return;
+      }
     }
-    catch(BufferUnderflowException bue) {
-      // we don't have enough data to read message length.. wait for more
-      storage.position(storage.limit());
-      storage.limit(storage.capacity());
-      logger.debug("Buffer underflow occured, waiting for more data.", bue);
-      return false;
+
+    if (position == storageEnd) {
+      resetStorage();
+    }
+    else {
+      storageStart = position;
+    }
+  }
+
+  private void resetStorage() {
+    storageStart = 0;
+    storageEnd = 0;
+    if (storage.length > MAX_IDLE_STORAGE_SIZE) {
+      // give back the room taken by a large message
+      storage = new byte[storageSize];
     }
-    return true;
   }
 }
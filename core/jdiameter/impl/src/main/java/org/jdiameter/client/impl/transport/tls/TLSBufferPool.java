@@ -0,0 +1,73 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2011, Red Hat, Inc. and individual contributors
+ * by the @authors tag. See the copyright.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.jdiameter.client.impl.transport.tls;
+
+import java.nio.ByteBuffer;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Pool of buffers for TLS records and the data they carry, shared by all TLS transports
+ * running in reactor mode. A connection only holds buffers while it has a partial record
+ * to complete or encrypted data the socket did not take yet, so idle connections cost no
+ * buffer memory.
+ */
+class TLSBufferPool {
+
+  // buffers kept for reuse, more are allocated when needed and dropped when released
+  private static final int MAX_POOLED = 256;
+
+  private static final Queue<ByteBuffer> pool = new ConcurrentLinkedQueue<ByteBuffer>();
+  private static final AtomicInteger pooled = new AtomicInteger();
+
+  private TLSBufferPool() {
+  }
+
+  /**
+   * @param size minimum capacity
+   * @return cleared buffer, to be given back with {@link #release(ByteBuffer)}
+   */
+  static ByteBuffer get(int size) {
+    ByteBuffer buffer = pool.poll();
+    if (buffer == null) {
+      return ByteBuffer.allocate(size);
+    }
+    pooled.decrementAndGet();
+    if (buffer.capacity() < size) {
+      // records got bigger, the small buffer is dropped
+      return ByteBuffer.allocate(size);
+    }
+    return buffer;
+  }
+
+  static void release(ByteBuffer buffer) {
+    if (buffer != null && pooled.incrementAndGet() <= MAX_POOLED) {
+      buffer.clear();
+      pool.offer(buffer);
+    }
+    else if (buffer != null) {
+      pooled.decrementAndGet();
+    }
+  }
+}
@@ -22,6 +22,10 @@
 
 package org.jdiameter.client.impl.transport.tls;
 
+import static org.jdiameter.client.impl.helpers.Parameters.TcpMaxQueuedBytes;
+import static org.jdiameter.client.impl.helpers.Parameters.TcpReactorThreads;
+import static org.jdiameter.client.impl.helpers.Parameters.UseTcpReactor;
+
 import java.io.IOException;
 import java.net.InetAddress;
 import java.net.InetSocketAddress;
@@ -59,6 +63,7 @@ public class TLSClientConnection implements IConnection {
 
   private TLSTransportClient client;
   private SSLSocketFactory factory;
+  private SSLContext context;
   private Configuration sslConfig;
 
   private final long createdTime;
@@ -75,6 +80,7 @@ public class TLSClientConnection implements IConnection {
       int localPort, IMessageParser parser, String ref) {
     this.createdTime = System.currentTimeMillis();
     this.client = new TLSTransportClient(this, concurrentFactory, parser);
+    configureTransport(config);
     this.client.setDestAddress(new InetSocketAddress(remoteAddress, remotePort));
     this.client.setOrigAddress(new InetSocketAddress(localAddress, localPort));
 
@@ -96,6 +102,7 @@ public class TLSClientConnection implements IConnection {
     this.listeners.add(listener);
 
     this.client = new TLSTransportClient(this, concurrentFactory, parser);
+    configureTransport(config);
     this.client.setDestAddress(new InetSocketAddress(remoteAddress, remotePort));
     this.client.setOrigAddress(new InetSocketAddress(localAddress, localPort));
 
@@ -119,6 +126,7 @@ public class TLSClientConnection implements IConnection {
 
     this.client.setDestAddress(new InetSocketAddress(socket.getRemoteSocketAddress().toString(), socket.getPort()));
     this.client.setOrigAddress(new InetSocketAddress(socket.getInetAddress().getHostAddress(), socket.getLocalPort()));
+    configureTransport(config);
     this.client.initialize(socket);
     this.client.start();
     try {
@@ -132,16 +140,24 @@ public class TLSClientConnection implements IConnection {
     }
   }
 
+  private void configureTransport(Configuration config) {
+    if (config != null && config.getBooleanValue(UseTcpReactor.ordinal(), (Boolean) UseTcpReactor.defValue())) {
+      client.setReactor(config.getIntValue(TcpReactorThreads.ordinal(), (Integer) TcpReactorThreads.defValue()),
+          config.getIntValue(TcpMaxQueuedBytes.ordinal(), (Integer) TcpMaxQueuedBytes.defValue()));
+    }
+  }
+
   private void fillSecurityData(Configuration config, String ref) throws Exception {
     sslConfig = TLSUtils.getSSLConfiguration(config, ref);
     if (sslConfig == null) {
       throw new Exception("Incorrect reference to secutity data");
     }
-    this.factory = getSSLContext(sslConfig);
+    fillSecurityData(sslConfig);
   }
 
   private void fillSecurityData(Configuration config) throws Exception {
-    this.factory = getSSLContext(config);
+    this.context = TLSUtils.getSharedSecureContext(config);
+    this.factory = context.getSocketFactory();
   }
 
   protected TLSTransportClient getClient() {
@@ -156,9 +172,8 @@ public class TLSClientConnection implements IConnection {
     return factory;
   }
 
-  private SSLSocketFactory getSSLContext(Configuration sslConfig) throws Exception {
-    SSLContext ctx = TLSUtils.getSecureContext(sslConfig);
-    return ctx.getSocketFactory();
+  public SSLContext getSSLContext() {
+    return context;
   }
 
   public long getCreatedTime() {
@@ -283,6 +298,9 @@ public class TLSClientConnection implements IConnection {
         getClient().sendMessage(message);
       }
     }
+    catch (OverloadException e) {
+      throw e;
+    }
     catch (Exception e) {
       throw new TransportException("Cannot send message: ", TransportError.FailedSendMessage, e);
     }
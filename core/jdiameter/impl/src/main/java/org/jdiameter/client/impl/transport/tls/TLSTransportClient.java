@@ -24,6 +24,7 @@ package org.jdiameter.client.impl.transport.tls;
 
 import static org.jdiameter.client.impl.helpers.Parameters.CipherSuites;
 import static org.jdiameter.client.impl.helpers.Parameters.SDEnableSessionCreation;
+import static org.jdiameter.common.api.concurrent.IConcurrentFactory.ScheduledExecServices.ConnectionTimer;
 
 import java.io.IOException;
 import java.io.InputStream;
@@ -34,21 +35,35 @@ import java.nio.BufferOverflowException;
 import java.nio.ByteBuffer;
 import java.nio.channels.AsynchronousCloseException;
 import java.nio.channels.ClosedByInterruptException;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReentrantLock;
 
 import javax.net.ssl.HandshakeCompletedEvent;
 import javax.net.ssl.HandshakeCompletedListener;
+import javax.net.ssl.SSLEngine;
+import javax.net.ssl.SSLEngineResult;
+import javax.net.ssl.SSLException;
 import javax.net.ssl.SSLSocket;
 import javax.net.ssl.SSLSocketFactory;
 
 import org.jdiameter.api.Avp;
 import org.jdiameter.api.AvpDataException;
 import org.jdiameter.api.AvpSet;
+import org.jdiameter.api.OverloadException;
 import org.jdiameter.client.api.IMessage;
 import org.jdiameter.client.api.io.NotInitializedException;
 import org.jdiameter.client.api.parser.IMessageParser;
 import org.jdiameter.client.api.parser.ParseException;
+import org.jdiameter.client.impl.transport.tcp.TCPReactor;
 import org.jdiameter.common.api.concurrent.IConcurrentFactory;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -103,6 +118,16 @@ public class TLSTransportClient {
   //tell weather we are in a client mode
   private boolean client;
   private boolean receivedInband;
+
+  // reactor mode: the connection is driven by a shared selector thread through an SSLEngine
+  // instead of a reader thread blocked on the socket streams
+  private boolean useReactor = false;
+  private int reactorThreads = 0;
+  private int maxQueuedBytes;
+  private SocketChannel socketChannel;
+  // attachment of the current connection, null while not started
+  private volatile EngineChannel reactorChannel;
+
   /**
    * Default constructor
    * 
@@ -115,11 +140,36 @@ public class TLSTransportClient {
     this.parser = parser;
   }
 
+  /**
+   * Makes this transport read and write on the shared {@link TCPReactor} instead of its
+   * own thread, TLS is then done with an {@link SSLEngine}. Must be called before the
+   * transport is initialized.
+   *
+   * @param threads number of reactor threads, 0 for one per available processor
+   * @param maxQueuedBytes queued bytes above which messages are rejected
+   */
+  void setReactor(int threads, int maxQueuedBytes) {
+    this.useReactor = true;
+    this.reactorThreads = threads;
+    this.maxQueuedBytes = maxQueuedBytes;
+  }
+
   public void initialize() throws IOException, NotInitializedException {
     if (destAddress == null) {
       throw new NotInitializedException("Destination address is not set");
     }
     this.client = true;
+    if (useReactor) {
+      this.socketChannel = SocketChannel.open();
+      if (this.origAddress != null) {
+        this.socketChannel.socket().bind(this.origAddress);
+      }
+      this.socketChannel.connect(this.destAddress);
+      this.socketChannel.configureBlocking(false);
+      this.plainSocket = this.socketChannel.socket();
+      parentConnection.onConnected();
+      return;
+    }
     // SSLSocketFactory cltFct = parentConnection.getSSLFactory();
     // this.sslSocket = (SSLSocket) cltFct.createSocket();
     //
@@ -157,6 +207,15 @@ public class TLSTransportClient {
 
     this.destAddress = new InetSocketAddress(socket.getInetAddress(), socket.getPort());
 
+    if (useReactor) {
+      if (socket.getChannel() != null) {
+        this.socketChannel = socket.getChannel();
+        this.socketChannel.configureBlocking(false);
+        return;
+      }
+      logger.warn("Socket [{}] has no channel, it can not be driven by the reactor", socket);
+      this.useReactor = false;
+    }
     this.inputStream = this.plainSocket.getInputStream();
     this.outputStream = this.plainSocket.getOutputStream();
   }
@@ -174,6 +233,10 @@ public class TLSTransportClient {
     if (getParent() == null) {
       throw new NotInitializedException("No parent connection is set is set");
     }
+    if (useReactor) {
+      startReactor();
+      return;
+    }
     if (this.readThread == null || !this.readThread.isAlive()) {
       this.readThread = this.concurrentFactory.getThread("TLSReader", this.readTash);
     }
@@ -212,13 +275,38 @@ public class TLSTransportClient {
     return this.origAddress;
   }
 
+  private void startReactor() throws NotInitializedException {
+    EngineChannel channel;
+    synchronized (this) {
+      if (reactorChannel != null) {
+        return;
+      }
+      TCPReactor reactor;
+      try {
+        reactor = TCPReactor.acquire(concurrentFactory, reactorThreads);
+      }
+      catch (IOException e) {
+        throw new NotInitializedException(e);
+      }
+      channel = new EngineChannel(reactor, reactor.nextWorker(), socketChannel);
+      reactorChannel = channel;
+    }
+    logger.debug("Transport is started on the shared reactor. Socket is [{}]", socketDescription);
+    channel.worker.register(channel, 0);
+  }
+
   // ---------------- helper methods ---------------------
-  void sendMessage(IMessage message) throws IOException, AvpDataException, NotInitializedException, ParseException {
+  void sendMessage(IMessage message) throws IOException, AvpDataException, NotInitializedException, ParseException, OverloadException {
 
     if (!isConnected()) {
       throw new IOException("Failed to send message over [" + socketDescription + "]");
     }
 
+    if (useReactor) {
+      sendQueued(message);
+      return;
+    }
+
     //switch to wait for SSL handshake to workout.
     if(!isExchangeAllowed()){
       //TODO: do more?
@@ -250,12 +338,60 @@ public class TLSTransportClient {
   }
 
 
+  /**
+   * Queues a message for the reactor, which encrypts it once TLS is up. Messages sent while
+   * the handshake is going on wait for it instead of being dropped.
+   */
+  private void sendQueued(IMessage message) throws IOException, AvpDataException, ParseException, OverloadException {
+    doTLSPreSendProcessing(message);
+    boolean startTls = isTLSStartAnswer(message);
+    if (startTls) {
+      // the handshake starts as soon as this answer has been written in clear
+      this.receivedInband = false;
+    }
+    ByteBuffer messageBuffer = this.parser.encodeMessage(message);
+    EngineChannel channel = reactorChannel;
+    if (channel != null) {
+      channel.send(messageBuffer, startTls);
+      return;
+    }
+    // CER written before the transport is started, TLS can not be up yet
+    if (logger.isDebugEnabled()) {
+      logger.debug("About to send a byte buffer of size [{}] over the TLS nio socket [{}]", messageBuffer.remaining(), socketDescription);
+    }
+    try {
+      while (messageBuffer.hasRemaining()) {
+        socketChannel.write(messageBuffer);
+      }
+    }
+    catch (Exception e) {
+      logger.debug("Unable to send message", e);
+      throw new IOException("Error while sending message: " + e);
+    }
+  }
+
   boolean isConnected() {
+    if (useReactor) {
+      return this.socketChannel != null && this.socketChannel.isConnected();
+    }
     return this.plainSocket != null && this.plainSocket.isConnected();
   }
 
   void stop() throws Exception {
     logger.debug("Stopping transport. Socket is [{}]", socketDescription);
+    if (useReactor) {
+      if (socketChannel != null && socketChannel.isOpen()) {
+        socketChannel.close();
+      }
+      EngineChannel channel = reactorChannel;
+      if (channel != null && channel.detach()) {
+        // disconnect is reported from the reactor thread, as the reader thread does
+        channel.worker.disconnect(channel);
+      }
+      clearBuffer();
+      logger.debug("Transport is stopped. Socket is [{}]", socketDescription);
+      return;
+    }
     stop = true;
     if (plainSocket != null && !plainSocket.isClosed()) {
       plainSocket.close();
@@ -273,8 +409,12 @@ public class TLSTransportClient {
   }
 
   void append(byte[] data) {
-    if (storage.position() + data.length >= storage.capacity()) {
-      ByteBuffer tmp = ByteBuffer.allocate(storage.limit() + data.length * 2);
+    append(ByteBuffer.wrap(data));
+  }
+
+  void append(ByteBuffer data) {
+    if (storage.position() + data.remaining() >= storage.capacity()) {
+      ByteBuffer tmp = ByteBuffer.allocate(storage.limit() + data.remaining() * 2);
       byte[] tmpData = new byte[storage.position()];
       storage.flip();
       storage.get(tmpData);
@@ -438,22 +578,45 @@ public class TLSTransportClient {
     // startTLS;
     // }
 
-    if (this.shaken || this.client || this.plainSocket instanceof SSLSocket || message.isRequest()
-        || message.getCommandCode() != IMessage.CAPABILITIES_EXCHANGE_ANSWER) {
+    if (this.plainSocket instanceof SSLSocket) {
       return;
     }
 
-    if (this.receivedInband && isSuccess(message)) {
+    if (isTLSStartAnswer(message)) {
       this.receivedInband = false;
       startTLS();
     }
   }
 
+  /**
+   * @return true if the message is the successful CEA after which the server side starts TLS
+   */
+  private boolean isTLSStartAnswer(IMessage message) throws AvpDataException {
+    if (this.shaken || this.client || message.isRequest() || message.getCommandCode() != IMessage.CAPABILITIES_EXCHANGE_ANSWER) {
+      return false;
+    }
+    return this.receivedInband && isSuccess(message);
+  }
+
   /**
    * @throws NotInitializedException 
    * 
    */
   private void startTLS() throws NotInitializedException {
+    if (useReactor) {
+      // client side, called by the reactor thread while it reads the CEA
+      EngineChannel channel = reactorChannel;
+      if (channel != null) {
+        try {
+          channel.startHandshake();
+        }
+        catch (IOException e) {
+          logger.error("Unable to start TLS on [" + socketDescription + "]", e);
+          channel.close();
+        }
+      }
+      return;
+    }
     try {
       this.shaking = true;
       SSLSocketFactory cltFct = parentConnection.getSSLFactory();
@@ -557,4 +720,543 @@ public class TLSTransportClient {
     }
   }
 
-}
\ No newline at end of file
+  private static final ByteBuffer EMPTY_BUFFER = ByteBuffer.allocate(0);
+
+  /**
+   * Message queued on a reactor connection.
+   */
+  private static class Outbound {
+    final ByteBuffer bytes;
+    final int size;
+    // the server side starts TLS once this answer has been written
+    final boolean startTls;
+
+    Outbound(ByteBuffer bytes, boolean startTls) {
+      this.bytes = bytes;
+      this.size = bytes.remaining();
+      this.startTls = startTls;
+    }
+  }
+
+  /**
+   * Attachment of one connection of this transport to the reactor, a new one is created
+   * every time the transport is started. Apart from {@link #send(ByteBuffer, boolean)} and
+   * {@link #detach()}, all methods run on the reactor thread of {@link #worker}.
+   * <p>
+   * Messages are exchanged in clear until the Inband-Security-Id exchange in CER/CEA asks for
+   * TLS. An {@link SSLEngine} is then created from the context shared by all connections with
+   * the same security data, so a reconnecting peer can resume its previous session, and
+   * records are wrapped and unwrapped through buffers taken from {@link TLSBufferPool}.
+   * The delegated tasks of the engine, such as certificate checks, run on the connection
+   * executor of the stack and the handshake goes on with a flush once they are done.
+   */
+  class EngineChannel implements TCPReactor.Channel {
+
+    final TCPReactor reactor;
+    final TCPReactor.Worker worker;
+    final SocketChannel channel;
+
+    private final Queue<Outbound> outbound = new ConcurrentLinkedQueue<Outbound>();
+    private final AtomicLong outboundBytes = new AtomicLong();
+    // set while a flush task is pending on the reactor
+    private final AtomicBoolean flushRequested = new AtomicBoolean();
+    // set while the socket buffer is full and the reactor waits for it to be writable
+    private volatile boolean writeBlocked;
+    private final AtomicBoolean detached = new AtomicBoolean();
+
+    // touched by the reactor thread only
+    private SelectionKey key;
+    private SSLEngine engine;
+    // set from the start of a handshake until it completes, queued messages wait meanwhile
+    private boolean handshaking;
+    // set once the first handshake has completed, later ones are renegotiations
+    private boolean established;
+    // set while delegated tasks of the engine run on the executor
+    private volatile boolean tasksRunning;
+    // received bytes of an incomplete record, in write mode
+    private ByteBuffer netIn;
+    // encrypted bytes the socket did not take yet, in read mode
+    private ByteBuffer netOut;
+
+    EngineChannel(TCPReactor reactor, TCPReactor.Worker worker, SocketChannel channel) {
+      this.reactor = reactor;
+      this.worker = worker;
+      this.channel = channel;
+    }
+
+    public SocketChannel getChannel() {
+      return channel;
+    }
+
+    /**
+     * Queues a message for the reactor to write.
+     *
+     * @param bytes encoded message
+     * @param startTls true if TLS must be started once the message has been written
+     * @throws OverloadException if too many bytes are already waiting
+     * @throws IOException if the connection has been closed
+     */
+    void send(ByteBuffer bytes, boolean startTls) throws IOException, OverloadException {
+      if (detached.get()) {
+        throw new IOException("Connection closed");
+      }
+      int size = bytes.remaining();
+      long queued = outboundBytes.get();
+      if (queued > 0 && queued + size > maxQueuedBytes) {
+        throw new OverloadException("Outbound queue of socket [" + socketDescription + "] is full, " + queued + " bytes are waiting");
+      }
+      outbound.offer(new Outbound(bytes, startTls));
+      outboundBytes.addAndGet(size);
+      if (logger.isDebugEnabled()) {
+        logger.debug("Queued a byte buffer of size [{}] for the TLS nio socket [{}]", size, socketDescription);
+      }
+      if (!writeBlocked && flushRequested.compareAndSet(false, true)) {
+        worker.flush(this, 0);
+      }
+    }
+
+    /**
+     * Called by the reactor once the channel is registered on its selector.
+     */
+    public void registered(SelectionKey key) {
+      this.key = key;
+      if (writeBlocked || !outbound.isEmpty()) {
+        flush();
+      }
+    }
+
+    /**
+     * Called by the reactor thread when the channel has data to read.
+     *
+     * @param readBuffer reactor buffer to read into
+     * @return false if the channel has been closed
+     */
+    public boolean read(ByteBuffer readBuffer) {
+      try {
+        int dataLength = channel.read(readBuffer);
+        logger.debug("Just read [{}] bytes on [{}]", dataLength, socketDescription);
+        if (dataLength != -1) {
+          readBuffer.flip();
+          if (engine == null) {
+            // may start the handshake when it is the CEA
+            append(readBuffer);
+            return !detached.get();
+          }
+          if (unwrap(readBuffer)) {
+            return true;
+          }
+          logger.debug("TLS session is closed by peer on [{}]", socketDescription);
+        }
+      }
+      catch (ClosedChannelException e) {
+        logger.debug("Transport is closed");
+      }
+      catch (Throwable e) {
+        logger.error("Transport exception ", e);
+      }
+      finally {
+        readBuffer.clear();
+      }
+      close();
+      return false;
+    }
+
+    /**
+     * Creates the engine and starts the handshake, on the client after the CEA was read and on
+     * the server after it was written.
+     */
+    void startHandshake() throws IOException {
+      TLSClientConnection parent = getParent();
+      engine = parent.getSSLContext().createSSLEngine(destAddress.getAddress().getHostAddress(), destAddress.getPort());
+      engine.setUseClientMode(client);
+      engine.setEnableSessionCreation(parent.getSSLConfig().getBooleanValue(SDEnableSessionCreation.ordinal(), true));
+      String cipherSuites = parent.getSSLConfig().getStringValue(CipherSuites.ordinal(), null);
+      if (cipherSuites != null) {
+        engine.setEnabledCipherSuites(cipherSuites.split(","));
+      }
+      lock.lock();
+      try {
+        shaking = true;
+      }
+      finally {
+        lock.unlock();
+      }
+      handshaking = true;
+      logger.debug("Starting TLS handshake on [{}]", socketDescription);
+      engine.beginHandshake();
+      handshake();
+    }
+
+    /**
+     * Advances the handshake as far as it can go without more data from the peer.
+     *
+     * @return false if the socket did not take all handshake data
+     */
+    private boolean handshake() throws IOException {
+      while (true) {
+        if (!writeNet()) {
+          setWriteBlocked(true);
+          return false;
+        }
+        switch (engine.getHandshakeStatus()) {
+          case NEED_TASK:
+            // resumed by a flush once the tasks have run
+            runDelegatedTasks();
+            return true;
+          case NEED_WRAP:
+            wrap(EMPTY_BUFFER);
+            break;
+          case NEED_UNWRAP:
+            return true;
+          case FINISHED:
+          case NOT_HANDSHAKING:
+            if (handshaking) {
+              handshakeCompleted();
+            }
+            return true;
+          default:
+            return true;
+        }
+      }
+    }
+
+    private void runDelegatedTasks() {
+      if (tasksRunning) {
+        return;
+      }
+      final List<Runnable> tasks = new ArrayList<Runnable>();
+      Runnable task;
+      while ((task = engine.getDelegatedTask()) != null) {
+        tasks.add(task);
+      }
+      if (tasks.isEmpty()) {
+        return;
+      }
+      tasksRunning = true;
+      // certificate checks may block, they must not stall the other connections of the reactor
+      concurrentFactory.getScheduledExecutorService(ConnectionTimer.name()).execute(new Runnable() {
+        public void run() {
+          try {
+            for (Runnable task : tasks) {
+              task.run();
+            }
+          }
+          finally {
+            tasksRunning = false;
+            worker.flush(EngineChannel.this, 0);
+          }
+        }
+      });
+    }
+
+    private void handshakeCompleted() {
+      handshaking = false;
+      if (established) {
+        logger.debug("TLS session renegotiated on [{}]", socketDescription);
+      }
+      else {
+        established = true;
+        lock.lock();
+        try {
+          shaking = false;
+          shaken = true;
+        }
+        finally {
+          lock.unlock();
+        }
+        if (logger.isDebugEnabled()) {
+          logger.debug("TLS handshake completed on [{}] with cipher suite {}", socketDescription, engine.getSession().getCipherSuite());
+        }
+        getParent().onConnected();
+      }
+      if (!outbound.isEmpty() && flushRequested.compareAndSet(false, true)) {
+        worker.flush(this, 0);
+      }
+    }
+
+    /**
+     * Decrypts the received records and hands their data to the message framing.
+     *
+     * @return false if the peer closed the TLS session
+     */
+    private boolean unwrap(ByteBuffer data) throws IOException {
+      ByteBuffer in = data;
+      if (netIn != null) {
+        if (netIn.remaining() < data.remaining()) {
+          ByteBuffer bigger = TLSBufferPool.get(netIn.position() + data.remaining());
+          netIn.flip();
+          bigger.put(netIn);
+          TLSBufferPool.release(netIn);
+          netIn = bigger;
+        }
+        netIn.put(data);
+        netIn.flip();
+        in = netIn;
+      }
+      ByteBuffer app = TLSBufferPool.get(engine.getSession().getApplicationBufferSize());
+      try {
+        while (in.hasRemaining()) {
+          SSLEngineResult result = engine.unwrap(in, app);
+          if (app.position() > 0) {
+            app.flip();
+            append(app);
+            app.clear();
+          }
+          SSLEngineResult.Status status = result.getStatus();
+          if (status == SSLEngineResult.Status.CLOSED) {
+            return false;
+          }
+          if (status == SSLEngineResult.Status.BUFFER_UNDERFLOW) {
+            break;
+          }
+          if (status == SSLEngineResult.Status.BUFFER_OVERFLOW) {
+            // the session allows bigger records than when the buffer was taken
+            ByteBuffer bigger = TLSBufferPool.get(Math.max(engine.getSession().getApplicationBufferSize(), app.capacity() * 2));
+            TLSBufferPool.release(app);
+            app = bigger;
+            continue;
+          }
+          SSLEngineResult.HandshakeStatus handshakeStatus = result.getHandshakeStatus();
+          if (handshakeStatus == SSLEngineResult.HandshakeStatus.NEED_TASK || handshakeStatus == SSLEngineResult.HandshakeStatus.NEED_WRAP
+              || handshakeStatus == SSLEngineResult.HandshakeStatus.FINISHED) {
+            // also a renegotiation or a post-handshake message, queued messages wait for it
+            handshaking = true;
+            if (!handshake() || tasksRunning) {
+              // the rest is unwrapped once the handshake data has been written or the tasks have run, see write()
+              break;
+            }
+            continue;
+          }
+          if (result.bytesConsumed() == 0) {
+            break;
+          }
+        }
+      }
+      finally {
+        TLSBufferPool.release(app);
+      }
+      keep(in);
+      return true;
+    }
+
+    /**
+     * Keeps the received bytes the engine did not use until the rest of their record arrives.
+     */
+    private void keep(ByteBuffer in) {
+      if (in == netIn) {
+        if (netIn.hasRemaining()) {
+          netIn.compact();
+        }
+        else {
+          TLSBufferPool.release(netIn);
+          netIn = null;
+        }
+      }
+      else if (in.hasRemaining()) {
+        netIn = TLSBufferPool.get(Math.max(engine.getSession().getPacketBufferSize(), in.remaining()));
+        netIn.put(in);
+      }
+    }
+
+    /**
+     * Encrypts data from src into {@link #netOut}, which must have been written.
+     */
+    private void wrap(ByteBuffer src) throws IOException {
+      ByteBuffer out = TLSBufferPool.get(engine.getSession().getPacketBufferSize());
+      SSLEngineResult result;
+      try {
+        result = engine.wrap(src, out);
+      }
+      catch (SSLException e) {
+        TLSBufferPool.release(out);
+        throw e;
+      }
+      out.flip();
+      if (out.hasRemaining()) {
+        netOut = out;
+      }
+      else {
+        TLSBufferPool.release(out);
+      }
+      if (result.getStatus() != SSLEngineResult.Status.OK) {
+        throw new SSLException("Can not wrap data on [" + socketDescription + "], engine status is " + result.getStatus());
+      }
+      if (result.getHandshakeStatus() == SSLEngineResult.HandshakeStatus.NEED_TASK) {
+        runDelegatedTasks();
+      }
+    }
+
+    /**
+     * @return true if no encrypted data is left to write
+     */
+    private boolean writeNet() throws IOException {
+      if (netOut == null) {
+        return true;
+      }
+      channel.write(netOut);
+      if (netOut.hasRemaining()) {
+        return false;
+      }
+      TLSBufferPool.release(netOut);
+      netOut = null;
+      return true;
+    }
+
+    /**
+     * Writes queued messages until the queue is empty, the socket buffer is full or a
+     * handshake has to complete first.
+     */
+    public void flush() {
+      flushRequested.set(false);
+      if (detached.get()) {
+        return;
+      }
+      try {
+        do {
+          if (!write()) {
+            setWriteBlocked(true);
+            return;
+          }
+          setWriteBlocked(false);
+          // a sender may have seen writeBlocked before it was reset and not asked for a flush
+        } while (!handshaking && !outbound.isEmpty());
+      }
+      catch (IOException e) {
+        logger.error("Unable to send message", e);
+        close();
+      }
+      catch (RuntimeException e) {
+        // such as CancelledKeyException after a concurrent close, closes this channel only
+        logger.error("Unable to send message", e);
+        close();
+      }
+    }
+
+    /**
+     * @return false if the socket did not accept everything
+     */
+    private boolean write() throws IOException {
+      if (!writeNet()) {
+        return false;
+      }
+      if (handshaking) {
+        if (!handshake()) {
+          return false;
+        }
+        if (tasksRunning) {
+          return true;
+        }
+        if (netIn != null && !unwrap(EMPTY_BUFFER)) {
+          throw new SSLException("TLS session is closed by peer");
+        }
+        if (handshaking) {
+          return true;
+        }
+      }
+      Outbound entry;
+      while ((entry = outbound.peek()) != null) {
+        if (engine == null) {
+          channel.write(entry.bytes);
+          if (entry.bytes.hasRemaining()) {
+            return false;
+          }
+        }
+        else {
+          while (entry.bytes.hasRemaining()) {
+            wrap(entry.bytes);
+            if (!writeNet()) {
+              return false;
+            }
+            SSLEngineResult.HandshakeStatus handshakeStatus = engine.getHandshakeStatus();
+            if (handshakeStatus != SSLEngineResult.HandshakeStatus.NOT_HANDSHAKING && handshakeStatus != SSLEngineResult.HandshakeStatus.FINISHED) {
+              // renegotiation, the engine wraps no more data until the peer answered
+              handshaking = true;
+              if (!handshake()) {
+                return false;
+              }
+              if (handshaking) {
+                // resumed once the handshake completes, from the read path or a flush
+                return true;
+              }
+            }
+          }
+        }
+        outbound.poll();
+        outboundBytes.addAndGet(-entry.size);
+        if (logger.isDebugEnabled()) {
+          logger.debug("Sent a byte buffer of size [{}] over the TLS nio socket [{}]", entry.size, socketDescription);
+        }
+        if (entry.startTls) {
+          startHandshake();
+          return true;
+        }
+      }
+      return true;
+    }
+
+    private void setWriteBlocked(boolean blocked) {
+      if (writeBlocked != blocked) {
+        writeBlocked = blocked;
+        if (key != null && key.isValid()) {
+          key.interestOps(blocked ? SelectionKey.OP_READ | SelectionKey.OP_WRITE : SelectionKey.OP_READ);
+        }
+      }
+    }
+
+    /**
+     * Detaches this channel from the transport.
+     *
+     * @return true for the first caller only, which must make the reactor report the disconnect
+     */
+    boolean detach() {
+      synchronized (TLSTransportClient.this) {
+        if (reactorChannel == this) {
+          reactorChannel = null;
+        }
+      }
+      return detached.compareAndSet(false, true);
+    }
+
+    /**
+     * Closes the channel if it is still attached, after a read, write or handshake failure.
+     */
+    public void close() {
+      if (detach()) {
+        try {
+          channel.close();
+        }
+        catch (IOException e) {
+          logger.debug("Can not close channel", e);
+        }
+        disconnected();
+      }
+    }
+
+    /**
+     * Drops unsent messages, gives back the pooled buffers, notifies the parent connection
+     * and releases the reactor.
+     */
+    public void disconnected() {
+      outbound.clear();
+      outboundBytes.set(0);
+      TLSBufferPool.release(netIn);
+      netIn = null;
+      TLSBufferPool.release(netOut);
+      netOut = null;
+      try {
+        getParent().onDisconnect();
+      }
+      catch (Exception e) {
+        logger.error("Error", e);
+      }
+      finally {
+        TCPReactor.release(reactor);
+      }
+      logger.info("Reactor registration is stopped for socket [{}]", socketDescription);
+    }
+
+    public String toString() {
+      return TLSTransportClient.this.toString();
+    }
+  }
+}
@@ -38,6 +38,8 @@ import static org.jdiameter.client.impl.helpers.Parameters.TrustData;
 
 import java.io.FileInputStream;
 import java.security.KeyStore;
+import java.util.Map;
+import java.util.WeakHashMap;
 
 import javax.net.ssl.KeyManager;
 import javax.net.ssl.KeyManagerFactory;
@@ -55,6 +57,24 @@ import org.jdiameter.api.Configuration;
  */
 public class TLSUtils {
 
+  // one context per security data, so that connections share its session caches
+  private static final Map<Configuration, SSLContext> contexts = new WeakHashMap<Configuration, SSLContext>();
+
+  /**
+   * Returns the context for the security data, creating it on first use. Connections using the
+   * same context can resume each other's TLS sessions instead of doing a full handshake.
+   */
+  public static SSLContext getSharedSecureContext(Configuration sslConfig) throws Exception {
+    synchronized (contexts) {
+      SSLContext ctx = contexts.get(sslConfig);
+      if (ctx == null) {
+        ctx = getSecureContext(sslConfig);
+        contexts.put(sslConfig, ctx);
+      }
+      return ctx;
+    }
+  }
+
   public static SSLContext getSecureContext(Configuration sslConfig) throws Exception {
     // TODO: use classloader to fetch files.
     final String contextTransportAlgo = sslConfig.getStringValue(SDProtocol.ordinal(), null);
@@ -43,7 +43,8 @@ public interface IConcurrentFactory {
     PeerOverloadTimer,
     ConnectionTimer,
     StatisticTimer,
-    ApplicationSession
+    ApplicationSession,
+    PeerFSMExecutor
   }
 
   // Thread
@@ -54,6 +54,29 @@ public interface ISessionDatasource {
 
   public boolean isClustered();
 
+  /**
+   * Sets the time a session of an application may stay idle before it is expired and released.
+   *
+   * @param applicationId auth or acct application id of the sessions, 0 for the default of all sessions
+   * @param idleTimeOut idle time in milliseconds, 0 or less to never expire the sessions
+   */
+  public void setSessionIdleTimeOut(long applicationId, long idleTimeOut);
+
+  /**
+   * @param listener listener notified of every session expired after being idle, null to remove it
+   */
+  public void setSessionExpiryListener(ISessionExpiryListener listener);
+
+  /**
+   * @return count of sessions in the datasource
+   */
+  public int getSessionCount();
+
+  /**
+   * @return count of sessions expired after being idle since the datasource was created
+   */
+  public long getExpiredSessionCount();
+
   public  IAppSessionDataFactory<? extends IAppSessionData> getDataFactory(Class<? extends IAppSessionData> x);
 
 }
@@ -0,0 +1,53 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2011, Red Hat, Inc. and individual contributors
+ * by the @authors tag. See the copyright.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.jdiameter.common.api.statistic;
+
+/**
+ * Statistic record holding a latency histogram. Its value is the number of latencies recorded
+ * in the last completed interval.
+ */
+public interface IHistogramRecord extends IStatisticRecord {
+
+  /**
+   * Records a latency, does nothing if the record is disabled
+   *
+   * @param value latency in microseconds
+   */
+  void record(long value);
+
+  /**
+   * @param percentile value between 0 and 100
+   * @return latency in microseconds at the percentile of the last completed interval
+   */
+  long getPercentile(double percentile);
+
+  /**
+   * @return highest latency in microseconds of the last completed interval
+   */
+  long getMax();
+
+  /**
+   * @return length of the interval in milliseconds
+   */
+  long getInterval();
+}
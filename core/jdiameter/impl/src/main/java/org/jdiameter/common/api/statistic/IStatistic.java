@@ -38,7 +38,10 @@ public interface IStatistic extends Statistic{
     PeerFSM("Peer FSM statistic"),
     Network("Network statistic"),
     Concurrent(" Concurrent factory statistics"),
-    ScheduledExecService("ScheduledExecutorService statistic");
+    ScheduledExecService("ScheduledExecutorService statistic"),
+    Router("Router statistic"),
+    Command("Statistic per application and command code"),
+    Session("Session datasource statistic");
 
     private String description;
 
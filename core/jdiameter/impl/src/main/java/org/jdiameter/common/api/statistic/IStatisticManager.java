@@ -45,6 +45,13 @@ public interface IStatisticManager {
 
 	IStatisticRecord newPerSecondCounterRecord(String name,IStatisticRecord.Counters recordDescription, IStatisticRecord record);
 
+	/**
+	 * Creates a latency histogram record, rolled over every logger delay
+	 */
+	IHistogramRecord newHistogramRecord(IStatisticRecord.Counters recordDescription);
+
+	IHistogramRecord newHistogramRecord(String name, IStatisticRecord.Counters recordDescription);
+
 	IStatistic newStatistic(String name, IStatistic.Groups group, IStatisticRecord... rec);
 
 	//IStatistic newStatistic(String name, String description, IStatisticRecord... rec);
@@ -52,6 +52,7 @@ public interface IStatisticRecord extends StatisticRecord{
 
 		    RequestListenerCount("Count of network request appIdToNetListener"),
 		    SelectorCount("Count of network request selectorToNetListener"),
+		    RequestDispatched("Count of requests dispatched to a network request listener"),
 
 		    HeapMemory("Heap memory usage"),
 		    NoHeapMemory("No-heap memory usage"),
@@ -66,7 +67,33 @@ public interface IStatisticRecord extends StatisticRecord{
 		    WaitTimeTask("Average waiting time for execution task"),
 		    BrokenTasks("Count of broken thread"),
 		    RejectedTasks("Count of rejected tasks"),
-		    QueueSize("Peer FSM queue size");
+		    QueueSize("Peer FSM queue size"),
+		    QueueWaitTime("Histogram of peer FSM queue waiting time"),
+
+		    OutboundQueueSize("Count of messages waiting in the connection outbound queue"),
+		    OutboundBytes("Count of bytes waiting in the connection outbound queue"),
+		    OutboundStreams("Count of outbound streams of the connection"),
+		    OutboundStreamMessages("Count of messages sent on each outbound stream of the connection"),
+
+		    RequestRouteTableSize("Count of entries in the answer routing table"),
+		    RequestRouteExpired("Count of answer routing entries dropped on expiry"),
+		    RequestRouteMissed("Count of answers without answer routing entry"),
+		    RedirectCacheSize("Count of entries in the redirect cache"),
+		    RedirectCacheHits("Count of requests rerouted by the redirect cache"),
+		    RedirectCacheMisses("Count of requests not matching any redirect cache entry"),
+		    RedirectCacheEvictions("Count of redirect cache entries dropped on expiry"),
+		    OverloadReports("Count of overload reports in force"),
+		    OverloadThrottled("Count of requests dropped or diverted by overload reports"),
+
+		    DuplicateStorageSize("Count of answers kept by duplicate protection"),
+		    DuplicateStorageHits("Count of duplicate requests answered from the duplicate storage"),
+		    DuplicateStorageEvictions("Count of stored answers dropped to make room for new ones"),
+		    DuplicateStorageExpired("Count of stored answers dropped after the duplicate timer"),
+
+		    RequestLatency("Histogram of request-answer latency in microseconds"),
+
+		    SessionCount("Count of sessions in the session datasource"),
+		    SessionExpired("Count of sessions expired after being idle");
 
 		    private String description;
 
@@ -35,4 +35,9 @@ public interface ITimerFacility {
 
   public void cancel(Serializable id);
 
+  /**
+   * Stop the facility when the stack is destroyed, pending timers are not run anymore
+   */
+  public void stop();
+
 }
@@ -120,12 +120,66 @@ public class AbstractPeer implements Comparable<Peer> {
 
       IStatisticRecord sysGenResponseCounter = statisticFactory.newCounterRecord(IStatisticRecord.Counters.SysGenResponse);
 
+      IStatisticRecord outboundQueueSize = statisticFactory.newCounterRecord(IStatisticRecord.Counters.OutboundQueueSize,
+          new IStatisticRecord.IntegerValueHolder() {
+        public int getValueAsInt() {
+          return getOutboundQueueSize();
+        }
+
+        public String getValueAsString() {
+          return String.valueOf(getValueAsInt());
+        }
+      });
+      IStatisticRecord requestLatency = statisticFactory.newHistogramRecord(IStatisticRecord.Counters.RequestLatency);
+      IStatisticRecord outboundBytes = statisticFactory.newCounterRecord(IStatisticRecord.Counters.OutboundBytes,
+          new IStatisticRecord.LongValueHolder() {
+        public long getValueAsLong() {
+          return getOutboundBytes();
+        }
+
+        public String getValueAsString() {
+          return String.valueOf(getValueAsLong());
+        }
+      });
+      IStatisticRecord outboundStreams = statisticFactory.newCounterRecord(IStatisticRecord.Counters.OutboundStreams,
+          new IStatisticRecord.IntegerValueHolder() {
+        public int getValueAsInt() {
+          return getOutboundStreams();
+        }
+
+        public String getValueAsString() {
+          return String.valueOf(getValueAsInt());
+        }
+      });
+      IStatisticRecord outboundStreamMessages = statisticFactory.newCounterRecord(IStatisticRecord.Counters.OutboundStreamMessages,
+          new IStatisticRecord.LongValueHolder() {
+        public long getValueAsLong() {
+          long sent = 0;
+          for (int stream = 0, n = getOutboundStreams(); stream < n; stream++) {
+            sent += getOutboundStreamMessages(stream);
+          }
+          return sent;
+        }
+
+        // one count per stream, the total alone would not show how the streams are used
+        public String getValueAsString() {
+          StringBuilder sb = new StringBuilder("[");
+          for (int stream = 0, n = getOutboundStreams(); stream < n; stream++) {
+            if (stream > 0) {
+              sb.append(", ");
+            }
+            sb.append(getOutboundStreamMessages(stream));
+          }
+          return sb.append(']').toString();
+        }
+      });
+
       this.statistic = statisticFactory.newStatistic(uriString,IStatistic.Groups.Peer,
           appGenRequestCounter, appGenCPSRequestCounter, appGenRejectedRequestCounter,
           appGenResponseCounter, appGenCPSResponseCounter, appGenRejectedResponseCounter,
           netGenRequestCounter, netGenCPSRequestCounter, netGenRejectedRequestCounter,
           netGenResponseCounter, netGenCPSResponseCounter, netGenRejectedResponseCounter,
-          sysGenResponseCounter
+          sysGenResponseCounter, outboundQueueSize, outboundBytes, outboundStreams, outboundStreamMessages, requestLatency
           );
     }
     finally {
@@ -139,6 +193,34 @@ public class AbstractPeer implements Comparable<Peer> {
     }
   }
 
+  /**
+   * @return number of messages queued on the peer connection, 0 if it writes directly
+   */
+  protected int getOutboundQueueSize() {
+    return 0;
+  }
+
+  /**
+   * @return number of bytes queued on the peer connection, 0 if it writes directly
+   */
+  protected long getOutboundBytes() {
+    return 0;
+  }
+
+  /**
+   * @return number of outbound streams of the peer connection, 0 if it has no streams
+   */
+  protected int getOutboundStreams() {
+    return 0;
+  }
+
+  /**
+   * @return number of messages sent on the outbound stream of the peer connection
+   */
+  protected long getOutboundStreamMessages(int stream) {
+    return 0;
+  }
+
   protected void removePeerStatistics() {
     logger.debug("Removing Peer Statistics for URI {}", this.uri);
     //RG edited this to make removal of peer stats thread safe
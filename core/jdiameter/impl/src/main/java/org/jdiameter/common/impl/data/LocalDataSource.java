@@ -22,11 +22,24 @@
 
 package org.jdiameter.common.impl.data;
 
+import static org.jdiameter.client.impl.helpers.Parameters.SessionIdleTimeOut;
+import static org.jdiameter.client.impl.helpers.Parameters.SessionIdleTimeOutApplId;
+import static org.jdiameter.client.impl.helpers.Parameters.SessionIdleTimeOuts;
+import static org.jdiameter.common.api.concurrent.IConcurrentFactory.ScheduledExecServices.ApplicationSession;
+
 import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 
+import org.jdiameter.api.ApplicationId;
 import org.jdiameter.api.BaseSession;
+import org.jdiameter.api.Configuration;
 import org.jdiameter.api.NetworkReqListener;
+import org.jdiameter.api.app.AppSession;
 import org.jdiameter.client.api.IContainer;
 import org.jdiameter.client.api.ISession;
 import org.jdiameter.common.api.app.IAppSessionData;
@@ -41,7 +54,12 @@ import org.jdiameter.common.api.app.ro.IRoSessionData;
 import org.jdiameter.common.api.app.rx.IRxSessionData;
 import org.jdiameter.common.api.app.s6a.IS6aSessionData;
 import org.jdiameter.common.api.app.sh.IShSessionData;
+import org.jdiameter.common.api.concurrent.IConcurrentFactory;
 import org.jdiameter.common.api.data.ISessionDatasource;
+import org.jdiameter.common.api.data.ISessionExpiryListener;
+import org.jdiameter.common.api.statistic.IStatistic;
+import org.jdiameter.common.api.statistic.IStatisticManager;
+import org.jdiameter.common.api.statistic.IStatisticRecord;
 import org.jdiameter.common.impl.app.acc.AccLocalSessionDataFactory;
 import org.jdiameter.common.impl.app.auth.AuthLocalSessionDataFactory;
 import org.jdiameter.common.impl.app.cca.CCALocalSessionDataFactory;
@@ -57,6 +75,11 @@ import org.slf4j.LoggerFactory;
 
 /**
  * Local implementation of session datasource for {@link ISessionDatasource}
+ * <p>
+ * Sessions idle for longer than the configured time out of their application are
+ * expired by a clock sweep: every second it visits the next slice of the entries,
+ * going round the whole table about every 30 seconds, so no sweep ever has to walk
+ * all the sessions at once.
  * 
  * @author <a href="mailto:baranowb@gmail.com"> Bartosz Baranowski </a>
  * @author <a href="mailto:brainslog@gmail.com"> Alexandre Mendonca </a>
@@ -70,6 +93,23 @@ public class LocalDataSource implements ISessionDatasource {
 
   private static final Logger logger = LoggerFactory.getLogger(LocalDataSource.class);
 
+  private static final long SWEEP_INTERVAL = 1000; // milliseconds
+  private static final int SWEEP_ROUNDS = 30; // sweeps to go once round the table
+  private static final int SWEEP_MIN_ENTRIES = 256;
+
+  // idle time outs per auth or acct application id, the default one is kept apart
+  private final ConcurrentHashMap<Long, Long> idleTimeOuts = new ConcurrentHashMap<Long, Long>();
+  private volatile long defaultIdleTimeOut = 0;
+  private volatile ISessionExpiryListener expiryListener;
+  private final AtomicLong expiredCount = new AtomicLong();
+
+  private IContainer container;
+  private ScheduledFuture<?> sweepTask;
+  // the clock hand, only moved by sweep
+  private Iterator<Map.Entry<String, SessionEntry>> hand;
+
+  private IStatistic sessionStatistic;
+
   public LocalDataSource() {
     appSessionDataFactories.put(ICCASessionData.class, new CCALocalSessionDataFactory());
     appSessionDataFactories.put(IRoSessionData.class, new RoLocalSessionDataFactory());
@@ -85,6 +125,44 @@ public class LocalDataSource implements ISessionDatasource {
 
   public LocalDataSource(IContainer container) {
     this();
+    this.container = container;
+    Configuration config = container.getConfiguration();
+    if (config != null) {
+      setSessionIdleTimeOut(0, config.getLongValue(SessionIdleTimeOut.ordinal(), (Long) SessionIdleTimeOut.defValue()));
+      Configuration[] timeOuts = config.getChildren(SessionIdleTimeOuts.ordinal());
+      if (timeOuts != null) {
+        for (Configuration timeOut : timeOuts) {
+          setSessionIdleTimeOut(timeOut.getLongValue(SessionIdleTimeOutApplId.ordinal(), 0L),
+              timeOut.getLongValue(SessionIdleTimeOut.ordinal(), (Long) SessionIdleTimeOut.defValue()));
+        }
+      }
+    }
+    IStatisticManager statisticFactory = container.getAssemblerFacility().getComponentInstance(IStatisticManager.class);
+    if (statisticFactory != null) {
+      createStatistic(statisticFactory);
+    }
+  }
+
+  protected void createStatistic(IStatisticManager statisticFactory) {
+    IStatisticRecord countRecord = statisticFactory.newCounterRecord(IStatisticRecord.Counters.SessionCount, new IStatisticRecord.IntegerValueHolder() {
+      public int getValueAsInt() {
+        return getSessionCount();
+      }
+
+      public String getValueAsString() {
+        return String.valueOf(getValueAsInt());
+      }
+    });
+    IStatisticRecord expiredRecord = statisticFactory.newCounterRecord(IStatisticRecord.Counters.SessionExpired, new IStatisticRecord.LongValueHolder() {
+      public long getValueAsLong() {
+        return getExpiredSessionCount();
+      }
+
+      public String getValueAsString() {
+        return String.valueOf(getValueAsLong());
+      }
+    });
+    sessionStatistic = statisticFactory.newStatistic("sessions", IStatistic.Groups.Session, countRecord, expiredRecord);
   }
 
   public boolean exists(String sessionId) {
@@ -97,6 +175,7 @@ public class LocalDataSource implements ISessionDatasource {
     SessionEntry se = sessionIdToEntry.get(sessionId);
     if(se != null) {
       se.listener = data;
+      se.lastAccess = System.currentTimeMillis();
     }
     else {
       throw new IllegalArgumentException("No Session entry for id: " + sessionId);
@@ -106,7 +185,11 @@ public class LocalDataSource implements ISessionDatasource {
   public NetworkReqListener getSessionListener(String sessionId) {
     SessionEntry se = sessionIdToEntry.get(sessionId);
     logger.debug("getSessionListener({}) => {}", sessionId, se);
-    return se != null ? se.listener : null;
+    if (se == null) {
+      return null;
+    }
+    se.lastAccess = System.currentTimeMillis();
+    return se.listener;
   }
 
   public NetworkReqListener removeSessionListener(String sessionId) {
@@ -141,13 +224,19 @@ public class LocalDataSource implements ISessionDatasource {
       se = new SessionEntry();
     }
     se.session = session;
+    se.applicationId = getApplicationId(session);
+    se.lastAccess = System.currentTimeMillis();
     this.sessionIdToEntry.put(session.getSessionId(), se);
   }
 
   public BaseSession getSession(String sessionId) {
     SessionEntry se = sessionIdToEntry.get(sessionId);
     logger.debug("getSession({}) => {}", sessionId, se);
-    return se != null ? se.session : null;
+    if (se == null) {
+      return null;
+    }
+    se.lastAccess = System.currentTimeMillis();
+    return se.session;
   }
 
   public void removeSession(String sessionId) {
@@ -159,15 +248,33 @@ public class LocalDataSource implements ISessionDatasource {
   /* (non-Javadoc)
    * @see org.jdiameter.common.api.data.ISessionDatasource#start()
    */
-  public void start() {
-    // NOP
+  public synchronized void start() {
+    if (container == null || sweepTask != null) {
+      return;
+    }
+    IConcurrentFactory concurrentFactory = container.getAssemblerFacility().getComponentInstance(IConcurrentFactory.class);
+    if (concurrentFactory != null) {
+      sweepTask = concurrentFactory.getScheduledExecutorService(ApplicationSession.name()).scheduleWithFixedDelay(new Runnable() {
+        public void run() {
+          try {
+            sweep(System.currentTimeMillis());
+          }
+          catch (Throwable e) {
+            logger.warn("Failure while expiring idle sessions", e);
+          }
+        }
+      }, SWEEP_INTERVAL, SWEEP_INTERVAL, TimeUnit.MILLISECONDS);
+    }
   }
 
   /* (non-Javadoc)
    * @see org.jdiameter.common.api.data.ISessionDatasource#stop()
    */
-  public void stop() {
-    // NOP
+  public synchronized void stop() {
+    if (sweepTask != null) {
+      sweepTask.cancel(false);
+      sweepTask = null;
+    }
   }
 
   /* (non-Javadoc)
@@ -177,15 +284,128 @@ public class LocalDataSource implements ISessionDatasource {
     return false;
   }
 
+  public void setSessionIdleTimeOut(long applicationId, long idleTimeOut) {
+    logger.debug("setSessionIdleTimeOut({}, {})", applicationId, idleTimeOut);
+    if (applicationId == ApplicationId.UNDEFINED_VALUE) {
+      defaultIdleTimeOut = idleTimeOut;
+    }
+    else {
+      idleTimeOuts.put(applicationId, idleTimeOut);
+    }
+  }
+
+  public void setSessionExpiryListener(ISessionExpiryListener listener) {
+    this.expiryListener = listener;
+  }
+
+  public int getSessionCount() {
+    return sessionIdToEntry.size();
+  }
+
+  public long getExpiredSessionCount() {
+    return expiredCount.get();
+  }
+
+  /**
+   * Moves the clock hand over the next slice of the sessions, expiring the ones idle
+   * for longer than the time out of their application.
+   *
+   * @param now current time in milliseconds
+   * @return count of sessions expired
+   */
+  public synchronized int sweep(long now) {
+    if (defaultIdleTimeOut <= 0 && idleTimeOuts.isEmpty()) {
+      return 0;
+    }
+    int visits = Math.max(SWEEP_MIN_ENTRIES, sessionIdToEntry.size() / SWEEP_ROUNDS + 1);
+    int expired = 0;
+    boolean wrapped = false;
+    while (visits-- > 0) {
+      if (hand == null || !hand.hasNext()) {
+        // go round again, but never visit an entry twice in the same sweep
+        if (wrapped) {
+          break;
+        }
+        wrapped = true;
+        hand = sessionIdToEntry.entrySet().iterator();
+        if (!hand.hasNext()) {
+          break;
+        }
+      }
+      Map.Entry<String, SessionEntry> entry = hand.next();
+      SessionEntry se = entry.getValue();
+      long idleTimeOut = getIdleTimeOut(se.applicationId);
+      if (idleTimeOut <= 0 || now - Math.max(se.lastAccess, se.session.getLastAccessedTime()) < idleTimeOut) {
+        continue;
+      }
+      // lost the race against an add or remove of the same id, leave it be
+      if (!sessionIdToEntry.remove(entry.getKey(), se)) {
+        continue;
+      }
+      expired++;
+      expiredCount.incrementAndGet();
+      logger.debug("Session {} expired after being idle for {} ms", entry.getKey(), idleTimeOut);
+      ISessionExpiryListener listener = expiryListener;
+      if (listener != null) {
+        try {
+          listener.sessionExpired(se.session);
+        }
+        catch (Exception e) {
+          logger.warn("Failure notifying expiry of session " + entry.getKey(), e);
+        }
+      }
+      try {
+        se.session.release();
+      }
+      catch (Exception e) {
+        logger.debug("Failure releasing expired session " + entry.getKey(), e);
+      }
+    }
+    return expired;
+  }
+
+  /**
+   * @return idle time out of the sessions of an application, 0 if they do not expire
+   */
+  protected long getIdleTimeOut(long applicationId) {
+    if (applicationId != ApplicationId.UNDEFINED_VALUE) {
+      Long idleTimeOut = idleTimeOuts.get(applicationId);
+      if (idleTimeOut != null) {
+        return idleTimeOut;
+      }
+    }
+    return defaultIdleTimeOut;
+  }
+
+  private static long getApplicationId(BaseSession session) {
+    if (session instanceof AppSession) {
+      return getApplicationId(((AppSession) session).getSessionAppId());
+    }
+    return ApplicationId.UNDEFINED_VALUE;
+  }
+
+  /**
+   * @return auth application id, or acct application id if there is none, of the given id
+   */
+  protected static long getApplicationId(ApplicationId appId) {
+    if (appId != null) {
+      return appId.getAuthAppId() != ApplicationId.UNDEFINED_VALUE ? appId.getAuthAppId() : appId.getAcctAppId();
+    }
+    return ApplicationId.UNDEFINED_VALUE;
+  }
+
   @Override
   public String toString() {
     return "LocalDataSource [sessionIdToEntry=" + sessionIdToEntry + "]";
   }
 
-  //simple class to reduce collections overhead.
-  private class SessionEntry {
+  // simple class to reduce collections overhead, static so entries do not keep a reference to the datasource.
+  // The map key is the session's own id, so ids are not copied.
+  private static class SessionEntry {
     BaseSession session;
     NetworkReqListener listener;
+    long applicationId;
+    volatile long lastAccess;
 
     @Override
     public String toString() {
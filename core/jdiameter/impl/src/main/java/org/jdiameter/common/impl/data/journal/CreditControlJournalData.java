@@ -0,0 +1,143 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2010, Red Hat, Inc. and individual contributors
+ * by the @authors tag. See the copyright.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.jdiameter.common.impl.data.journal;
+
+import java.io.Serializable;
+import java.nio.ByteBuffer;
+
+import org.jdiameter.api.Request;
+
+/**
+ * Journal records of the credit-control session data. Credit-Control, Ro and Gx keep the same
+ * client and server session fields in classes with no common type, so their journaled data
+ * classes expose them through {@link Client} and {@link Server} and only map their own state.
+ */
+final class CreditControlJournalData {
+
+  private CreditControlJournalData() {
+  }
+
+  interface Client extends IJournaledSessionData {
+
+    boolean isEventBased();
+
+    void setEventBased(boolean isEventBased);
+
+    boolean isRequestTypeSet();
+
+    void setRequestTypeSet(boolean requestTypeSet);
+
+    /**
+     * @return ordinal of the session state
+     */
+    int getStateOrdinal();
+
+    void setStateOrdinal(int ordinal);
+
+    Serializable getTxTimerId();
+
+    void setTxTimerId(Serializable txTimerId);
+
+    Request getTxTimerRequest();
+
+    void setTxTimerRequest(Request txTimerRequest);
+
+    Request getBuffer();
+
+    void setBuffer(Request buffer);
+
+    int getGatheredRequestedAction();
+
+    void setGatheredRequestedAction(int gatheredRequestedAction);
+
+    int getGatheredCCFH();
+
+    void setGatheredCCFH(int gatheredCCFH);
+
+    int getGatheredDDFH();
+
+    void setGatheredDDFH(int gatheredDDFH);
+  }
+
+  interface Server extends IJournaledSessionData {
+
+    boolean isStateless();
+
+    void setStateless(boolean stateless);
+
+    /**
+     * @return ordinal of the session state
+     */
+    int getStateOrdinal();
+
+    void setStateOrdinal(int ordinal);
+
+    Serializable getTccTimerId();
+
+    void setTccTimerId(Serializable tccTimerId);
+  }
+
+  static void write(SessionJournal journal, ByteBuffer buffer, Client data) {
+    SessionJournal.putBoolean(buffer, data.isEventBased());
+    SessionJournal.putBoolean(buffer, data.isRequestTypeSet());
+    buffer.put((byte) data.getStateOrdinal());
+    journal.putTimer(buffer, data.getTxTimerId());
+    journal.putMessage(buffer, data.getTxTimerRequest());
+    journal.putMessage(buffer, data.getBuffer());
+    buffer.putInt(data.getGatheredRequestedAction());
+    buffer.putInt(data.getGatheredCCFH());
+    buffer.putInt(data.getGatheredDDFH());
+  }
+
+  static void read(SessionJournal journal, ByteBuffer buffer, Client data) {
+    data.setEventBased(SessionJournal.getBoolean(buffer));
+    data.setRequestTypeSet(SessionJournal.getBoolean(buffer));
+    data.setStateOrdinal(buffer.get());
+    data.setTxTimerId(journal.getTimer(buffer));
+    data.setTxTimerRequest(journal.getMessage(buffer));
+    data.setBuffer(journal.getMessage(buffer));
+    data.setGatheredRequestedAction(buffer.getInt());
+    data.setGatheredCCFH(buffer.getInt());
+    data.setGatheredDDFH(buffer.getInt());
+  }
+
+  static void rearmTimers(SessionJournal journal, Client data) {
+    data.setTxTimerId(journal.rearm(data.getSessionId(), data.getTxTimerId()));
+  }
+
+  static void write(SessionJournal journal, ByteBuffer buffer, Server data) {
+    SessionJournal.putBoolean(buffer, data.isStateless());
+    buffer.put((byte) data.getStateOrdinal());
+    journal.putTimer(buffer, data.getTccTimerId());
+  }
+
+  static void read(SessionJournal journal, ByteBuffer buffer, Server data) {
+    data.setStateless(SessionJournal.getBoolean(buffer));
+    data.setStateOrdinal(buffer.get());
+    data.setTccTimerId(journal.getTimer(buffer));
+  }
+
+  static void rearmTimers(SessionJournal journal, Server data) {
+    data.setTccTimerId(journal.rearm(data.getSessionId(), data.getTccTimerId()));
+  }
+}
@@ -0,0 +1,57 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2010, Red Hat, Inc. and individual contributors
+ * by the @authors tag. See the copyright.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.jdiameter.common.impl.data.journal;
+
+import java.nio.ByteBuffer;
+
+import org.jdiameter.api.app.AppSession;
+import org.jdiameter.common.api.app.IAppSessionData;
+
+/**
+ * Application session data whose changes are written to a {@link SessionJournal}.
+ */
+public interface IJournaledSessionData extends IAppSessionData {
+
+  public void setSessionId(String sessionId);
+
+  /**
+   * @return interface of the application session this data belongs to
+   */
+  public Class<? extends AppSession> getSessionClass();
+
+  /**
+   * Writes the state of the session, but for its id and application id, to a journal record.
+   */
+  public void write(SessionJournal journal, ByteBuffer buffer);
+
+  /**
+   * Reads back the state written by {@link #write(SessionJournal, ByteBuffer)}, without journaling it again.
+   */
+  public void read(SessionJournal journal, ByteBuffer buffer);
+
+  /**
+   * Schedules again the timers read from the journal, see {@link SessionJournal#rearm(String, java.io.Serializable)}.
+   */
+  public void rearmTimers(SessionJournal journal);
+
+}
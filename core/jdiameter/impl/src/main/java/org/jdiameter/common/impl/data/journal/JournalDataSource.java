@@ -0,0 +1,257 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2010, Red Hat, Inc. and individual contributors
+ * by the @authors tag. See the copyright.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.jdiameter.common.impl.data.journal;
+
+import static org.jdiameter.client.impl.helpers.Parameters.SessionJournalFile;
+import static org.jdiameter.client.impl.helpers.Parameters.SessionJournalSize;
+import static org.jdiameter.client.impl.helpers.Parameters.SessionJournalSyncInterval;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadFactory;
+
+import org.jdiameter.api.BaseSession;
+import org.jdiameter.api.Configuration;
+import org.jdiameter.api.NetworkReqListener;
+import org.jdiameter.api.app.AppSession;
+import org.jdiameter.client.api.IContainer;
+import org.jdiameter.client.api.ISessionFactory;
+import org.jdiameter.client.api.parser.IMessageParser;
+import org.jdiameter.common.api.app.IAppSessionFactory;
+import org.jdiameter.common.api.app.cca.ICCASessionData;
+import org.jdiameter.common.api.app.gx.IGxSessionData;
+import org.jdiameter.common.api.app.ro.IRoSessionData;
+import org.jdiameter.common.api.concurrent.IConcurrentFactory;
+import org.jdiameter.common.api.timer.ITimerFacility;
+import org.jdiameter.common.impl.data.LocalDataSource;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Local session datasource keeping the Credit-Control, Ro and Gx session data in a
+ * {@link SessionJournal}, so the sessions survive a restart of the stack.
+ * <p>
+ * On start the journal is replayed and the timers of the recovered sessions are scheduled
+ * again. A recovered session is rebuilt by its application session factory the first time
+ * it is looked up, by an incoming message or one of its timers, so applications should
+ * register their session factories before starting the stack. Recovered sessions which are
+ * not rebuilt within the idle time out of their application, counted from the recovery,
+ * expire like idle sessions do.
+ */
+public class JournalDataSource extends LocalDataSource {
+
+  private static final Logger logger = LoggerFactory.getLogger(JournalDataSource.class);
+
+  // timers that expired while the stack was down fire after this delay, milliseconds
+  private static final long REARM_MIN_DELAY = 1000;
+
+  private IContainer container;
+  private SessionJournal journal;
+  private long syncInterval;
+  private boolean started;
+
+  // sessions read from the journal, not rebuilt yet
+  private final ConcurrentHashMap<String, IJournaledSessionData> recovered = new ConcurrentHashMap<String, IJournaledSessionData>();
+  private volatile long recoveryTime;
+  // time of the next recovered session expiry, only moved by sweep
+  private long nextRecoveredExpiry;
+
+  public JournalDataSource(IContainer container) {
+    super(container);
+    this.container = container;
+    Configuration config = container.getConfiguration();
+    this.journal = new SessionJournal(new File(config.getStringValue(SessionJournalFile.ordinal(), (String) SessionJournalFile.defValue())),
+        config.getIntValue(SessionJournalSize.ordinal(), (Integer) SessionJournalSize.defValue()),
+        container.getAssemblerFacility().getComponentInstance(IMessageParser.class));
+    this.syncInterval = config.getLongValue(SessionJournalSyncInterval.ordinal(), (Long) SessionJournalSyncInterval.defValue());
+
+    JournalSessionDataFactory dataFactory = new JournalSessionDataFactory(this, journal);
+    appSessionDataFactories.put(ICCASessionData.class, dataFactory);
+    appSessionDataFactories.put(IRoSessionData.class, dataFactory);
+    appSessionDataFactories.put(IGxSessionData.class, dataFactory);
+  }
+
+  @Override
+  public synchronized void start() {
+    super.start();
+    if (started) {
+      return;
+    }
+    // compactions and syncs run on a thread of their own, away from the application session timers
+    final IConcurrentFactory concurrentFactory = container.getAssemblerFacility().getComponentInstance(IConcurrentFactory.class);
+    journal.setThreadFactory(new ThreadFactory() {
+      public Thread newThread(Runnable runnable) {
+        Thread thread = concurrentFactory.getThread("SessionJournal", runnable);
+        thread.setDaemon(true);
+        return thread;
+      }
+    });
+    try {
+      recovered.putAll(journal.open());
+    }
+    catch (IOException e) {
+      logger.error("Failure opening session journal, sessions are not journaled", e);
+      return;
+    }
+    started = true;
+    recoveryTime = System.currentTimeMillis();
+    nextRecoveredExpiry = 0;
+    if (!recovered.isEmpty()) {
+      journal.rearmTimers(container.getAssemblerFacility().getComponentInstance(ITimerFacility.class), REARM_MIN_DELAY, recovered.values());
+    }
+    journal.scheduleSync(syncInterval);
+  }
+
+  @Override
+  public synchronized void stop() {
+    started = false;
+    journal.close();
+    super.stop();
+  }
+
+  @Override
+  public void setSessionIdleTimeOut(long applicationId, long idleTimeOut) {
+    super.setSessionIdleTimeOut(applicationId, idleTimeOut);
+    synchronized (this) {
+      // recovered sessions may expire sooner
+      nextRecoveredExpiry = 0;
+    }
+  }
+
+  /**
+   * Also expires the recovered sessions not rebuilt within the idle time out of their application.
+   */
+  @Override
+  public synchronized int sweep(long now) {
+    int expired = super.sweep(now);
+    if (now >= nextRecoveredExpiry && !recovered.isEmpty()) {
+      expired += sweepRecovered(now);
+    }
+    return expired;
+  }
+
+  private int sweepRecovered(long now) {
+    int expired = 0;
+    long next = Long.MAX_VALUE;
+    for (IJournaledSessionData data : recovered.values()) {
+      long idleTimeOut = getIdleTimeOut(getApplicationId(data.getApplicationId()));
+      if (idleTimeOut <= 0) {
+        continue;
+      }
+      long expiry = recoveryTime + idleTimeOut;
+      if (now < expiry) {
+        next = Math.min(next, expiry);
+        continue;
+      }
+      synchronized (data) {
+        // not rebuilt meanwhile
+        if (recovered.remove(data.getSessionId(), data)) {
+          data.remove();
+          expired++;
+          logger.debug("Recovered session {} expired before being rebuilt", data.getSessionId());
+        }
+      }
+    }
+    nextRecoveredExpiry = next;
+    return expired;
+  }
+
+  @Override
+  public boolean exists(String sessionId) {
+    return super.exists(sessionId) || recovered.containsKey(sessionId);
+  }
+
+  @Override
+  public void addSession(BaseSession session) {
+    super.addSession(session);
+    if (session.isAppSession()) {
+      recovered.remove(session.getSessionId());
+    }
+  }
+
+  @Override
+  public BaseSession getSession(String sessionId) {
+    BaseSession session = super.getSession(sessionId);
+    if (session == null && recovered.containsKey(sessionId)) {
+      session = rebuild(sessionId);
+    }
+    return session;
+  }
+
+  @Override
+  public NetworkReqListener getSessionListener(String sessionId) {
+    if (recovered.containsKey(sessionId)) {
+      rebuild(sessionId);
+    }
+    return super.getSessionListener(sessionId);
+  }
+
+  @Override
+  public int getSessionCount() {
+    return super.getSessionCount() + recovered.size();
+  }
+
+  /**
+   * @return data recovered from the journal for a session that is not rebuilt yet, null if none
+   */
+  IJournaledSessionData getRecoveredData(String sessionId) {
+    return recovered.get(sessionId);
+  }
+
+  private BaseSession rebuild(String sessionId) {
+    IJournaledSessionData data = recovered.get(sessionId);
+    if (data == null) {
+      return super.getSession(sessionId);
+    }
+    synchronized (data) {
+      if (!recovered.containsKey(sessionId)) {
+        // rebuilt meanwhile
+        return super.getSession(sessionId);
+      }
+      try {
+        IAppSessionFactory appSessionFactory = ((ISessionFactory) container.getSessionFactory()).getAppSessionFactory(data.getSessionClass());
+        if (appSessionFactory == null) {
+          logger.debug("No session factory registered for {}, can not rebuild session {}", data.getSessionClass(), sessionId);
+          return null;
+        }
+        AppSession session = appSessionFactory.getSession(sessionId, data.getSessionClass());
+        if (session != null) {
+          addSession(session);
+          logger.debug("Rebuilt session {} from journal", sessionId);
+        }
+        return session;
+      }
+      catch (Exception e) {
+        logger.error("Failure rebuilding session " + sessionId + " from journal", e);
+        return null;
+      }
+    }
+  }
+
+  @Override
+  public String toString() {
+    return "JournalDataSource [sessions=" + getSessionCount() + ", recovered=" + recovered.size() + "]";
+  }
+
+}
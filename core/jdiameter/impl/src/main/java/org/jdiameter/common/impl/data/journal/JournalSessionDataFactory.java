@@ -0,0 +1,54 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2010, Red Hat, Inc. and individual contributors
+ * by the @authors tag. See the copyright.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.jdiameter.common.impl.data.journal;
+
+import org.jdiameter.api.app.AppSession;
+import org.jdiameter.common.api.app.IAppSessionData;
+import org.jdiameter.common.api.app.IAppSessionDataFactory;
+
+/**
+ * Session data factory of {@link JournalDataSource}, handing out journaled session data
+ * and the data recovered from the journal when a session is rebuilt.
+ */
+public class JournalSessionDataFactory implements IAppSessionDataFactory<IAppSessionData> {
+
+  private final JournalDataSource dataSource;
+  private final SessionJournal journal;
+
+  public JournalSessionDataFactory(JournalDataSource dataSource, SessionJournal journal) {
+    this.dataSource = dataSource;
+    this.journal = journal;
+  }
+
+  /* (non-Javadoc)
+   * @see org.jdiameter.common.api.app.IAppSessionDataFactory#getAppSessionData(java.lang.Class, java.lang.String)
+   */
+  public IAppSessionData getAppSessionData(Class<? extends AppSession> clazz, String sessionId) {
+    IJournaledSessionData data = dataSource.getRecoveredData(sessionId);
+    if (data != null && data.getSessionClass() == clazz) {
+      return data;
+    }
+    return journal.newSessionData(clazz, sessionId);
+  }
+
+}
@@ -0,0 +1,92 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2010, Red Hat, Inc. and individual contributors
+ * by the @authors tag. See the copyright.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.jdiameter.common.impl.data.journal;
+
+import java.io.Serializable;
+import java.nio.ByteBuffer;
+
+import org.jdiameter.api.app.AppSession;
+import org.jdiameter.api.gx.ServerGxSession;
+import org.jdiameter.common.api.app.gx.ServerGxSessionState;
+import org.jdiameter.server.impl.app.gx.ServerGxSessionDataLocalImpl;
+
+/**
+ * Server Gx session data journaled on every change.
+ */
+public class ServerGxJournalData extends ServerGxSessionDataLocalImpl implements CreditControlJournalData.Server {
+
+  private final SessionJournal journal;
+
+  public ServerGxJournalData(SessionJournal journal) {
+    this.journal = journal;
+  }
+
+  @Override
+  public void setStateless(boolean stateless) {
+    super.setStateless(stateless);
+    journal.write(this);
+  }
+
+  @Override
+  public void setServerGxSessionState(ServerGxSessionState state) {
+    super.setServerGxSessionState(state);
+    journal.write(this);
+  }
+
+  @Override
+  public void setTccTimerId(Serializable tccTimerId) {
+    super.setTccTimerId(tccTimerId);
+    journal.write(this);
+  }
+
+  @Override
+  public boolean remove() {
+    journal.remove(this);
+    return super.remove();
+  }
+
+  public Class<? extends AppSession> getSessionClass() {
+    return ServerGxSession.class;
+  }
+
+  public int getStateOrdinal() {
+    return state.ordinal();
+  }
+
+  public void setStateOrdinal(int ordinal) {
+    setServerGxSessionState(ServerGxSessionState.values()[ordinal]);
+  }
+
+  public void write(SessionJournal journal, ByteBuffer buffer) {
+    CreditControlJournalData.write(journal, buffer, this);
+  }
+
+  public void read(SessionJournal journal, ByteBuffer buffer) {
+    CreditControlJournalData.read(journal, buffer, this);
+  }
+
+  public void rearmTimers(SessionJournal journal) {
+    CreditControlJournalData.rearmTimers(journal, this);
+  }
+
+}
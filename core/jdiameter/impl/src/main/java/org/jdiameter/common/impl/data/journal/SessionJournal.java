@@ -0,0 +1,866 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2010, Red Hat, Inc. and individual contributors
+ * by the @authors tag. See the copyright.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.jdiameter.common.impl.data.journal;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.Serializable;
+import java.io.UnsupportedEncodingException;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.BufferOverflowException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import org.jdiameter.api.ApplicationId;
+import org.jdiameter.api.Request;
+import org.jdiameter.api.app.AppSession;
+import org.jdiameter.api.cca.ClientCCASession;
+import org.jdiameter.api.cca.ServerCCASession;
+import org.jdiameter.api.gx.ClientGxSession;
+import org.jdiameter.api.gx.ServerGxSession;
+import org.jdiameter.api.ro.ClientRoSession;
+import org.jdiameter.api.ro.ServerRoSession;
+import org.jdiameter.client.api.IMessage;
+import org.jdiameter.client.api.parser.IMessageParser;
+import org.jdiameter.common.api.timer.ITimerFacility;
+import org.jdiameter.common.api.timer.ITimerHandle;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Append-only, memory-mapped journal of application session data.
+ * <p>
+ * Every change of a journaled session appends a record with the whole state of the
+ * session, and its removal appends a removal record, so replaying the journal gives back
+ * the last state of every live session. A record is made of its length, written last,
+ * its type, the session id and, for a state record, the session kind, application id and
+ * state. A zero length ends the journal, so a record torn by a crash is ignored.
+ * <p>
+ * The journal file is mapped in regions. When a record does not fit in the current region,
+ * the change maps the next region of the file, ends the current one with a skip record and
+ * asks the journal thread for a compaction, so changes never wait for one. Compactions and
+ * syncs only run on the journal thread: the state of the live sessions is written to a new
+ * file which then replaces the journal, growing it when the live sessions need more room,
+ * and the regions of the replaced journal are unmapped. The live sessions are written
+ * without holding the journal; sessions changed meanwhile are written again when the new
+ * file replaces the journal, which is the only time changes wait.
+ */
+public class SessionJournal {
+
+  private static final Logger logger = LoggerFactory.getLogger(SessionJournal.class);
+
+  private static final int MAGIC = 0x4a445331; // JDS1
+  private static final int HEADER_SIZE = 4;
+
+  private static final byte STATE = 1;
+  private static final byte REMOVE = 2;
+  private static final byte SKIP = 3;
+
+  // room kept after every record, for the end of the journal or a skip record
+  private static final int TRAILER_SIZE = 5;
+
+  // milliseconds close waits for a running compaction
+  private static final long CLOSE_TIMEOUT = 10000;
+
+  // a state record stores the index of the session kind in this array
+  private static final Class<?>[] SESSION_CLASSES = { ClientCCASession.class, ServerCCASession.class, ClientRoSession.class,
+      ServerRoSession.class, ClientGxSession.class, ServerGxSession.class };
+
+  private final File file;
+  private final int size;
+  private final IMessageParser parser;
+
+  // state of every live session, written again on compaction
+  private final ConcurrentHashMap<String, IJournaledSessionData> sessions = new ConcurrentHashMap<String, IJournaledSessionData>();
+
+  private RandomAccessFile journalFile;
+  // regions of the journal file in file order, records are appended to the last one
+  private final List<MappedByteBuffer> regions = new ArrayList<MappedByteBuffer>();
+  private MappedByteBuffer buffer;
+  private long regionOffset;
+  private int records;
+  private boolean closed = true;
+
+  // runs compactions and syncs, the only thread forcing or unmapping regions
+  private ThreadFactory threadFactory;
+  private ScheduledExecutorService executor;
+
+  // while compacting, ids of the sessions changed since the compaction started
+  private boolean compacting;
+  private final Set<String> changed = new HashSet<String>();
+
+  // data being read from the journal, its setters must not journal it again
+  private IJournaledSessionData restoring;
+
+  private ITimerFacility timerFacility;
+  private long rearmTime;
+  private long rearmMinDelay;
+
+  /**
+   * @param file journal file, created if it does not exist
+   * @param size initial size of the journal in bytes
+   * @param parser parser used to journal buffered requests
+   */
+  public SessionJournal(File file, int size, IMessageParser parser) {
+    this.file = file;
+    this.size = size;
+    this.parser = parser;
+  }
+
+  /**
+   * Sets the factory of the journal thread, must be called before {@link #open()}.
+   */
+  public void setThreadFactory(ThreadFactory threadFactory) {
+    this.threadFactory = threadFactory;
+  }
+
+  /**
+   * @return true if the data of the given application sessions can be journaled
+   */
+  public static boolean isJournaled(Class<? extends AppSession> clazz) {
+    return getKind(clazz) >= 0;
+  }
+
+  /**
+   * Creates the journaled data of a new application session, it is journaled on its first change.
+   */
+  public IJournaledSessionData newSessionData(Class<? extends AppSession> clazz, String sessionId) {
+    IJournaledSessionData data = newSessionData(getKind(clazz));
+    if (data == null) {
+      throw new IllegalArgumentException(clazz.toString());
+    }
+    data.setSessionId(sessionId);
+    return data;
+  }
+
+  private IJournaledSessionData newSessionData(int kind) {
+    switch (kind) {
+      case 0:
+        return new ClientCCAJournalData(this);
+      case 1:
+        return new ServerCCAJournalData(this);
+      case 2:
+        return new ClientRoJournalData(this);
+      case 3:
+        return new ServerRoJournalData(this);
+      case 4:
+        return new ClientGxJournalData(this);
+      case 5:
+        return new ServerGxJournalData(this);
+      default:
+        return null;
+    }
+  }
+
+  private static int getKind(Class<?> clazz) {
+    for (int i = 0; i < SESSION_CLASSES.length; i++) {
+      if (SESSION_CLASSES[i] == clazz) {
+        return i;
+      }
+    }
+    return -1;
+  }
+
+  /**
+   * Opens the journal. When no session is journaled yet, the journal file is replayed
+   * and the sessions it holds are returned, otherwise the journal is rewritten from the
+   * sessions in memory.
+   *
+   * @return sessions recovered from the journal file, by session id
+   */
+  public synchronized Map<String, IJournaledSessionData> open() throws IOException {
+    Map<String, IJournaledSessionData> recovered = new HashMap<String, IJournaledSessionData>();
+    if (!closed) {
+      return recovered;
+    }
+    closed = false;
+    if (sessions.isEmpty() && file.length() > HEADER_SIZE) {
+      long begin = System.currentTimeMillis();
+      RandomAccessFile in = new RandomAccessFile(file, "r");
+      try {
+        replay(in.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, in.length()), recovered);
+      }
+      finally {
+        in.close();
+      }
+      sessions.putAll(recovered);
+      logger.info("Recovered {} sessions from journal {} in {} ms", new Object[] {recovered.size(), file, System.currentTimeMillis() - begin});
+    }
+    compacting = true;
+    compactJournal();
+    executor = Executors.newSingleThreadScheduledExecutor(threadFactory != null ? threadFactory : new ThreadFactory() {
+      public Thread newThread(Runnable runnable) {
+        Thread thread = new Thread(runnable, "SessionJournal");
+        thread.setDaemon(true);
+        return thread;
+      }
+    });
+    return recovered;
+  }
+
+  /**
+   * Makes the journal thread sync the journal periodically, until the journal is closed.
+   *
+   * @param interval milliseconds between two syncs
+   */
+  public synchronized void scheduleSync(long interval) {
+    if (executor == null) {
+      return;
+    }
+    executor.scheduleWithFixedDelay(new Runnable() {
+      public void run() {
+        try {
+          syncJournal();
+        }
+        catch (Throwable e) {
+          logger.warn("Failure syncing session journal " + file, e);
+        }
+      }
+    }, interval, interval, TimeUnit.MILLISECONDS);
+  }
+
+  private void replay(ByteBuffer journal, Map<String, IJournaledSessionData> recovered) {
+    if (journal.getInt() != MAGIC) {
+      logger.warn("File {} is not a session journal, ignoring it", file);
+      return;
+    }
+    while (journal.remaining() >= 4) {
+      int start = journal.position();
+      int length = journal.getInt();
+      if (length <= 0 || length > journal.remaining()) {
+        break;
+      }
+      int end = journal.position() + length;
+      try {
+        byte type = journal.get();
+        String sessionId = getString(journal);
+        if (type == STATE) {
+          IJournaledSessionData data = newSessionData(journal.get());
+          if (data == null) {
+            throw new IllegalStateException("Unknown session kind");
+          }
+          data.setSessionId(sessionId);
+          data.setApplicationId(getApplicationId(journal));
+          restoring = data;
+          try {
+            data.read(this, journal);
+          }
+          finally {
+            restoring = null;
+          }
+          recovered.put(sessionId, data);
+        }
+        else if (type == REMOVE) {
+          recovered.remove(sessionId);
+        }
+        else if (type == SKIP) {
+          // end of a region, the journal goes on in the next one
+          journal.position(end);
+        }
+        else {
+          throw new IllegalStateException("Unknown record type " + type);
+        }
+        if (journal.position() != end) {
+          throw new IllegalStateException("Record length mismatch");
+        }
+      }
+      catch (RuntimeException e) {
+        // BufferUnderflowException included
+        logger.warn("Session journal " + file + " is corrupted at offset " + start + ", ignoring the rest of it", e);
+        break;
+      }
+    }
+  }
+
+  /**
+   * Journals the current state of a session.
+   */
+  public void write(IJournaledSessionData data) {
+    if (data == restoring) {
+      return;
+    }
+    sessions.put(data.getSessionId(), data);
+    append(STATE, data.getSessionId(), data);
+  }
+
+  /**
+   * Journals the removal of a session.
+   */
+  public void remove(IJournaledSessionData data) {
+    if (sessions.remove(data.getSessionId(), data)) {
+      append(REMOVE, data.getSessionId(), null);
+    }
+  }
+
+  /**
+   * @return count of live sessions in the journal
+   */
+  public int getSessionCount() {
+    return sessions.size();
+  }
+
+  private void append(byte type, String sessionId, IJournaledSessionData data) {
+    synchronized (this) {
+      if (buffer == null) {
+        return;
+      }
+      if (compacting) {
+        changed.add(sessionId);
+      }
+      boolean full = false;
+      while (true) {
+        int start = buffer.position();
+        try {
+          writeRecord(buffer, type, sessionId, data);
+          records++;
+          break;
+        }
+        catch (BufferOverflowException e) {
+          // the length of the torn record is still 0
+          buffer.position(start);
+          full = true;
+          try {
+            nextRegion(start);
+          }
+          catch (IOException ioe) {
+            logger.error("Failure growing session journal " + file + ", sessions are no longer journaled", ioe);
+            closeJournal();
+            return;
+          }
+        }
+      }
+      if (full && !compacting && executor != null) {
+        compacting = true;
+        try {
+          executor.execute(new Runnable() {
+            public void run() {
+              compactOrClose();
+            }
+          });
+        }
+        catch (RuntimeException e) {
+          // closed meanwhile
+          compacting = false;
+        }
+      }
+    }
+  }
+
+  /**
+   * Maps the region following the current one and ends the current one with a skip record.
+   *
+   * @param end end of the last record of the current region
+   */
+  private void nextRegion(int end) throws IOException {
+    // a record which does not fit in an empty region needs a larger one
+    int regionSize = end == 0 ? buffer.capacity() * 2 : Math.max(size, TRAILER_SIZE * 2);
+    long offset = regionOffset + buffer.capacity();
+    // new file bytes are zeros, which already end the journal there
+    MappedByteBuffer region = journalFile.getChannel().map(FileChannel.MapMode.READ_WRITE, offset, regionSize);
+    buffer.put(end + 4, SKIP);
+    buffer.putInt(end, buffer.capacity() - end - 4);
+    regions.add(region);
+    buffer = region;
+    regionOffset = offset;
+    logger.debug("Session journal {} continues at offset {}", file, offset);
+  }
+
+  private void writeRecord(ByteBuffer out, byte type, String sessionId, IJournaledSessionData data) {
+    int start = out.position();
+    out.position(start + 4);
+    out.put(type);
+    putString(out, sessionId);
+    if (data != null) {
+      out.put((byte) getKind(data.getSessionClass()));
+      putApplicationId(out, data.getApplicationId());
+      data.write(this, out);
+    }
+    int end = out.position();
+    // ends the journal after this record before making the record valid
+    if (out.remaining() < TRAILER_SIZE) {
+      throw new BufferOverflowException();
+    }
+    out.putInt(end, 0);
+    out.putInt(start, end - start - 4);
+  }
+
+  /**
+   * Makes the journal thread write the live sessions to the disk and, when the journal is
+   * half full and mostly made of stale records, compact it. Waits for the journal thread.
+   */
+  public void sync() throws IOException {
+    runOnJournalThread(new Callable<Void>() {
+      public Void call() throws IOException {
+        syncJournal();
+        return null;
+      }
+    });
+  }
+
+  /**
+   * Makes the journal thread rewrite the journal with the state of the live sessions only,
+   * once the compaction it runs, if any, is over. Waits for the journal thread.
+   */
+  public void compact() throws IOException {
+    runOnJournalThread(new Callable<Void>() {
+      public Void call() throws IOException {
+        synchronized (SessionJournal.this) {
+          if (compacting || buffer == null) {
+            return null;
+          }
+          compacting = true;
+        }
+        compactJournal();
+        return null;
+      }
+    });
+  }
+
+  private void runOnJournalThread(Callable<Void> task) throws IOException {
+    ExecutorService executor;
+    synchronized (this) {
+      executor = this.executor;
+    }
+    if (executor == null) {
+      return;
+    }
+    try {
+      executor.submit(task).get();
+    }
+    catch (RejectedExecutionException e) {
+      // closed meanwhile
+    }
+    catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+    catch (ExecutionException e) {
+      if (e.getCause() instanceof IOException) {
+        throw (IOException) e.getCause();
+      }
+      throw new IOException(e.getCause());
+    }
+  }
+
+  // journal thread only
+  private void syncJournal() {
+    MappedByteBuffer[] mapped = null;
+    synchronized (this) {
+      if (buffer == null) {
+        return;
+      }
+      long length = regionOffset + buffer.capacity();
+      if (compacting || regionOffset + buffer.position() <= length / 2 || records <= 2 * sessions.size()) {
+        mapped = regions.toArray(new MappedByteBuffer[regions.size()]);
+      }
+      else {
+        compacting = true;
+      }
+    }
+    if (mapped == null) {
+      compactOrClose();
+      return;
+    }
+    for (MappedByteBuffer map : mapped) {
+      map.force();
+    }
+  }
+
+  // journal thread only
+  private void compactOrClose() {
+    try {
+      compactJournal();
+    }
+    catch (IOException ioe) {
+      logger.error("Failure compacting session journal " + file + ", sessions are no longer journaled", ioe);
+      synchronized (this) {
+        releaseRegions(closeJournal());
+      }
+    }
+  }
+
+  private void compactJournal() throws IOException {
+    long begin = System.currentTimeMillis();
+    File compacted = new File(file.getPath() + ".compact");
+    int journalSize;
+    synchronized (this) {
+      journalSize = Math.max(size, buffer != null ? buffer.capacity() : 0);
+    }
+    boolean done = false;
+    try {
+      while (true) {
+        RandomAccessFile out = new RandomAccessFile(compacted, "rw");
+        MappedByteBuffer map = null;
+        try {
+          out.setLength(journalSize);
+          map = out.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, journalSize);
+          map.putInt(MAGIC);
+          map.putInt(HEADER_SIZE, 0);
+          int count = 0;
+          for (IJournaledSessionData data : sessions.values()) {
+            writeRecord(map, STATE, data.getSessionId(), data);
+            count++;
+          }
+          // keep room for the changes to come
+          if (map.position() > journalSize / 2 && journalSize < Integer.MAX_VALUE / 2) {
+            throw new BufferOverflowException();
+          }
+          map.force();
+          synchronized (this) {
+            if (closed) {
+              // closed meanwhile, the journal file stays as it is
+              return;
+            }
+            // last state of the sessions changed while the others were written
+            for (String sessionId : changed) {
+              IJournaledSessionData data = sessions.get(sessionId);
+              writeRecord(map, data != null ? STATE : REMOVE, sessionId, data);
+              count++;
+            }
+            // replaced regions are no longer written, syncs and compactions run on this thread only
+            releaseRegions(closeJournal());
+            if (!compacted.renameTo(file) && !(file.delete() && compacted.renameTo(file))) {
+              throw new IOException("Can not replace " + file + " by " + compacted);
+            }
+            journalFile = out;
+            regions.add(map);
+            buffer = map;
+            regionOffset = 0;
+            records = count;
+            out = null;
+            done = true;
+          }
+          logger.debug("Compacted session journal {} to {} records, {} bytes in {} ms",
+              new Object[] {file, count, map.position(), System.currentTimeMillis() - begin});
+          return;
+        }
+        catch (BufferOverflowException e) {
+          journalSize *= 2;
+          logger.debug("Growing session journal {} to {} bytes", file, journalSize);
+        }
+        finally {
+          if (out != null) {
+            out.close();
+            if (map != null) {
+              unmap(map);
+            }
+          }
+        }
+      }
+    }
+    finally {
+      synchronized (this) {
+        compacting = false;
+        changed.clear();
+        if (!done) {
+          compacted.delete();
+        }
+      }
+    }
+  }
+
+  /**
+   * Writes the journal to the disk and closes it. Sessions changed afterwards are no
+   * longer journaled until the journal is opened again.
+   */
+  public void close() {
+    ExecutorService executor;
+    synchronized (this) {
+      executor = this.executor;
+      this.executor = null;
+      // a running compaction leaves the journal as it is
+      closed = true;
+    }
+    boolean stopped = true;
+    if (executor != null) {
+      executor.shutdown();
+      try {
+        stopped = executor.awaitTermination(CLOSE_TIMEOUT, TimeUnit.MILLISECONDS);
+      }
+      catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        stopped = false;
+      }
+    }
+    synchronized (this) {
+      for (MappedByteBuffer map : regions) {
+        map.force();
+      }
+      List<MappedByteBuffer> released = closeJournal();
+      if (stopped) {
+        releaseRegions(released);
+      }
+    }
+  }
+
+  /**
+   * Stops journaling changes.
+   *
+   * @return regions of the closed journal, still mapped
+   */
+  private List<MappedByteBuffer> closeJournal() {
+    List<MappedByteBuffer> released = new ArrayList<MappedByteBuffer>(regions);
+    regions.clear();
+    buffer = null;
+    regionOffset = 0;
+    if (journalFile != null) {
+      try {
+        journalFile.close();
+      }
+      catch (IOException e) {
+        logger.debug("Can not close session journal " + file, e);
+      }
+      journalFile = null;
+    }
+    return released;
+  }
+
+  /**
+   * Unmaps regions no thread uses anymore.
+   */
+  private void releaseRegions(List<MappedByteBuffer> released) {
+    for (MappedByteBuffer map : released) {
+      unmap(map);
+    }
+  }
+
+  /**
+   * Unmaps a region right away instead of when the garbage collector finds it, which may
+   * keep the pages of replaced journals mapped for long.
+   */
+  private static void unmap(MappedByteBuffer map) {
+    try {
+      // Java 9 and later
+      Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+      Method invokeCleaner = unsafeClass.getMethod("invokeCleaner", ByteBuffer.class);
+      Field theUnsafe = unsafeClass.getDeclaredField("theUnsafe");
+      theUnsafe.setAccessible(true);
+      invokeCleaner.invoke(theUnsafe.get(null), map);
+      return;
+    }
+    catch (NoSuchMethodException e) {
+      // older runtime
+    }
+    catch (Exception e) {
+      logger.debug("Can not unmap session journal region", e);
+      return;
+    }
+    try {
+      Method cleanerMethod = map.getClass().getMethod("cleaner");
+      cleanerMethod.setAccessible(true);
+      Object cleaner = cleanerMethod.invoke(map);
+      if (cleaner != null) {
+        cleaner.getClass().getMethod("clean").invoke(cleaner);
+      }
+    }
+    catch (Exception e) {
+      logger.debug("Can not unmap session journal region", e);
+    }
+  }
+
+  /**
+   * Schedules again the timers of recovered sessions.
+   *
+   * @param timerFacility facility scheduling the timers
+   * @param minDelay minimum delay before a timer expires, given to timers that expired while the journal was closed
+   * @param sessions recovered sessions
+   */
+  public synchronized void rearmTimers(ITimerFacility timerFacility, long minDelay, Iterable<IJournaledSessionData> sessions) {
+    this.timerFacility = timerFacility;
+    this.rearmTime = System.currentTimeMillis();
+    this.rearmMinDelay = minDelay;
+    try {
+      for (IJournaledSessionData data : sessions) {
+        restoring = data;
+        data.rearmTimers(this);
+      }
+    }
+    finally {
+      this.timerFacility = null;
+      this.restoring = null;
+    }
+  }
+
+  /**
+   * Called by journaled data to schedule again a timer read from the journal.
+   *
+   * @return id of the scheduled timer, or the given one if it was not read from the journal
+   */
+  public Serializable rearm(String sessionId, Serializable timerId) {
+    if (timerFacility == null || !(timerId instanceof JournaledTimer)) {
+      return timerId;
+    }
+    JournaledTimer timer = (JournaledTimer) timerId;
+    return timerFacility.schedule(sessionId, timer.timerName, Math.max(rearmMinDelay, timer.expiryTime - rearmTime));
+  }
+
+  // ---------------------- record helpers, used by journaled data -----------------------
+
+  public void putTimer(ByteBuffer out, Serializable timerId) {
+    // a recycled timer id has no name
+    if (timerId instanceof ITimerHandle && ((ITimerHandle) timerId).getTimerName() != null) {
+      ITimerHandle timer = (ITimerHandle) timerId;
+      out.put((byte) 1);
+      putString(out, timer.getTimerName());
+      out.putLong(timer.getExpiryTime());
+    }
+    else {
+      out.put((byte) 0);
+    }
+  }
+
+  public Serializable getTimer(ByteBuffer in) {
+    if (in.get() == 0) {
+      return null;
+    }
+    return new JournaledTimer(getString(in), in.getLong());
+  }
+
+  public void putMessage(ByteBuffer out, Request message) {
+    if (message instanceof IMessage) {
+      try {
+        ByteBuffer encoded = parser.encodeMessage((IMessage) message);
+        out.putInt(encoded.remaining());
+        out.put(encoded);
+        return;
+      }
+      catch (Exception e) {
+        logger.debug("Can not journal message", e);
+      }
+    }
+    out.putInt(-1);
+  }
+
+  public Request getMessage(ByteBuffer in) {
+    int length = in.getInt();
+    if (length < 0) {
+      return null;
+    }
+    if (length > in.remaining()) {
+      throw new BufferUnderflowException();
+    }
+    byte[] encoded = new byte[length];
+    in.get(encoded);
+    try {
+      return parser.createMessage(ByteBuffer.wrap(encoded));
+    }
+    catch (Exception e) {
+      logger.debug("Can not read journaled message", e);
+      return null;
+    }
+  }
+
+  public static void putBoolean(ByteBuffer out, boolean value) {
+    out.put(value ? (byte) 1 : (byte) 0);
+  }
+
+  public static boolean getBoolean(ByteBuffer in) {
+    return in.get() != 0;
+  }
+
+  private static void putString(ByteBuffer out, String value) {
+    try {
+      byte[] bytes = value.getBytes("UTF-8");
+      out.putShort((short) bytes.length);
+      out.put(bytes);
+    }
+    catch (UnsupportedEncodingException e) {
+      throw new IllegalStateException(e);
+    }
+  }
+
+  private static String getString(ByteBuffer in) {
+    byte[] bytes = new byte[in.getShort() & 0xffff];
+    in.get(bytes);
+    try {
+      return new String(bytes, "UTF-8");
+    }
+    catch (UnsupportedEncodingException e) {
+      throw new IllegalStateException(e);
+    }
+  }
+
+  private static void putApplicationId(ByteBuffer out, ApplicationId applicationId) {
+    if (applicationId == null) {
+      out.put((byte) 0);
+      return;
+    }
+    out.put((byte) 1);
+    out.putLong(applicationId.getVendorId());
+    out.putLong(applicationId.getAuthAppId());
+    out.putLong(applicationId.getAcctAppId());
+  }
+
+  private static ApplicationId getApplicationId(ByteBuffer in) {
+    if (in.get() == 0) {
+      return null;
+    }
+    long vendorId = in.getLong();
+    long authAppId = in.getLong();
+    long acctAppId = in.getLong();
+    return authAppId != ApplicationId.UNDEFINED_VALUE ? ApplicationId.createByAuthAppId(vendorId, authAppId)
+        : ApplicationId.createByAccAppId(vendorId, acctAppId);
+  }
+
+  /**
+   * Timer read from the journal, not scheduled yet.
+   */
+  private static class JournaledTimer implements ITimerHandle {
+
+    private static final long serialVersionUID = 1L;
+
+    private final String timerName;
+    private final long expiryTime;
+
+    JournaledTimer(String timerName, long expiryTime) {
+      this.timerName = timerName;
+      this.expiryTime = expiryTime;
+    }
+
+    public String getTimerName() {
+      return timerName;
+    }
+
+    public long getExpiryTime() {
+      return expiryTime;
+    }
+  }
+}
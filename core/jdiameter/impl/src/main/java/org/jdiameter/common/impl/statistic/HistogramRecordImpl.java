@@ -0,0 +1,96 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2011, Red Hat, Inc. and individual contributors
+ * by the @authors tag. See the copyright.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.jdiameter.common.impl.statistic;
+
+import org.jdiameter.common.api.statistic.IHistogramRecord;
+import org.jdiameter.common.api.statistic.IStatisticRecord;
+
+/**
+ * Statistic record backed by a {@link LatencyHistogram}. The percentiles and the maximum of the
+ * last completed interval are exposed as child records, so they show up wherever statistic
+ * records are listed.
+ */
+class HistogramRecordImpl extends StatisticRecordImpl implements IHistogramRecord {
+
+  protected final LatencyHistogram histogram;
+
+  public HistogramRecordImpl(String name, String description, final LatencyHistogram histogram) {
+    super(name, description, new IStatisticRecord.LongValueHolder() {
+      public long getValueAsLong() {
+        return histogram.getCount();
+      }
+
+      public String getValueAsString() {
+        return histogram.toString();
+      }
+    }, newPercentileRecord("P50", 50, histogram), newPercentileRecord("P99", 99, histogram),
+    newPercentileRecord("P999", 99.9, histogram), newMaxRecord(histogram));
+    this.histogram = histogram;
+  }
+
+  private static IStatisticRecord newPercentileRecord(String name, final double percentile, final LatencyHistogram histogram) {
+    return new StatisticRecordImpl(name, percentile + " percentile of latency in microseconds", new IStatisticRecord.LongValueHolder() {
+      public long getValueAsLong() {
+        return histogram.getPercentile(percentile);
+      }
+
+      public String getValueAsString() {
+        return String.valueOf(getValueAsLong());
+      }
+    });
+  }
+
+  private static IStatisticRecord newMaxRecord(final LatencyHistogram histogram) {
+    return new StatisticRecordImpl("Max", "Highest latency in microseconds", new IStatisticRecord.LongValueHolder() {
+      public long getValueAsLong() {
+        return histogram.getMax();
+      }
+
+      public String getValueAsString() {
+        return String.valueOf(getValueAsLong());
+      }
+    });
+  }
+
+  public void record(long value) {
+    if (enable) {
+      histogram.record(value);
+    }
+  }
+
+  public long getPercentile(double percentile) {
+    return histogram.getPercentile(percentile);
+  }
+
+  public long getMax() {
+    return histogram.getMax();
+  }
+
+  public long getInterval() {
+    return histogram.getInterval();
+  }
+
+  public void reset() {
+    histogram.reset();
+  }
+}
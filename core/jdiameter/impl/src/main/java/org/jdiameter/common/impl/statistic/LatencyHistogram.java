@@ -0,0 +1,219 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2011, Red Hat, Inc. and individual contributors
+ * by the @authors tag. See the copyright.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.jdiameter.common.impl.statistic;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Fixed memory histogram of latencies in microseconds, in the manner of HdrHistogram. Values
+ * below 32 are counted exactly, above that every power of two range is split into 32 linear
+ * sub buckets, so a reported value is never more than about 3% above the recorded one.
+ * Values above {@link #MAX_VALUE} are counted as MAX_VALUE.
+ * <p>
+ * Counts are kept per interval: recording goes to the current interval and queries answer for
+ * the last completed one, so the figures always describe a window of the configured length.
+ * Recording is lock free and does not allocate.
+ */
+public class LatencyHistogram {
+
+  private static final int SUB_BUCKET_BITS = 5;
+  private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+  private static final int MAX_BITS = 32;
+
+  public static final long MAX_VALUE = (1L << MAX_BITS) - 1;
+  public static final int BUCKETS = (MAX_BITS - SUB_BUCKET_BITS + 1) * SUB_BUCKETS;
+
+  private final long interval;
+  private volatile Interval current;
+  private volatile Interval previous;
+
+  /**
+   * @param interval length of the interval in milliseconds
+   */
+  public LatencyHistogram(long interval) {
+    if (interval <= 0) {
+      throw new IllegalArgumentException("Interval must be positive: " + interval);
+    }
+    this.interval = interval;
+    long now = System.currentTimeMillis();
+    this.current = new Interval(now);
+    this.previous = new Interval(now - interval);
+  }
+
+  /**
+   * @param value latency in microseconds
+   */
+  public void record(long value) {
+    if (value < 0) {
+      value = 0;
+    }
+    else if (value > MAX_VALUE) {
+      value = MAX_VALUE;
+    }
+    Interval c = current(System.currentTimeMillis());
+    c.counts.incrementAndGet(index(value));
+    c.count.incrementAndGet();
+    c.sum.addAndGet(value);
+    long max;
+    while (value > (max = c.max.get()) && !c.max.compareAndSet(max, value)) {
+      // retry
+    }
+  }
+
+  public long getInterval() {
+    return interval;
+  }
+
+  /**
+   * @return number of values recorded in the last completed interval
+   */
+  public long getCount() {
+    return completed().count.get();
+  }
+
+  /**
+   * @return highest value recorded in the last completed interval
+   */
+  public long getMax() {
+    return completed().max.get();
+  }
+
+  /**
+   * @return mean of the values recorded in the last completed interval
+   */
+  public double getMean() {
+    Interval p = completed();
+    long n = p.count.get();
+    return n != 0 ? ((double) p.sum.get()) / n : 0;
+  }
+
+  /**
+   * @param percentile value between 0 and 100
+   * @return highest value equivalent to the percentile in the last completed interval, 0 if
+   *         nothing was recorded
+   */
+  public long getPercentile(double percentile) {
+    Interval p = completed();
+    long n = p.count.get();
+    if (n == 0) {
+      return 0;
+    }
+    long rank = Math.max(1, (long) Math.ceil(n * percentile / 100));
+    long seen = 0;
+    for (int i = 0; i < BUCKETS; i++) {
+      seen += p.counts.get(i);
+      if (seen >= rank) {
+        return Math.min(getUpperBound(i), p.max.get());
+      }
+    }
+    return p.max.get();
+  }
+
+  public synchronized void reset() {
+    long now = System.currentTimeMillis();
+    current.reset(now);
+    previous.reset(now - interval);
+  }
+
+  /**
+   * @param value value between 0 and MAX_VALUE
+   * @return index of the bucket counting the value
+   */
+  static int index(long value) {
+    if (value < SUB_BUCKETS) {
+      return (int) value;
+    }
+    int shift = 63 - Long.numberOfLeadingZeros(value) - SUB_BUCKET_BITS;
+    return ((shift + 1) << SUB_BUCKET_BITS) + (int) (value >>> shift) - SUB_BUCKETS;
+  }
+
+  /**
+   * @param bucket bucket index
+   * @return highest value counted by the bucket
+   */
+  static long getUpperBound(int bucket) {
+    if (bucket < SUB_BUCKETS) {
+      return bucket;
+    }
+    int shift = (bucket >> SUB_BUCKET_BITS) - 1;
+    long sub = (bucket & (SUB_BUCKETS - 1)) + SUB_BUCKETS;
+    return ((sub + 1) << shift) - 1;
+  }
+
+  private Interval current(long now) {
+    Interval c = current;
+    return now - c.start < interval ? c : roll(now);
+  }
+
+  private Interval completed() {
+    current(System.currentTimeMillis());
+    return previous;
+  }
+
+  private synchronized Interval roll(long now) {
+    Interval c = current;
+    long elapsed = now - c.start;
+    if (elapsed < interval) {
+      return c;
+    }
+    // the completed interval is reused for the new one, so rolling does not allocate
+    Interval next = previous;
+    next.reset(c.start + (elapsed / interval) * interval);
+    if (elapsed >= 2 * interval) {
+      // nothing was recorded during the interval which just completed
+      c.reset(next.start - interval);
+    }
+    previous = c;
+    current = next;
+    return next;
+  }
+
+  public String toString() {
+    return "count=" + getCount() + ", mean=" + Math.round(getMean()) + "us, p50=" + getPercentile(50) + "us, p99=" +
+        getPercentile(99) + "us, p99.9=" + getPercentile(99.9) + "us, max=" + getMax() + "us";
+  }
+
+  private static final class Interval {
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+    private final AtomicLong count = new AtomicLong();
+    private final AtomicLong sum = new AtomicLong();
+    private final AtomicLong max = new AtomicLong();
+    private volatile long start;
+
+    private Interval(long start) {
+      this.start = start;
+    }
+
+    private void reset(long start) {
+      for (int i = 0; i < BUCKETS; i++) {
+        counts.set(i, 0);
+      }
+      count.set(0);
+      sum.set(0);
+      max.set(0);
+      this.start = start;
+    }
+  }
+}
@@ -22,6 +22,8 @@
 
 package org.jdiameter.common.impl.statistic;
 
+import java.util.HashMap;
+import java.util.Map;
 import java.util.concurrent.ConcurrentLinkedQueue;
 
 import org.jdiameter.api.StatisticRecord;
@@ -36,11 +38,22 @@ import org.jdiameter.common.api.statistic.IStatisticRecord.Counters;
  */
 class StatisticImpl implements IStatistic {
 
+  private static final Map<String, Counters> COUNTERS = new HashMap<String, Counters>();
+
+  static {
+    for (Counters c : Counters.values()) {
+      COUNTERS.put(c.name(), c);
+    }
+  }
+
   protected boolean enable = true;
   protected ConcurrentLinkedQueue<StatisticRecord> records = new ConcurrentLinkedQueue<StatisticRecord>();
   protected String name;
   protected String description;
   protected IStatistic.Groups group;
+  // records named after a counter, indexed by its ordinal, so hot path lookups do not scan
+  protected volatile IStatisticRecord[] counters = new IStatisticRecord[Counters.values().length];
+
   public String getName() {
     return name;
   }
@@ -71,15 +84,39 @@ class StatisticImpl implements IStatistic {
     for (IStatisticRecord r : rec) {
       records.add((IStatisticRecord) r);
     }
+    index(rec);
   }
   public void appendCounter(IStatisticRecord... rec) {
     for (IStatisticRecord r : rec) {
       r.enable(this.enable);
       records.add(r);
     }
+    index(rec);
+  }
+
+  private synchronized void index(IStatisticRecord... rec) {
+    IStatisticRecord[] copy = null;
+    for (IStatisticRecord r : rec) {
+      Counters c = COUNTERS.get(r.getName());
+      if (c != null && counters[c.ordinal()] == null) {
+        if (copy == null) {
+          copy = counters.clone();
+        }
+        if (copy[c.ordinal()] == null) {
+          copy[c.ordinal()] = r;
+        }
+      }
+    }
+    if (copy != null) {
+      counters = copy;
+    }
   }
 
   public IStatisticRecord getRecordByName(String name) {
+    Counters c = COUNTERS.get(name);
+    if (c != null) {
+      return getRecordByName(c);
+    }
     for (StatisticRecord r : records) {
       if (r.getName().equals(name)) {
         return (IStatisticRecord) r;
@@ -89,12 +126,7 @@ class StatisticImpl implements IStatistic {
   }
 
   public IStatisticRecord getRecordByName(Counters name) {
-    for (StatisticRecord r : records) {
-      if (r.getName().equals(name.toString())) {
-        return (IStatisticRecord) r;
-      }
-    }
-    return null;
+    return counters[name.ordinal()];
   }
 
   public void enable(boolean e) {
@@ -30,6 +30,7 @@ import java.util.concurrent.CopyOnWriteArrayList;
 
 import org.jdiameter.api.Configuration;
 import org.jdiameter.client.impl.helpers.Parameters;
+import org.jdiameter.common.api.statistic.IHistogramRecord;
 import org.jdiameter.common.api.statistic.IStatistic;
 import org.jdiameter.common.api.statistic.IStatisticManager;
 import org.jdiameter.common.api.statistic.IStatisticRecord;
@@ -122,6 +123,25 @@ public class StatisticManagerImpl implements IStatisticManager {
 		return psStatistic;
 	}
 
+	public IHistogramRecord newHistogramRecord(IStatisticRecord.Counters recordDescription) {
+		// intervals match the logger period, so each logged value covers the time since the previous one
+		HistogramRecordImpl statisticRecord = new HistogramRecordImpl(recordDescription.name(), recordDescription.getDescription(),
+				new LatencyHistogram(getHistogramInterval()));
+		statisticRecord.enable(this.isEnabled(recordDescription.name()));
+		return statisticRecord;
+	}
+
+	public IHistogramRecord newHistogramRecord(String name, IStatisticRecord.Counters recordDescription) {
+		HistogramRecordImpl statisticRecord = new HistogramRecordImpl(recordDescription.name()+"."+name, recordDescription.getDescription(),
+				new LatencyHistogram(getHistogramInterval()));
+		statisticRecord.enable(this.isEnabled(recordDescription.name()));
+		return statisticRecord;
+	}
+
+	private long getHistogramInterval() {
+		return delay > 0 ? delay : (Long) Parameters.StatisticsLoggerDelay.defValue();
+	}
+
 	public IStatistic newStatistic(String name, IStatistic.Groups group, IStatisticRecord... rec) {
 		IStatistic statistic = new StatisticImpl(name,group, group.getDescription(), rec);
 		statistic.enable(this.isEnabled(statistic.getName()));
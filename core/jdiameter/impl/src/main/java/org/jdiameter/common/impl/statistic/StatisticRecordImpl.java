@@ -24,7 +24,6 @@ package org.jdiameter.common.impl.statistic;
 
 import java.util.Arrays;
 import java.util.concurrent.ConcurrentLinkedQueue;
-import java.util.concurrent.atomic.AtomicLong;
 
 import org.jdiameter.api.StatisticRecord;
 import org.jdiameter.common.api.statistic.IStatisticRecord;
@@ -41,13 +40,13 @@ class StatisticRecordImpl implements IStatisticRecord {
   protected String description;
   protected Counters counter;
   
-  protected AtomicLong value;
+  protected StripedCounter value;
   protected ConcurrentLinkedQueue<StatisticRecord> childs = new ConcurrentLinkedQueue<StatisticRecord>();
   protected ValueHolder valueHolder;
 
   public StatisticRecordImpl(String name) {
     this.name = name;
-    this.value = new AtomicLong(0);
+    this.value = new StripedCounter();
   }
 
   public StatisticRecordImpl(String name, String description) {
@@ -78,7 +77,7 @@ class StatisticRecordImpl implements IStatisticRecord {
 
   public StatisticRecordImpl(String name, String description,  long value) {
     this(name, description);
-    this.value = new AtomicLong(value);
+    this.value = new StripedCounter(value);
   }
 
   public String getName() {
@@ -105,13 +104,13 @@ class StatisticRecordImpl implements IStatisticRecord {
 
   public void inc() {
     if (enable) {
-      this.value.incrementAndGet();
+      this.value.increment();
     }
   }
 
   public void inc(long delta) {
     if (enable) {
-      this.value.addAndGet(delta);
+      this.value.add(delta);
     }
   }
 
@@ -129,7 +128,7 @@ class StatisticRecordImpl implements IStatisticRecord {
 
   public void dec() {
     if (enable) {
-      value.decrementAndGet();
+      value.decrement();
     }
   }
 
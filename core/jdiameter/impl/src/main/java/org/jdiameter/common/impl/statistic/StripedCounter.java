@@ -0,0 +1,128 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2010, Red Hat, Inc. and individual contributors
+ * by the @authors tag. See the copyright.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.jdiameter.common.impl.statistic;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Counter for values updated by many threads and read rarely, in the manner of the JDK 8
+ * LongAdder. Updates go to a single atomic base until two threads collide on it; from then
+ * on every thread adds to its own cell, each on a separate cache line, and reading the value
+ * sums the base and all cells.
+ */
+public class StripedCounter {
+
+  // longs per cell, so that two cells never share a 64 byte cache line
+  private static final int STRIDE = 8;
+  private static final int CELLS;
+  private static final int CELL_BITS;
+
+  static {
+    int bits = 0;
+    while ((1 << bits) < Runtime.getRuntime().availableProcessors() && bits < 6) {
+      bits++;
+    }
+    CELL_BITS = bits;
+    CELLS = 1 << bits;
+  }
+
+  private final AtomicLong base;
+  private volatile AtomicLongArray cells;
+
+  public StripedCounter() {
+    this(0);
+  }
+
+  public StripedCounter(long value) {
+    this.base = new AtomicLong(value);
+  }
+
+  public void add(long x) {
+    AtomicLongArray cs = cells;
+    if (cs == null) {
+      long b = base.get();
+      if (base.compareAndSet(b, b + x)) {
+        return;
+      }
+      cs = inflate();
+    }
+    cs.addAndGet(index(), x);
+  }
+
+  public void increment() {
+    add(1);
+  }
+
+  public void decrement() {
+    add(-1);
+  }
+
+  /**
+   * @return sum of all updates. Not an atomic snapshot if updates happen meanwhile
+   */
+  public long get() {
+    long sum = base.get();
+    AtomicLongArray cs = cells;
+    if (cs != null) {
+      for (int i = 0; i < CELLS; i++) {
+        sum += cs.get(i * STRIDE);
+      }
+    }
+    return sum;
+  }
+
+  /**
+   * Replaces the value. Updates made concurrently may be lost, so this is meant for values
+   * which are either counted or set, not both.
+   */
+  public void set(long value) {
+    AtomicLongArray cs = cells;
+    if (cs != null) {
+      for (int i = 0; i < CELLS; i++) {
+        cs.set(i * STRIDE, 0);
+      }
+    }
+    base.set(value);
+  }
+
+  private synchronized AtomicLongArray inflate() {
+    if (cells == null) {
+      cells = new AtomicLongArray(CELLS * STRIDE);
+    }
+    return cells;
+  }
+
+  private static int index() {
+    if (CELL_BITS == 0) {
+      return 0;
+    }
+    // Fibonacci hashing spreads sequential thread ids over the cells
+    long h = Thread.currentThread().getId() * 0x9E3779B97F4A7C15L;
+    return (int) (h >>> (64 - CELL_BITS)) * STRIDE;
+  }
+
+  public String toString() {
+    return String.valueOf(get());
+  }
+}
@@ -38,6 +38,7 @@ import org.jdiameter.client.api.IContainer;
 import org.jdiameter.common.api.concurrent.IConcurrentFactory;
 import org.jdiameter.common.api.data.ISessionDatasource;
 import org.jdiameter.common.api.timer.ITimerFacility;
+import org.jdiameter.common.api.timer.ITimerHandle;
 import org.jdiameter.common.impl.app.AppSessionImpl;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -93,10 +94,19 @@ public class LocalTimerFacilityImpl implements ITimerFacility {
     ir.id = id;
     ir.sessionId = sessionId;
     ir.timerName = timerName;
+    ir.expiryTime = System.currentTimeMillis() + milliseconds;
     ir.future = this.executor.schedule(ir, milliseconds, TimeUnit.MILLISECONDS);
     return ir;
   }
 
+  /*
+   * (non-Javadoc)
+   * @see org.jdiameter.common.api.timer.ITimerFacility#stop()
+   */
+  public void stop() {
+    // timers run on the ApplicationSession executor, which is shut down with the stack
+  }
+
   protected void returnTimerTaskHandle(TimerTaskHandle timerTaskHandle) {
     try {
       pool.returnObject(timerTaskHandle);
@@ -129,17 +139,27 @@ public class LocalTimerFacilityImpl implements ITimerFacility {
       timerTaskHandle.id = null;
       timerTaskHandle.sessionId = null;
       timerTaskHandle.timerName = null;
+      timerTaskHandle.expiryTime = 0;
       timerTaskHandle.future = null;
     }
   }
 
-  private final class TimerTaskHandle implements Runnable, Externalizable {
+  private final class TimerTaskHandle implements Runnable, Externalizable, ITimerHandle {
     // its not really serializable;
     private String sessionId;
     private String timerName;
+    private long expiryTime;
     private String id; //for debug, easier to check what's going on and what that timer does.
     private transient ScheduledFuture<?> future;
 
+    public String getTimerName() {
+      return timerName;
+    }
+
+    public long getExpiryTime() {
+      return expiryTime;
+    }
+
     public void run() {
       try {
         BaseSession bSession = sessionDataSource.getSession(sessionId);
@@ -0,0 +1,315 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2010, Red Hat, Inc. and individual contributors
+ * by the @authors tag. See the copyright.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.jdiameter.common.impl.timer;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Hashed timing wheel. Scheduling and cancelling a timeout are O(1) and never contend on a
+ * shared heap: new and cancelled timeouts are handed to the wheel thread through lock free
+ * queues, and only that thread touches the buckets.
+ * <p>
+ * Every tick the wheel thread expires the timeouts of one bucket and passes them to the
+ * executor in batches. Timeouts fire up to one tick late, never early.
+ */
+public class TimerWheel implements Runnable {
+
+  private static final Logger logger = LoggerFactory.getLogger(TimerWheel.class);
+
+  private static final int BATCH_SIZE = 64;
+
+  private final long tickNanos;
+  private final Bucket[] wheel;
+  private final int mask;
+  private final Executor executor;
+  private final long startTime;
+
+  private final Queue<Timeout> newTimeouts = new ConcurrentLinkedQueue<Timeout>();
+  private final Queue<Timeout> cancelledTimeouts = new ConcurrentLinkedQueue<Timeout>();
+  private final AtomicInteger pending = new AtomicInteger();
+  private volatile boolean stop = false;
+
+  // touched by the wheel thread only
+  private long tick;
+
+  /**
+   * @param tickMillis resolution of the wheel in milliseconds
+   * @param wheelSize number of buckets, rounded up to a power of two
+   * @param executor executor running the expired tasks
+   */
+  public TimerWheel(long tickMillis, int wheelSize, Executor executor) {
+    if (tickMillis <= 0) {
+      throw new IllegalArgumentException("Tick must be positive: " + tickMillis);
+    }
+    if (wheelSize <= 0 || wheelSize > 1 << 30) {
+      throw new IllegalArgumentException("Wrong wheel size: " + wheelSize);
+    }
+    int size = 1;
+    while (size < wheelSize) {
+      size <<= 1;
+    }
+    this.tickNanos = TimeUnit.MILLISECONDS.toNanos(tickMillis);
+    this.wheel = new Bucket[size];
+    for (int i = 0; i < size; i++) {
+      wheel[i] = new Bucket();
+    }
+    this.mask = size - 1;
+    this.executor = executor;
+    this.startTime = System.nanoTime();
+  }
+
+  /**
+   * Schedules a task. May be called from any thread.
+   *
+   * @param task task to run on the executor
+   * @param delay delay in milliseconds
+   * @return handle to cancel the task
+   */
+  public Timeout schedule(Runnable task, long delay) {
+    long deadline = System.nanoTime() - startTime + TimeUnit.MILLISECONDS.toNanos(Math.max(delay, 0));
+    Timeout timeout = new Timeout(this, task, deadline);
+    pending.incrementAndGet();
+    newTimeouts.offer(timeout);
+    return timeout;
+  }
+
+  /**
+   * @return number of scheduled timeouts which are neither expired nor cancelled
+   */
+  public int getPendingCount() {
+    return pending.get();
+  }
+
+  /**
+   * Makes the wheel thread exit after the current tick. Pending timeouts never fire.
+   */
+  public void stop() {
+    stop = true;
+  }
+
+  public void run() {
+    logger.debug("Timer wheel is started, tick is {}ns, size is {}", tickNanos, wheel.length);
+    List<Timeout> expired = new ArrayList<Timeout>();
+    try {
+      while (!stop) {
+        waitForNextTick();
+        removeCancelled();
+        transferNew();
+        wheel[(int) (tick & mask)].expire(expired);
+        tick++;
+        if (!expired.isEmpty()) {
+          dispatch(expired);
+          expired.clear();
+        }
+      }
+    }
+    catch (InterruptedException e) {
+      logger.debug("Timer wheel is interrupted");
+    }
+    catch (RejectedExecutionException e) {
+      logger.debug("Timer wheel executor is shut down");
+    }
+    logger.debug("Timer wheel is stopped");
+  }
+
+  private void waitForNextTick() throws InterruptedException {
+    long deadline = (tick + 1) * tickNanos;
+    while (true) {
+      long sleep = deadline - (System.nanoTime() - startTime);
+      if (sleep <= 0) {
+        return;
+      }
+      TimeUnit.NANOSECONDS.sleep(sleep);
+    }
+  }
+
+  private void transferNew() {
+    Timeout timeout;
+    // bounded, so that a flood of new timeouts can not stall the wheel
+    for (int i = 0; i < 100000 && (timeout = newTimeouts.poll()) != null; i++) {
+      if (timeout.state != Timeout.INIT) {
+        continue;
+      }
+      long ticks = timeout.deadline / tickNanos;
+      timeout.remainingRounds = (ticks - tick) / wheel.length;
+      // already due ones go to the current bucket
+      wheel[(int) (Math.max(ticks, tick) & mask)].add(timeout);
+    }
+  }
+
+  private void removeCancelled() {
+    Timeout timeout;
+    while ((timeout = cancelledTimeouts.poll()) != null) {
+      if (timeout.bucket != null) {
+        timeout.bucket.remove(timeout);
+      }
+    }
+  }
+
+  private void dispatch(List<Timeout> expired) {
+    int size = expired.size();
+    for (int from = 0; from < size; from += BATCH_SIZE) {
+      final Timeout[] batch = expired.subList(from, Math.min(from + BATCH_SIZE, size)).toArray(new Timeout[0]);
+      executor.execute(new Runnable() {
+        public void run() {
+          for (Timeout timeout : batch) {
+            try {
+              timeout.task.run();
+            }
+            catch (Throwable e) {
+              logger.error("Timer task failed", e);
+            }
+          }
+        }
+      });
+    }
+  }
+
+  /**
+   * Handle of a scheduled task.
+   */
+  public static final class Timeout {
+
+    static final int INIT = 0;
+    static final int CANCELLED = 1;
+    static final int EXPIRED = 2;
+
+    private static final AtomicIntegerFieldUpdater<Timeout> STATE = AtomicIntegerFieldUpdater.newUpdater(Timeout.class, "state");
+
+    private final TimerWheel timerWheel;
+    private final Runnable task;
+    private final long deadline;
+    private volatile int state = INIT;
+
+    // touched by the wheel thread only
+    private long remainingRounds;
+    private Bucket bucket;
+    private Timeout next;
+    private Timeout prev;
+
+    Timeout(TimerWheel timerWheel, Runnable task, long deadline) {
+      this.timerWheel = timerWheel;
+      this.task = task;
+      this.deadline = deadline;
+    }
+
+    /**
+     * @return true if the task will not run, false if it has already fired or was cancelled before
+     */
+    public boolean cancel() {
+      if (!STATE.compareAndSet(this, INIT, CANCELLED)) {
+        return false;
+      }
+      timerWheel.pending.decrementAndGet();
+      timerWheel.cancelledTimeouts.offer(this);
+      return true;
+    }
+
+    public boolean isCancelled() {
+      return state == CANCELLED;
+    }
+
+    public boolean isExpired() {
+      return state == EXPIRED;
+    }
+
+    boolean expire() {
+      if (!STATE.compareAndSet(this, INIT, EXPIRED)) {
+        return false;
+      }
+      timerWheel.pending.decrementAndGet();
+      return true;
+    }
+  }
+
+  /**
+   * Doubly linked list of the timeouts hashed to one slot of the wheel.
+   */
+  private static final class Bucket {
+
+    private Timeout head;
+    private Timeout tail;
+
+    void add(Timeout timeout) {
+      timeout.bucket = this;
+      if (head == null) {
+        head = tail = timeout;
+      }
+      else {
+        tail.next = timeout;
+        timeout.prev = tail;
+        tail = timeout;
+      }
+    }
+
+    void remove(Timeout timeout) {
+      Timeout next = timeout.next;
+      if (timeout.prev != null) {
+        timeout.prev.next = next;
+      }
+      if (next != null) {
+        next.prev = timeout.prev;
+      }
+      if (timeout == head) {
+        head = next;
+      }
+      if (timeout == tail) {
+        tail = timeout.prev;
+      }
+      timeout.prev = null;
+      timeout.next = null;
+      timeout.bucket = null;
+    }
+
+    void expire(List<Timeout> expired) {
+      Timeout timeout = head;
+      while (timeout != null) {
+        Timeout next = timeout.next;
+        if (timeout.remainingRounds <= 0) {
+          remove(timeout);
+          if (timeout.expire()) {
+            expired.add(timeout);
+          }
+        }
+        else if (timeout.isCancelled()) {
+          remove(timeout);
+        }
+        else {
+          timeout.remainingRounds--;
+        }
+        timeout = next;
+      }
+    }
+  }
+}
@@ -0,0 +1,177 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2010, Red Hat, Inc. and individual contributors
+ * by the @authors tag. See the copyright.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.jdiameter.common.impl.timer;
+
+import static org.jdiameter.client.impl.helpers.Parameters.TimerWheelSize;
+import static org.jdiameter.client.impl.helpers.Parameters.TimerWheelTick;
+
+import java.io.Externalizable;
+import java.io.IOException;
+import java.io.ObjectInput;
+import java.io.ObjectOutput;
+import java.io.Serializable;
+import java.util.concurrent.ScheduledExecutorService;
+
+import org.jdiameter.api.BaseSession;
+import org.jdiameter.api.Configuration;
+import org.jdiameter.client.api.IContainer;
+import org.jdiameter.common.api.concurrent.IConcurrentFactory;
+import org.jdiameter.common.api.data.ISessionDatasource;
+import org.jdiameter.common.api.timer.ITimerFacility;
+import org.jdiameter.common.api.timer.ITimerHandle;
+import org.jdiameter.common.impl.app.AppSessionImpl;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Local implementation of timer facility for {@link ITimerFacility} backed by a
+ * {@link TimerWheel}, for stacks with many session timers. Scheduling and cancelling are
+ * O(1), expired timers are run in batches on the ApplicationSession executor.
+ * <p>
+ * Enabled with the TimerFacility extension, the wheel is tuned with the TimerWheelTick
+ * and TimerWheelSize parameters.
+ */
+public class WheelTimerFacilityImpl implements ITimerFacility {
+
+  private static final Logger logger = LoggerFactory.getLogger(WheelTimerFacilityImpl.class);
+
+  private ISessionDatasource sessionDataSource;
+  private TimerWheel timerWheel;
+  private final Thread wheelThread;
+
+  public WheelTimerFacilityImpl(IContainer container) {
+    super();
+    ScheduledExecutorService executor = container.getConcurrentFactory().getScheduledExecutorService(IConcurrentFactory.ScheduledExecServices.ApplicationSession.name());
+    this.sessionDataSource = container.getAssemblerFacility().getComponentInstance(ISessionDatasource.class);
+    Configuration config = container.getConfiguration();
+    this.timerWheel = new TimerWheel(config.getLongValue(TimerWheelTick.ordinal(), (Long) TimerWheelTick.defValue()),
+        config.getIntValue(TimerWheelSize.ordinal(), (Integer) TimerWheelSize.defValue()), executor);
+    // runs until the stack is destroyed
+    this.wheelThread = container.getConcurrentFactory().getThread("TimerWheel", timerWheel);
+    this.wheelThread.setDaemon(true);
+    this.wheelThread.start();
+  }
+
+  /*
+   * (non-Javadoc)
+   * @see org.jdiameter.common.api.timer.ITimerFacility#stop()
+   */
+  public void stop() {
+    timerWheel.stop();
+    wheelThread.interrupt();
+  }
+
+  /*
+   * (non-Javadoc)
+   * 
+   * @see org.jdiameter.common.api.timer.ITimerFacility#cancel(java.io.Serializable)
+   */
+  public void cancel(Serializable f) {
+    if (f != null && f instanceof TimerTaskHandle) {
+      TimerTaskHandle timerTaskHandle = (TimerTaskHandle) f;
+      if (timerTaskHandle.timeout != null) {
+        timerTaskHandle.timeout.cancel();
+      }
+    }
+  }
+
+  /*
+   * (non-Javadoc)
+   * @see org.jdiameter.common.api.timer.ITimerFacility#schedule(java.lang.String, java.lang.String, long)
+   */
+  public Serializable schedule(String sessionId, String timerName, long milliseconds) throws IllegalArgumentException {
+    if (logger.isDebugEnabled()) {
+      logger.debug("Scheduling timer with id [{}/{}]", sessionId, timerName);
+    }
+    TimerTaskHandle ir = new TimerTaskHandle(sessionId, timerName, System.currentTimeMillis() + milliseconds);
+    ir.timeout = timerWheel.schedule(ir, milliseconds);
+    return ir;
+  }
+
+  private final class TimerTaskHandle implements Runnable, Externalizable, ITimerHandle {
+
+    private static final long serialVersionUID = 1L;
+
+    // its not really serializable;
+    private final String sessionId;
+    private final String timerName;
+    private final long expiryTime;
+    private transient TimerWheel.Timeout timeout;
+
+    TimerTaskHandle(String sessionId, String timerName, long expiryTime) {
+      this.sessionId = sessionId;
+      this.timerName = timerName;
+      this.expiryTime = expiryTime;
+    }
+
+    public String getTimerName() {
+      return timerName;
+    }
+
+    public long getExpiryTime() {
+      return expiryTime;
+    }
+
+    public void run() {
+      try {
+        BaseSession bSession = sessionDataSource.getSession(sessionId);
+        if (bSession == null || !bSession.isAppSession()) {
+          // FIXME: error ?
+          logger.error("Base Session is null for sessionId: {}", sessionId);
+          return;
+        }
+        else {
+          try {
+            AppSessionImpl impl = (AppSessionImpl) bSession;
+            impl.onTimer(timerName);
+          }
+          catch (Exception e) {
+            logger.error("Caught exception from app session object!", e);
+          }
+        }
+      }
+      catch (Exception e) {
+        logger.error("Failure executing timer task witb id: " + sessionId + "/" + timerName, e);
+      }
+    }
+
+    /*
+     * (non-Javadoc)
+     * 
+     * @see java.io.Externalizable#writeExternal(java.io.ObjectOutput)
+     */
+    public void writeExternal(ObjectOutput out) throws IOException {
+      throw new IOException("Failed to serialize local timer!");
+    }
+
+    /*
+     * (non-Javadoc)
+     * 
+     * @see java.io.Externalizable#readExternal(java.io.ObjectInput)
+     */
+    public void readExternal(ObjectInput in) throws IOException, ClassNotFoundException {
+      throw new IOException("Failed to deserialize local timer!");
+    }
+  }
+
+}
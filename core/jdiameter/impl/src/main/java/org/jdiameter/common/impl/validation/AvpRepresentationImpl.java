@@ -60,6 +60,9 @@ public class AvpRepresentationImpl implements AvpRepresentation {
   protected List<AvpRepresentation> children = new ArrayList<AvpRepresentation>();
   protected boolean weak = false;
 
+  // children rules, compiled on first use
+  private AvpRuleTable childRules;
+
   public AvpRepresentationImpl(AvpRepresentationImpl clone) {
     this(-1, clone.code, clone.getVendorId(), clone.getMultiplicityIndicator(), clone.getName());
 
@@ -305,6 +308,17 @@ public class AvpRepresentationImpl implements AvpRepresentation {
 
   public void setChildren(List<AvpRepresentation> children) {
     this.children = children;
+    this.childRules = null;
+  }
+
+  AvpRuleTable getChildRules() {
+    // racing threads may both compile, the table is immutable so any of them will do
+    AvpRuleTable rules = this.childRules;
+    if (rules == null) {
+      rules = new AvpRuleTable(getChildren());
+      this.childRules = rules;
+    }
+    return rules;
   }
 
   public void setCode(int code) {
@@ -395,24 +409,7 @@ public class AvpRepresentationImpl implements AvpRepresentation {
 
   public void validate(AvpSet avpSet) throws AvpNotAllowedException { //this is used in RAs, cause ... AvpSet is asexual AVP, no code, no vendor
     // let it rip
-    for (AvpRepresentation childrenVAvp : getChildren()) {
-      AvpSet childSset = avpSet.getAvps(childrenVAvp.getCode(), childrenVAvp.getVendorId());
-      int count = childSset.size();
-
-      if (!childrenVAvp.isCountValidForMultiplicity(count)) {
-        throw new AvpNotAllowedException("AVP: " + childrenVAvp + " has wrong count ,in grouped parent avp - " + (count) + ", allowed: "
-            + childrenVAvp.getMultiplicityIndicator(), getCode(), getVendorId());
-      }
-      if (childrenVAvp.isGrouped()) {
-        for (int index = 0; index < childSset.size(); index++) {
-
-          Avp presumablyGrouped = childSset.getAvpByIndex(index);
-          childrenVAvp.validate(presumablyGrouped);
-        }
-
-      }
-      // else we are good ?
-    }
+    getChildRules().validate(avpSet, this, true);
   }
 
   public String toString() {
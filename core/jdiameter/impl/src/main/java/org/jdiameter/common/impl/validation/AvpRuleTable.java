@@ -0,0 +1,166 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2010, Red Hat, Inc. and individual contributors
+ * by the @authors tag. See the copyright.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.jdiameter.common.impl.validation;
+
+import java.util.Collection;
+
+import org.jdiameter.api.Avp;
+import org.jdiameter.api.AvpSet;
+import org.jdiameter.api.validation.AvpNotAllowedException;
+import org.jdiameter.api.validation.AvpRepresentation;
+
+/**
+ * Multiplicity rules of a command or of a grouped AVP compiled into a flat
+ * (code, vendor) to slot table, so a message is validated with a single pass
+ * over its AVPs instead of one lookup per rule.
+ *
+ * Instances are immutable once built and can be shared between threads.
+ */
+final class AvpRuleTable {
+
+  private static final int NO_SLOT = -1;
+
+  // counts accepted by a rule, the multiplicity indicators only tell apart 0, 1 and more
+  private static final int VALID_NONE = 1;
+  private static final int VALID_ONE = 2;
+  private static final int VALID_MORE = 4;
+
+  // rules as defined, the slot holding the count of each one and the counts they accept
+  private final AvpRepresentation[] rules;
+  private final int[] ruleSlots;
+  private final int[] ruleCounts;
+
+  // one slot per distinct (code, vendor), with the rule used to go down into grouped AVPs
+  private final int[] slotCodes;
+  private final long[] slotVendors;
+  private final AvpRepresentation[] slotGrouped;
+
+  // open addressing table of slot + 1, 0 being an empty entry
+  private final int[] table;
+  private final int mask;
+
+  AvpRuleTable(Collection<AvpRepresentation> avpRules) {
+    int size = avpRules.size();
+    int capacity = 4;
+    while (capacity < size * 2) {
+      capacity <<= 1;
+    }
+    this.table = new int[capacity];
+    this.mask = capacity - 1;
+    this.rules = avpRules.toArray(new AvpRepresentation[size]);
+    this.ruleSlots = new int[size];
+    this.ruleCounts = new int[size];
+
+    int[] codes = new int[size];
+    long[] vendors = new long[size];
+    AvpRepresentation[] grouped = new AvpRepresentation[size];
+    int slots = 0;
+    for (int r = 0; r < size; r++) {
+      AvpRepresentation rule = rules[r];
+      int slot = slotOf(codes, vendors, rule.getCode(), rule.getVendorId());
+      if (slot == NO_SLOT) {
+        slot = slots++;
+        codes[slot] = rule.getCode();
+        vendors[slot] = rule.getVendorId();
+        table[freeIndex(rule.getCode(), rule.getVendorId())] = slot + 1;
+      }
+      ruleSlots[r] = slot;
+      ruleCounts[r] = (rule.isCountValidForMultiplicity(0) ? VALID_NONE : 0) | (rule.isCountValidForMultiplicity(1) ? VALID_ONE : 0)
+          | (rule.isCountValidForMultiplicity(2) ? VALID_MORE : 0);
+      if (rule.isGrouped() && grouped[slot] == null) {
+        grouped[slot] = rule;
+        if (rule instanceof AvpRepresentationImpl) {
+          // compile the whole tree now rather than on the first message
+          ((AvpRepresentationImpl) rule).getChildRules();
+        }
+      }
+    }
+
+    this.slotCodes = new int[slots];
+    this.slotVendors = new long[slots];
+    this.slotGrouped = new AvpRepresentation[slots];
+    System.arraycopy(codes, 0, slotCodes, 0, slots);
+    System.arraycopy(vendors, 0, slotVendors, 0, slots);
+    System.arraycopy(grouped, 0, slotGrouped, 0, slots);
+  }
+
+  private static int hash(int code, long vendor) {
+    int h = code * 0x9E3779B9 + (int) (vendor ^ (vendor >>> 32));
+    return h ^ (h >>> 16);
+  }
+
+  private int slotOf(int[] codes, long[] vendors, int code, long vendor) {
+    for (int i = hash(code, vendor) & mask; table[i] != 0; i = (i + 1) & mask) {
+      int slot = table[i] - 1;
+      if (codes[slot] == code && vendors[slot] == vendor) {
+        return slot;
+      }
+    }
+    return NO_SLOT;
+  }
+
+  private int freeIndex(int code, long vendor) {
+    int i = hash(code, vendor) & mask;
+    while (table[i] != 0) {
+      i = (i + 1) & mask;
+    }
+    return i;
+  }
+
+  /**
+   * Counts the AVPs of the set in one pass, going down into the grouped ones
+   * which have rules when deep, and checks each rule against its count.
+   *
+   * @param avpSet the AVPs of the message or of the grouped AVP
+   * @param parent the grouped AVP holding the set, null for a message
+   * @param deep true to validate the content of grouped AVPs
+   * @throws AvpNotAllowedException if an AVP has a wrong count
+   */
+  void validate(AvpSet avpSet, AvpRepresentation parent, boolean deep) throws AvpNotAllowedException {
+    int[] counts = new int[slotCodes.length];
+    for (int index = 0, size = avpSet.size(); index < size; index++) {
+      Avp avp = avpSet.getAvpByIndex(index);
+      int slot = slotOf(slotCodes, slotVendors, avp.getCode(), avp.getVendorId());
+      if (slot == NO_SLOT) {
+        continue;
+      }
+      counts[slot]++;
+      if (deep && slotGrouped[slot] != null) {
+        slotGrouped[slot].validate(avp);
+      }
+    }
+
+    for (int r = 0; r < rules.length; r++) {
+      int count = counts[ruleSlots[r]];
+      if ((ruleCounts[r] & (count == 0 ? VALID_NONE : count == 1 ? VALID_ONE : VALID_MORE)) == 0) {
+        AvpRepresentation rule = rules[r];
+        if (parent == null) {
+          throw new AvpNotAllowedException("AVP: \n" + rule + "\n,has wrong count in message - " + (count), rule.getCode(), rule.getVendorId());
+        }
+        throw new AvpNotAllowedException("AVP: " + rule + " has wrong count ,in grouped parent avp - " + (count) + ", allowed: "
+            + rule.getMultiplicityIndicator(), parent.getCode(), parent.getVendorId());
+      }
+    }
+  }
+
+}
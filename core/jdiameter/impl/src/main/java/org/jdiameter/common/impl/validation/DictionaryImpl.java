@@ -82,6 +82,10 @@ public class DictionaryImpl implements Dictionary {
 
   private Map<MessageRepresentation, MessageRepresentation> commandMap = new HashMap<MessageRepresentation, MessageRepresentation>();
 
+  // commands by application id, command code and request flag, looked up without allocating a key
+  private long[] commandKeys = new long[1];
+  private MessageRepresentationImpl[] commandTable = new MessageRepresentationImpl[1];
+
   private Map<String, String> typedefMap = new HashMap<String, String>();
 
   private boolean configured = false;
@@ -179,6 +183,7 @@ public class DictionaryImpl implements Dictionary {
       this.parseTypeDefs(doc);
       this.parseAvps(doc);
       this.parseCommands(doc);
+      this.compileCommands();
       
       this.configured = true;
 
@@ -610,6 +615,52 @@ public class DictionaryImpl implements Dictionary {
     }
   }
 
+  private static long getCommandKey(int commandCode, long applicationId, boolean isRequest) {
+    return applicationId << 32 ^ (long) commandCode << 1 ^ (isRequest ? 1 : 0);
+  }
+
+  private static int getCommandIndex(long key, int mask) {
+    int h = (int) (key ^ (key >>> 32)) * 0x9E3779B9;
+    return (h ^ (h >>> 16)) & mask;
+  }
+
+  /**
+   * Builds the table used to find the command of a message being validated.
+   */
+  private void compileCommands() {
+    int capacity = 4;
+    while (capacity < commandMap.size() * 2) {
+      capacity <<= 1;
+    }
+    long[] keys = new long[capacity];
+    MessageRepresentationImpl[] table = new MessageRepresentationImpl[capacity];
+    for (MessageRepresentation command : commandMap.values()) {
+      long key = getCommandKey(command.getCommandCode(), command.getApplicationId(), command.isRequest());
+      int index = getCommandIndex(key, capacity - 1);
+      while (table[index] != null) {
+        index = (index + 1) & (capacity - 1);
+      }
+      keys[index] = key;
+      table[index] = (MessageRepresentationImpl) command;
+    }
+    this.commandKeys = keys;
+    this.commandTable = table;
+  }
+
+  private MessageRepresentationImpl findCommand(int commandCode, long applicationId, boolean isRequest) {
+    long[] keys = this.commandKeys;
+    MessageRepresentationImpl[] table = this.commandTable;
+    long key = getCommandKey(commandCode, applicationId, isRequest);
+    for (int index = getCommandIndex(key, table.length - 1); table[index] != null; index = (index + 1) & (table.length - 1)) {
+      MessageRepresentationImpl command = table[index];
+      if (keys[index] == key && command.getCommandCode() == commandCode && command.getApplicationId() == applicationId
+          && command.isRequest() == isRequest) {
+        return command;
+      }
+    }
+    return null;
+  }
+
   /*
    * (non-Javadoc)
    * 
@@ -733,9 +784,12 @@ public class DictionaryImpl implements Dictionary {
     if (!enabled || !configured) {
       return;
     }
+    ValidatorLevel level = incoming ? receiveValidationLevel : sendValidationLevel;
+    if (level == ValidatorLevel.OFF) {
+      return;
+    }
 
-    MessageRepresentationImpl rep = new MessageRepresentationImpl(msg.getCommandCode(), msg.getApplicationId(), msg.isRequest());
-    rep = (MessageRepresentationImpl) this.commandMap.get(rep);
+    MessageRepresentationImpl rep = findCommand(msg.getCommandCode(), msg.getApplicationId(), msg.isRequest());
     if (rep == null) {
       // no notion, lets leave it.
       logger.warn("Validation could not be performed, command not defined!. Code={}, Application-Id={}, Req={}",
@@ -743,7 +797,7 @@ public class DictionaryImpl implements Dictionary {
       return;
     }
 
-    rep.validate(msg, (incoming ? receiveValidationLevel : sendValidationLevel));
+    rep.validate(msg, level);
   }
 
   // Helper methods -----------------------------------------------------------
@@ -44,12 +44,20 @@ public interface IMutablePeerTable extends MutablePeerTable, IPeerTable {
      */
     public IMessage isDuplicate(IMessage request);
 
+    /**
+     * Save answer of request to duplicate storage
+     * @param request answered request
+     * @param answer message
+     */
+    public void saveToDuplicate(IMessage request, IMessage answer);
+
     /**
      * Save message to duplicate storage
-     * @param key key of message
+     * @param originHost Origin-Host of the answered request
+     * @param endToEndId End-to-End Identifier of the answered request
      * @param answer message
      */
-    public void saveToDuplicate(String key, IMessage answer);
+    public void saveToDuplicate(String originHost, long endToEndId, IMessage answer);
 
     /**
      * Return instance of session factory
@@ -25,6 +25,7 @@ package org.jdiameter.server.api;
 import org.jdiameter.api.ApplicationId;
 import org.jdiameter.api.OverloadManager;
 import org.jdiameter.api.URI;
+import org.jdiameter.client.api.IMessage;
 
 /**
  * This interface describe extends methods of base class
@@ -57,4 +58,17 @@ public interface IOverloadManager extends OverloadManager {
      * @param value overload value
      */
     public void changeNotification(int index, URI uri, double value);
+
+    /**
+     * Return true if overload control (RFC 7683) is enabled
+     * @return true if overload control is enabled
+     */
+    public boolean isOverloadControl();
+
+    /**
+     * Append OC-Supported-Features and the overload report of this node to an answer sent to a peer
+     * supporting overload control
+     * @param answer answer message
+     */
+    public void appendOverloadControl(IMessage answer);
 }
@@ -0,0 +1,337 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2006-2011, Red Hat, Inc. and individual contributors
+ * by the @authors tag. See the copyright.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.jdiameter.server.impl;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Storage of encoded answers used by duplicate protection, keyed by the Origin-Host and
+ * End-to-End Identifier of the request. The key is packed in a primitive long and the table
+ * is split in stripes, each an open addressing hash table guarded by its own monitor.
+ * <p>
+ * Entries are kept in a ring of {@link #BUCKETS} time buckets. New entries go to the current
+ * bucket and {@link #expire()} drops the oldest bucket as a whole, so expiry only touches the
+ * entries which expire. When a stripe is full the least recently used entry is dropped to
+ * make room for the new one.
+ */
+public class DuplicateAnswerStore {
+
+  /**
+   * Number of time buckets, {@link #expire()} has to be called every lifetime / (BUCKETS - 1)
+   */
+  public static final int BUCKETS = 8;
+
+  private static final int STRIPES = 16;
+  private static final int STRIPE_SHIFT = 60; // top 4 bits of the hash select the stripe
+  private static final int MIN_STRIPE_CAPACITY = 16;
+
+  private final Stripe[] stripes = new Stripe[STRIPES];
+  private final AtomicInteger size = new AtomicInteger();
+  private final AtomicLong hits = new AtomicLong();
+  private final AtomicLong evictions = new AtomicLong();
+  private final AtomicLong expired = new AtomicLong();
+
+  // bucket taking new entries, changed only by expire()
+  private volatile int bucket;
+
+  /**
+   * Create storage
+   *
+   * @param maxSize maximal number of stored answers
+   */
+  public DuplicateAnswerStore(int maxSize) {
+    int stripeSize = Math.max(1, (maxSize + STRIPES - 1) / STRIPES);
+    int stripeCapacity = MIN_STRIPE_CAPACITY;
+    while (stripeCapacity < stripeSize * 2 && stripeCapacity < (1 << 28)) {
+      stripeCapacity <<= 1;
+    }
+    for (int i = 0; i < STRIPES; i++) {
+      stripes[i] = new Stripe(stripeCapacity, stripeSize);
+    }
+  }
+
+  /**
+   * Builds the storage key of a request. Requests of different hosts may share a key, the
+   * host is kept in the entry to tell them apart.
+   */
+  public static long key(String originHost, long endToEndId) {
+    return ((long) originHost.hashCode() << 32) | (endToEndId & 0xFFFFFFFFL);
+  }
+
+  /**
+   * Store the answer of a request, replacing the answer stored for the same request or for
+   * another request sharing its key
+   *
+   * @param originHost Origin-Host of the request
+   * @param endToEndId End-to-End Identifier of the request
+   * @param answer encoded answer
+   */
+  public void put(String originHost, long endToEndId, byte[] answer) {
+    long key = key(originHost, endToEndId);
+    long hash = hash(key);
+    stripes[(int) (hash >>> STRIPE_SHIFT)].put(key, (int) hash, originHost, answer, bucket);
+  }
+
+  /**
+   * Return the answer stored for a request
+   *
+   * @param originHost Origin-Host of the request
+   * @param endToEndId End-to-End Identifier of the request
+   * @return encoded answer or null if there is none
+   */
+  public byte[] get(String originHost, long endToEndId) {
+    long key = key(originHost, endToEndId);
+    long hash = hash(key);
+    byte[] answer = stripes[(int) (hash >>> STRIPE_SHIFT)].get(key, (int) hash, originHost);
+    if (answer != null) {
+      hits.incrementAndGet();
+    }
+    return answer;
+  }
+
+  /**
+   * Drop the entries of the oldest time bucket, which then takes the new entries. An entry
+   * lives between BUCKETS - 1 and BUCKETS periods of this call.
+   */
+  public synchronized void expire() {
+    int next = (bucket + 1) % BUCKETS;
+    for (Stripe stripe : stripes) {
+      stripe.drop(next);
+    }
+    bucket = next;
+  }
+
+  /**
+   * Remove all entries
+   */
+  public void clear() {
+    for (Stripe stripe : stripes) {
+      stripe.clear();
+    }
+  }
+
+  /**
+   * @return number of stored answers
+   */
+  public int size() {
+    return size.get();
+  }
+
+  /**
+   * @return number of requests which found a stored answer
+   */
+  public long getHits() {
+    return hits.get();
+  }
+
+  /**
+   * @return number of entries dropped to make room for new ones
+   */
+  public long getEvictions() {
+    return evictions.get();
+  }
+
+  /**
+   * @return number of entries dropped with their time bucket
+   */
+  public long getExpiredCount() {
+    return expired.get();
+  }
+
+  private static long hash(long key) {
+    // MurmurHash3 finalizer, spreads the key over both the stripe and the slot bits
+    key ^= key >>> 33;
+    key *= 0xff51afd7ed558ccdL;
+    key ^= key >>> 33;
+    key *= 0xc4ceb9fe1a85ec53L;
+    key ^= key >>> 33;
+    return key;
+  }
+
+  /**
+   * Stored answer, linked in the LRU list of its stripe and in the list of its time bucket
+   */
+  private static final class Entry {
+
+    long key;
+    String originHost;
+    byte[] answer;
+    Entry lruPrev, lruNext;
+    Entry bucketPrev, bucketNext;
+
+    // list heads are empty circular entries
+    Entry() {
+      lruPrev = lruNext = bucketPrev = bucketNext = this;
+    }
+
+    void linkLru(Entry head) {
+      lruPrev = head.lruPrev;
+      lruNext = head;
+      head.lruPrev.lruNext = this;
+      head.lruPrev = this;
+    }
+
+    void unlinkLru() {
+      lruPrev.lruNext = lruNext;
+      lruNext.lruPrev = lruPrev;
+    }
+
+    void linkBucket(Entry head) {
+      bucketPrev = head.bucketPrev;
+      bucketNext = head;
+      head.bucketPrev.bucketNext = this;
+      head.bucketPrev = this;
+    }
+
+    void unlinkBucket() {
+      bucketPrev.bucketNext = bucketNext;
+      bucketNext.bucketPrev = bucketPrev;
+    }
+  }
+
+  private final class Stripe {
+
+    private final int maxCount;
+    private final long[] keys;
+    private final Entry[] entries; // null marks a free slot
+    private final Entry lru = new Entry(); // lru.lruNext is the least recently used entry
+    private final Entry[] buckets = new Entry[BUCKETS];
+    private int count;
+
+    Stripe(int capacity, int maxCount) {
+      this.maxCount = maxCount;
+      this.keys = new long[capacity];
+      this.entries = new Entry[capacity];
+      for (int i = 0; i < BUCKETS; i++) {
+        buckets[i] = new Entry();
+      }
+    }
+
+    synchronized void put(long key, int hash, String originHost, byte[] answer, int bucket) {
+      int i = indexOf(key, hash);
+      Entry entry;
+      if (i >= 0) {
+        entry = entries[i];
+        entry.unlinkLru();
+        entry.unlinkBucket();
+      }
+      else {
+        if (count >= maxCount) {
+          Entry eldest = lru.lruNext;
+          remove(eldest);
+          evictions.incrementAndGet();
+        }
+        entry = new Entry();
+        entry.key = key;
+        int mask = entries.length - 1;
+        i = hash & mask;
+        while (entries[i] != null) {
+          i = (i + 1) & mask;
+        }
+        keys[i] = key;
+        entries[i] = entry;
+        count++;
+        size.incrementAndGet();
+      }
+      entry.originHost = originHost;
+      entry.answer = answer;
+      entry.linkLru(lru);
+      entry.linkBucket(buckets[bucket]);
+    }
+
+    synchronized byte[] get(long key, int hash, String originHost) {
+      int i = indexOf(key, hash);
+      if (i < 0) {
+        return null;
+      }
+      Entry entry = entries[i];
+      if (!entry.originHost.equals(originHost)) {
+        return null;
+      }
+      entry.unlinkLru();
+      entry.linkLru(lru);
+      return entry.answer;
+    }
+
+    synchronized void drop(int bucket) {
+      Entry head = buckets[bucket];
+      int dropped = 0;
+      while (head.bucketNext != head) {
+        remove(head.bucketNext);
+        dropped++;
+      }
+      if (dropped > 0) {
+        expired.addAndGet(dropped);
+      }
+    }
+
+    synchronized void clear() {
+      while (lru.lruNext != lru) {
+        remove(lru.lruNext);
+      }
+    }
+
+    private void remove(Entry entry) {
+      entry.unlinkLru();
+      entry.unlinkBucket();
+      delete(indexOf(entry.key, (int) hash(entry.key)));
+    }
+
+    private int indexOf(long key, int hash) {
+      int mask = entries.length - 1;
+      int i = hash & mask;
+      while (entries[i] != null) {
+        if (keys[i] == key) {
+          return i;
+        }
+        i = (i + 1) & mask;
+      }
+      return -1;
+    }
+
+    // backward shift deletion, keeps probe sequences intact without tombstones
+    private void delete(int i) {
+      int mask = entries.length - 1;
+      entries[i] = null;
+      count--;
+      size.decrementAndGet();
+      int j = i;
+      while (true) {
+        j = (j + 1) & mask;
+        if (entries[j] == null) {
+          return;
+        }
+        int home = (int) hash(keys[j]) & mask;
+        // move the entry into the hole unless its home slot lies cyclically in (i, j]
+        if (i <= j ? (i < home && home <= j) : (i < home || home <= j)) {
+          continue;
+        }
+        keys[i] = keys[j];
+        entries[i] = entries[j];
+        entries[j] = null;
+        i = j;
+      }
+    }
+  }
+}
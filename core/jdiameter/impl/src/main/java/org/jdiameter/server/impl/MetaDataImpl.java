@@ -251,7 +251,7 @@ public class MetaDataImpl extends org.jdiameter.client.impl.MetaDataImpl impleme
                     logger.debug("Giving message to listener to process. Listener was retrieved from net");
                     answer = (IMessage) listener.processRequest(message);
                     if (answer != null) {
-                      manager.saveToDuplicate(message.getDuplicationKey(), answer);
+                      manager.saveToDuplicate(message, answer);
                     }
                   }
                   catch (Exception e) {
@@ -59,6 +59,8 @@ import java.io.IOException;
 import java.net.InetAddress;
 import java.net.URISyntaxException;
 import java.net.UnknownServiceException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.HashSet;
 import java.util.Iterator;
@@ -101,7 +103,9 @@ import org.jdiameter.client.api.io.TransportException;
 import org.jdiameter.client.api.parser.IMessageParser;
 import org.jdiameter.client.impl.controller.PeerTableImpl;
 import org.jdiameter.common.api.concurrent.IConcurrentFactory;
+import org.jdiameter.common.api.statistic.IStatistic;
 import org.jdiameter.common.api.statistic.IStatisticManager;
+import org.jdiameter.common.api.statistic.IStatisticRecord;
 import org.jdiameter.server.api.IFsmFactory;
 import org.jdiameter.server.api.IMutablePeerTable;
 import org.jdiameter.server.api.INetwork;
@@ -140,7 +144,7 @@ public class MutablePeerTableImpl extends PeerTableImpl implements IMutablePeerT
   protected long duplicateTimer;
   protected ScheduledExecutorService duplicationScheduler = null;
   protected ScheduledFuture duplicationHandler = null;
-  protected ConcurrentHashMap<String, StorageEntry> storageAnswers = new ConcurrentHashMap<String, StorageEntry>();
+  protected DuplicateAnswerStore duplicateStore;
 
   protected boolean isAcceptUndefinedPeer  = false;
 
@@ -159,36 +163,9 @@ public class MutablePeerTableImpl extends PeerTableImpl implements IMutablePeerT
   protected ScheduledExecutorService overloadScheduler = null;
   protected ScheduledFuture overloadHandler = null;
   protected PeerTableListener peerTableListener = null;
-  protected IStatisticManager statisticFactory;
 
   private IContainer stack;
 
-  protected class StorageEntry {
-
-    private String duplicationKey;
-    private long time = System.currentTimeMillis();
-    private IMessage answer;
-
-    public StorageEntry(IMessage message) {
-      answer = message;
-      // duplicationKey = message.getDuplicationKey(); doesn't work because it's answer
-      String[] originInfo = router.getRequestRouteInfo(answer);
-      duplicationKey = message.getDuplicationKey(originInfo[0], message.getEndToEndIdentifier());
-    }
-
-    public IMessage getMessage() {
-      return answer;
-    }
-
-    public long getTime() {
-      return time;
-    }
-
-    public String getDuplicationKey() {
-      return duplicationKey;
-    }
-  }
-
   public MutablePeerTableImpl(Configuration config, MetaData metaData,IContainer stack, org.jdiameter.server.api.IRouter router,
       ISessionFactory sessionFactory, IFsmFactory fsmFactory, ITransportLayerFactory trFactory,
       IMessageParser parser, INetwork network, IOverloadManager ovrManager,
@@ -212,6 +189,8 @@ public class MutablePeerTableImpl extends PeerTableImpl implements IMutablePeerT
     if (this.duplicateProtection) {
       this.duplicateTimer = config.getLongValue(DuplicateTimer.ordinal(), (Long) DuplicateTimer.defValue());
       this.duplicateSize = config.getIntValue(DuplicateSize.ordinal(), (Integer) DuplicateSize.defValue());
+      this.duplicateStore = new DuplicateAnswerStore(duplicateSize);
+      createDuplicateStatistic();
     }
     logger.debug("Duplicate Protection Configuration: Enabled? {}, Timer: {}, Size: {}", new Object[]{this.duplicateProtection, this.duplicateTimer, this.duplicateSize});
     if (predefinedPeerTable == null) {
@@ -270,7 +249,11 @@ public class MutablePeerTableImpl extends PeerTableImpl implements IMutablePeerT
   public boolean elementChanged(int i, Object data) {
     Configuration newConf = (Configuration) data;
     stopTimeOut = newConf.getLongValue(StopTimeOut.ordinal(), (Long) StopTimeOut.defValue());
-    duplicateTimer = newConf.getLongValue(DuplicateTimer.ordinal(), (Long) DuplicateTimer.defValue());
+    long newDuplicateTimer = newConf.getLongValue(DuplicateTimer.ordinal(), (Long) DuplicateTimer.defValue());
+    if (newDuplicateTimer != duplicateTimer) {
+      duplicateTimer = newDuplicateTimer;
+      scheduleDuplicateExpiry();
+    }
     isAcceptUndefinedPeer = newConf.getBooleanValue(AcceptUndefinedPeer.ordinal(), false);
     return true;
   }
@@ -298,31 +281,7 @@ public class MutablePeerTableImpl extends PeerTableImpl implements IMutablePeerT
     // Start duplication protection procedure
     if (duplicateProtection) {
       duplicationScheduler = concurrentFactory.getScheduledExecutorService(DuplicationMessageTimer.name());
-      Runnable duplicateTask = new Runnable() {
-        public void run() {
-          long now = System.currentTimeMillis();
-          if(logger.isDebugEnabled()) {
-            logger.debug("Running Duplicate Cleaning Task. Duplicate Storage size is: {}. Removing entries with time <= '{}'", storageAnswers.size(), now - duplicateTimer);
-          }
-          for (StorageEntry s : storageAnswers.values()) {
-            if (s != null && s.getTime() + duplicateTimer <= now) {
-              if(logger.isTraceEnabled()) {
-                logger.trace("Duplicate Cleaning Task - Removing Entry with key '{}' and time '{}'", s.getDuplicationKey(), s.getTime());
-              }
-              storageAnswers.remove(s.getDuplicationKey());
-            }
-            else {
-              if(logger.isTraceEnabled()) {
-                logger.trace("Duplicate Cleaning Task - Skipping Entry with key '{}' and time '{}'", s.getDuplicationKey(), s.getTime());
-              }
-            }
-          }
-          if(logger.isDebugEnabled()) {
-            logger.debug("Completed Duplicate Cleaning Task. New Duplicate Storage size is: {}. Total task runtime: {}ms", storageAnswers.size(), System.currentTimeMillis() - now);
-          }
-        }
-      };
-      duplicationHandler = duplicationScheduler.scheduleAtFixedRate(duplicateTask, duplicateTimer, duplicateTimer, TimeUnit.MILLISECONDS);
+      scheduleDuplicateExpiry();
     }
     //
     connScheduler = concurrentFactory.getScheduledExecutorService(ConnectionTimer.name());
@@ -602,7 +561,9 @@ public class MutablePeerTableImpl extends PeerTableImpl implements IMutablePeerT
       connHandler = null;
     }
     //remove incoming data
-    storageAnswers.clear();
+    if (duplicateStore != null) {
+      duplicateStore.clear();
+    }
 
     // Clear dynamic peers from peertable
     Iterator<String> it = super.peerTable.keySet().iterator();
@@ -707,26 +668,124 @@ public class MutablePeerTableImpl extends PeerTableImpl implements IMutablePeerT
   }
 
   public IMessage isDuplicate(IMessage request) {
-    String key = request.getDuplicationKey();
-    if (key != null && storageAnswers != null) {
-      StorageEntry entry = storageAnswers.get(key);
-      return entry != null ? (IMessage) entry.getMessage().clone() : null;
+    if (duplicateStore == null) {
+      return null;
+    }
+    try {
+      Avp originHost = request.getAvps().getAvp(Avp.ORIGIN_HOST);
+      if (originHost == null) {
+        return null;
+      }
+      byte[] answer = duplicateStore.get(originHost.getDiameterIdentity(), request.getEndToEndIdentifier());
+      // the caller sets the hop-by-hop identifier and Proxy-Info of the request
+      return answer != null ? parser.createMessage(ByteBuffer.wrap(answer)) : null;
+    }
+    catch (AvpDataException e) {
+      logger.warn("Failed to check request for duplicate", e);
+      return null;
     }
-    return null;
   }
 
-  public void saveToDuplicate(String key, IMessage answer) {
-    if (storageAnswers != null && storageAnswers.size() < duplicateSize) {
-      if (key != null) {
-        StorageEntry se = new StorageEntry((IMessage) answer.clone());
-        if(logger.isTraceEnabled()) {
-          logger.trace("Duplicate Protection - Inserting Entry with key '{}' and time '{}'", key, se.getTime());
-        }
-        storageAnswers.put(key, se);
+  public void saveToDuplicate(IMessage request, IMessage answer) {
+    if (duplicateStore == null) {
+      return;
+    }
+    try {
+      Avp originHost = request.getAvps().getAvp(Avp.ORIGIN_HOST);
+      if (originHost != null) {
+        saveToDuplicate(originHost.getDiameterIdentity(), request.getEndToEndIdentifier(), answer);
+      }
+    }
+    catch (AvpDataException e) {
+      logger.warn("Failed to save answer to duplicate storage", e);
+    }
+  }
+
+  public void saveToDuplicate(String originHost, long endToEndId, IMessage answer) {
+    if (duplicateStore == null || originHost == null) {
+      return;
+    }
+    try {
+      // kept encoded, a duplicate gets a fresh copy by decoding it
+      ByteBuffer encoded = parser.encodeMessage(answer);
+      byte[] data = encoded.array();
+      if (encoded.arrayOffset() != 0 || encoded.remaining() != data.length) {
+        data = Arrays.copyOfRange(data, encoded.arrayOffset() + encoded.position(), encoded.arrayOffset() + encoded.limit());
+      }
+      if (logger.isTraceEnabled()) {
+        logger.trace("Duplicate Protection - Inserting Entry with Origin-Host '{}' and End-to-End Identifier '{}'", originHost, endToEndId);
       }
+      duplicateStore.put(originHost, endToEndId, data);
+    }
+    catch (Exception e) {
+      logger.warn("Failed to save answer to duplicate storage", e);
     }
   }
 
+  private void scheduleDuplicateExpiry() {
+    if (duplicationScheduler == null) {
+      return;
+    }
+    if (duplicationHandler != null) {
+      duplicationHandler.cancel(false);
+    }
+    Runnable duplicateTask = new Runnable() {
+      public void run() {
+        if (logger.isDebugEnabled()) {
+          logger.debug("Running Duplicate Cleaning Task. Duplicate Storage size is: {}", duplicateStore.size());
+        }
+        duplicateStore.expire();
+        if (logger.isDebugEnabled()) {
+          logger.debug("Completed Duplicate Cleaning Task. New Duplicate Storage size is: {}", duplicateStore.size());
+        }
+      }
+    };
+    // answers are kept at least for the duplicate timer
+    long period = Math.max(1, duplicateTimer / (DuplicateAnswerStore.BUCKETS - 1));
+    duplicationHandler = duplicationScheduler.scheduleAtFixedRate(duplicateTask, period, period, TimeUnit.MILLISECONDS);
+  }
+
+  private void createDuplicateStatistic() {
+    IStatisticRecord sizeRecord = statisticFactory.newCounterRecord(IStatisticRecord.Counters.DuplicateStorageSize, new IStatisticRecord.IntegerValueHolder() {
+      public int getValueAsInt() {
+        return duplicateStore.size();
+      }
+
+      public String getValueAsString() {
+        return String.valueOf(getValueAsInt());
+      }
+    });
+    IStatisticRecord hitsRecord = statisticFactory.newCounterRecord(IStatisticRecord.Counters.DuplicateStorageHits, new IStatisticRecord.LongValueHolder() {
+      public long getValueAsLong() {
+        return duplicateStore.getHits();
+      }
+
+      public String getValueAsString() {
+        return String.valueOf(getValueAsLong());
+      }
+    });
+    IStatisticRecord evictionsRecord = statisticFactory.newCounterRecord(IStatisticRecord.Counters.DuplicateStorageEvictions, new IStatisticRecord.LongValueHolder() {
+      public long getValueAsLong() {
+        return duplicateStore.getEvictions();
+      }
+
+      public String getValueAsString() {
+        return String.valueOf(getValueAsLong());
+      }
+    });
+    IStatisticRecord expiredRecord = statisticFactory.newCounterRecord(IStatisticRecord.Counters.DuplicateStorageExpired, new IStatisticRecord.LongValueHolder() {
+      public long getValueAsLong() {
+        return duplicateStore.getExpiredCount();
+      }
+
+      public String getValueAsString() {
+        return String.valueOf(getValueAsLong());
+      }
+    });
+    //no need to remove, this class lives with whole stack, until its destroyed.
+    statisticFactory.newStatistic("duplicate", IStatistic.Groups.Network, sizeRecord, hitsRecord, evictionsRecord, expiredRecord);
+  }
+
   public ISessionFactory getSessionFactory() {
     return sessionFactory;
   }
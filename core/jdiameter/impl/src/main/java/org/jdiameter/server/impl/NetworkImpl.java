@@ -22,8 +22,14 @@
 
 package org.jdiameter.server.impl;
 
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.jdiameter.api.ApplicationAlreadyUseException;
 import org.jdiameter.api.ApplicationId;
@@ -45,6 +51,7 @@ import org.jdiameter.server.api.IMutablePeerTable;
 import org.jdiameter.server.api.INetwork;
 import org.jdiameter.server.api.IRouter;
 import org.jdiameter.server.api.agent.IAgentConfiguration;
+import org.jdiameter.server.impl.helpers.ApplicationIdSelector;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -64,13 +71,20 @@ public class NetworkImpl implements INetwork {
   private final ApplicationId commonAuthAppId = ApplicationId.createByAuthAppId(0, 0xffffffff);
   private final ApplicationId commonAccAppId = ApplicationId.createByAccAppId(0, 0xffffffff);
   private final ConcurrentHashMap<ApplicationId, NetworkReqListener> appIdToNetListener = new ConcurrentHashMap<ApplicationId, NetworkReqListener>();
-  private final ConcurrentHashMap<Selector, NetworkReqListener> selectorToNetListener = new ConcurrentHashMap<Selector, NetworkReqListener>();
+  private final ConcurrentHashMap<Selector<Message, ApplicationId>, NetworkReqListener> selectorToNetListener = new ConcurrentHashMap<Selector<Message, ApplicationId>, NetworkReqListener>();
+
+  // rebuilt from the maps above on every change, so lookups do not lock
+  private volatile DispatchTable dispatchTable = new DispatchTable();
+  // dispatch counters of the registered listeners, guarded by this
+  private Map<NetworkReqListener, ListenerEntry> listenerEntries = new IdentityHashMap<NetworkReqListener, ListenerEntry>();
 
   protected IStatistic statistic;
+  protected IStatisticManager statisticFactory;
 
   public NetworkImpl(IStatisticManager statisticFactory, IMetaData metaData, IRouter router) {
     this.router = router;
     this.metaData = metaData;
+    this.statisticFactory = statisticFactory;
 
     IStatisticRecord nrlStat = statisticFactory.newCounterRecord(IStatisticRecord.Counters.RequestListenerCount, new IStatisticRecord.IntegerValueHolder() {
       public int getValueAsInt() {
@@ -96,55 +110,129 @@ public class NetworkImpl implements INetwork {
     statistic = statisticFactory.newStatistic("network",IStatistic.Groups.Network, nrlStat, nslStat);
   }
 
-  public void addNetworkReqListener(NetworkReqListener networkReqListener, ApplicationId... applicationId) throws ApplicationAlreadyUseException {
-    for (ApplicationId a : applicationId) {
-      if (appIdToNetListener.containsKey(commonAuthAppId) || appIdToNetListener.containsKey(commonAccAppId))
-        throw new ApplicationAlreadyUseException(a + " already use by common application id");
+  public synchronized void addNetworkReqListener(NetworkReqListener networkReqListener, ApplicationId... applicationId) throws ApplicationAlreadyUseException {
+    try {
+      for (ApplicationId a : applicationId) {
+        if (appIdToNetListener.containsKey(commonAuthAppId) || appIdToNetListener.containsKey(commonAccAppId))
+          throw new ApplicationAlreadyUseException(a + " already use by common application id");
 
-      if (appIdToNetListener.containsKey(applicationId))
-        throw new ApplicationAlreadyUseException(a + " already use");
+        if (appIdToNetListener.containsKey(a))
+          throw new ApplicationAlreadyUseException(a + " already use");
 
-      appIdToNetListener.put(a, networkReqListener);
-      metaData.addApplicationId(a); // this has ALL config declared, we need currently deployed
-      router.getRealmTable().addLocalApplicationId(a);
+        appIdToNetListener.put(a, networkReqListener);
+        metaData.addApplicationId(a); // this has ALL config declared, we need currently deployed
+        router.getRealmTable().addLocalApplicationId(a);
+      }
+    }
+    finally {
+      rebuildDispatchTable();
     }
   }
 
-  public void addNetworkReqListener(NetworkReqListener listener, Selector<Message, ApplicationId>... selectors) {
+  public synchronized void addNetworkReqListener(NetworkReqListener listener, Selector<Message, ApplicationId>... selectors) {
     for (Selector<Message, ApplicationId> s : selectors) {
       selectorToNetListener.put(s, listener);
       ApplicationId ap = s.getMetaData();
       metaData.addApplicationId(ap);
       router.getRealmTable().addLocalApplicationId(ap);
     }
+    rebuildDispatchTable();
   }
 
-  public void removeNetworkReqListener(ApplicationId... applicationId) {
+  public synchronized void removeNetworkReqListener(ApplicationId... applicationId) {
     for (ApplicationId a : applicationId) {
       appIdToNetListener.remove(a);
-      for (Selector<Message, ApplicationId> s : selectorToNetListener.keySet()) {
-        if (s.getMetaData().equals(a)) return;
+      if (!isSelected(a)) {
+        metaData.remApplicationId(a);
+        router.getRealmTable().removeLocalApplicationId(a);
       }
-      metaData.remApplicationId(a);
-      router.getRealmTable().removeLocalApplicationId(a);
     }
+    rebuildDispatchTable();
   }
 
-  public void removeNetworkReqListener(Selector<Message, ApplicationId>... selectors) {
+  public synchronized void removeNetworkReqListener(Selector<Message, ApplicationId>... selectors) {
     for (Selector<Message, ApplicationId> s : selectors) {
       selectorToNetListener.remove(s);
-      if (appIdToNetListener.containsKey(s.getMetaData())) {
-        return;
+      if (!appIdToNetListener.containsKey(s.getMetaData()) && !isSelected(s.getMetaData())) {
+        metaData.remApplicationId(s.getMetaData());
+        router.getRealmTable().removeLocalApplicationId(s.getMetaData());
       }
+    }
+    rebuildDispatchTable();
+  }
 
-      for (Selector<Message, ApplicationId> i : selectorToNetListener.keySet()) {
-        if (i.getMetaData().equals(s.getMetaData())) {
-          return;
+  private boolean isSelected(ApplicationId applicationId) {
+    for (Selector<Message, ApplicationId> s : selectorToNetListener.keySet()) {
+      if (s.getMetaData().equals(applicationId)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Rebuilds the dispatch table from the registered listeners and selectors. The
+   * precedence of the lookup is kept: selectors first, then a listener of the common
+   * application id, then the listener of the application id of the request.
+   * {@link ApplicationIdSelector}s are folded into the application id index, which is keyed
+   * on the same {@link IMessage#getSingleApplicationId()} they match, only other selectors
+   * are still evaluated one by one.
+   */
+  private synchronized void rebuildDispatchTable() {
+    Map<NetworkReqListener, ListenerEntry> entries = new IdentityHashMap<NetworkReqListener, ListenerEntry>();
+    List<Selector<Message, ApplicationId>> selectors = new ArrayList<Selector<Message, ApplicationId>>();
+    List<ListenerEntry> selected = new ArrayList<ListenerEntry>();
+    Map<ApplicationId, ListenerEntry> bySelector = new HashMap<ApplicationId, ListenerEntry>();
+    for (Map.Entry<Selector<Message, ApplicationId>, NetworkReqListener> e : selectorToNetListener.entrySet()) {
+      Selector<Message, ApplicationId> s = e.getKey();
+      ListenerEntry entry = getListenerEntry(entries, e.getValue());
+      if (s.getClass() == ApplicationIdSelector.class) {
+        // same rule as the application id index
+        if (!bySelector.containsKey(s.getMetaData())) {
+          bySelector.put(s.getMetaData(), entry);
         }
       }
-      metaData.remApplicationId(s.getMetaData());
-      router.getRealmTable().removeLocalApplicationId(s.getMetaData());
+      else {
+        selectors.add(s);
+        selected.add(entry);
+      }
+    }
+
+    NetworkReqListener commonListener = appIdToNetListener.get(commonAuthAppId);
+    if (commonListener == null) {
+      commonListener = appIdToNetListener.get(commonAccAppId);
+    }
+    ListenerEntry common = commonListener != null ? getListenerEntry(entries, commonListener) : null;
+    Map<ApplicationId, ListenerEntry> byApplicationId = new HashMap<ApplicationId, ListenerEntry>();
+    for (Map.Entry<ApplicationId, NetworkReqListener> e : appIdToNetListener.entrySet()) {
+      ListenerEntry entry = getListenerEntry(entries, e.getValue());
+      // the common listener hides the others
+      if (common == null) {
+        byApplicationId.put(e.getKey(), entry);
+      }
+    }
+    byApplicationId.putAll(bySelector);
+
+    for (ListenerEntry entry : listenerEntries.values()) {
+      if (!entries.containsKey(entry.listener)) {
+        statisticFactory.removeStatistic(entry.statistic);
+      }
+    }
+    listenerEntries = entries;
+    dispatchTable = new DispatchTable(selectors, selected, common, byApplicationId);
+  }
+
+  private ListenerEntry getListenerEntry(Map<NetworkReqListener, ListenerEntry> entries, NetworkReqListener listener) {
+    ListenerEntry entry = entries.get(listener);
+    if (entry == null) {
+      // keep the counter of a listener which stays registered
+      entry = listenerEntries.get(listener);
+      if (entry == null) {
+        entry = new ListenerEntry(listener);
+      }
+      entries.put(listener, entry);
     }
+    return entry;
   }
 
   public Peer addPeer(String name, String realm, boolean connecting) {
@@ -204,23 +292,82 @@ public class NetworkImpl implements INetwork {
 
   public NetworkReqListener getListener(IMessage message) {
     if (message == null) return null;
-    for (Selector<Message, ApplicationId> s : selectorToNetListener.keySet()) {
-      boolean r = s.checkRule(message);
-      if (r) return selectorToNetListener.get(s);
+    DispatchTable table = dispatchTable;
+    for (int i = 0, n = table.selectors.size(); i < n; i++) {
+      if (table.selectors.get(i).checkRule(message)) {
+        return table.selected[i].dispatch();
+      }
     }
 
+    // the Application-Id AVPs decide, as for ApplicationIdSelector, the header only when there is none
     ApplicationId appId = message.getSingleApplicationId();
     if (appId == null) return null;
-    if (appIdToNetListener.containsKey(commonAuthAppId))
-      return appIdToNetListener.get(commonAuthAppId);
-    else if (appIdToNetListener.containsKey(commonAccAppId))
-      return appIdToNetListener.get(commonAccAppId);
-    else
-      return appIdToNetListener.get(appId);
+    ListenerEntry entry = table.byApplicationId.get(appId);
+    if (entry == null) {
+      entry = table.common;
+    }
+    return entry != null ? entry.dispatch() : null;
   }
 
   public void setPeerManager(IMutablePeerTable manager) {
     this.manager = manager;
   }
 
-}
\ No newline at end of file
+
+  /**
+   * Registered listener with its dispatch counter, reported as a statistic of its own.
+   */
+  private class ListenerEntry {
+
+    private final NetworkReqListener listener;
+    private final AtomicLong dispatched = new AtomicLong();
+    private final IStatistic statistic;
+
+    ListenerEntry(NetworkReqListener listener) {
+      this.listener = listener;
+      IStatisticRecord dispatchedStat = statisticFactory.newCounterRecord(IStatisticRecord.Counters.RequestDispatched, new IStatisticRecord.LongValueHolder() {
+        public long getValueAsLong() {
+          return dispatched.get();
+        }
+
+        public String getValueAsString() {
+          return String.valueOf(getValueAsLong());
+        }
+      });
+      this.statistic = statisticFactory.newStatistic("listener." + listener.getClass().getName() + "@" + Integer.toHexString(System.identityHashCode(listener)),
+          IStatistic.Groups.Network, dispatchedStat);
+    }
+
+    NetworkReqListener dispatch() {
+      if (statistic.isEnabled()) {
+        dispatched.incrementAndGet();
+      }
+      return listener;
+    }
+  }
+
+  /**
+   * Immutable snapshot of the listeners used by {@link NetworkImpl#getListener(IMessage)}.
+   * Requests are looked up by the application id read from their Application-Id AVPs, one
+   * probe in a map holding the {@link ApplicationIdSelector}s and the listeners.
+   */
+  private static final class DispatchTable {
+
+    private final List<Selector<Message, ApplicationId>> selectors;
+    private final ListenerEntry[] selected;
+    private final ListenerEntry common;
+    private final Map<ApplicationId, ListenerEntry> byApplicationId;
+
+    DispatchTable() {
+      this(new ArrayList<Selector<Message, ApplicationId>>(), new ArrayList<ListenerEntry>(), null, new HashMap<ApplicationId, ListenerEntry>());
+    }
+
+    DispatchTable(List<Selector<Message, ApplicationId>> selectors, List<ListenerEntry> selected, ListenerEntry common,
+        Map<ApplicationId, ListenerEntry> byApplicationId) {
+      this.selectors = new ArrayList<Selector<Message, ApplicationId>>(selectors);
+      this.selected = selected.toArray(new ListenerEntry[selected.size()]);
+      this.common = common;
+      this.byApplicationId = byApplicationId;
+    }
+  }
+}
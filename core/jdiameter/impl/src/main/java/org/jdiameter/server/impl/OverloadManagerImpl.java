@@ -23,13 +23,18 @@
 package org.jdiameter.server.impl;
 
 import org.jdiameter.api.ApplicationId;
+import org.jdiameter.api.Avp;
+import org.jdiameter.api.AvpSet;
 import org.jdiameter.api.Configuration;
 import org.jdiameter.api.OverloadListener;
 import org.jdiameter.api.URI;
+import org.jdiameter.client.api.IMessage;
+import org.jdiameter.client.impl.router.OverloadReportTable;
 import org.jdiameter.server.api.IOverloadManager;
 import static org.jdiameter.server.impl.helpers.Parameters.*;
 
 import java.util.ArrayList;
+import java.util.Iterator;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.locks.Lock;
@@ -46,7 +51,22 @@ public class OverloadManagerImpl implements IOverloadManager {
     private ConcurrentLinkedQueue<OverloadInfo> listeners = new ConcurrentLinkedQueue<OverloadInfo>();    
     private ConcurrentHashMap<Object, AppOverloadInfo> appInfo = new ConcurrentHashMap<Object, AppOverloadInfo>();
 
+    // Overload control (RFC 7683), this node reports overload from the fill of the peer queues
+    private static final long QUEUE_LOAD_LIFETIME = 3000; // peers notify their queue fill every second
+    private boolean overloadControl;
+    private long reportValidity;
+    private double reportLowThreshold, reportHighThreshold;
+    private ConcurrentHashMap<URI, QueueLoad> queueLoads = new ConcurrentHashMap<URI, QueueLoad>();
+    private volatile OverloadReport overloadReport;
+    private long sequence;
+
     public OverloadManagerImpl(Configuration config) {
+        overloadControl = config.getBooleanValue(OverloadControl.ordinal(), (Boolean) OverloadControl.defValue());
+        reportValidity = Math.max(1, Math.min(OverloadReportTable.MAX_VALIDITY,
+            config.getLongValue(OverloadReportValidity.ordinal(), (Long) OverloadReportValidity.defValue())));
+        reportLowThreshold = config.getDoubleValue(OverloadReportLowThreshold.ordinal(), (Double) OverloadReportLowThreshold.defValue());
+        reportHighThreshold = config.getDoubleValue(OverloadReportHighThreshold.ordinal(), (Double) OverloadReportHighThreshold.defValue());
+
         Configuration[] entries = config.getChildren(OverloadMonitor.ordinal());
         if (entries == null) return;
         for (Configuration e : entries) {
@@ -123,6 +143,97 @@ public class OverloadManagerImpl implements IOverloadManager {
     public void changeNotification(int index, URI uri, double value) {
         for (OverloadInfo e : listeners)
             if (e.getCode() == index) e.changeNotification(uri, value);
+        if (overloadControl && index == 0) {
+            long now = System.currentTimeMillis();
+            queueLoads.put(uri, new QueueLoad(value, now));
+            updateOverloadReport(now);
+        }
+    }
+
+    public boolean isOverloadControl() {
+        return overloadControl;
+    }
+
+    public void appendOverloadControl(IMessage answer) {
+        if (!overloadControl) return;
+        AvpSet avps = answer.getAvps();
+        if (avps.getAvp(Avp.OC_SUPPORTED_FEATURES, 0) == null) {
+            OverloadReportTable.addSupportedFeatures(avps);
+        }
+        // a relayed answer keeps the report of the node it comes from
+        OverloadReport report = overloadReport;
+        if (report != null && avps.getAvp(Avp.OC_OLR, 0) == null) {
+            OverloadReportTable.addOverloadReport(avps, report.sequence, OverloadReportTable.HOST_REPORT,
+                report.reduction, report.validity);
+        }
+    }
+
+    /**
+     * Return the reduction percentage asked by this node for a queue fill ratio, growing linearly
+     * from the low to the high threshold
+     * @param load queue fill ratio
+     * @return reduction percentage
+     */
+    protected int getReduction(double load) {
+        if (load < reportLowThreshold) return 0;
+        if (load >= reportHighThreshold) return 100;
+        int reduction = (int) Math.ceil((load - reportLowThreshold) * 100 / (reportHighThreshold - reportLowThreshold));
+        return Math.max(1, Math.min(100, reduction));
+    }
+
+    private synchronized void updateOverloadReport(long now) {
+        double load = 0;
+        for (Iterator<QueueLoad> it = queueLoads.values().iterator(); it.hasNext();) {
+            QueueLoad l = it.next();
+            // peer is gone
+            if (now - l.time > QUEUE_LOAD_LIFETIME) it.remove();
+            else load = Math.max(load, l.value);
+        }
+        int reduction = getReduction(load);
+        OverloadReport current = overloadReport;
+        if (current == null) {
+            if (reduction > 0) overloadReport = new OverloadReport(nextSequence(now), reduction, reportValidity, now);
+        }
+        // a report is renewed at half its validity, so that reacting nodes do not let it expire
+        else if (reduction != current.reduction || now - current.time >= reportValidity * 500) {
+            if (reduction > 0)
+                overloadReport = new OverloadReport(nextSequence(now), reduction, reportValidity, now);
+            else if (current.reduction > 0)
+                // ends the overload, sent during one validity duration
+                overloadReport = new OverloadReport(nextSequence(now), 0, 0, now);
+            else if (now - current.time >= reportValidity * 1000)
+                overloadReport = null;
+        }
+    }
+
+    private long nextSequence(long now) {
+        // stays above the sequence numbers sent before a restart
+        sequence = Math.max(sequence + 1, now);
+        return sequence;
+    }
+
+    private static class QueueLoad {
+        private final double value;
+        private final long time;
+
+        QueueLoad(double value, long time) {
+            this.value = value;
+            this.time = time;
+        }
+    }
+
+    private static class OverloadReport {
+        private final long sequence;
+        private final int reduction;
+        private final long validity;
+        private final long time;
+
+        OverloadReport(long sequence, int reduction, long validity, long time) {
+            this.sequence = sequence;
+            this.reduction = reduction;
+            this.validity = validity;
+            this.time = time;
+        }
     }
 
     public static class AppOverloadInfo {
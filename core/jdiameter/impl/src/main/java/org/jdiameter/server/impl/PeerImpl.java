@@ -54,6 +54,7 @@ import org.jdiameter.client.api.io.IConnection;
 import org.jdiameter.client.api.io.ITransportLayerFactory;
 import org.jdiameter.client.api.io.TransportException;
 import org.jdiameter.client.api.parser.IMessageParser;
+import org.jdiameter.client.impl.router.OverloadReportTable;
 import org.jdiameter.common.api.concurrent.IConcurrentFactory;
 import org.jdiameter.common.api.data.ISessionDatasource;
 import org.jdiameter.common.api.statistic.IStatisticManager;
@@ -175,6 +176,25 @@ public class PeerImpl extends org.jdiameter.client.impl.controller.PeerImpl impl
     ovrManager.changeNotification(0, getUri(), fsm.getQueueInfo());
   }
 
+  protected void appendOverloadControl(IMessage answer) {
+    // only answers to requests which announced overload control (RFC 7683) support may carry it
+    if (answer.isOverloadControl() && ovrManager != null) {
+      ovrManager.appendOverloadControl(answer);
+    }
+  }
+
+  protected void updateOverloadControl(IMessage request) {
+    boolean supported;
+    try {
+      supported = OverloadReportTable.isSupported(request.getAvps());
+    }
+    catch (AvpDataException e) {
+      logger.debug("Unable to read OC-Supported-Features", e);
+      supported = false;
+    }
+    request.setOverloadControl(supported);
+  }
+
   public String toString() {
     if (fsm != null) {
       return "SPeer{" + "Uri=" + uri + "; State=" + fsm.getState(PeerState.class) + "; con="+ connection +"; incCon"+incConnections+" }";
@@ -311,6 +331,9 @@ public class PeerImpl extends org.jdiameter.client.impl.controller.PeerImpl impl
       boolean isProcessed = false;
 
       if (message.isRequest()) {
+        if (ovrManager != null && ovrManager.isOverloadControl()) {
+          updateOverloadControl(message);
+        }
         IRequest req = message;
         Avp destRealmAvp = req.getAvps().getAvp(Avp.DESTINATION_REALM);
         String destRealm = null;
@@ -387,9 +410,8 @@ public class PeerImpl extends org.jdiameter.client.impl.controller.PeerImpl impl
                     isProcessed = true;
                   }
                   break;
-                case RELAY: // might be complicated, lets make it listener
-                  // now
-                  isProcessed = consumeMessage(message); //if its not redirected its 
+                case RELAY: // addressed to this host, nothing to relay
+                  isProcessed = consumeMessage(message);
                   break;
                 case REDIRECT:
                   //TODO: change this its almost the same as above, make it sync, so no router code involved
@@ -404,7 +426,14 @@ public class PeerImpl extends org.jdiameter.client.impl.controller.PeerImpl impl
               //possibly also match realm.
               IPeer p = (IPeer) peerTable.getPeer(destHost);
               if(p != null && p.hasValidConnection()) {	
-                isProcessed = consumeMessage(message);
+                IRealm matched = (IRealm) realmTable.matchRealm(req);
+                if (matched != null && (matched.getLocalAction() == LocalAction.PROXY || matched.getLocalAction() == LocalAction.RELAY)) {
+                  // forward it to the destination host ourselves
+                  isProcessed = handleByAgent(message, isProcessed, req, matched);
+                }
+                else {
+                  isProcessed = consumeMessage(message);
+                }
               }
               else {
                 // RFC 3588 // 6.1
@@ -449,9 +478,10 @@ public class PeerImpl extends org.jdiameter.client.impl.controller.PeerImpl impl
                 isProcessed = true;
               }
               break;
-            case RELAY: // might be complicated, lets make it listener
-              // now
-              isProcessed = consumeMessage(message);
+            case RELAY:
+              if(handleByAgent(message, isProcessed, req, matched)) {
+                isProcessed = true;
+              }
               break;
             case REDIRECT:
               //TODO: change this its almost the same as above, make it sync, so no router code involved
@@ -486,16 +516,18 @@ public class PeerImpl extends org.jdiameter.client.impl.controller.PeerImpl impl
       else {
         try {
           router.registerRequestRouteInfo(message);
+          // the agent answers through the peer the request was received from
+          message.setPeer(PeerImpl.this);
           IMessage answer = (IMessage)matched.getAgent().processRequest(req,matched);
           if (isDuplicateProtection && answer != null) {
-            peerTable.saveToDuplicate(message.getDuplicationKey(), answer);
+            peerTable.saveToDuplicate(message, answer);
           }
           isProcessed = true;
           if(answer != null) {
             sendMessage(answer);
           }
           if (statistic.isEnabled()) {
-            statistic.getRecordByName(IStatisticRecord.Counters.SysGenResponse.name()).inc();
+            statistic.getRecordByName(IStatisticRecord.Counters.SysGenResponse).inc();
           }
         }
         catch (Exception exc) {
@@ -508,7 +540,7 @@ public class PeerImpl extends org.jdiameter.client.impl.controller.PeerImpl impl
       if (isProcessed) {
         // NOTE: done to inc stat which informs on net work request consumption :)
         if (statistic.isEnabled()) {
-          statistic.getRecordByName(IStatisticRecord.Counters.NetGenRequest.name()).inc();
+          statistic.getRecordByName(IStatisticRecord.Counters.NetGenRequest).inc();
         }
       }
       return isProcessed;
@@ -528,7 +560,7 @@ public class PeerImpl extends org.jdiameter.client.impl.controller.PeerImpl impl
       if (!isProcessed) {
         if (statistic.isEnabled()) {
           // Decrement what we have incremented in super.receiveMessage(message) since it wasn't processed
-          statistic.getRecordByName(IStatisticRecord.Counters.NetGenRejectedRequest.name()).dec(); 
+          statistic.getRecordByName(IStatisticRecord.Counters.NetGenRejectedRequest).dec(); 
         }
 
         NetworkReqListener listener = network.getListener(message);
@@ -553,7 +585,7 @@ public class PeerImpl extends org.jdiameter.client.impl.controller.PeerImpl impl
             try{
               sendMessage(answer);
               if (statistic.isEnabled()) {
-                statistic.getRecordByName(IStatisticRecord.Counters.SysGenResponse.name()).inc();
+                statistic.getRecordByName(IStatisticRecord.Counters.SysGenResponse).inc();
               }
             }
             catch (Exception e) {
@@ -574,14 +606,14 @@ public class PeerImpl extends org.jdiameter.client.impl.controller.PeerImpl impl
                 router.registerRequestRouteInfo(message);
                 answer = (IMessage) listener.processRequest(message);
                 if (isDuplicateProtection && answer != null) {
-                  peerTable.saveToDuplicate(message.getDuplicationKey(), answer);
+                  peerTable.saveToDuplicate(message, answer);
                 }
                 isProcessed = true;
                 if(isProcessed && answer != null) {
                   sendMessage(answer);
                 }
                 if (statistic.isEnabled()) {
-                  statistic.getRecordByName(IStatisticRecord.Counters.AppGenResponse.name()).inc();
+                  statistic.getRecordByName(IStatisticRecord.Counters.AppGenResponse).inc();
                 }
               }
               catch (Exception exc) {
@@ -604,7 +636,7 @@ public class PeerImpl extends org.jdiameter.client.impl.controller.PeerImpl impl
       if (isProcessed) {
         // NOTE: done to inc stat which informs on net work request consumption :)... 
         if (statistic.isEnabled()) {
-          statistic.getRecordByName(IStatisticRecord.Counters.NetGenRequest.name()).inc();
+          statistic.getRecordByName(IStatisticRecord.Counters.NetGenRequest).inc();
         }
       }
       return isProcessed;
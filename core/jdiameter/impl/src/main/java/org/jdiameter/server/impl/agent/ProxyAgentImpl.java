@@ -22,10 +22,20 @@
 
 package org.jdiameter.server.impl.agent;
 
+import static org.jdiameter.client.impl.helpers.Parameters.MessageTimeOut;
+
+import java.util.concurrent.TimeUnit;
+
 import org.jdiameter.api.Answer;
+import org.jdiameter.api.Avp;
+import org.jdiameter.api.AvpDataException;
 import org.jdiameter.api.Request;
+import org.jdiameter.api.ResultCode;
 import org.jdiameter.client.api.IContainer;
+import org.jdiameter.client.api.IEventListener;
+import org.jdiameter.client.api.IMessage;
 import org.jdiameter.client.api.IRequest;
+import org.jdiameter.client.api.controller.IPeer;
 import org.jdiameter.client.api.controller.IRealm;
 import org.jdiameter.client.api.controller.IRealmTable;
 import org.jdiameter.server.api.agent.IProxy;
@@ -33,7 +43,11 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 /**
- * 
+ * Agent for realms with the PROXY and RELAY local actions. A request is forwarded as it
+ * was received, with a Route-Record appended: it gets a new hop-by-hop id from the upstream
+ * peer it is sent to, and the answer is sent back to the peer the request came from, with
+ * the original hop-by-hop id. Proxy-Info and the other AVPs are left untouched, so with
+ * zero-copy decoding only the message header and the Route-Record are encoded again.
  * 
  * @author babass
  */
@@ -41,46 +55,133 @@ public class ProxyAgentImpl extends AgentImpl implements IProxy {
 
   private static Logger logger = LoggerFactory.getLogger(ProxyAgentImpl.class);
 
-	/**
-	 * @param container
-	 * @param realmTable
-	 */
-	public ProxyAgentImpl(IContainer container, IRealmTable realmTable) {
-		super(container, realmTable);
-		logger.info("proxy agent: created");
-	}
-
-	/*
-	 * (non-Javadoc)
-	 * 
-	 * @see
-	 * org.jdiameter.server.api.agent.IAgent#processRequest(org.jdiameter.client
-	 * .api.IRequest, org.jdiameter.client.api.controller.IRealm)
-	 */
-	public Answer processRequest(IRequest request, IRealm matchedRealm) {
-		logger.info("proxy agent: processRequest executed");
-		return null;
-	}
-
-	/*
-	 * (non-Javadoc)
-	 * 
-	 * @see
-	 * EventListener#receivedSuccessMessage(org.jdiameter.
-	 * Message, Message)
-	 */
-	public void receivedSuccessMessage(Request request, Answer answer) {
-		logger.info("proxy agent: receivedSuccessMessage");
-	}
-
-	/*
-	 * (non-Javadoc)
-	 * 
-	 * @see
-	 * EventListener#timeoutExpired(Message)
-	 */
-	public void timeoutExpired(Request request) {
-		logger.info("proxy agent: timeoutExpired");
-	}
+  private final long messageTimeOut;
+
+  /**
+   * @param container
+   * @param realmTable
+   */
+  public ProxyAgentImpl(IContainer container, IRealmTable realmTable) {
+    super(container, realmTable);
+    this.messageTimeOut = container.getConfiguration().getLongValue(MessageTimeOut.ordinal(), (Long) MessageTimeOut.defValue());
+    logger.debug("proxy agent: created");
+  }
+
+  /*
+   * (non-Javadoc)
+   * @see org.jdiameter.server.api.agent.IAgent#processRequest(org.jdiameter.client.api.IRequest, org.jdiameter.client.api.controller.IRealm)
+   */
+  public Answer processRequest(IRequest request, IRealm matchedRealm) {
+    IMessage message = (IMessage) request;
+    long hopByHopId = message.getHopByHopIdentifier();
+    IPeer downstream = message.getPeer();
+    try {
+      // RFC 3588 6.1.3. a loop is detected if the local identity is in a Route-Record
+      String localHost = container.getMetaData().getLocalPeer().getUri().getFQDN();
+      for (Avp routeRecord : message.getAvps().getAvps(Avp.ROUTE_RECORD)) {
+        if (localHost.equals(routeRecord.getDiameterIdentity())) {
+          logger.debug("Request [{}] already went through this host. Answering with 3005 (LOOP_DETECTED) Result-Code.", message);
+          return request.createAnswer(ResultCode.LOOP_DETECTED);
+        }
+      }
+    }
+    catch (AvpDataException e) {
+      logger.debug("Unable to parse Route-Record AVP", e);
+      return request.createAnswer(ResultCode.INVALID_AVP_VALUE);
+    }
+
+    boolean routed = false;
+    try {
+      if (downstream != null) {
+        // RFC 3588 6.1.9. the Route-Record holds the identity of the peer the request was received from
+        message.getAvps().addAvp(Avp.ROUTE_RECORD, downstream.getUri().getFQDN(), true, false, true);
+      }
+      message.setListener(new ForwardedRequest(hopByHopId, downstream));
+      // let the router select the upstream peer, the table sets the new hop-by-hop id
+      message.setPeer(null);
+      routed = true;
+      message.createTimer(container.getScheduledFacility(), messageTimeOut, TimeUnit.MILLISECONDS);
+      container.sendMessage(message);
+      return null;
+    }
+    catch (Exception e) {
+      logger.debug("Unable to forward request [" + message + "]. Answering with 3002 (UNABLE_TO_DELIVER) Result-Code.", e);
+      message.clearTimer();
+      if (routed && message.getPeer() != null) {
+        // the peer table already stored the request as pending at the upstream peer
+        message.getPeer().remMessage(message);
+      }
+      message.setHopByHopIdentifier(hopByHopId);
+      message.setPeer(downstream);
+      return request.createAnswer(ResultCode.UNABLE_TO_DELIVER);
+    }
+  }
+
+  /*
+   * (non-Javadoc)
+   * @see EventListener#receivedSuccessMessage(Message, Message)
+   */
+  public void receivedSuccessMessage(Request request, Answer answer) {
+    IMessage message = (IMessage) answer;
+    message.setHopByHopIdentifier(request.getHopByHopIdentifier());
+    message.setPeer(((IMessage) request).getPeer());
+    sendAnswer(message);
+  }
+
+  /*
+   * (non-Javadoc)
+   * @see EventListener#timeoutExpired(Message)
+   */
+  public void timeoutExpired(Request request) {
+    logger.debug("Forwarded request [{}] was not answered in time. Answering with 3002 (UNABLE_TO_DELIVER) Result-Code.", request);
+    sendAnswer((IMessage) request.createAnswer(ResultCode.UNABLE_TO_DELIVER));
+  }
+
+  private void sendAnswer(IMessage answer) {
+    try {
+      container.sendMessage(answer);
+    }
+    catch (Exception e) {
+      logger.warn("Unable to send answer [" + answer + "] to the downstream peer", e);
+    }
+  }
+
+  /**
+   * Listener of a forwarded request, puts back the hop-by-hop id and peer the request was
+   * received with before the agent answers it.
+   */
+  private class ForwardedRequest implements IEventListener {
+
+    private final long hopByHopId;
+    private final IPeer peer;
+
+    ForwardedRequest(long hopByHopId, IPeer peer) {
+      this.hopByHopId = hopByHopId;
+      this.peer = peer;
+    }
+
+    public void receivedSuccessMessage(Request request, Answer answer) {
+      restore((IMessage) request);
+      ProxyAgentImpl.this.receivedSuccessMessage(request, answer);
+    }
+
+    public void timeoutExpired(Request request) {
+      restore((IMessage) request);
+      ProxyAgentImpl.this.timeoutExpired(request);
+    }
+
+    private void restore(IMessage request) {
+      request.setHopByHopIdentifier(hopByHopId);
+      request.setPeer(peer);
+    }
+
+    public void setValid(boolean value) {
+      // forwarded requests are always answered
+    }
+
+    public boolean isValid() {
+      return true;
+    }
+  }
 
 }
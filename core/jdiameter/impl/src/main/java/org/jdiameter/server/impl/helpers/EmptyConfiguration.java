@@ -80,6 +80,7 @@ public class EmptyConfiguration extends org.jdiameter.client.impl.helpers.EmptyC
           add(InternalAgentProxy, InternalAgentProxy.defValue()).
           add(InternalSessionDatasource, InternalSessionDatasource.defValue()).
           add(InternalTimerFacility, InternalTimerFacility.defValue()).
+          add(InternalPeerSelectionStrategy, InternalPeerSelectionStrategy.defValue()).
           add(InternalPeerController, "org.jdiameter.server.impl.MutablePeerTableImpl"),
           getInstance().  // StackLayer extension point
           add(ExtensionName, ExtensionPoint.StackLayer.name()),
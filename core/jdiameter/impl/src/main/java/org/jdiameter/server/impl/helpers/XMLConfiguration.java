@@ -276,6 +276,25 @@ public class XMLConfiguration extends EmptyConfiguration {
       else if (nodeName.equals("Concurrent")) { addConcurrent(Concurrent, c.item(i));                   }
       else if (nodeName.equals("Dictionary")) { addDictionary(Dictionary, c.item(i));                   }
       else if (nodeName.equals("RequestTable")) { addRequestTable(RequestTable, c.item(i));             }
+      else if (nodeName.equals("ZeroCopyDecoding")) { add(ZeroCopyDecoding, Boolean.valueOf(getValue(c.item(i)))); }
+      else if (nodeName.equals("UseTcpReactor")) { add(UseTcpReactor, Boolean.valueOf(getValue(c.item(i)))); }
+      else if (nodeName.equals("TcpReactorThreads")) { add(TcpReactorThreads, getIntValue(c.item(i))); }
+      else if (nodeName.equals("TcpFlushThreshold")) { add(TcpFlushThreshold, getIntValue(c.item(i))); }
+      else if (nodeName.equals("TcpFlushDelay")) { add(TcpFlushDelay, getLongValue(c.item(i))); }
+      else if (nodeName.equals("TcpMaxQueuedBytes")) { add(TcpMaxQueuedBytes, getIntValue(c.item(i))); }
+      else if (nodeName.equals("TcpMaxFrameSize")) { add(TcpMaxFrameSize, getIntValue(c.item(i))); }
+      else if (nodeName.equals("PeerFSMSharedExecutor")) { add(PeerFSMSharedExecutor, Boolean.valueOf(getValue(c.item(i)))); }
+      else if (nodeName.equals("PeerFSMQueuePolicy")) { add(PeerFSMQueuePolicy, getValue(c.item(i))); }
+      else if (nodeName.equals("TimerWheelTick")) { add(TimerWheelTick, getLongValue(c.item(i))); }
+      else if (nodeName.equals("TimerWheelSize")) { add(TimerWheelSize, getIntValue(c.item(i))); }
+      else if (nodeName.equals("SessionIdleTimeOut")) { addSessionIdleTimeOut(c.item(i)); }
+      else if (nodeName.equals("SessionJournalFile")) { add(SessionJournalFile, getValue(c.item(i))); }
+      else if (nodeName.equals("SessionJournalSize")) { add(SessionJournalSize, getIntValue(c.item(i))); }
+      else if (nodeName.equals("SessionJournalSyncInterval")) { add(SessionJournalSyncInterval, getLongValue(c.item(i))); }
+      else if (nodeName.equals("OverloadControl")) { add(OverloadControl, Boolean.valueOf(getValue(c.item(i)))); }
+      else if (nodeName.equals("OverloadReportValidity")) { add(OverloadReportValidity, getLongValue(c.item(i))); }
+      else if (nodeName.equals("OverloadReportLowThreshold")) { add(OverloadReportLowThreshold, Double.valueOf(getValue(c.item(i)))); }
+      else if (nodeName.equals("OverloadReportHighThreshold")) { add(OverloadReportHighThreshold, Double.valueOf(getValue(c.item(i)))); }
       else {
         appendOtherParameter(c.item(i));
       }
@@ -309,6 +328,21 @@ public class XMLConfiguration extends EmptyConfiguration {
     this.add(ThreadPool, threadPoolConfiguration);
   }
 
+  protected void addSessionIdleTimeOut(Node node) {
+    add(SessionIdleTimeOut, getLongValue(node));
+    NodeList c = node.getChildNodes();
+    List<Configuration> items = new ArrayList<Configuration>();
+    for (int i = 0; i < c.getLength(); i++) {
+      if (c.item(i).getNodeName().equals("Application")) {
+        items.add(getInstance().add(SessionIdleTimeOutApplId, Long.parseLong(getAttrValue(c.item(i), "id")))
+            .add(SessionIdleTimeOut, getLongValue(c.item(i))));
+      }
+    }
+    if (items.size() > 0) {
+      add(SessionIdleTimeOuts, items.toArray(new Configuration[items.size()]));
+    }
+  }
+
   protected void addConcurrent(org.jdiameter.client.impl.helpers.Parameters name, Node node) {
     NodeList c = node.getChildNodes();
     List<Configuration> items = new ArrayList<Configuration>();
@@ -632,6 +666,7 @@ public class XMLConfiguration extends EmptyConfiguration {
       else if (nodeName.equals("NetWork")) {                    addInternalExtension(InternalNetWork, getValue(c.item(i)));                  }
       else if (nodeName.equals("SessionDatasource")) {          addInternalExtension(InternalSessionDatasource, getValue(c.item(i)));        }
       else if (nodeName.equals("TimerFacility")) {              addInternalExtension(InternalTimerFacility, getValue(c.item(i)));            }
+      else if (nodeName.equals("PeerSelectionStrategy")) {      addInternalExtension(InternalPeerSelectionStrategy, getValue(c.item(i)));    }
       else if (nodeName.equals("AgentRedirect")) {              addInternalExtension(InternalAgentRedirect, getValue(c.item(i)));            }
       else if (nodeName.equals("AgentConfiguration")) {         add(ExtensionPoint.InternalAgentConfiguration,getValue(c.item(i)));          }
       else if (nodeName.equals("AgentProxy")) {                 addInternalExtension(InternalAgentProxy, getValue(c.item(i)));               }
@@ -35,6 +35,7 @@ import org.jdiameter.api.OverloadException;
 import org.jdiameter.client.api.IMessage;
 import org.jdiameter.client.api.io.IConnection;
 import org.jdiameter.client.api.io.IConnectionListener;
+import org.jdiameter.client.api.io.IMultiStreamConnection;
 import org.jdiameter.client.api.io.TransportError;
 import org.jdiameter.client.api.io.TransportException;
 import org.jdiameter.client.api.parser.IMessageParser;
@@ -49,7 +50,7 @@ import org.slf4j.LoggerFactory;
  * @author <a href="mailto:brainslog@gmail.com"> Alexandre Mendonca </a>
  * @author <a href="mailto:baranowb@gmail.com"> Bartosz Baranowski </a>
  */
-public class SCTPServerConnection implements IConnection {
+public class SCTPServerConnection implements IConnection, IMultiStreamConnection {
 
   private static Logger logger = LoggerFactory.getLogger(SCTPServerConnection.class);
   private final long createdTime;
@@ -156,8 +157,9 @@ public class SCTPServerConnection implements IConnection {
 
   public void sendMessage(IMessage message) throws TransportException, OverloadException {
     try {
-      if (getServer() != null) {
-        getServer().sendMessage(parser.encodeMessage(message));
+      SCTPTransportServer server = getServer();
+      if (server != null) {
+        server.sendMessage(parser.encodeMessage(message), server.getStreamSelector().select(message));
       }
     }
     catch (Exception e) {
@@ -165,6 +167,14 @@ public class SCTPServerConnection implements IConnection {
     }
   }
 
+  public int getOutboundStreams() {
+    return getServer() != null ? getServer().getStreamSelector().getOutboundStreams() : 0;
+  }
+
+  public long getSentCount(int stream) {
+    return getServer() != null ? getServer().getStreamSelector().getSentCount(stream) : 0;
+  }
+
   protected SCTPTransportServer getServer() {
     return server;
   }
@@ -25,6 +25,8 @@ import java.nio.ByteBuffer;
 
 import org.jdiameter.api.AvpDataException;
 import org.jdiameter.client.api.io.NotInitializedException;
+import org.jdiameter.client.impl.transport.sctp.SCTPStreamSelector;
+import org.jdiameter.client.impl.transport.sctp.SCTPUtils;
 import org.mobicents.protocols.api.Association;
 import org.mobicents.protocols.api.AssociationListener;
 import org.mobicents.protocols.api.IpChannelType;
@@ -55,7 +57,7 @@ public class SCTPTransportServer {
   private Server server = null;
   private static final Logger logger = LoggerFactory.getLogger(SCTPTransportServer.class);
   private int payloadProtocolId = 0;
-  private int streamNumber = 0;
+  private SCTPStreamSelector streamSelector = new SCTPStreamSelector();
 
   public SCTPTransportServer() {
   }
@@ -203,7 +205,8 @@ public class SCTPTransportServer {
      */
     @Override
     public void onCommunicationUp(Association association, int maxInboundStreams, int maxOutboundStreams) {
-      logger.debug("onCommunicationUp called for [{}]", this);
+      logger.debug("onCommunicationUp called for [{}] with [{}] outbound streams", this, maxOutboundStreams);
+      streamSelector.setOutboundStreams(maxOutboundStreams);
       getParent().onConnected();
     }
 
@@ -257,9 +260,8 @@ public class SCTPTransportServer {
      */
     @Override
     public void onPayload(Association association, PayloadData payloadData) {
-      // set payload and stream number values;
+      // set payload protocol value, streams are picked per session when sending
       payloadProtocolId = payloadData.getPayloadProtocolId();
-      streamNumber = payloadData.getStreamNumber();
 
       byte[] data = new byte[payloadData.getDataLength()];
       System.arraycopy(payloadData.getData(), 0, data, 0, payloadData.getDataLength());
@@ -377,24 +379,38 @@ public class SCTPTransportServer {
   }
 
   public void sendMessage(ByteBuffer bytes) throws IOException {
+    sendMessage(bytes, 0);
+  }
+
+  /**
+   * @param bytes encoded message
+   * @param stream outbound stream to send it on, see {@link SCTPStreamSelector}
+   */
+  public void sendMessage(ByteBuffer bytes, int stream) throws IOException {
+    byte[] data = SCTPUtils.getBytes(bytes);
     if (logger.isDebugEnabled()) {
-      logger.debug("About to send a byte buffer of size [{}] over the SCTP", bytes.array().length);
+      logger.debug("About to send a byte buffer of size [{}] over the SCTP stream [{}]", data.length, stream);
     }
 
-    PayloadData payloadData = new PayloadData(bytes.array().length, bytes.array(), true, false, payloadProtocolId, streamNumber);
+    PayloadData payloadData = new PayloadData(data.length, data, true, false, payloadProtocolId, stream);
 
     try {
       this.remoteClientAssociation.send(payloadData);
+      streamSelector.onSent(stream);
     }
     catch (Exception e) {
       logger.error("Failed sending byte buffer over SCTP", e);
     }
 
     if (logger.isDebugEnabled()) {
-      logger.debug("Sent a byte buffer of size [{}] over SCTP", bytes.array().length);
+      logger.debug("Sent a byte buffer of size [{}] over SCTP", data.length);
     }
   }
 
+  public SCTPStreamSelector getStreamSelector() {
+    return streamSelector;
+  }
+
   boolean isConnected() {
     if (remoteClientAssociation == null) {
       return false;
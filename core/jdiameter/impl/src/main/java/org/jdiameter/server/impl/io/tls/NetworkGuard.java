@@ -22,11 +22,14 @@
 
 package org.jdiameter.server.impl.io.tls;
 
+import static org.jdiameter.client.impl.helpers.Parameters.UseTcpReactor;
+
 import java.io.IOException;
 import java.net.InetAddress;
 import java.net.InetSocketAddress;
 import java.net.ServerSocket;
 import java.net.Socket;
+import java.nio.channels.ServerSocketChannel;
 import java.util.concurrent.CopyOnWriteArrayList;
 
 import org.jdiameter.api.Configuration;
@@ -60,9 +63,17 @@ public class NetworkGuard implements INetworkGuard, Runnable {
   // private SSLServerSocket serverSocket;
   private ServerSocket serverSocket;
   private Configuration localPeerSSLConfig;
+  private Configuration config;
   private Thread thread;
   private String secRef;
 
+  /**
+   * Constructor used by the transport layer factory. The guard listens on the first address only.
+   */
+  public NetworkGuard(InetAddress[] inetAddress, int port, IConcurrentFactory concurrentFactory, IMessageParser parser, IMetaData data) throws Exception {
+    this(inetAddress[0], port, concurrentFactory, parser, data);
+  }
+
   public NetworkGuard(InetAddress inetAddress, int port, IConcurrentFactory concurrentFactory, IMessageParser parser, IMetaData data) throws Exception {
     this.port = port;
     this.parser = parser;
@@ -70,6 +81,7 @@ public class NetworkGuard implements INetworkGuard, Runnable {
     this.thread = this.concurrentFactory.getThread("NetworkGuard", this);
     // extract sec_ref from local peer;
     Configuration conf = data.getConfiguration();
+    this.config = conf;
 
     if (!conf.isAttributeExist(Parameters.SecurityRef.ordinal())) {
       throw new IllegalArgumentException("No security_ref attribute present in local peer!");
@@ -88,7 +100,13 @@ public class NetworkGuard implements INetworkGuard, Runnable {
       // SSLServerSocketFactory sslServerSocketFactory = sslContext.getServerSocketFactory();
       // this.serverSocket = (SSLServerSocket) sslServerSocketFactory.createServerSocket();
 
-      this.serverSocket = new ServerSocket();
+      if (conf.getBooleanValue(UseTcpReactor.ordinal(), (Boolean) UseTcpReactor.defValue())) {
+        // accepted sockets need a channel to be driven by the reactor
+        this.serverSocket = ServerSocketChannel.open().socket();
+      }
+      else {
+        this.serverSocket = new ServerSocket();
+      }
       this.serverSocket.bind(new InetSocketAddress(inetAddress, port));
 
       this.isWork = true;
@@ -109,7 +127,7 @@ public class NetworkGuard implements INetworkGuard, Runnable {
         try {
           Socket clientConnection = serverSocket.accept();
           logger.info("Open incomming SSL connection {}", clientConnection);
-          TLSClientConnection client = new TLSClientConnection(null, this.localPeerSSLConfig, this.concurrentFactory, clientConnection, parser);
+          TLSClientConnection client = new TLSClientConnection(this.config, this.localPeerSSLConfig, this.concurrentFactory, clientConnection, parser);
 
           this.notifyListeners(client);
         }
@@ -0,0 +1,62 @@
+package org.mobicents.diameter.stack;
+
+import org.jdiameter.server.impl.DuplicateAnswerStore;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class DuplicateAnswerStoreTest {
+
+	private static final String HOST = "client.example.org";
+
+	private static byte[] answer(int i) {
+		return new byte[] {(byte) i};
+	}
+
+	@Test
+	public void putGetTest() {
+		DuplicateAnswerStore store = new DuplicateAnswerStore(16);
+		byte[] a = answer(1);
+		store.put(HOST, 0xFFFFFFFFL, a);
+		Assert.assertSame(a, store.get(HOST, 0xFFFFFFFFL));
+		Assert.assertNull(store.get(HOST, 0xFFFFFFFEL));
+		Assert.assertNull(store.get("other.example.org", 0xFFFFFFFFL));
+		Assert.assertEquals(1, store.getHits());
+
+		byte[] b = answer(2);
+		store.put(HOST, 0xFFFFFFFFL, b);
+		Assert.assertSame(b, store.get(HOST, 0xFFFFFFFFL));
+		Assert.assertEquals(1, store.size());
+		store.clear();
+		Assert.assertNull(store.get(HOST, 0xFFFFFFFFL));
+		Assert.assertEquals(0, store.size());
+	}
+
+	@Test
+	public void expiryTest() {
+		DuplicateAnswerStore store = new DuplicateAnswerStore(1000);
+		store.put(HOST, 1, answer(1));
+		for (int i = 0; i < DuplicateAnswerStore.BUCKETS - 1; i++) {
+			store.expire();
+			Assert.assertNotNull("Entry expired early", store.get(HOST, 1));
+			store.put(HOST, 100 + i, answer(i));
+		}
+		store.expire();
+		Assert.assertNull(store.get(HOST, 1));
+		Assert.assertEquals(1, store.getExpiredCount());
+		Assert.assertEquals(DuplicateAnswerStore.BUCKETS - 1, store.size());
+	}
+
+	@Test
+	public void evictLeastRecentlyUsedTest() {
+		// four entries per stripe, entries evict each other only within their stripe
+		DuplicateAnswerStore store = new DuplicateAnswerStore(16 * 4);
+		for (long i = 0; i < 10000; i++) {
+			store.put(HOST, i, answer((int) i));
+			// keep the first entry in use
+			Assert.assertNotNull("Entry in use was evicted", store.get(HOST, 0));
+		}
+		Assert.assertTrue(store.size() <= 16 * 4);
+		Assert.assertEquals(10000, store.size() + store.getEvictions());
+		Assert.assertNotNull(store.get(HOST, 9999));
+	}
+}
@@ -0,0 +1,186 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2011, Red Hat, Inc. and individual contributors
+ * by the @authors tag. See the copyright.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.mobicents.diameter.stack;
+
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import java.io.InputStream;
+
+import org.jdiameter.api.Answer;
+import org.jdiameter.api.ApplicationId;
+import org.jdiameter.api.Avp;
+import org.jdiameter.api.AvpSet;
+import org.jdiameter.api.Configuration;
+import org.jdiameter.api.Message;
+import org.jdiameter.api.Network;
+import org.jdiameter.api.NetworkReqListener;
+import org.jdiameter.api.Request;
+import org.jdiameter.api.Selector;
+import org.jdiameter.client.api.IMessage;
+import org.jdiameter.client.impl.parser.MessageParser;
+import org.jdiameter.server.api.INetwork;
+import org.jdiameter.server.impl.StackImpl;
+import org.jdiameter.server.impl.helpers.ApplicationIdSelector;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Checks which listener {@link INetwork#getListener(IMessage)} picks for a request, as
+ * listeners and selectors are added and removed.
+ */
+public class NetworkDispatchTest {
+
+  private static final ApplicationId ACC_APP_ID = ApplicationId.createByAccAppId(193, 19302);
+  private static final ApplicationId VENDOR_AUTH_APP_ID = ApplicationId.createByAuthAppId(10415, 16777238);
+  private static final ApplicationId AUTH_APP_ID = ApplicationId.createByAuthAppId(0, 16777238);
+  private static final ApplicationId COMMON_APP_ID = ApplicationId.createByAuthAppId(0, 0xffffffff);
+
+  private StackImpl stack;
+  private Network network;
+
+  private static class Listener implements NetworkReqListener {
+
+    public Answer processRequest(Request request) {
+      return null;
+    }
+  }
+
+  @Before
+  public void setUp() throws Exception {
+    stack = new StackImpl();
+    InputStream configInputStream = NetworkDispatchTest.class.getClassLoader().getResourceAsStream("configurations/jdiameter-server-two.xml");
+    Configuration config = new org.jdiameter.server.impl.helpers.XMLConfiguration(configInputStream);
+    configInputStream.close();
+    stack.init(config);
+    network = stack.unwrap(Network.class);
+  }
+
+  @After
+  public void tearDown() {
+    stack.destroy();
+  }
+
+  private IMessage createRequest(int commandCode, ApplicationId applicationId) {
+    long headerAppId = applicationId.getAuthAppId() != 0 ? applicationId.getAuthAppId() : applicationId.getAcctAppId();
+    IMessage request = new MessageParser().createEmptyMessage(commandCode, headerAppId);
+    request.setRequest(true);
+    AvpSet avps = request.getAvps();
+    if (applicationId.getVendorId() != 0) {
+      AvpSet vendorSpecific = avps.addGroupedAvp(Avp.VENDOR_SPECIFIC_APPLICATION_ID);
+      vendorSpecific.addAvp(Avp.VENDOR_ID, applicationId.getVendorId(), true, false, true);
+      if (applicationId.getAuthAppId() != 0) {
+        vendorSpecific.addAvp(Avp.AUTH_APPLICATION_ID, applicationId.getAuthAppId(), true, false, true);
+      }
+      else {
+        vendorSpecific.addAvp(Avp.ACCT_APPLICATION_ID, applicationId.getAcctAppId(), true, false, true);
+      }
+    }
+    else {
+      avps.addAvp(Avp.AUTH_APPLICATION_ID, applicationId.getAuthAppId(), true, false, true);
+    }
+    return request;
+  }
+
+  private NetworkReqListener getListener(int commandCode, ApplicationId applicationId) {
+    return ((INetwork) network).getListener(createRequest(commandCode, applicationId));
+  }
+
+  @Test
+  @SuppressWarnings("unchecked")
+  public void testDispatch() throws Exception {
+    NetworkReqListener accounting = new Listener();
+    NetworkReqListener vendorAuth = new Listener();
+    NetworkReqListener auth = new Listener();
+    network.addNetworkReqListener(accounting, ACC_APP_ID);
+    // two variants of the same application id, told apart by the AVPs
+    network.addNetworkReqListener(vendorAuth, VENDOR_AUTH_APP_ID);
+    network.addNetworkReqListener(auth, AUTH_APP_ID);
+
+    assertSame(accounting, getListener(271, ACC_APP_ID));
+    assertSame(vendorAuth, getListener(272, VENDOR_AUTH_APP_ID));
+    assertSame(auth, getListener(272, AUTH_APP_ID));
+    assertNull(getListener(272, ApplicationId.createByAuthAppId(0, 4)));
+
+    // selectors come before listeners
+    NetworkReqListener selected = new Listener();
+    ApplicationIdSelector accountingSelector = new ApplicationIdSelector(ACC_APP_ID);
+    network.addNetworkReqListener(selected, accountingSelector);
+    assertSame(selected, getListener(271, ACC_APP_ID));
+
+    NetworkReqListener command = new Listener();
+    Selector<Message, ApplicationId> commandSelector = new Selector<Message, ApplicationId>() {
+
+      public boolean checkRule(Message message) {
+        return message.getCommandCode() == 8388650;
+      }
+
+      public ApplicationId getMetaData() {
+        return AUTH_APP_ID;
+      }
+    };
+    network.addNetworkReqListener(command, commandSelector);
+    assertSame(command, getListener(8388650, AUTH_APP_ID));
+    assertSame(auth, getListener(272, AUTH_APP_ID));
+
+    // the common application listener hides listeners, but not selectors
+    NetworkReqListener common = new Listener();
+    network.addNetworkReqListener(common, COMMON_APP_ID);
+    assertSame(common, getListener(272, VENDOR_AUTH_APP_ID));
+    assertSame(common, getListener(272, ApplicationId.createByAuthAppId(0, 4)));
+    assertSame(selected, getListener(271, ACC_APP_ID));
+    assertSame(command, getListener(8388650, AUTH_APP_ID));
+
+    network.removeNetworkReqListener(COMMON_APP_ID, VENDOR_AUTH_APP_ID);
+    network.removeNetworkReqListener(accountingSelector, commandSelector);
+    assertSame(accounting, getListener(271, ACC_APP_ID));
+    assertSame(auth, getListener(8388650, AUTH_APP_ID));
+    // the header value is now served by a single application id
+    assertSame(auth, getListener(272, AUTH_APP_ID));
+    assertNull(getListener(272, ApplicationId.createByAuthAppId(0, 4)));
+  }
+
+  @Test
+  public void testDispatchOnApplicationIdAvps() throws Exception {
+    NetworkReqListener accounting = new Listener();
+    NetworkReqListener auth = new Listener();
+    network.addNetworkReqListener(accounting, ACC_APP_ID);
+    network.addNetworkReqListener(auth, AUTH_APP_ID);
+
+    // the AVPs win over a header which disagrees with them
+    IMessage request = createRequest(271, ACC_APP_ID);
+    request.setHeaderApplicationId(AUTH_APP_ID.getAuthAppId());
+    assertSame(accounting, ((INetwork) network).getListener(request));
+
+    // without Application-Id AVPs the header is an Auth-Application-Id, so no accounting listener matches
+    IMessage bare = new MessageParser().createEmptyMessage(271, ACC_APP_ID.getAcctAppId());
+    bare.setRequest(true);
+    assertNull(((INetwork) network).getListener(bare));
+
+    // same rules for selectors
+    NetworkReqListener selected = new Listener();
+    network.addNetworkReqListener(selected, new ApplicationIdSelector(ACC_APP_ID));
+    assertSame(selected, ((INetwork) network).getListener(request));
+    assertNull(((INetwork) network).getListener(bare));
+  }
+}
@@ -0,0 +1,96 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2011, Red Hat, Inc. and individual contributors
+ * by the @authors tag. See the copyright.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.mobicents.diameter.stack;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertNull;
+
+import java.io.InputStream;
+
+import org.jdiameter.api.Avp;
+import org.jdiameter.api.Configuration;
+import org.jdiameter.client.api.IMessage;
+import org.jdiameter.client.api.IRequest;
+import org.jdiameter.client.api.router.IRouter;
+import org.jdiameter.client.impl.parser.MessageParser;
+import org.jdiameter.server.impl.StackImpl;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class RequestRouteInfoTest {
+
+  private StackImpl stack;
+  private IRouter router;
+
+  @Before
+  public void setUp() throws Exception {
+    stack = new StackImpl();
+    InputStream configInputStream = RequestRouteInfoTest.class.getClassLoader().getResourceAsStream("configurations/jdiameter-server-two.xml");
+    Configuration config = new org.jdiameter.server.impl.helpers.XMLConfiguration(configInputStream);
+    configInputStream.close();
+    stack.init(config);
+    router = stack.getAssemblerFacility().getComponentInstance(IRouter.class);
+  }
+
+  @After
+  public void tearDown() {
+    stack.destroy();
+  }
+
+  private IMessage createMessage(boolean request, String sessionId, String originHost) {
+    IMessage message = new MessageParser().createEmptyMessage(272, 4);
+    message.setRequest(request);
+    // all messages have the same identifiers
+    message.setHopByHopIdentifier(0x1234);
+    message.setEndToEndIdentifier(0x5678);
+    message.getAvps().addAvp(Avp.SESSION_ID, sessionId, false);
+    if (originHost != null) {
+      message.getAvps().addAvp(Avp.ORIGIN_HOST, originHost, true);
+      message.getAvps().addAvp(Avp.ORIGIN_REALM, "example.org", true);
+    }
+    return message;
+  }
+
+  @Test
+  public void testSameIdentifiers() throws Exception {
+    router.registerRequestRouteInfo((IRequest) createMessage(true, "a.example.org;1", "a.example.org"));
+    router.registerRequestRouteInfo((IRequest) createMessage(true, "b.example.org;1", "b.example.org"));
+
+    // the second request does not hide the route of the first one
+    IMessage answerA = createMessage(false, "a.example.org;1", null);
+    IMessage answerB = createMessage(false, "b.example.org;1", null);
+    assertArrayEquals(new String[] {"a.example.org", "example.org"}, router.getRequestRouteInfo(answerA));
+    assertArrayEquals(new String[] {"b.example.org", "example.org"}, router.getRequestRouteInfo(answerB));
+    assertNull(router.getRequestRouteInfo(createMessage(false, "c.example.org;1", null)));
+
+    // a retransmission replaces the route of its session
+    router.registerRequestRouteInfo((IRequest) createMessage(true, "a.example.org;1", "a2.example.org"));
+    assertArrayEquals(new String[] {"a2.example.org", "example.org"}, router.getRequestRouteInfo(answerA));
+
+    router.garbageCollectRequestRouteInfo(answerB);
+    assertNull(router.getRequestRouteInfo(answerB));
+    assertArrayEquals(new String[] {"a2.example.org", "example.org"}, router.getRequestRouteInfo(answerA));
+    router.garbageCollectRequestRouteInfo(answerA);
+    assertNull(router.getRequestRouteInfo(answerA));
+  }
+}
@@ -0,0 +1,218 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2011, Red Hat, Inc. and individual contributors
+ * by the @authors tag. See the copyright.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.mobicents.diameter.stack;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.log4j.Logger;
+import org.jdiameter.api.Answer;
+import org.jdiameter.api.AnswerFuture;
+import org.jdiameter.api.ApplicationId;
+import org.jdiameter.api.Avp;
+import org.jdiameter.api.AvpDataException;
+import org.jdiameter.api.Configuration;
+import org.jdiameter.api.DisconnectCause;
+import org.jdiameter.api.EventListener;
+import org.jdiameter.api.Mode;
+import org.jdiameter.api.Network;
+import org.jdiameter.api.NetworkReqListener;
+import org.jdiameter.api.Request;
+import org.jdiameter.api.ResultCode;
+import org.jdiameter.api.Session;
+import org.jdiameter.server.impl.StackImpl;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Sends requests through {@link Session#sendRequest(Request)}, chaining a request from the
+ * answer of another one and letting a request time out.
+ */
+public class SessionSendRequestTest {
+
+  private static Logger logger = Logger.getLogger(SessionSendRequestTest.class);
+
+  private static final ApplicationId APP_ID = ApplicationId.createByAccAppId(193, 19302);
+  private static final String DESTINATION_REALM = "test.mobicents.org";
+
+  // the server answers these commands, and keeps the others unanswered
+  private static final int ANSWERED_COMMAND = 8388650;
+  private static final int SILENT_COMMAND = 8388651;
+
+  private StackImpl server;
+  private StackImpl client;
+
+  private StackImpl createStack(String configName) throws Exception {
+    StackImpl stack = new StackImpl();
+    InputStream configInputStream = SessionSendRequestTest.class.getClassLoader().getResourceAsStream("configurations/" + configName);
+    Configuration config = new org.jdiameter.server.impl.helpers.XMLConfiguration(configInputStream);
+    configInputStream.close();
+    stack.init(config);
+    return stack;
+  }
+
+  @Before
+  public void setUp() throws Exception {
+    server = createStack("jdiameter-server-two.xml");
+    server.unwrap(Network.class).addNetworkReqListener(new NetworkReqListener() {
+
+      public Answer processRequest(Request request) {
+        if (request.getCommandCode() != ANSWERED_COMMAND) {
+          return null;
+        }
+        Answer answer = request.createAnswer(ResultCode.SUCCESS);
+        try {
+          // echo the step of the chain
+          answer.getAvps().addAvp(Avp.ACC_RECORD_NUMBER, request.getAvps().getAvp(Avp.ACC_RECORD_NUMBER).getUnsigned32(), true, false, true);
+        }
+        catch (AvpDataException e) {
+          logger.error("Failed to read Accounting-Record-Number", e);
+        }
+        return answer;
+      }
+    }, APP_ID);
+    server.start();
+
+    client = createStack("jdiameter-client-two.xml");
+    client.unwrap(Network.class).addNetworkReqListener(new NetworkReqListener() {
+
+      public Answer processRequest(Request request) {
+        return null;
+      }
+    }, APP_ID);
+    client.start(Mode.ALL_PEERS, 10000, TimeUnit.MILLISECONDS);
+  }
+
+  @After
+  public void tearDown() {
+    try {
+      client.stop(DisconnectCause.REBOOTING);
+      client.destroy();
+    }
+    catch (Exception e) {
+      logger.warn("Failed to stop/destroy CLIENT stack.", e);
+    }
+
+    try {
+      server.stop(DisconnectCause.REBOOTING);
+      server.destroy();
+    }
+    catch (Exception e) {
+      logger.warn("Failed to stop/destroy SERVER stack.", e);
+    }
+  }
+
+  private Request createRequest(Session session, int commandCode, long step) {
+    Request request = session.createRequest(commandCode, APP_ID, DESTINATION_REALM);
+    request.getAvps().addAvp(Avp.ACC_RECORD_NUMBER, step, true, false, true);
+    return request;
+  }
+
+  @Test
+  public void testChainedRequests() throws Exception {
+    final Session session = client.getSessionFactory().getNewSession();
+    final int steps = 5;
+    final List<Long> answered = new ArrayList<Long>();
+    final List<Throwable> failures = new ArrayList<Throwable>();
+    final CountDownLatch done = new CountDownLatch(1);
+
+    // every answer sends the next request from the thread which received it
+    EventListener<Request, Answer> chain = new EventListener<Request, Answer>() {
+
+      public void receivedSuccessMessage(Request request, Answer answer) {
+        try {
+          long step = answer.getAvps().getAvp(Avp.ACC_RECORD_NUMBER).getUnsigned32();
+          answered.add(step);
+          if (step < steps) {
+            session.sendRequest(createRequest(session, ANSWERED_COMMAND, step + 1)).addListener(this);
+          }
+          else {
+            done.countDown();
+          }
+        }
+        catch (Exception e) {
+          failures.add(e);
+          done.countDown();
+        }
+      }
+
+      public void timeoutExpired(Request request) {
+        failures.add(new AssertionError("Request timed out: " + request));
+        done.countDown();
+      }
+    };
+
+    AnswerFuture<Request, Answer> first = session.sendRequest(createRequest(session, ANSWERED_COMMAND, 1));
+    first.addListener(chain);
+    assertTrue("Chain did not complete", done.await(10, TimeUnit.SECONDS));
+    assertTrue("Failures in chain: " + failures, failures.isEmpty());
+    assertEquals(steps, answered.size());
+    for (int i = 0; i < steps; i++) {
+      assertEquals(i + 1, answered.get(i).longValue());
+    }
+
+    // completed futures answer right away
+    assertTrue(first.isDone());
+    assertFalse(first.isTimeOut());
+    assertEquals(ResultCode.SUCCESS, first.get().getResultCode().getUnsigned32());
+    final CountDownLatch late = new CountDownLatch(1);
+    first.addListener(new EventListener<Request, Answer>() {
+
+      public void receivedSuccessMessage(Request request, Answer answer) {
+        late.countDown();
+      }
+
+      public void timeoutExpired(Request request) {
+      }
+    });
+    assertEquals("Listener added after the answer not called", 0, late.getCount());
+  }
+
+  @Test
+  public void testRequestTimeOut() throws Exception {
+    Session session = client.getSessionFactory().getNewSession();
+    final CountDownLatch timedOut = new CountDownLatch(1);
+
+    AnswerFuture<Request, Answer> future = session.sendRequest(createRequest(session, SILENT_COMMAND, 1), 500, TimeUnit.MILLISECONDS);
+    future.addListener(new EventListener<Request, Answer>() {
+
+      public void receivedSuccessMessage(Request request, Answer answer) {
+      }
+
+      public void timeoutExpired(Request request) {
+        timedOut.countDown();
+      }
+    });
+    assertNull("Answer to an unanswered request", future.get());
+    assertTrue(future.isTimeOut());
+    assertTrue("Listener not told of the time out", timedOut.await(1, TimeUnit.SECONDS));
+  }
+}
@@ -0,0 +1,158 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2011, Red Hat, Inc. and individual contributors
+ * by the @authors tag. See the copyright.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.mobicents.diameter.stack;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Scanner;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.log4j.Logger;
+import org.jdiameter.api.Answer;
+import org.jdiameter.api.ApplicationId;
+import org.jdiameter.api.Avp;
+import org.jdiameter.api.AvpDataException;
+import org.jdiameter.api.Configuration;
+import org.jdiameter.api.DisconnectCause;
+import org.jdiameter.api.Mode;
+import org.jdiameter.api.Network;
+import org.jdiameter.api.NetworkReqListener;
+import org.jdiameter.api.Peer;
+import org.jdiameter.api.PeerState;
+import org.jdiameter.api.PeerTable;
+import org.jdiameter.api.Request;
+import org.jdiameter.api.ResultCode;
+import org.jdiameter.api.Session;
+import org.jdiameter.client.api.controller.IPeer;
+import org.jdiameter.server.impl.StackImpl;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Connects a client to a server over TLS, with both connections on the shared reactor threads,
+ * and exchanges requests over the TLS session once the handshake following CER/CEA is done.
+ */
+public class StackConnectTLSReactorTest {
+
+  private static Logger logger = Logger.getLogger(StackConnectTLSReactorTest.class);
+
+  private static final ApplicationId APP_ID = ApplicationId.createByAccAppId(193, 19302);
+  private static final String DESTINATION_REALM = "test.mobicents.org";
+  private static final int COMMAND = 8388650;
+
+  private StackImpl server;
+  private StackImpl client;
+
+  private StackImpl createStack(String configName) throws Exception {
+    StackImpl stack = new StackImpl();
+    InputStream configInputStream = StackConnectTLSReactorTest.class.getClassLoader().getResourceAsStream("configurations/" + configName);
+    String xml = new Scanner(configInputStream, "UTF-8").useDelimiter("\\A").next();
+    configInputStream.close();
+    // the key store is read from a file, whatever the working directory
+    String keyStore = new File(StackConnectTLSReactorTest.class.getClassLoader().getResource("tls/keystore.jks").toURI()).getPath();
+    Configuration config = new org.jdiameter.server.impl.helpers.XMLConfiguration(new ByteArrayInputStream(xml.replace("${keystore}", keyStore).getBytes("UTF-8")));
+    stack.init(config);
+    return stack;
+  }
+
+  @Before
+  public void setUp() throws Exception {
+    server = createStack("tls-reactor-jdiameter-server.xml");
+    server.unwrap(Network.class).addNetworkReqListener(new NetworkReqListener() {
+
+      public Answer processRequest(Request request) {
+        Answer answer = request.createAnswer(ResultCode.SUCCESS);
+        try {
+          // echo the request data
+          answer.getAvps().addAvp(Avp.ACC_RECORD_NUMBER, request.getAvps().getAvp(Avp.ACC_RECORD_NUMBER).getUnsigned32(), true, false, true);
+          answer.getAvps().addAvp(Avp.USER_NAME, request.getAvps().getAvp(Avp.USER_NAME).getUTF8String(), true, false, false);
+        }
+        catch (AvpDataException e) {
+          logger.error("Failed to read request data", e);
+        }
+        return answer;
+      }
+    }, APP_ID);
+    server.start();
+
+    client = createStack("tls-reactor-jdiameter-client.xml");
+    client.unwrap(Network.class).addNetworkReqListener(new NetworkReqListener() {
+
+      public Answer processRequest(Request request) {
+        return null;
+      }
+    }, APP_ID);
+    client.start(Mode.ALL_PEERS, 10000, TimeUnit.MILLISECONDS);
+  }
+
+  @After
+  public void tearDown() {
+    try {
+      client.stop(DisconnectCause.REBOOTING);
+      client.destroy();
+    }
+    catch (Exception e) {
+      logger.warn("Failed to stop/destroy CLIENT stack.", e);
+    }
+
+    try {
+      server.stop(DisconnectCause.REBOOTING);
+      server.destroy();
+    }
+    catch (Exception e) {
+      logger.warn("Failed to stop/destroy SERVER stack.", e);
+    }
+  }
+
+  @Test
+  public void testConnectAndExchange() throws Exception {
+    List<Peer> peers = client.unwrap(PeerTable.class).getPeerTable();
+    assertEquals("Wrong num of connections, initial setup did not succeed. ", 1, peers.size());
+    IPeer p = (IPeer) peers.get(0);
+    assertTrue("Peer not connected. State[" + p.getState(PeerState.class) + "]", p.isConnected());
+
+    Session session = client.getSessionFactory().getNewSession();
+    for (int i = 1; i <= 10; i++) {
+      // the last ones span several TLS records
+      char[] data = new char[i <= 8 ? 10 * i : 40000 * i];
+      Arrays.fill(data, (char) ('a' + i));
+      String userName = new String(data);
+      Request request = session.createRequest(COMMAND, APP_ID, DESTINATION_REALM);
+      request.getAvps().addAvp(Avp.ACC_RECORD_NUMBER, i, true, false, true);
+      request.getAvps().addAvp(Avp.USER_NAME, userName, true, false, false);
+
+      Answer answer = session.sendRequest(request).get(10, TimeUnit.SECONDS);
+      assertEquals(ResultCode.SUCCESS, answer.getResultCode().getUnsigned32());
+      assertEquals(i, answer.getAvps().getAvp(Avp.ACC_RECORD_NUMBER).getUnsigned32());
+      assertEquals("Data changed on the way", userName, answer.getAvps().getAvp(Avp.USER_NAME).getUTF8String());
+    }
+  }
+
+}
@@ -0,0 +1,121 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2008, Red Hat, Inc. and/or its affiliates, and individual
+ * contributors as indicated by the @authors tag. All rights reserved.
+ * See the copyright.txt in the distribution for a full listing
+ * of individual contributors.
+ *
+ * This copyrighted material is made available to anyone wishing to use,
+ * modify, copy, or redistribute it subject to the terms and conditions
+ * of the GNU General Public License, v. 2.0.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License,
+ * v. 2.0 along with this distribution; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301, USA.
+ */
+package org.mobicents.diameter.stack.dictionary;
+
+import org.jdiameter.api.Avp;
+import org.jdiameter.api.AvpSet;
+import org.jdiameter.api.Message;
+import org.jdiameter.api.validation.AvpNotAllowedException;
+import org.jdiameter.api.validation.ValidatorLevel;
+import org.jdiameter.client.impl.parser.MessageParser;
+import org.jdiameter.common.impl.validation.DictionaryImpl;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Validation of CCR-U messages against the rule tables of the dictionary, at
+ * MESSAGE and ALL level.
+ */
+public class AvpRuleTableTest {
+
+  private static final int SERVICES = 3;
+
+  private DictionaryImpl instance = null;
+
+  @Before
+  public void setUp() {
+    this.instance = (DictionaryImpl) DictionaryImpl.INSTANCE;
+    instance.setEnabled(true);
+  }
+
+  @After
+  public void tearDown() {
+    // back to defaults
+    instance.setReceiveLevel(ValidatorLevel.OFF);
+    instance.setSendLevel(ValidatorLevel.ALL);
+    this.instance = null;
+  }
+
+  private Message createUpdateRequest(int requestNumber) {
+    Message request = new MessageParser().createEmptyMessage(272, 4);
+    request.setRequest(true);
+    AvpSet set = request.getAvps();
+    set.addAvp(Avp.SESSION_ID, "pcef.example.org;1288738381;" + requestNumber, false);
+    set.addAvp(Avp.ORIGIN_HOST, "pcef.example.org", true);
+    set.addAvp(Avp.ORIGIN_REALM, "example.org", true);
+    set.addAvp(Avp.DESTINATION_REALM, "ocs.example.org", true);
+    set.addAvp(Avp.AUTH_APPLICATION_ID, 4L, true, false, true);
+    set.addAvp(Avp.SERVICE_CONTEXT_ID, "32251@3gpp.org", false);
+    set.addAvp(Avp.CC_REQUEST_TYPE, 2);
+    set.addAvp(Avp.CC_REQUEST_NUMBER, requestNumber, true, false, true);
+
+    AvpSet subscriptionId = set.addGroupedAvp(Avp.SUBSCRIPTION_ID);
+    subscriptionId.addAvp(Avp.SUBSCRIPTION_ID_TYPE, 0);
+    subscriptionId.addAvp(Avp.SUBSCRIPTION_ID_DATA, "48500000000", false);
+    set.addAvp(Avp.MULTIPLE_SERVICES_INDICATOR, 1);
+
+    for (int s = 0; s < SERVICES; s++) {
+      AvpSet mscc = set.addGroupedAvp(Avp.MULTIPLE_SERVICES_CREDIT_CONTROL);
+      mscc.addGroupedAvp(Avp.REQUESTED_SERVICE_UNIT);
+      AvpSet usedServiceUnit = mscc.addGroupedAvp(Avp.USED_SERVICE_UNIT);
+      usedServiceUnit.addAvp(Avp.CC_TIME, 60L, true, false, true);
+      usedServiceUnit.addAvp(Avp.CC_INPUT_OCTETS, 1024L * s, true, false, true);
+      usedServiceUnit.addAvp(Avp.CC_OUTPUT_OCTETS, 4096L * s, true, false, true);
+      mscc.addAvp(Avp.RATING_GROUP, 100L + s, true, false, true);
+    }
+
+    AvpSet userEquipmentInfo = set.addGroupedAvp(Avp.USER_EQUIPMENT_INFO);
+    userEquipmentInfo.addAvp(Avp.USER_EQUIPMENT_INFO_TYPE, 0);
+    userEquipmentInfo.addAvp(Avp.USER_EQUIPMENT_INFO_VALUE, "3533840500000000", false);
+    return request;
+  }
+
+  @Test
+  public void testUpdateRequestValidation() throws Exception {
+    instance.setSendLevel(ValidatorLevel.ALL);
+    instance.validate(createUpdateRequest(1), false);
+
+    // a grouped child with wrong count is only seen at ALL level
+    Message request = createUpdateRequest(1);
+    request.getAvps().getAvp(Avp.SUBSCRIPTION_ID).getGrouped().removeAvp(Avp.SUBSCRIPTION_ID_DATA);
+    try {
+      instance.validate(request, false);
+      Assert.fail("Subscription-Id without Subscription-Id-Data passed validation.");
+    }
+    catch (AvpNotAllowedException e) {
+      Assert.assertEquals(Avp.SUBSCRIPTION_ID, e.getAvpCode());
+    }
+    instance.setSendLevel(ValidatorLevel.MESSAGE);
+    instance.validate(request, false);
+
+    request.getAvps().removeAvp(Avp.CC_REQUEST_NUMBER);
+    try {
+      instance.validate(request, false);
+      Assert.fail("CCR-U without CC-Request-Number passed validation.");
+    }
+    catch (AvpNotAllowedException e) {
+      Assert.assertEquals(Avp.CC_REQUEST_NUMBER, e.getAvpCode());
+    }
+  }
+}
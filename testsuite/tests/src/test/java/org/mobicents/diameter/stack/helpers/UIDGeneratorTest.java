@@ -0,0 +1,68 @@
+package org.mobicents.diameter.stack.helpers;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.jdiameter.client.impl.helpers.UIDGenerator;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class UIDGeneratorTest {
+
+	private static final int THREADS = 16;
+	private static final int PER_THREAD = 100000;
+
+	@Test
+	public void sequenceTest() {
+		UIDGenerator generator = new UIDGenerator(100, 8);
+		for (long i = 100; i < 200; i++) {
+			Assert.assertEquals(i, generator.nextLong());
+		}
+	}
+
+	@Test
+	public void instancesTest() {
+		// each instance has its own sequence, even on the same thread
+		UIDGenerator first = new UIDGenerator(0);
+		UIDGenerator second = new UIDGenerator(1000);
+		Assert.assertEquals(0, first.nextLong());
+		Assert.assertEquals(1000, second.nextLong());
+		Assert.assertEquals(1, first.nextLong());
+		Assert.assertEquals(1001, second.nextLong());
+	}
+
+	@Test
+	public void concurrentUniquenessTest() throws Exception {
+		final UIDGenerator generator = new UIDGenerator();
+		ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+		try {
+			List<Future<long[]>> results = new ArrayList<Future<long[]>>();
+			for (int t = 0; t < THREADS; t++) {
+				results.add(executor.submit(new Callable<long[]>() {
+					public long[] call() {
+						long[] ids = new long[PER_THREAD];
+						for (int i = 0; i < PER_THREAD; i++) {
+							ids[i] = generator.nextLong();
+						}
+						return ids;
+					}
+				}));
+			}
+			Set<Long> seen = new HashSet<Long>(THREADS * PER_THREAD * 2);
+			for (Future<long[]> result : results) {
+				for (long id : result.get()) {
+					Assert.assertTrue("Duplicate id " + id, seen.add(id));
+				}
+			}
+		}
+		finally {
+			executor.shutdownNow();
+		}
+	}
+}
@@ -1,7 +1,15 @@
 package org.mobicents.diameter.stack.parser;
 
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Date;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 
 import org.jdiameter.api.Avp;
 import org.jdiameter.api.AvpDataException;
@@ -58,6 +66,114 @@ public class AvpSetTest {
 		Assert.assertEquals("Wrong set size",0, set.size());
 		
 	}
+
+	@Test
+	public void indexedLookupTest() throws IOException, AvpDataException {
+		AvpSet set = elementParser.decodeAvpSet(new byte[0], 1);
+		for (int i = 0; i < 20; i++) {
+			set.addAvp(_CODE + (i % 4), i);
+		}
+		set.addAvp(_CODE, 100, _VENDOR, true, false);
+		Assert.assertEquals("Wrong avp value", 1, set.getAvp(_CODE + 1).getInteger32());
+		Assert.assertEquals("Wrong avp value", 100, set.getAvp(_CODE, _VENDOR).getInteger32());
+		Assert.assertNull("Unexpected avp", set.getAvp(_CODE + 4));
+
+		AvpSet selected = set.getAvps(_CODE);
+		Assert.assertEquals("Wrong set size", 6, selected.size());
+		int i = 0;
+		for (Avp avp : selected) {
+			Assert.assertEquals("Wrong avp order", i < 5 ? i * 4 : 100, avp.getInteger32());
+			i++;
+		}
+		Assert.assertEquals("Wrong set size", 5, set.getAvps(_CODE, 0).size());
+		Assert.assertEquals("Wrong set size", 0, set.getAvps(_CODE + 4).size());
+
+		// index must follow structural changes
+		set.removeAvpByIndex(0);
+		set.insertAvp(0, _CODE + 4, 42);
+		Assert.assertEquals("Wrong avp value", 4, set.getAvp(_CODE).getInteger32());
+		Assert.assertEquals("Wrong avp value", 42, set.getAvp(_CODE + 4).getInteger32());
+		Assert.assertEquals("Wrong set size", 5, set.getAvps(_CODE).size());
+	}
+
+	@Test
+	public void selectionSnapshotTest() throws IOException, AvpDataException {
+		AvpSet set = elementParser.decodeAvpSet(new byte[0], 1);
+		for (int i = 0; i < 10; i++) {
+			set.addAvp(_CODE, i);
+		}
+		AvpSet selected = set.getAvps(_CODE);
+		set.removeAvp(_CODE);
+		set.addAvp(_CODE, 10);
+		Assert.assertEquals("Wrong set size", 1, set.size());
+		Assert.assertEquals("Wrong set size", 10, selected.size());
+		Assert.assertEquals("Wrong avp value", 9, selected.getAvpByIndex(9).getInteger32());
+
+		// changing the selection must not touch the original set
+		selected.removeAvpByIndex(0);
+		selected.addAvp(_CODE, 11);
+		Assert.assertEquals("Wrong set size", 10, selected.size());
+		Assert.assertEquals("Wrong avp value", 1, selected.getAvp(_CODE).getInteger32());
+		Assert.assertEquals("Wrong set size", 1, set.size());
+	}
+
+	@Test
+	public void concurrentLookupTest() throws Exception {
+		final int threads = 4;
+		ExecutorService executor = Executors.newFixedThreadPool(threads);
+		try {
+			for (int round = 0; round < 2000; round++) {
+				final AvpSet set = elementParser.decodeAvpSet(new byte[0], 1);
+				for (int i = 0; i < 64; i++) {
+					set.addAvp(_CODE + (i % 16), i);
+				}
+				// all threads do the first lookup on the set at the same time
+				final CountDownLatch start = new CountDownLatch(1);
+				List<Future<Integer>> results = new ArrayList<Future<Integer>>();
+				for (int t = 0; t < threads; t++) {
+					results.add(executor.submit(new Callable<Integer>() {
+						public Integer call() throws Exception {
+							start.await();
+							int found = 0;
+							for (int code = 0; code < 16; code++) {
+								Assert.assertEquals("Wrong avp value", code, set.getAvp(_CODE + code).getInteger32());
+								found += set.getAvps(_CODE + code).size();
+							}
+							return found;
+						}
+					}));
+				}
+				start.countDown();
+				for (Future<Integer> result : results) {
+					Assert.assertEquals("Wrong avp count", 64, result.get(5, TimeUnit.SECONDS).intValue());
+				}
+			}
+		}
+		finally {
+			executor.shutdownNow();
+		}
+	}
+
+	@Test
+	public void decodedValuesTest() throws Exception {
+		AvpSet set = elementParser.decodeAvpSet(new byte[0], 1);
+		Date date = new Date(1234567000L);
+		set.addAvp(_CODE, date);
+		set.addAvp(_CODE + 1, 0xFFFFFFF0L, true);
+		set.addAvp(_CODE + 2, "a\u0000b\u00e9", false);
+		set.addAvp(_CODE + 3, "host.example.org", true);
+		AvpSet decoded = elementParser.decodeAvpSet(elementParser.encodeAvpSet(set));
+
+		Assert.assertEquals("Wrong date", date, decoded.getAvp(_CODE).getTime());
+		Assert.assertEquals("Wrong unsigned32", 0xFFFFFFF0L, decoded.getAvp(_CODE + 1).getUnsigned32());
+		Assert.assertEquals("Wrong integer32", -16, decoded.getAvp(_CODE + 1).getInteger32());
+		Avp utf8 = decoded.getAvp(_CODE + 2);
+		Assert.assertEquals("Wrong utf8 string", "ab\u00e9", utf8.getUTF8String());
+		Assert.assertSame("Value decoded twice", utf8.getUTF8String(), utf8.getUTF8String());
+		Avp identity = decoded.getAvp(_CODE + 3);
+		Assert.assertEquals("Wrong identity", "host.example.org", identity.getDiameterIdentity());
+		Assert.assertSame("Value decoded twice", identity.getDiameterIdentity(), identity.getDiameterIdentity());
+	}
 	
 	
 }
@@ -0,0 +1,105 @@
+package org.mobicents.diameter.stack.parser;
+
+import static org.jdiameter.client.impl.helpers.Parameters.ZeroCopyDecoding;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+import org.jdiameter.api.Avp;
+import org.jdiameter.api.AvpSet;
+import org.jdiameter.client.api.IMessage;
+import org.jdiameter.client.impl.helpers.EmptyConfiguration;
+import org.jdiameter.client.impl.parser.MessageParser;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class ForwardedEncodingTest {
+
+	private static final long _VENDOR = 10415;
+
+	private MessageParser copyParser = new MessageParser();
+	private MessageParser zeroCopyParser = new MessageParser(EmptyConfiguration.getInstance().add(ZeroCopyDecoding, true));
+
+	private byte[] createEncodedRequest() throws Exception {
+		IMessage message = copyParser.createEmptyMessage(272, 4);
+		message.setRequest(true);
+		message.setProxiable(true);
+		message.setHopByHopIdentifier(1234);
+		AvpSet avps = message.getAvps();
+		avps.addAvp(Avp.SESSION_ID, "client.example.org;1234;5678", false);
+		avps.addAvp(Avp.ORIGIN_HOST, "client.example.org", true);
+		avps.addAvp(Avp.ORIGIN_REALM, "example.org", true);
+		avps.addAvp(Avp.DESTINATION_REALM, "server.org", true);
+		avps.addAvp(Avp.AUTH_APPLICATION_ID, 4L, true);
+		avps.addAvp(Avp.CC_REQUEST_TYPE, 1);
+		avps.addAvp(Avp.CC_REQUEST_NUMBER, 7);
+		avps.addAvp(700, "odd", _VENDOR, true, false, true);
+		AvpSet proxyInfo = avps.addGroupedAvp(Avp.PROXY_INFO);
+		proxyInfo.addAvp(Avp.PROXY_HOST, "relay.example.org", true);
+		proxyInfo.addAvp(Avp.PROXY_STATE, "state", false);
+		AvpSet subscription = avps.addGroupedAvp(Avp.SUBSCRIPTION_ID);
+		subscription.addAvp(Avp.SUBSCRIPTION_ID_TYPE, 0);
+		subscription.addAvp(Avp.SUBSCRIPTION_ID_DATA, "351910000000", false);
+		return copyParser.encodeMessage(message).array();
+	}
+
+	private IMessage forward(MessageParser parser, byte[] encoded) throws Exception {
+		IMessage message = parser.createMessage(ByteBuffer.wrap(encoded.clone()));
+		message.getAvps().addAvp(Avp.ROUTE_RECORD, "client.example.org", true, false, true);
+		message.setHopByHopIdentifier(5678);
+		return message;
+	}
+
+	@Test
+	public void forwardTest() throws Exception {
+		byte[] encoded = createEncodedRequest();
+		byte[] copied = copyParser.encodeMessage(forward(copyParser, encoded)).array();
+		IMessage viewed = forward(zeroCopyParser, encoded);
+		Assert.assertEquals("Wrong message length", copied.length, zeroCopyParser.getMessageLength(viewed));
+		Assert.assertTrue("Forwarded message differs", Arrays.equals(copied, zeroCopyParser.encodeMessage(viewed).array()));
+
+		IMessage decoded = copyParser.createMessage(ByteBuffer.wrap(copied));
+		Assert.assertEquals("Wrong hop-by-hop id", 5678, decoded.getHopByHopIdentifier());
+		Assert.assertEquals("Wrong route record", "client.example.org", decoded.getAvps().getAvp(Avp.ROUTE_RECORD).getDiameterIdentity());
+		Assert.assertEquals("Wrong proxy state", "state",
+				decoded.getAvps().getAvp(Avp.PROXY_INFO).getGrouped().getAvp(Avp.PROXY_STATE).getUTF8String());
+	}
+
+	@Test
+	public void rewriteTest() throws Exception {
+		// anything but an append makes the received encoding stale
+		byte[] encoded = createEncodedRequest();
+		IMessage copied = forward(copyParser, encoded);
+		IMessage viewed = forward(zeroCopyParser, encoded);
+		copied.getAvps().removeAvp(Avp.PROXY_INFO);
+		viewed.getAvps().removeAvp(Avp.PROXY_INFO);
+		Assert.assertTrue("Forwarded message differs", Arrays.equals(copyParser.encodeMessage(copied).array(), zeroCopyParser.encodeMessage(viewed).array()));
+
+		copied = forward(copyParser, encoded);
+		viewed = forward(zeroCopyParser, encoded);
+		copied.getAvps().insertAvp(1, Avp.USER_NAME, "user", false);
+		viewed.getAvps().insertAvp(1, Avp.USER_NAME, "user", false);
+		Assert.assertTrue("Forwarded message differs", Arrays.equals(copyParser.encodeMessage(copied).array(), zeroCopyParser.encodeMessage(viewed).array()));
+	}
+
+	@Test
+	public void groupedChildTest() throws Exception {
+		// changes made inside a grouped AVP make its received encoding stale too
+		byte[] encoded = createEncodedRequest();
+		for (MessageParser parser : new MessageParser[] { copyParser, zeroCopyParser }) {
+			IMessage viewed = forward(parser, encoded);
+			viewed.getAvps().getAvp(Avp.PROXY_INFO).getGrouped().addAvp(Avp.PROXY_STATE, "more", false);
+			AvpSet subscription = viewed.getAvps().getAvp(Avp.SUBSCRIPTION_ID).getGrouped();
+			subscription.removeAvp(Avp.SUBSCRIPTION_ID_DATA);
+			subscription.addAvp(Avp.SUBSCRIPTION_ID_DATA, "351910000001", false);
+			byte[] forwarded = parser.encodeMessage(viewed).array();
+			Assert.assertEquals("Wrong message length", forwarded.length, parser.getMessageLength(viewed));
+
+			IMessage decoded = copyParser.createMessage(ByteBuffer.wrap(forwarded));
+			Assert.assertEquals("Proxy-Info change lost", 2, decoded.getAvps().getAvp(Avp.PROXY_INFO).getGrouped().getAvps(Avp.PROXY_STATE).size());
+			Assert.assertEquals("Subscription-Id change lost", "351910000001",
+					decoded.getAvps().getAvp(Avp.SUBSCRIPTION_ID).getGrouped().getAvp(Avp.SUBSCRIPTION_ID_DATA).getUTF8String());
+			Assert.assertEquals("Wrong route record", "client.example.org", decoded.getAvps().getAvp(Avp.ROUTE_RECORD).getDiameterIdentity());
+		}
+	}
+}
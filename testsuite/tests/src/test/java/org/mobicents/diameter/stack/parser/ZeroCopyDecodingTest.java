@@ -0,0 +1,108 @@
+package org.mobicents.diameter.stack.parser;
+
+import static org.jdiameter.client.impl.helpers.Parameters.ZeroCopyDecoding;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+import org.jdiameter.api.Avp;
+import org.jdiameter.api.AvpDataException;
+import org.jdiameter.api.AvpSet;
+import org.jdiameter.client.api.IMessage;
+import org.jdiameter.client.impl.helpers.EmptyConfiguration;
+import org.jdiameter.client.impl.parser.MessageParser;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class ZeroCopyDecodingTest {
+
+	private static final long _VENDOR = 10415;
+
+	private MessageParser copyParser = new MessageParser();
+	private MessageParser zeroCopyParser = new MessageParser(EmptyConfiguration.getInstance().add(ZeroCopyDecoding, true));
+
+	private ByteBuffer createEncodedMessage() throws Exception {
+		IMessage message = copyParser.createEmptyMessage(272, 4);
+		message.setRequest(true);
+		AvpSet avps = message.getAvps();
+		avps.addAvp(Avp.SESSION_ID, "host.example.org;1234;5678", false);
+		avps.addAvp(Avp.ORIGIN_HOST, "host.example.org", true);
+		avps.addAvp(Avp.AUTH_APPLICATION_ID, 4L, true);
+		avps.addAvp(Avp.CC_REQUEST_NUMBER, 7);
+		avps.addAvp(700, "odd", _VENDOR, true, false, true);
+		AvpSet grouped = avps.addGroupedAvp(Avp.VENDOR_SPECIFIC_APPLICATION_ID);
+		grouped.addAvp(Avp.VENDOR_ID, _VENDOR, true);
+		grouped.addAvp(Avp.AUTH_APPLICATION_ID, 4L, true);
+		return copyParser.encodeMessage(message);
+	}
+
+	@Test
+	public void decodeTest() throws Exception {
+		ByteBuffer encoded = createEncodedMessage();
+		IMessage copied = copyParser.createMessage(ByteBuffer.wrap(encoded.array().clone()));
+		IMessage viewed = zeroCopyParser.createMessage(ByteBuffer.wrap(encoded.array().clone()));
+
+		Assert.assertEquals("Wrong set size", copied.getAvps().size(), viewed.getAvps().size());
+		Assert.assertEquals("Wrong session id", copied.getSessionId(), viewed.getSessionId());
+		Assert.assertEquals("Wrong origin host", "host.example.org", viewed.getAvps().getAvp(Avp.ORIGIN_HOST).getDiameterIdentity());
+		Assert.assertEquals("Wrong app id", 4L, viewed.getAvps().getAvp(Avp.AUTH_APPLICATION_ID).getUnsigned32());
+		Assert.assertEquals("Wrong request number", 7, viewed.getAvps().getAvp(Avp.CC_REQUEST_NUMBER).getInteger32());
+		Avp vendorAvp = viewed.getAvps().getAvp(700, _VENDOR);
+		Assert.assertNotNull("Missing vendor avp", vendorAvp);
+		Assert.assertEquals("Wrong padded value", "odd", vendorAvp.getUTF8String());
+		Assert.assertTrue("Wrong raw data", Arrays.equals("odd".getBytes("iso-8859-1"), vendorAvp.getRaw()));
+
+		AvpSet grouped = viewed.getAvps().getAvp(Avp.VENDOR_SPECIFIC_APPLICATION_ID).getGrouped();
+		Assert.assertEquals("Wrong grouped size", 2, grouped.size());
+		Assert.assertEquals("Wrong grouped vendor", _VENDOR, grouped.getAvp(Avp.VENDOR_ID).getUnsigned32());
+	}
+
+	@Test
+	public void reencodeTest() throws Exception {
+		ByteBuffer encoded = createEncodedMessage();
+		IMessage viewed = zeroCopyParser.createMessage(ByteBuffer.wrap(encoded.array().clone()));
+		Assert.assertTrue("Re-encoded message differs", Arrays.equals(encoded.array(), zeroCopyParser.encodeMessage(viewed).array()));
+		// touching a grouped avp must not change the encoding
+		viewed.getAvps().getAvp(Avp.VENDOR_SPECIFIC_APPLICATION_ID).getGrouped();
+		Assert.assertTrue("Re-encoded message differs", Arrays.equals(encoded.array(), zeroCopyParser.encodeMessage(viewed).array()));
+	}
+
+	@Test
+	public void decodeSliceTest() throws Exception {
+		// a message in the middle of a receive buffer, as the TCP transport passes it
+		byte[] encoded = createEncodedMessage().array();
+		byte[] storage = new byte[encoded.length + 16];
+		System.arraycopy(encoded, 0, storage, 8, encoded.length);
+		IMessage copied = copyParser.createMessage(ByteBuffer.wrap(storage, 8, encoded.length));
+		IMessage viewed = zeroCopyParser.createMessage(ByteBuffer.wrap(storage, 8, encoded.length));
+		// the buffer is reused once createMessage returns
+		Arrays.fill(storage, (byte) 0);
+
+		Assert.assertEquals("Wrong session id", "host.example.org;1234;5678", copied.getSessionId());
+		Assert.assertEquals("Wrong session id", "host.example.org;1234;5678", viewed.getSessionId());
+		Assert.assertTrue("Re-encoded message differs", Arrays.equals(encoded, copyParser.encodeMessage(copied).array()));
+		Assert.assertTrue("Re-encoded message differs", Arrays.equals(encoded, zeroCopyParser.encodeMessage(viewed).array()));
+	}
+
+	@Test
+	public void truncatedAddressTest() throws Exception {
+		// IPv4 address followed by the bytes of the next avp
+		byte[] data = {0, 0, 0, 1, 10, 0, 0, 1, 0, 0, 1, 7};
+		Assert.assertEquals("Wrong address", "10.0.0.1", copyParser.bytesToAddress(data, 2, 6).getHostAddress());
+		try {
+			copyParser.bytesToAddress(data, 2, 4);
+			Assert.fail("Truncated IPv4 address decoded");
+		}
+		catch (AvpDataException e) {
+			// expected
+		}
+		try {
+			// IPv6 family with the length of an IPv4 address
+			copyParser.bytesToAddress(new byte[] {0, 2, 10, 0, 0, 1, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0}, 0, 6);
+			Assert.fail("Truncated IPv6 address decoded");
+		}
+		catch (AvpDataException e) {
+			// expected
+		}
+	}
+}
@@ -0,0 +1,108 @@
+package org.mobicents.diameter.stack.router;
+
+import static org.jdiameter.client.impl.router.OverloadReportTable.HOST_REPORT;
+import static org.jdiameter.client.impl.router.OverloadReportTable.REALM_REPORT;
+
+import org.jdiameter.api.Avp;
+import org.jdiameter.api.AvpSet;
+import org.jdiameter.client.api.IMessage;
+import org.jdiameter.client.impl.parser.MessageParser;
+import org.jdiameter.client.impl.router.OverloadReportTable;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class OverloadReportTableTest {
+
+	private static final String HOST = "ocs.example.org";
+	private static final String REALM = "example.org";
+
+	// size() looks at the current time
+	private final long now = System.currentTimeMillis();
+
+	private static int throttled(OverloadReportTable table, int type, String key, int requests, long now) {
+		int count = 0;
+		for (int i = 0; i < requests; i++) {
+			if (type == HOST_REPORT ? table.throttleHost(key, now) : table.throttleRealm(key, now)) {
+				count++;
+			}
+		}
+		return count;
+	}
+
+	@Test
+	public void lossTest() {
+		OverloadReportTable table = new OverloadReportTable();
+		Assert.assertEquals(0, throttled(table, HOST_REPORT, HOST, 100, now));
+
+		Assert.assertTrue(table.update(HOST_REPORT, HOST, 1, 30, 10, now));
+		Assert.assertEquals(30, throttled(table, HOST_REPORT, HOST, 100, now));
+		// dropped requests are spread over the requests
+		Assert.assertEquals(3, throttled(table, HOST_REPORT, HOST, 10, now));
+		Assert.assertEquals(33, table.getThrottled());
+		// host and realm reports are apart
+		Assert.assertEquals(0, throttled(table, REALM_REPORT, HOST, 100, now));
+		Assert.assertTrue(table.isReported(HOST, now));
+		Assert.assertEquals(1, table.size());
+
+		Assert.assertTrue(table.update(REALM_REPORT, REALM, 1, 100, 10, now));
+		Assert.assertEquals(100, throttled(table, REALM_REPORT, REALM, 100, now));
+		Assert.assertEquals(2, table.size());
+	}
+
+	@Test
+	public void sequenceTest() {
+		OverloadReportTable table = new OverloadReportTable();
+		Assert.assertTrue(table.update(HOST_REPORT, HOST, 5, 50, 10, now));
+		// older and replayed reports are ignored
+		Assert.assertFalse(table.update(HOST_REPORT, HOST, 4, 100, 10, now));
+		Assert.assertFalse(table.update(HOST_REPORT, HOST, 5, 100, 10, now));
+		Assert.assertEquals(50, throttled(table, HOST_REPORT, HOST, 100, now));
+
+		// no validity ends the overload, late answers do not restore it
+		Assert.assertTrue(table.update(HOST_REPORT, HOST, 6, 50, 0, now));
+		Assert.assertEquals(0, throttled(table, HOST_REPORT, HOST, 100, now));
+		Assert.assertFalse(table.isReported(HOST, now));
+		Assert.assertFalse(table.update(HOST_REPORT, HOST, 5, 50, 10, now));
+		Assert.assertEquals(0, table.size());
+	}
+
+	@Test
+	public void expiryTest() {
+		OverloadReportTable table = new OverloadReportTable();
+		table.update(HOST_REPORT, HOST, 1, 100, 10, now);
+		Assert.assertTrue(table.throttleHost(HOST, now + 9999));
+		Assert.assertFalse(table.throttleHost(HOST, now + 10000));
+		Assert.assertFalse(table.isReported(HOST, now + 10000));
+		// the sequence number of an expired report does not hold anymore
+		Assert.assertTrue(table.update(HOST_REPORT, HOST, 1, 100, 10, now + 10000));
+	}
+
+	@Test
+	public void avpTest() throws Exception {
+		IMessage answer = new MessageParser().createEmptyMessage(272, 4);
+		AvpSet avps = answer.getAvps();
+		Assert.assertFalse(OverloadReportTable.isSupported(avps));
+		OverloadReportTable.addSupportedFeatures(avps);
+		OverloadReportTable.addOverloadReport(avps, 7, HOST_REPORT, 25, 30);
+		Assert.assertTrue(OverloadReportTable.isSupported(avps));
+
+		AvpSet olr = avps.getAvp(Avp.OC_OLR, 0).getGrouped();
+		Assert.assertEquals(7, olr.getAvp(Avp.OC_SEQUENCE_NUMBER, 0).getUnsigned64());
+		Assert.assertEquals(HOST_REPORT, olr.getAvp(Avp.OC_REPORT_TYPE, 0).getInteger32());
+		Assert.assertEquals(25, olr.getAvp(Avp.OC_REDUCTION_PERCENTAGE, 0).getUnsigned32());
+		Assert.assertEquals(30, olr.getAvp(Avp.OC_VALIDITY_DURATION, 0).getUnsigned32());
+	}
+
+	@Test
+	public void answerTest() throws Exception {
+		MessageParser parser = new MessageParser();
+		IMessage supported = parser.createEmptyMessage(272, 4);
+		supported.setRequest(true);
+		supported.setOverloadControl(true);
+		IMessage unsupported = parser.createEmptyMessage(272, 4);
+		unsupported.setRequest(true);
+		// each answer follows its own request
+		Assert.assertTrue(((IMessage) supported.createAnswer(2001)).isOverloadControl());
+		Assert.assertFalse(((IMessage) unsupported.createAnswer(2001)).isOverloadControl());
+	}
+}
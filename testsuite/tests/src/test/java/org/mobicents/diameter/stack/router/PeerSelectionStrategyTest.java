@@ -0,0 +1,104 @@
+package org.mobicents.diameter.stack.router;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.jdiameter.client.api.controller.IPeer;
+import org.jdiameter.client.api.router.IPeerSelectionStrategy;
+import org.jdiameter.client.impl.router.LatencyPeerSelectionStrategy;
+import org.jdiameter.client.impl.router.LeastOutstandingPeerSelectionStrategy;
+import org.jdiameter.client.impl.router.RatingPeerSelectionStrategy;
+import org.jdiameter.client.impl.router.WeightedRoundRobinPeerSelectionStrategy;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class PeerSelectionStrategyTest {
+
+	private static IPeer peer(final int rating, final int pending, final long latency) {
+		return (IPeer) Proxy.newProxyInstance(IPeer.class.getClassLoader(), new Class[] {IPeer.class}, new InvocationHandler() {
+			public Object invoke(Object proxy, Method method, Object[] args) {
+				String name = method.getName();
+				if (name.equals("getRating")) {
+					return rating;
+				}
+				if (name.equals("getPendingRequestCount")) {
+					return pending;
+				}
+				if (name.equals("getLatency")) {
+					return latency;
+				}
+				if (name.equals("hashCode")) {
+					return System.identityHashCode(proxy);
+				}
+				if (name.equals("equals")) {
+					return proxy == args[0];
+				}
+				return null;
+			}
+		});
+	}
+
+	private static Map<IPeer, Integer> distribution(IPeerSelectionStrategy strategy, IPeer[] peers, int count) {
+		Map<IPeer, Integer> result = new HashMap<IPeer, Integer>();
+		for (IPeer peer : peers) {
+			result.put(peer, 0);
+		}
+		for (int i = 0; i < count; i++) {
+			IPeer selected = strategy.select(peers, null);
+			result.put(selected, result.get(selected) + 1);
+		}
+		return result;
+	}
+
+	@Test
+	public void ratingTest() {
+		IPeer low = peer(1, 0, -1);
+		IPeer high = peer(5, 0, -1);
+		Map<IPeer, Integer> result = distribution(new RatingPeerSelectionStrategy(), new IPeer[] {low, high}, 100);
+		Assert.assertEquals(Integer.valueOf(100), result.get(high));
+	}
+
+	@Test
+	public void weightedRoundRobinTest() {
+		IPeer one = peer(1, 0, -1);
+		IPeer three = peer(3, 0, -1);
+		IPeer unrated = peer(0, 0, -1);
+		Map<IPeer, Integer> result = distribution(new WeightedRoundRobinPeerSelectionStrategy(), new IPeer[] {one, three, unrated}, 500);
+		Assert.assertEquals(Integer.valueOf(100), result.get(one));
+		Assert.assertEquals(Integer.valueOf(300), result.get(three));
+		Assert.assertEquals(Integer.valueOf(100), result.get(unrated));
+	}
+
+	@Test
+	public void leastOutstandingTest() {
+		IPeer busy = peer(10, 50, -1);
+		IPeer idle1 = peer(1, 2, -1);
+		IPeer idle2 = peer(1, 2, -1);
+		Map<IPeer, Integer> result = distribution(new LeastOutstandingPeerSelectionStrategy(), new IPeer[] {busy, idle1, idle2}, 100);
+		Assert.assertEquals(Integer.valueOf(0), result.get(busy));
+		Assert.assertEquals(Integer.valueOf(50), result.get(idle1));
+		Assert.assertEquals(Integer.valueOf(50), result.get(idle2));
+	}
+
+	@Test
+	public void latencyTest() {
+		IPeer slow = peer(1, 0, 100000);
+		IPeer fast1 = peer(1, 0, 1000);
+		IPeer fast2 = peer(1, 1, 1000);
+		Map<IPeer, Integer> result = distribution(new LatencyPeerSelectionStrategy(), new IPeer[] {slow, fast1, fast2}, 3000);
+		// the slow peer only wins when it is not sampled at all, which is impossible with three peers
+		Assert.assertEquals(Integer.valueOf(0), result.get(slow));
+		Assert.assertTrue(result.get(fast1) > result.get(fast2));
+	}
+
+	@Test
+	public void latencyProbesNewPeerTest() {
+		IPeer known = peer(1, 0, 1000);
+		IPeer fresh = peer(1, 0, -1);
+		Map<IPeer, Integer> result = distribution(new LatencyPeerSelectionStrategy(), new IPeer[] {known, fresh}, 100);
+		Assert.assertEquals(Integer.valueOf(100), result.get(fresh));
+	}
+}
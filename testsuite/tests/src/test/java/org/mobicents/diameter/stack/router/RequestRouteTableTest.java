@@ -0,0 +1,104 @@
+package org.mobicents.diameter.stack.router;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import org.jdiameter.client.impl.router.RequestRouteTable;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class RequestRouteTableTest {
+
+	private static final long LIVE = Long.MAX_VALUE;
+
+	@Test
+	public void putGetRemoveTest() {
+		RequestRouteTable<String> table = new RequestRouteTable<String>(16);
+		long key = RequestRouteTable.key(0xFFFFFFFFL, 0x12345678L);
+		Assert.assertNull(table.put(key, "a", LIVE));
+		Assert.assertEquals("a", table.get(key, 0));
+		Assert.assertNull(table.get(RequestRouteTable.key(0xFFFFFFFFL, 0x12345679L), 0));
+		Assert.assertEquals("a", table.put(key, "b", LIVE));
+		Assert.assertEquals(1, table.size());
+		Assert.assertEquals("b", table.remove(key));
+		Assert.assertNull(table.get(key, 0));
+		Assert.assertEquals(0, table.size());
+	}
+
+	@Test
+	public void replaceTest() {
+		RequestRouteTable<String> table = new RequestRouteTable<String>(16);
+		long key = RequestRouteTable.key(1, 2);
+		Assert.assertTrue(table.replace(key, null, "a", LIVE));
+		// a live entry is only replaced by whoever saw it
+		Assert.assertFalse(table.replace(key, null, "b", LIVE));
+		Assert.assertFalse(table.replace(key, new String("a"), "b", LIVE));
+		String a = table.get(key, 0);
+		Assert.assertTrue(table.replace(key, a, "b", LIVE));
+		Assert.assertEquals("b", table.get(key, 0));
+		Assert.assertEquals(1, table.size());
+		// null value removes the entry
+		Assert.assertTrue(table.replace(key, table.get(key, 0), null, 0));
+		Assert.assertNull(table.get(key, 0));
+		Assert.assertEquals(0, table.size());
+		// an expired entry counts as no entry
+		table.put(key, "c", 1);
+		Assert.assertTrue(table.replace(key, null, "d", LIVE));
+		Assert.assertEquals("d", table.get(key, 0));
+	}
+
+	@Test
+	public void expiryTest() {
+		RequestRouteTable<String> table = new RequestRouteTable<String>(16);
+		table.put(1, "a", 1000);
+		Assert.assertEquals("a", table.get(1, 999));
+		Assert.assertNull(table.get(1, 1000));
+		Assert.assertEquals(0, table.size());
+		Assert.assertEquals(1, table.getExpiredCount());
+	}
+
+	@Test
+	public void growWithoutLossTest() {
+		// far more live entries than the initial capacity, none may be dropped
+		RequestRouteTable<Long> table = new RequestRouteTable<Long>(16);
+		for (long i = 0; i < 100000; i++) {
+			table.put(i, i, LIVE);
+		}
+		Assert.assertEquals(100000, table.size());
+		for (long i = 0; i < 100000; i++) {
+			Assert.assertEquals(Long.valueOf(i), table.get(i, 0));
+		}
+	}
+
+	@Test
+	public void purgeExpiredTest() {
+		RequestRouteTable<Long> table = new RequestRouteTable<Long>(16);
+		for (long i = 0; i < 100000; i++) {
+			table.put(i, i, 1);
+		}
+		Assert.assertTrue("Expired entries were not purged", table.size() < 100000);
+		Assert.assertEquals(100000, table.size() + table.getExpiredCount());
+	}
+
+	@Test
+	public void randomOperationsTest() {
+		RequestRouteTable<Long> table = new RequestRouteTable<Long>(64);
+		Map<Long, Long> reference = new HashMap<Long, Long>();
+		Random random = new Random(7);
+		for (int i = 0; i < 500000; i++) {
+			long key = random.nextInt(4096);
+			switch (random.nextInt(3)) {
+			case 0:
+				Assert.assertEquals(reference.put(key, (long) i), table.put(key, (long) i, LIVE));
+				break;
+			case 1:
+				Assert.assertEquals(reference.remove(key), table.remove(key));
+				break;
+			default:
+				Assert.assertEquals(reference.get(key), table.get(key, 0));
+			}
+		}
+		Assert.assertEquals(reference.size(), table.size());
+	}
+}
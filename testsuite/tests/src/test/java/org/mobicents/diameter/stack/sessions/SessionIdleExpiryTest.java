@@ -0,0 +1,143 @@
+package org.mobicents.diameter.stack.sessions;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.jdiameter.api.ApplicationId;
+import org.jdiameter.api.BaseSession;
+import org.jdiameter.api.Session;
+import org.jdiameter.api.app.AppSession;
+import org.jdiameter.common.api.data.ISessionExpiryListener;
+import org.jdiameter.common.impl.data.LocalDataSource;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class SessionIdleExpiryTest {
+
+	private static final int SESSIONS = 100000;
+
+	private static class TestSession implements AppSession {
+
+		private final String sessionId;
+		private final ApplicationId appId;
+		private final long creationTime = System.currentTimeMillis();
+		private boolean released;
+
+		TestSession(String sessionId, ApplicationId appId) {
+			this.sessionId = sessionId;
+			this.appId = appId;
+		}
+
+		public long getCreationTime() {
+			return creationTime;
+		}
+
+		public long getLastAccessedTime() {
+			return creationTime;
+		}
+
+		public boolean isValid() {
+			return !released;
+		}
+
+		public void release() {
+			released = true;
+		}
+
+		public boolean isAppSession() {
+			return appId != null;
+		}
+
+		public boolean isReplicable() {
+			return false;
+		}
+
+		public String getSessionId() {
+			return sessionId;
+		}
+
+		public boolean isStateless() {
+			return true;
+		}
+
+		public ApplicationId getSessionAppId() {
+			return appId;
+		}
+
+		public List<Session> getSessions() {
+			return null;
+		}
+	}
+
+	@Test
+	public void expiryTest() throws Exception {
+		LocalDataSource datasource = new LocalDataSource();
+		final List<BaseSession> expired = new ArrayList<BaseSession>();
+		datasource.setSessionExpiryListener(new ISessionExpiryListener() {
+			public void sessionExpired(BaseSession session) {
+				expired.add(session);
+			}
+		});
+		TestSession idle = new TestSession("idle;1", null);
+		TestSession used = new TestSession("used;1", null);
+		datasource.addSession(idle);
+		datasource.addSession(used);
+
+		long now = System.currentTimeMillis();
+		Assert.assertEquals("Expired without time out", 0, datasource.sweep(now + 100000));
+
+		datasource.setSessionIdleTimeOut(0, 1000);
+		Assert.assertEquals("Expired before time out", 0, datasource.sweep(now + 500));
+		Thread.sleep(20);
+		datasource.getSession("used;1");
+		Assert.assertEquals("Wrong expired count", 1, datasource.sweep(now + 1010));
+		Assert.assertEquals("Wrong session expired", idle, expired.get(0));
+		Assert.assertFalse("Expired session not released", idle.isValid());
+		Assert.assertTrue("Used session released", used.isValid());
+		Assert.assertNull(datasource.getSession("idle;1"));
+		Assert.assertEquals(1, datasource.getSessionCount());
+		Assert.assertEquals(1, datasource.getExpiredSessionCount());
+	}
+
+	@Test
+	public void applicationTimeOutTest() throws Exception {
+		LocalDataSource datasource = new LocalDataSource();
+		datasource.setSessionIdleTimeOut(4, 1000);
+		TestSession cca = new TestSession("cca;1", ApplicationId.createByAuthAppId(4));
+		TestSession acc = new TestSession("acc;1", ApplicationId.createByAccAppId(3));
+		datasource.addSession(cca);
+		datasource.addSession(acc);
+
+		long now = System.currentTimeMillis();
+		Assert.assertEquals("Wrong expired count", 1, datasource.sweep(now + 2000));
+		Assert.assertFalse(cca.isValid());
+		Assert.assertTrue(acc.isValid());
+
+		datasource.setSessionIdleTimeOut(0, 5000);
+		Assert.assertEquals("Expired before default time out", 0, datasource.sweep(now + 2000));
+		Assert.assertEquals("Wrong expired count", 1, datasource.sweep(now + 6000));
+		Assert.assertEquals(0, datasource.getSessionCount());
+		Assert.assertEquals(2, datasource.getExpiredSessionCount());
+	}
+
+	@Test
+	public void incrementalSweepTest() throws Exception {
+		// every sweep only visits a thirtieth of the table
+		LocalDataSource datasource = new LocalDataSource();
+		datasource.setSessionIdleTimeOut(0, 1000);
+		for (int i = 0; i < SESSIONS; i++) {
+			datasource.addSession(new TestSession("host;" + i, null));
+		}
+		long now = System.currentTimeMillis() + 2000;
+		int sweeps = 0;
+		while (datasource.getSessionCount() > 0) {
+			int count = datasource.getSessionCount();
+			int slice = Math.max(256, count / 30 + 1);
+			int expired = datasource.sweep(now);
+			Assert.assertEquals("Sweep visited a wrong count of entries", Math.min(slice, count), expired);
+			sweeps++;
+		}
+		Assert.assertEquals(SESSIONS, datasource.getExpiredSessionCount());
+		Assert.assertTrue("Table was swept at once", sweeps > 1);
+	}
+}
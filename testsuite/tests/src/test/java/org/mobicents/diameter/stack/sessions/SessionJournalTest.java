@@ -0,0 +1,303 @@
+package org.mobicents.diameter.stack.sessions;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadFactory;
+
+import org.jdiameter.api.ApplicationId;
+import org.jdiameter.api.Avp;
+import org.jdiameter.api.cca.ClientCCASession;
+import org.jdiameter.api.cca.ServerCCASession;
+import org.jdiameter.api.gx.ServerGxSession;
+import org.jdiameter.client.api.IMessage;
+import org.jdiameter.client.impl.parser.MessageParser;
+import org.jdiameter.common.api.app.cca.ClientCCASessionState;
+import org.jdiameter.common.api.app.cca.ServerCCASessionState;
+import org.jdiameter.common.api.app.gx.ServerGxSessionState;
+import org.jdiameter.common.api.timer.ITimerFacility;
+import org.jdiameter.common.api.timer.ITimerHandle;
+import org.jdiameter.common.impl.data.journal.ClientCCAJournalData;
+import org.jdiameter.common.impl.data.journal.IJournaledSessionData;
+import org.jdiameter.common.impl.data.journal.ServerCCAJournalData;
+import org.jdiameter.common.impl.data.journal.ServerGxJournalData;
+import org.jdiameter.common.impl.data.journal.SessionJournal;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+public class SessionJournalTest {
+
+	private static final ApplicationId CCA_APP_ID = ApplicationId.createByAuthAppId(4);
+
+	private MessageParser parser = new MessageParser();
+	private File file;
+
+	private static class TestTimer implements ITimerHandle {
+
+		private static final long serialVersionUID = 1L;
+
+		private final String timerName;
+		private final long expiryTime;
+
+		TestTimer(String timerName, long expiryTime) {
+			this.timerName = timerName;
+			this.expiryTime = expiryTime;
+		}
+
+		public String getTimerName() {
+			return timerName;
+		}
+
+		public long getExpiryTime() {
+			return expiryTime;
+		}
+	}
+
+	private static class TestTimerFacility implements ITimerFacility {
+
+		private List<String> scheduled = new ArrayList<String>();
+		private List<Long> delays = new ArrayList<Long>();
+
+		public Serializable schedule(String sessionId, String timerName, long miliseconds) {
+			scheduled.add(sessionId + "/" + timerName);
+			delays.add(miliseconds);
+			return new TestTimer(timerName, System.currentTimeMillis() + miliseconds);
+		}
+
+		public void cancel(Serializable id) {
+		}
+
+		public void stop() {
+		}
+	}
+
+	@Before
+	public void setUp() throws Exception {
+		file = File.createTempFile("sessions", ".journal");
+		file.delete();
+	}
+
+	@After
+	public void tearDown() {
+		file.delete();
+	}
+
+	private ServerCCAJournalData newServerSession(SessionJournal journal, String sessionId) {
+		ServerCCAJournalData data = (ServerCCAJournalData) journal.newSessionData(ServerCCASession.class, sessionId);
+		data.setApplicationId(CCA_APP_ID);
+		data.setStateless(false);
+		data.setServerCCASessionState(ServerCCASessionState.OPEN);
+		return data;
+	}
+
+	@Test
+	public void recoveryTest() throws Exception {
+		SessionJournal journal = new SessionJournal(file, 64 * 1024, parser);
+		Assert.assertTrue(journal.open().isEmpty());
+
+		long now = System.currentTimeMillis();
+		ServerCCAJournalData server = newServerSession(journal, "server;1");
+		server.setTccTimerId(new TestTimer("TCC_CCASERVER_TIMER", now + 60000));
+
+		ClientCCAJournalData client = (ClientCCAJournalData) journal.newSessionData(ClientCCASession.class, "client;1");
+		client.setApplicationId(CCA_APP_ID);
+		client.setEventBased(false);
+		client.setClientCCASessionState(ClientCCASessionState.PENDING_UPDATE);
+		IMessage request = parser.createEmptyMessage(272, 4);
+		request.setRequest(true);
+		request.getAvps().addAvp(Avp.SESSION_ID, "client;1", false);
+		request.getAvps().addAvp(Avp.CC_REQUEST_NUMBER, 3);
+		client.setTxTimerRequest(request);
+		client.setTxTimerId(new TestTimer("CCA_CLIENT_TX_TIMER", now - 1000));
+		client.setGatheredCCFH(1);
+
+		ServerGxJournalData gx = (ServerGxJournalData) journal.newSessionData(ServerGxSession.class, "gx;1");
+		gx.setApplicationId(ApplicationId.createByAuthAppId(10415, 16777238));
+		gx.setServerGxSessionState(ServerGxSessionState.OPEN);
+
+		ServerCCAJournalData removed = newServerSession(journal, "server;2");
+		removed.remove();
+		journal.close();
+
+		// a torn record after the last one is ignored
+		RandomAccessFile raf = new RandomAccessFile(file, "rw");
+		long end = 4;
+		raf.seek(end);
+		for (int length = raf.readInt(); length != 0; length = raf.readInt()) {
+			end += 4 + length;
+			raf.seek(end);
+		}
+		raf.seek(end);
+		raf.writeInt(4096);
+		raf.writeByte(9);
+		raf.close();
+
+		journal = new SessionJournal(file, 64 * 1024, parser);
+		Map<String, IJournaledSessionData> recovered = journal.open();
+		Assert.assertEquals("Wrong recovered sessions " + recovered.keySet(), 3, recovered.size());
+		Assert.assertNull("Removed session recovered", recovered.get("server;2"));
+
+		ServerCCAJournalData server2 = (ServerCCAJournalData) recovered.get("server;1");
+		Assert.assertEquals(CCA_APP_ID, server2.getApplicationId());
+		Assert.assertFalse(server2.isStateless());
+		Assert.assertEquals(ServerCCASessionState.OPEN, server2.getServerCCASessionState());
+
+		ClientCCAJournalData client2 = (ClientCCAJournalData) recovered.get("client;1");
+		Assert.assertFalse(client2.isEventBased());
+		Assert.assertEquals(ClientCCASessionState.PENDING_UPDATE, client2.getClientCCASessionState());
+		Assert.assertEquals(1, client2.getGatheredCCFH());
+		Assert.assertNull(client2.getBuffer());
+		Assert.assertEquals(3, client2.getTxTimerRequest().getAvps().getAvp(Avp.CC_REQUEST_NUMBER).getInteger32());
+
+		ServerGxJournalData gx2 = (ServerGxJournalData) recovered.get("gx;1");
+		Assert.assertEquals(ServerGxSessionState.OPEN, gx2.getServerGxSessionState());
+		Assert.assertEquals(16777238, gx2.getApplicationId().getAuthAppId());
+		Assert.assertEquals(10415, gx2.getApplicationId().getVendorId());
+
+		TestTimerFacility timerFacility = new TestTimerFacility();
+		journal.rearmTimers(timerFacility, 1000, recovered.values());
+		Assert.assertEquals(2, timerFacility.scheduled.size());
+		for (int i = 0; i < timerFacility.scheduled.size(); i++) {
+			long delay = timerFacility.delays.get(i);
+			if (timerFacility.scheduled.get(i).equals("server;1/TCC_CCASERVER_TIMER")) {
+				Assert.assertTrue("Wrong Tcc delay " + delay, delay > 50000 && delay <= 60000);
+			}
+			else {
+				Assert.assertEquals("client;1/CCA_CLIENT_TX_TIMER", timerFacility.scheduled.get(i));
+				Assert.assertEquals("Expired timer not delayed", 1000, delay);
+			}
+		}
+		Assert.assertTrue(server2.getTccTimerId() instanceof TestTimer);
+		journal.close();
+	}
+
+	@Test
+	public void compactionTest() throws Exception {
+		// a few sessions changing all the time fit in a small journal
+		SessionJournal journal = new SessionJournal(file, 64 * 1024, parser);
+		journal.open();
+		ServerCCAJournalData[] sessions = new ServerCCAJournalData[100];
+		for (int i = 0; i < sessions.length; i++) {
+			sessions[i] = newServerSession(journal, "server;" + i);
+		}
+		for (int i = 0; i < 100000; i++) {
+			sessions[i % sessions.length].setServerCCASessionState(i % 2 == 0 ? ServerCCASessionState.IDLE : ServerCCASessionState.OPEN);
+		}
+		// changes go on in new regions until the journal thread has compacted the journal
+		journal.compact();
+		Assert.assertEquals("Journal grew", 64 * 1024, file.length());
+
+		// and it grows when the live sessions do not fit
+		for (int i = sessions.length; i < 5000; i++) {
+			newServerSession(journal, "server;" + i);
+		}
+		Assert.assertTrue("Journal did not grow", file.length() > 64 * 1024);
+		journal.close();
+
+		journal = new SessionJournal(file, 64 * 1024, parser);
+		Map<String, IJournaledSessionData> recovered = journal.open();
+		Assert.assertEquals(5000, recovered.size());
+		Assert.assertEquals(ServerCCASessionState.OPEN, ((ServerCCAJournalData) recovered.get("server;99")).getServerCCASessionState());
+		Assert.assertEquals(ServerCCASessionState.IDLE, ((ServerCCAJournalData) recovered.get("server;98")).getServerCCASessionState());
+		journal.close();
+	}
+
+	@Test
+	public void regionTest() throws Exception {
+		// changes never wait for the journal thread, they go on in the next regions of the file
+		final CountDownLatch journalThread = new CountDownLatch(1);
+		SessionJournal journal = new SessionJournal(file, 64 * 1024, parser);
+		journal.setThreadFactory(new ThreadFactory() {
+			public Thread newThread(final Runnable runnable) {
+				Thread thread = new Thread() {
+					@Override
+					public void run() {
+						try {
+							journalThread.await();
+						}
+						catch (InterruptedException e) {
+							return;
+						}
+						runnable.run();
+					}
+				};
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+		journal.open();
+		ServerCCAJournalData[] sessions = new ServerCCAJournalData[100];
+		for (int i = 0; i < sessions.length; i++) {
+			sessions[i] = newServerSession(journal, "server;" + i);
+		}
+		for (int i = 0; i < 10000; i++) {
+			sessions[i % sessions.length].setServerCCASessionState(i % 2 == 0 ? ServerCCASessionState.IDLE : ServerCCASessionState.OPEN);
+		}
+		sessions[0].remove();
+		Assert.assertTrue("Journal did not grow", file.length() > 2 * 64 * 1024);
+		// the pending compaction gives up once the journal is closed
+		journalThread.countDown();
+		journal.close();
+		Assert.assertTrue("Journal compacted", file.length() > 2 * 64 * 1024);
+
+		journal = new SessionJournal(file, 64 * 1024, parser);
+		Map<String, IJournaledSessionData> recovered = journal.open();
+		Assert.assertEquals(99, recovered.size());
+		Assert.assertEquals(ServerCCASessionState.OPEN, ((ServerCCAJournalData) recovered.get("server;99")).getServerCCASessionState());
+		Assert.assertEquals(ServerCCASessionState.IDLE, ((ServerCCAJournalData) recovered.get("server;98")).getServerCCASessionState());
+		journal.close();
+	}
+
+	@Test
+	public void concurrentCompactionTest() throws Exception {
+		// sessions keep changing while the journal is compacted, the last change of each one is kept
+		final SessionJournal journal = new SessionJournal(file, 64 * 1024, parser);
+		journal.open();
+		Thread[] threads = new Thread[4];
+		final Throwable[] failure = new Throwable[1];
+		for (int t = 0; t < threads.length; t++) {
+			final int thread = t;
+			threads[t] = new Thread() {
+				@Override
+				public void run() {
+					try {
+						ServerCCAJournalData[] sessions = new ServerCCAJournalData[50];
+						for (int i = 0; i < sessions.length; i++) {
+							sessions[i] = newServerSession(journal, "server;" + thread + ";" + i);
+						}
+						for (int i = 0; i < 50000; i++) {
+							sessions[i % sessions.length].setServerCCASessionState(i % 2 == 0 ? ServerCCASessionState.IDLE : ServerCCASessionState.OPEN);
+						}
+					}
+					catch (Throwable e) {
+						failure[0] = e;
+					}
+				}
+			};
+			threads[t].start();
+		}
+		for (Thread thread : threads) {
+			thread.join();
+		}
+		Assert.assertNull("Session update failed", failure[0]);
+		journal.close();
+
+		SessionJournal reopened = new SessionJournal(file, 64 * 1024, parser);
+		Map<String, IJournaledSessionData> recovered = reopened.open();
+		Assert.assertEquals(threads.length * 50, recovered.size());
+		for (int t = 0; t < threads.length; t++) {
+			for (int i = 0; i < 50; i++) {
+				// the last change of session i is number 49950 + i
+				ServerCCASessionState state = i % 2 == 0 ? ServerCCASessionState.IDLE : ServerCCASessionState.OPEN;
+				Assert.assertEquals(state, ((ServerCCAJournalData) recovered.get("server;" + t + ";" + i)).getServerCCASessionState());
+			}
+		}
+		reopened.close();
+	}
+}
@@ -0,0 +1,63 @@
+package org.mobicents.diameter.stack.statistic;
+
+import org.jdiameter.common.impl.statistic.LatencyHistogram;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class LatencyHistogramTest {
+
+	private static final long INTERVAL = 200;
+
+	@Test
+	public void percentileTest() throws Exception {
+		LatencyHistogram histogram = new LatencyHistogram(INTERVAL);
+		awaitIntervalStart(histogram);
+		for (long v = 1; v <= 100000; v++) {
+			histogram.record(v);
+		}
+		// values recorded so far are reported once their interval completes
+		Assert.assertEquals(0, histogram.getCount());
+		Thread.sleep(INTERVAL);
+		Assert.assertEquals(100000, histogram.getCount());
+		Assert.assertEquals(100000, histogram.getMax());
+		assertClose(50000, histogram.getPercentile(50));
+		assertClose(99000, histogram.getPercentile(99));
+		assertClose(99900, histogram.getPercentile(99.9));
+		Assert.assertEquals(100000, histogram.getPercentile(100));
+	}
+
+	@Test
+	public void exactSmallValuesTest() throws Exception {
+		LatencyHistogram histogram = new LatencyHistogram(INTERVAL);
+		awaitIntervalStart(histogram);
+		for (long v = 0; v < 64; v++) {
+			histogram.record(v);
+		}
+		Thread.sleep(INTERVAL);
+		Assert.assertEquals(31, histogram.getPercentile(50));
+		Assert.assertEquals(63, histogram.getMax());
+	}
+
+	@Test
+	public void rolloverTest() throws Exception {
+		LatencyHistogram histogram = new LatencyHistogram(INTERVAL);
+		awaitIntervalStart(histogram);
+		histogram.record(10);
+		Thread.sleep(INTERVAL);
+		Assert.assertEquals(1, histogram.getCount());
+		// an idle interval leaves nothing to report
+		Thread.sleep(INTERVAL * 2);
+		Assert.assertEquals(0, histogram.getCount());
+		Assert.assertEquals(0, histogram.getPercentile(99));
+	}
+
+	private void assertClose(long expected, long actual) {
+		Assert.assertTrue("Expected about " + expected + " but was " + actual,
+				actual >= expected && actual <= expected + expected / 32);
+	}
+
+	private void awaitIntervalStart(LatencyHistogram histogram) {
+		// restarts the current interval, so it holds all the values recorded by the test
+		histogram.reset();
+	}
+}
@@ -0,0 +1,61 @@
+package org.mobicents.diameter.stack.statistic;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import org.jdiameter.common.impl.statistic.StripedCounter;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class StripedCounterTest {
+
+	private static final int THREADS = 16;
+	private static final int PER_THREAD = 100000;
+
+	@Test
+	public void singleThreadTest() {
+		StripedCounter counter = new StripedCounter(5);
+		counter.increment();
+		counter.add(10);
+		counter.decrement();
+		Assert.assertEquals(15, counter.get());
+		counter.set(3);
+		Assert.assertEquals(3, counter.get());
+	}
+
+	@Test
+	public void concurrentIncrementTest() throws Exception {
+		final StripedCounter counter = new StripedCounter();
+		final CountDownLatch start = new CountDownLatch(1);
+		ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+		try {
+			for (int t = 0; t < THREADS; t++) {
+				executor.execute(new Runnable() {
+					public void run() {
+						try {
+							start.await();
+						}
+						catch (InterruptedException e) {
+							return;
+						}
+						for (int i = 0; i < PER_THREAD; i++) {
+							counter.increment();
+						}
+					}
+				});
+			}
+			start.countDown();
+			executor.shutdown();
+			Assert.assertTrue(executor.awaitTermination(60, TimeUnit.SECONDS));
+			Assert.assertEquals((long) THREADS * PER_THREAD, counter.get());
+			// once inflated the value survives a reset of the cells
+			counter.set(7);
+			Assert.assertEquals(7, counter.get());
+		}
+		finally {
+			executor.shutdownNow();
+		}
+	}
+}
@@ -0,0 +1,127 @@
+package org.mobicents.diameter.stack.timer;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.jdiameter.common.impl.timer.TimerWheel;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+public class TimerWheelTest {
+
+	private ExecutorService executor;
+	private TimerWheel timerWheel;
+
+	@Before
+	public void setUp() {
+		executor = Executors.newSingleThreadExecutor();
+		timerWheel = newTimerWheel(executor);
+	}
+
+	@After
+	public void tearDown() {
+		timerWheel.stop();
+		executor.shutdownNow();
+	}
+
+	private TimerWheel newTimerWheel(Executor executor) {
+		// small wheel, so that timers have to survive a few rounds
+		TimerWheel wheel = new TimerWheel(5, 16, executor);
+		Thread thread = new Thread(wheel, "TimerWheel");
+		thread.setDaemon(true);
+		thread.start();
+		return wheel;
+	}
+
+	@Test
+	public void fireTest() throws Exception {
+		final CountDownLatch latch = new CountDownLatch(3);
+		final List<Long> fired = new ArrayList<Long>();
+		final long start = System.currentTimeMillis();
+		for (final long delay : new long[] {200, 0, 50}) {
+			timerWheel.schedule(new Runnable() {
+				public void run() {
+					fired.add(delay);
+					Assert.assertTrue("Fired too early", System.currentTimeMillis() - start >= delay);
+					latch.countDown();
+				}
+			}, delay);
+		}
+		Assert.assertTrue("Timers did not fire", latch.await(5, TimeUnit.SECONDS));
+		Assert.assertEquals("Wrong firing order", Long.valueOf(0), fired.get(0));
+		Assert.assertEquals("Wrong firing order", Long.valueOf(50), fired.get(1));
+		Assert.assertEquals("Wrong firing order", Long.valueOf(200), fired.get(2));
+		Assert.assertEquals("Wrong pending count", 0, timerWheel.getPendingCount());
+	}
+
+	@Test
+	public void cancelTest() throws Exception {
+		final AtomicInteger fired = new AtomicInteger();
+		Runnable task = new Runnable() {
+			public void run() {
+				fired.incrementAndGet();
+			}
+		};
+		TimerWheel.Timeout cancelled = timerWheel.schedule(task, 50);
+		TimerWheel.Timeout kept = timerWheel.schedule(task, 50);
+		Assert.assertTrue("Cancel failed", cancelled.cancel());
+		Assert.assertFalse("Cancelled twice", cancelled.cancel());
+		Thread.sleep(300);
+		Assert.assertEquals("Wrong number of fired timers", 1, fired.get());
+		Assert.assertTrue("Timer not expired", kept.isExpired());
+		Assert.assertFalse("Cancelled an expired timer", kept.cancel());
+	}
+
+	@Test
+	public void scheduleAndCancelMillionTest() throws Exception {
+		final AtomicInteger fired = new AtomicInteger();
+		Runnable task = new Runnable() {
+			public void run() {
+				fired.incrementAndGet();
+			}
+		};
+		int count = 1000000;
+		TimerWheel.Timeout[] timeouts = new TimerWheel.Timeout[count];
+		for (int i = 0; i < count; i++) {
+			timeouts[i] = timerWheel.schedule(task, 2000 + (i % 1000));
+		}
+		Assert.assertEquals("Wrong pending count", count, timerWheel.getPendingCount());
+		for (int i = 0; i < count; i++) {
+			// every tenth timer is left to fire
+			if (i % 10 != 0) {
+				Assert.assertTrue("Cancel failed", timeouts[i].cancel());
+			}
+		}
+		long deadline = System.currentTimeMillis() + 10000;
+		while (fired.get() < count / 10 && System.currentTimeMillis() < deadline) {
+			Thread.sleep(50);
+		}
+		Assert.assertEquals("Wrong number of fired timers", count / 10, fired.get());
+		Assert.assertEquals("Wrong pending count", 0, timerWheel.getPendingCount());
+	}
+
+	@Test
+	public void stopTest() throws Exception {
+		TimerWheel wheel = new TimerWheel(5, 16, executor);
+		Thread thread = new Thread(wheel, "TimerWheel");
+		thread.start();
+		wheel.schedule(new Runnable() {
+			public void run() {
+				Assert.fail("Timer fired after stop");
+			}
+		}, 60000);
+		// as the timer facility does when the stack is destroyed
+		wheel.stop();
+		thread.interrupt();
+		thread.join(5000);
+		Assert.assertFalse("Wheel thread is still running", thread.isAlive());
+	}
+}
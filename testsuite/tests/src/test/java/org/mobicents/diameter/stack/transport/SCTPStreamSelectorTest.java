@@ -0,0 +1,95 @@
+package org.mobicents.diameter.stack.transport;
+
+import java.nio.ByteBuffer;
+import java.util.HashSet;
+import java.util.Set;
+
+import org.jdiameter.api.Avp;
+import org.jdiameter.client.api.IMessage;
+import org.jdiameter.client.impl.parser.MessageParser;
+import org.jdiameter.client.impl.transport.sctp.SCTPStreamSelector;
+import org.jdiameter.client.impl.transport.sctp.SCTPUtils;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class SCTPStreamSelectorTest {
+
+	private static final int STREAMS = 8;
+
+	private MessageParser parser = new MessageParser();
+
+	private IMessage createMessage(int commandCode, String sessionId, long hopByHopId) {
+		IMessage message = parser.createEmptyMessage(commandCode, 4);
+		message.setRequest(true);
+		message.setHopByHopIdentifier(hopByHopId);
+		if (sessionId != null) {
+			message.getAvps().addAvp(Avp.SESSION_ID, sessionId, false);
+		}
+		return message;
+	}
+
+	@Test
+	public void baseProtocolTest() {
+		SCTPStreamSelector selector = new SCTPStreamSelector();
+		selector.setOutboundStreams(STREAMS);
+		// CER, DWR and DPR stay on stream 0
+		for (int commandCode : new int[] {257, 280, 282}) {
+			Assert.assertEquals(0, selector.select(createMessage(commandCode, null, 1)));
+		}
+	}
+
+	@Test
+	public void sessionStreamTest() {
+		SCTPStreamSelector selector = new SCTPStreamSelector();
+		selector.setOutboundStreams(STREAMS);
+		Set<Integer> used = new HashSet<Integer>();
+		for (int i = 0; i < 1000; i++) {
+			String sessionId = "pcef.example.org;1288738381;" + i;
+			int stream = selector.select(createMessage(272, sessionId, i));
+			Assert.assertTrue("Stream out of range: " + stream, stream >= 1 && stream < STREAMS);
+			// other messages of the session go on the same stream
+			Assert.assertEquals(stream, selector.select(createMessage(272, sessionId, i + 1000)));
+			used.add(stream);
+		}
+		Assert.assertEquals("Sessions not spread over all streams", STREAMS - 1, used.size());
+
+		// messages without a session are spread by hop-by-hop identifier
+		int stream = selector.select(createMessage(272, null, 42));
+		Assert.assertTrue(stream >= 1 && stream < STREAMS);
+		Assert.assertEquals(stream, selector.select(createMessage(272, null, 42)));
+	}
+
+	@Test
+	public void singleStreamTest() {
+		SCTPStreamSelector selector = new SCTPStreamSelector();
+		Assert.assertEquals(1, selector.getOutboundStreams());
+		Assert.assertEquals(0, selector.select(createMessage(272, "pcef.example.org;1;1", 1)));
+		selector.setOutboundStreams(0);
+		Assert.assertEquals(1, selector.getOutboundStreams());
+		Assert.assertEquals(0, selector.select(createMessage(272, "pcef.example.org;1;1", 1)));
+	}
+
+	@Test
+	public void sentCountTest() {
+		SCTPStreamSelector selector = new SCTPStreamSelector();
+		selector.setOutboundStreams(STREAMS);
+		selector.onSent(3);
+		selector.onSent(3);
+		// streams beyond the negotiated count are ignored
+		selector.onSent(STREAMS);
+		Assert.assertEquals(2, selector.getSentCount(3));
+		Assert.assertEquals(0, selector.getSentCount(STREAMS));
+		// a new association starts counting again
+		selector.setOutboundStreams(2);
+		Assert.assertEquals(0, selector.getSentCount(3));
+	}
+
+	@Test
+	public void getBytesTest() {
+		byte[] array = {1, 2, 3, 4};
+		Assert.assertSame(array, SCTPUtils.getBytes(ByteBuffer.wrap(array)));
+		ByteBuffer slice = ByteBuffer.wrap(array, 1, 2);
+		Assert.assertArrayEquals(new byte[] {2, 3}, SCTPUtils.getBytes(slice));
+		Assert.assertEquals("Buffer position moved", 1, slice.position());
+	}
+}
@@ -0,0 +1,139 @@
+package org.mobicents.diameter.stack.transport;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.jdiameter.client.impl.helpers.EmptyConfiguration;
+import org.jdiameter.client.impl.transport.tcp.TCPReactor;
+import org.jdiameter.common.impl.concurrent.ConcurrentEntityFactory;
+import org.jdiameter.common.impl.concurrent.ConcurrentFactory;
+import org.jdiameter.common.impl.statistic.StatisticManagerImpl;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+public class TCPReactorTest {
+
+	private TCPReactor reactor;
+	private ServerSocketChannel server;
+	private List<SocketChannel> sockets = new ArrayList<SocketChannel>();
+
+	@Before
+	public void setUp() throws Exception {
+		ConcurrentFactory concurrentFactory = new ConcurrentFactory(EmptyConfiguration.getInstance(),
+				new StatisticManagerImpl(EmptyConfiguration.getInstance()), new ConcurrentEntityFactory());
+		reactor = TCPReactor.acquire(concurrentFactory, 1);
+		server = ServerSocketChannel.open();
+		server.socket().bind(new InetSocketAddress(InetAddress.getByName("127.0.0.1"), 0));
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		for (SocketChannel socket : sockets) {
+			socket.close();
+		}
+		server.close();
+		TCPReactor.release(reactor);
+	}
+
+	// connected pair, the first channel is driven by the reactor, the second one is its peer
+	private SocketChannel[] connect() throws IOException {
+		SocketChannel client = SocketChannel.open(server.socket().getLocalSocketAddress());
+		SocketChannel accepted = server.accept();
+		client.configureBlocking(false);
+		sockets.add(client);
+		sockets.add(accepted);
+		return new SocketChannel[] {client, accepted};
+	}
+
+	@Test
+	public void failingChannelTest() throws Exception {
+		SocketChannel[] failingRegister = connect();
+		SocketChannel[] failingFlush = connect();
+		SocketChannel[] working = connect();
+		// all channels are pinned to the only selector thread
+		TCPReactor.Worker worker = reactor.nextWorker();
+		TestChannel failingRegisterChannel = new TestChannel(failingRegister[0], true, false);
+		TestChannel failingFlushChannel = new TestChannel(failingFlush[0], false, true);
+		TestChannel workingChannel = new TestChannel(working[0], false, false);
+		worker.register(failingRegisterChannel, 0);
+		worker.register(failingFlushChannel, 0);
+		worker.register(workingChannel, 0);
+		Assert.assertTrue("Channel failing to register not closed", failingRegisterChannel.closed.await(5, TimeUnit.SECONDS));
+
+		worker.flush(failingFlushChannel, 0);
+		worker.flush(workingChannel, 0);
+		Assert.assertTrue("Channel failing to flush not closed", failingFlushChannel.closed.await(5, TimeUnit.SECONDS));
+		Assert.assertTrue("Working channel not flushed", workingChannel.flushed.await(5, TimeUnit.SECONDS));
+
+		// the selector thread still reads the other channel
+		failingRegister[1].write(ByteBuffer.wrap(new byte[] {1}));
+		working[1].write(ByteBuffer.wrap(new byte[] {1}));
+		Assert.assertTrue("Working channel not read", workingChannel.read.await(5, TimeUnit.SECONDS));
+		Assert.assertEquals("Working channel closed", 1, workingChannel.closed.getCount());
+	}
+
+	private static class TestChannel implements TCPReactor.Channel {
+
+		final SocketChannel channel;
+		final boolean failRegister;
+		final boolean failFlush;
+		final CountDownLatch read = new CountDownLatch(1);
+		final CountDownLatch flushed = new CountDownLatch(1);
+		final CountDownLatch closed = new CountDownLatch(1);
+
+		TestChannel(SocketChannel channel, boolean failRegister, boolean failFlush) {
+			this.channel = channel;
+			this.failRegister = failRegister;
+			this.failFlush = failFlush;
+		}
+
+		public SocketChannel getChannel() {
+			return channel;
+		}
+
+		public void registered(SelectionKey key) {
+			if (failRegister) {
+				throw new IllegalStateException("Registration failed");
+			}
+		}
+
+		public boolean read(ByteBuffer readBuffer) {
+			try {
+				channel.read(readBuffer);
+			}
+			catch (IOException e) {
+				return false;
+			}
+			finally {
+				readBuffer.clear();
+			}
+			read.countDown();
+			return true;
+		}
+
+		public void flush() {
+			if (failFlush) {
+				throw new IllegalStateException("Flush failed");
+			}
+			flushed.countDown();
+		}
+
+		public void disconnected() {
+		}
+
+		public void close() {
+			closed.countDown();
+		}
+	}
+}
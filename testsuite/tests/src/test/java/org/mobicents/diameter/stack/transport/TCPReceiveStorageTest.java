@@ -0,0 +1,112 @@
+package org.mobicents.diameter.stack.transport;
+
+import static org.jdiameter.client.impl.helpers.Parameters.ZeroCopyDecoding;
+
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import org.jdiameter.client.api.IMessage;
+import org.jdiameter.client.api.io.IConnectionListener;
+import org.jdiameter.client.api.io.TransportException;
+import org.jdiameter.client.impl.helpers.EmptyConfiguration;
+import org.jdiameter.client.impl.parser.MessageParser;
+import org.jdiameter.client.impl.transport.tcp.TCPClientConnection;
+import org.jdiameter.client.impl.transport.tcp.TCPTransportClient;
+import org.jdiameter.common.impl.concurrent.ConcurrentEntityFactory;
+import org.jdiameter.common.impl.concurrent.ConcurrentFactory;
+import org.jdiameter.common.impl.statistic.StatisticManagerImpl;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+public class TCPReceiveStorageTest {
+
+	private static final int DATA_AVP = 1000;
+
+	private MessageParser parser = new MessageParser(EmptyConfiguration.getInstance().add(ZeroCopyDecoding, true));
+	private BlockingQueue<IMessage> received = new LinkedBlockingQueue<IMessage>();
+	private ServerSocket serverSocket;
+	private TCPClientConnection connection;
+
+	@Before
+	public void setUp() throws Exception {
+		InetAddress localhost = InetAddress.getByName("127.0.0.1");
+		serverSocket = new ServerSocket(0, 1, localhost);
+		IConnectionListener listener = new IConnectionListener() {
+
+			public void connectionOpened(String connKey) {
+			}
+
+			@SuppressWarnings("rawtypes")
+			public void connectionClosed(String connKey, List notSended) {
+			}
+
+			public void messageReceived(String connKey, IMessage message) {
+				received.add(message);
+			}
+
+			public void internalError(String connKey, IMessage message, TransportException cause) {
+			}
+		};
+		ConcurrentFactory concurrentFactory = new ConcurrentFactory(EmptyConfiguration.getInstance(),
+				new StatisticManagerImpl(EmptyConfiguration.getInstance()), new ConcurrentEntityFactory());
+		connection = new TCPClientConnection(null, concurrentFactory, localhost, serverSocket.getLocalPort(), localhost, 0, listener, parser, null);
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		connection.release();
+		serverSocket.close();
+	}
+
+	// message of exactly the default receive storage size, its data avp filled with one value
+	private byte[] createFrame(byte fill) throws Exception {
+		IMessage message = parser.createEmptyMessage(272, 4);
+		byte[] data = new byte[TCPTransportClient.DEFAULT_STORAGE_SIZE - 20 - 8];
+		Arrays.fill(data, fill);
+		message.getAvps().addAvp(DATA_AVP, data);
+		byte[] frame = parser.encodeMessage(message).array();
+		Assert.assertEquals("Wrong frame size", TCPTransportClient.DEFAULT_STORAGE_SIZE, frame.length);
+		return frame;
+	}
+
+	private static void assertFilled(IMessage message, byte fill) throws Exception {
+		byte[] data = message.getAvps().getAvp(DATA_AVP).getOctetString();
+		for (byte b : data) {
+			Assert.assertEquals("Message data was overwritten", fill, b);
+		}
+	}
+
+	@Test
+	public void storageSizedMessagesTest() throws Exception {
+		connection.connect();
+		Socket socket = serverSocket.accept();
+		OutputStream out = socket.getOutputStream();
+		try {
+			// each frame fills the whole receive storage
+			out.write(createFrame((byte) 'a'));
+			out.flush();
+			IMessage first = received.poll(5, TimeUnit.SECONDS);
+			Assert.assertNotNull("First message not received", first);
+
+			out.write(createFrame((byte) 'b'));
+			out.flush();
+			IMessage second = received.poll(5, TimeUnit.SECONDS);
+			Assert.assertNotNull("Second message not received", second);
+
+			assertFilled(first, (byte) 'a');
+			assertFilled(second, (byte) 'b');
+		}
+		finally {
+			socket.close();
+		}
+	}
+}